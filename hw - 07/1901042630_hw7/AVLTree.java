@@ -0,0 +1,997 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A generic, self-balancing AVL tree that maps keys to values.
+ * <p>
+ * Every node also stores the size of its subtree, which turns the tree into an
+ * order-statistic tree: besides the usual insert, delete and search operations it can
+ * answer {@link #rank(Object)}, {@link #select(int)} and {@link #range(Object, Object)}
+ * queries in logarithmic time (plus the size of the output for range queries).
+ * <p>
+ * Keys are ordered with the supplied {@link Comparator}, or with their natural ordering
+ * when the no-argument constructor is used. Null keys are not permitted.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class AVLTree<K, V> {
+
+    /**
+     * A single node of the tree. The height and size fields are kept up to date
+     * after every structural change.
+     */
+    private static final class Node<K, V> {
+        private K key;
+        private V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int height;
+        private int size;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+            this.size = 1;
+        }
+    }
+
+    private final Comparator<? super K> comparator;
+    private Node<K, V> root;
+
+    /*
+     * Scratch slot used by the recursive insert/delete routines to hand the replaced or
+     * removed value back to the public method without allocating a holder object.
+     */
+    private V lastValue;
+
+    // Number of structural changes, so that iterators can detect concurrent modification
+    private int modCount;
+
+    // Number of single rotations performed since the tree was created
+    private long rotations;
+
+    /**
+     * Constructs an empty AVL tree that orders its keys by their natural ordering.
+     * The keys must implement {@link Comparable}.
+     */
+    public AVLTree() {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty AVL tree that orders its keys with the given comparator.
+     *
+     * @param comparator the comparator used to order the keys, or null for natural ordering
+     */
+    public AVLTree(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the number of entries in the tree.
+     * <p>
+     * Time complexity: O(1)
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Checks whether the tree is empty.
+     *
+     * @return true if the tree contains no entries
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Returns the height of the tree. An empty tree has height 0.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        return height(root);
+    }
+
+    /**
+     * Returns the number of single rotations performed to keep the tree balanced since it
+     * was created; a double rotation counts as two. Bulk loading performs none.
+     *
+     * @return the number of rotations
+     */
+    public long rotations() {
+        return rotations;
+    }
+
+    /**
+     * Inserts a key-value pair into the tree. If the key is already present, its value
+     * is replaced and the tree structure is left untouched.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param key the key
+     * @param value the value
+     * @return the previous value associated with the key, or null if there was none
+     */
+    public V insert(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        lastValue = null;
+        int sizeBefore = size(root);
+        root = insert(root, key, value);
+        if (size(root) != sizeBefore) {
+            modCount++;
+        }
+        V previous = lastValue;
+        lastValue = null;
+        return previous;
+    }
+
+    /**
+     * Deletes the entry with the given key from the tree.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param key the key to delete
+     * @return the value that was removed, or null if the key was not found
+     */
+    public V delete(K key) {
+        if (key == null) {
+            return null;
+        }
+        lastValue = null;
+        int sizeBefore = size(root);
+        root = delete(root, key);
+        if (size(root) != sizeBefore) {
+            modCount++;
+        }
+        V removed = lastValue;
+        lastValue = null;
+        return removed;
+    }
+
+    /**
+     * Changes the key of an existing entry while keeping its value.
+     * <p>
+     * If the new key still falls between the in-order neighbours of the entry, the key is
+     * replaced in place and the tree structure is not touched at all. Otherwise the entry is
+     * moved with a single delete and insert.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param oldKey the current key of the entry
+     * @param newKey the new key of the entry
+     * @return true if the entry was re-keyed, false if the old key was not found or the new
+     *         key already belongs to another entry
+     */
+    public boolean rekey(K oldKey, K newKey) {
+        if (oldKey == null || newKey == null) {
+            return false;
+        }
+
+        // Find the node and remember the closest ancestors on either side of it
+        Node<K, V> node = root;
+        Node<K, V> lower = null;
+        Node<K, V> upper = null;
+        while (node != null) {
+            int cmp = compare(oldKey, node.key);
+            if (cmp < 0) {
+                upper = node;
+                node = node.left;
+            } else if (cmp > 0) {
+                lower = node;
+                node = node.right;
+            } else {
+                break;
+            }
+        }
+        if (node == null) {
+            return false;
+        }
+        if (compare(oldKey, newKey) == 0) {
+            return true;
+        }
+
+        // The in-order neighbours live inside the subtrees when the node has children
+        if (node.left != null) {
+            lower = node.left;
+            while (lower.right != null) {
+                lower = lower.right;
+            }
+        }
+        if (node.right != null) {
+            upper = node.right;
+            while (upper.left != null) {
+                upper = upper.left;
+            }
+        }
+
+        boolean fits = (lower == null || compare(lower.key, newKey) < 0)
+                && (upper == null || compare(newKey, upper.key) < 0);
+        if (fits) {
+            node.key = newKey;
+            return true;
+        }
+        if (contains(newKey)) {
+            return false;
+        }
+        V value = node.value;
+        delete(oldKey);
+        insert(newKey, value);
+        return true;
+    }
+
+    /**
+     * Searches for the value associated with the given key.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param key the key to search for
+     * @return the value if found, otherwise null
+     */
+    public V search(K key) {
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Checks whether the tree contains the given key.
+     *
+     * @param key the key to look for
+     * @return true if the key is present
+     */
+    public boolean contains(K key) {
+        return findNode(key) != null;
+    }
+
+    /**
+     * Returns the number of keys in the tree that are strictly smaller than the given key.
+     * If the key is present, this is its zero-based position in sorted order.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param key the key to rank
+     * @return the number of keys smaller than the given key
+     */
+    public int rank(K key) {
+        int rank = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = compare(key, node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the value with the given zero-based position in sorted key order.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param index the position, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the value at the given position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public V select(int index) {
+        return selectNode(index).value;
+    }
+
+    /**
+     * Returns the key with the given zero-based position in sorted key order.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param index the position, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the key at the given position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public K selectKey(int index) {
+        return selectNode(index).key;
+    }
+
+    /**
+     * Returns the values whose keys lie between the given bounds (both inclusive),
+     * in ascending key order.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of values returned
+     *
+     * @param from the lower bound
+     * @param to the upper bound
+     * @return the values in the range
+     */
+    public List<V> range(K from, K to) {
+        List<V> result = new ArrayList<>();
+        range(from, to, result::add);
+        return result;
+    }
+
+    /**
+     * Passes every value whose key lies between the given bounds (both inclusive) to the
+     * given action, in ascending key order. Unlike {@link #range(Object, Object)} this does
+     * not build an intermediate list.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of values visited
+     *
+     * @param from the lower bound
+     * @param to the upper bound
+     * @param action the action to perform on each value
+     */
+    public void range(K from, K to, Consumer<? super V> action) {
+        if (compare(from, to) > 0) {
+            return;
+        }
+        range(root, from, to, action);
+    }
+
+    /**
+     * Counts the keys that lie between the given bounds (both inclusive).
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param from the lower bound
+     * @param to the upper bound
+     * @return the number of keys in the range
+     */
+    public int rangeCount(K from, K to) {
+        if (compare(from, to) > 0) {
+            return 0;
+        }
+        int count = rank(to) - rank(from);
+        return contains(to) ? count + 1 : count;
+    }
+
+    /**
+     * Returns the values with the smallest keys, in ascending key order.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of values to return
+     * @return up to {@code count} values with the smallest keys
+     */
+    public List<V> smallest(int count) {
+        List<V> result = new ArrayList<>(Math.max(0, Math.min(count, size())));
+        smallest(root, count, result);
+        return result;
+    }
+
+    /**
+     * Returns the values with the largest keys, in descending key order.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of values to return
+     * @return up to {@code count} values with the largest keys
+     */
+    public List<V> largest(int count) {
+        List<V> result = new ArrayList<>(Math.max(0, Math.min(count, size())));
+        largest(root, count, result);
+        return result;
+    }
+
+    /**
+     * Passes every value to the given action, in ascending key order.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param action the action to perform on each value
+     */
+    public void forEach(Consumer<? super V> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * Performs an in-order traversal of the tree and prints the values.
+     */
+    public void inOrderTraversal() {
+        inOrderTraversal(root);
+    }
+
+    /**
+     * Performs a pre-order traversal of the tree and prints the values.
+     */
+    public void preOrderTraversal() {
+        preOrderTraversal(root);
+    }
+
+    /**
+     * Performs a post-order traversal of the tree and prints the values.
+     */
+    public void postOrderTraversal() {
+        postOrderTraversal(root);
+    }
+
+    /**
+     * Returns a lazy iterator over the values in ascending key order. The iterator keeps
+     * the path to the next node on an explicit stack, so it needs O(log n) memory and no
+     * recursion. It does not support removal, and it fails with a
+     * {@link ConcurrentModificationException} if entries are added or removed while it is
+     * in use.
+     * <p>
+     * Time complexity: O(1) amortized per value
+     *
+     * @return an in-order iterator
+     */
+    public Iterator<V> iterator() {
+        return new InOrderIterator(null);
+    }
+
+    /**
+     * Returns a lazy iterator over the values whose keys are greater than or equal to the
+     * given key, in ascending key order. It behaves like {@link #iterator()}, and stopping
+     * it early makes it a bounded range query.
+     * <p>
+     * Time complexity: O(log n) to start, then O(1) amortized per value
+     *
+     * @param from the lowest key to include
+     * @return an in-order iterator starting at the first key not below {@code from}
+     */
+    public Iterator<V> iterator(K from) {
+        if (from == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return new InOrderIterator(from);
+    }
+
+    /**
+     * Returns a lazy iterator over the values in pre-order: every node before its left and
+     * right subtrees. It behaves like {@link #iterator()}.
+     * <p>
+     * Time complexity: O(1) per value
+     *
+     * @return a pre-order iterator
+     */
+    public Iterator<V> preOrderIterator() {
+        return new PreOrderIterator();
+    }
+
+    /**
+     * Returns a lazy iterator over the values in post-order: every node after its left and
+     * right subtrees. It behaves like {@link #iterator()}.
+     * <p>
+     * Time complexity: O(1) amortized per value
+     *
+     * @return a post-order iterator
+     */
+    public Iterator<V> postOrderIterator() {
+        return new PostOrderIterator();
+    }
+
+    /**
+     * Returns a spliterator over the values in ascending key order. It splits by subtree:
+     * the first split hands the left subtree of the root and the root to the new
+     * spliterator and keeps the right subtree, and so on down the tree. Subtree sizes are
+     * exact, so parallel streams get evenly sized, {@link Spliterator#SIZED} parts. The
+     * tree must not be changed while the spliterator is in use.
+     *
+     * @return an ordered, sized spliterator
+     */
+    public Spliterator<V> spliterator() {
+        return new TreeSpliterator(root, null, size());
+    }
+
+    /**
+     * Replaces the contents of the tree with the given entries, which must already be
+     * sorted by strictly increasing key. The tree is built directly in balanced shape,
+     * without any comparisons between nodes or rotations.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param keys the keys in strictly increasing order
+     * @param values the values, one per key
+     * @throws IllegalArgumentException if the lists differ in size or the keys are not
+     *         strictly increasing
+     */
+    public void loadSorted(List<? extends K> keys, List<? extends V> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("Got " + keys.size() + " keys but " + values.size() + " values");
+        }
+        for (int i = 1; i < keys.size(); i++) {
+            if (compare(keys.get(i - 1), keys.get(i)) >= 0) {
+                throw new IllegalArgumentException("Keys are not strictly increasing at index " + i);
+            }
+        }
+        root = buildBalanced(keys, values, 0, keys.size() - 1);
+        modCount++;
+    }
+
+    /**
+     * Removes all entries from the tree.
+     */
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Recursive helpers
+    // ---------------------------------------------------------------------------------
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return new Node<>(key, value);
+        }
+
+        int cmp = compare(key, node.key);
+        if (cmp < 0) {
+            node.left = insert(node.left, key, value);
+        } else if (cmp > 0) {
+            node.right = insert(node.right, key, value);
+        } else {
+            // Same key: replace the value, the shape of the tree does not change
+            lastValue = node.value;
+            node.value = value;
+            return node;
+        }
+
+        return rebalance(node);
+    }
+
+    private Node<K, V> delete(Node<K, V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = compare(key, node.key);
+        if (cmp < 0) {
+            node.left = delete(node.left, key);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, key);
+        } else {
+            lastValue = node.value;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // Two children: splice the in-order successor into this position
+            Node<K, V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+
+        return rebalance(node);
+    }
+
+    private Node<K, V> deleteMin(Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return rebalance(node);
+    }
+
+    private Node<K, V> buildBalanced(List<? extends K> keys, List<? extends V> values, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        // Both halves differ in size by at most one, so the result is height-balanced
+        int mid = (low + high) >>> 1;
+        Node<K, V> node = new Node<>(keys.get(mid), values.get(mid));
+        node.left = buildBalanced(keys, values, low, mid - 1);
+        node.right = buildBalanced(keys, values, mid + 1, high);
+        update(node);
+        return node;
+    }
+
+    private void range(Node<K, V> node, K from, K to, Consumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        int cmpFrom = compare(from, node.key);
+        int cmpTo = compare(to, node.key);
+        if (cmpFrom < 0) {
+            range(node.left, from, to, action);
+        }
+        if (cmpFrom <= 0 && cmpTo >= 0) {
+            action.accept(node.value);
+        }
+        if (cmpTo > 0) {
+            range(node.right, from, to, action);
+        }
+    }
+
+    private void smallest(Node<K, V> node, int count, List<V> result) {
+        if (node == null || result.size() >= count) {
+            return;
+        }
+        smallest(node.left, count, result);
+        if (result.size() < count) {
+            result.add(node.value);
+            smallest(node.right, count, result);
+        }
+    }
+
+    private void largest(Node<K, V> node, int count, List<V> result) {
+        if (node == null || result.size() >= count) {
+            return;
+        }
+        largest(node.right, count, result);
+        if (result.size() < count) {
+            result.add(node.value);
+            largest(node.left, count, result);
+        }
+    }
+
+    private void forEach(Node<K, V> node, Consumer<? super V> action) {
+        if (node != null) {
+            forEach(node.left, action);
+            action.accept(node.value);
+            forEach(node.right, action);
+        }
+    }
+
+    private void inOrderTraversal(Node<K, V> node) {
+        if (node != null) {
+            inOrderTraversal(node.left);
+            System.out.println(node.value);
+            inOrderTraversal(node.right);
+        }
+    }
+
+    private void preOrderTraversal(Node<K, V> node) {
+        if (node != null) {
+            System.out.println(node.value);
+            preOrderTraversal(node.left);
+            preOrderTraversal(node.right);
+        }
+    }
+
+    private void postOrderTraversal(Node<K, V> node) {
+        if (node != null) {
+            postOrderTraversal(node.left);
+            postOrderTraversal(node.right);
+            System.out.println(node.value);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Balancing
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Restores the AVL property at the given node and refreshes its height and size.
+     *
+     * @param node the node to rebalance
+     * @return the new root of the subtree
+     */
+    private Node<K, V> rebalance(Node<K, V> node) {
+        update(node);
+        int balance = balanceFactor(node);
+
+        if (balance > 1) {
+            // Left-Right case needs a preliminary left rotation
+            if (balanceFactor(node.left) < 0) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            // Right-Left case needs a preliminary right rotation
+            if (balanceFactor(node.right) > 0) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<K, V> rotateRight(Node<K, V> y) {
+        rotations++;
+        Node<K, V> x = y.left;
+        y.left = x.right;
+        x.right = y;
+        update(y);
+        update(x);
+        return x;
+    }
+
+    private Node<K, V> rotateLeft(Node<K, V> x) {
+        rotations++;
+        Node<K, V> y = x.right;
+        x.right = y.left;
+        y.left = x;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private void update(Node<K, V> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private int balanceFactor(Node<K, V> node) {
+        return height(node.left) - height(node.right);
+    }
+
+    private int height(Node<K, V> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private int size(Node<K, V> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Lookup helpers
+    // ---------------------------------------------------------------------------------
+
+    private Node<K, V> findNode(K key) {
+        if (key == null) {
+            return null;
+        }
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = compare(key, node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private Node<K, V> selectNode(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<K, V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(K a, K b) {
+        if (comparator != null) {
+            return comparator.compare(a, b);
+        }
+        return ((Comparable<? super K>) a).compareTo(b);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Iterators
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Walks the tree in order. The stack holds the nodes whose left subtree is being
+     * visited, with the next node on top.
+     */
+    private final class InOrderIterator implements Iterator<V> {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+
+        private InOrderIterator(K from) {
+            if (from == null) {
+                pushLeftPath(root);
+                return;
+            }
+            // Keep the ancestors at or above the start key, exactly as the walk from the
+            // first key would have left them
+            Node<K, V> node = root;
+            while (node != null) {
+                if (compare(from, node.key) <= 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        private void pushLeftPath(Node<K, V> node) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            pushLeftPath(node.right);
+            return node.value;
+        }
+    }
+
+    /**
+     * Walks the tree in pre-order. The stack holds the roots of the subtrees still to visit.
+     */
+    private final class PreOrderIterator implements Iterator<V> {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+
+        private PreOrderIterator() {
+            if (root != null) {
+                stack.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+            if (node.left != null) {
+                stack.push(node.left);
+            }
+            return node.value;
+        }
+    }
+
+    /**
+     * Walks the tree in post-order. The stack holds the path from the root to the next
+     * node; a node is returned once the walk comes back up from its right subtree.
+     */
+    private final class PostOrderIterator implements Iterator<V> {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+
+        private PostOrderIterator() {
+            descend(root);
+        }
+
+        /**
+         * Pushes the path from the given node down to the first node of its subtree in
+         * post-order, preferring left children over right ones.
+         */
+        private void descend(Node<K, V> node) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left != null ? node.left : node.right;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            Node<K, V> parent = stack.peek();
+            if (parent != null && parent.left == node) {
+                descend(parent.right);
+            }
+            return node.value;
+        }
+    }
+
+    /**
+     * Covers the in-order sequence of {@code subtree}, followed by every node on the stack
+     * from the top down, each followed by its right subtree. The bottom node of the stack
+     * can be a fence whose right subtree belongs to another spliterator.
+     */
+    private final class TreeSpliterator implements Spliterator<V> {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final Node<K, V> fence;
+        private Node<K, V> subtree;
+        private long remaining;
+        private final int expectedModCount = modCount;
+
+        private TreeSpliterator(Node<K, V> subtree, Node<K, V> fence, long remaining) {
+            this.subtree = subtree;
+            this.fence = fence;
+            this.remaining = remaining;
+            if (fence != null) {
+                stack.push(fence);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            for (Node<K, V> node = subtree; node != null; node = node.left) {
+                stack.push(node);
+            }
+            subtree = null;
+            if (stack.isEmpty()) {
+                return false;
+            }
+            Node<K, V> node = stack.pop();
+            if (node != fence) {
+                subtree = node.right;
+            }
+            remaining--;
+            action.accept(node.value);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            while (tryAdvance(action)) {
+                // Each call visits one value
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            // Only a subtree that has not been entered yet can be split
+            Node<K, V> node = subtree;
+            if (node == null || node.left == null && node.right == null) {
+                return null;
+            }
+            TreeSpliterator prefix = new TreeSpliterator(node.left, node, size(node.left) + 1);
+            subtree = node.right;
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares loading a StockDataManager one {@code addStock} call at a time with
+ * {@link StockDataManager#bulkLoad(Iterable)}, for sorted and for shuffled input.
+ * <p>
+ * Usage: {@code java BulkLoadBenchmark [symbolCount]} (default: 2,000,000 symbols).
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        Random random = new Random(42);
+        List<Stock> sorted = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            sorted.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextDouble() * 990,
+                    1000 + random.nextInt(9000), 1000000 + random.nextInt(100000)));
+        }
+        List<Stock> shuffled = new ArrayList<>(sorted);
+        Collections.shuffle(shuffled, random);
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+
+            long start = System.nanoTime();
+            StockDataManager manager = new StockDataManager();
+            for (Stock stock : shuffled) {
+                manager.addStock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+            }
+            report(timed, "addStock loop (shuffled)", start, manager);
+            manager = null;
+
+            start = System.nanoTime();
+            manager = StockDataManager.bulkLoad(shuffled);
+            report(timed, "bulkLoad (shuffled)", start, manager);
+            manager = null;
+
+            start = System.nanoTime();
+            manager = StockDataManager.bulkLoad(sorted);
+            report(timed, "bulkLoad (sorted)", start, manager);
+        }
+    }
+
+    private static void report(boolean timed, String label, long start, StockDataManager manager) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (timed) {
+            System.out.printf("%-28s %8d ms  (%d stocks)%n", label, millis, manager.size());
+        }
+    }
+}
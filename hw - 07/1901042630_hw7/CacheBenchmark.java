@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the {@link HotSymbolCache} under skewed traffic: one percent of the symbols take
+ * ninety percent of the searches (see {@link KeyDistribution#hotspot}), and every twentieth
+ * operation updates the values of the searched stock. The searches run against the object,
+ * the concurrent and the columnar managers with the cache disabled and enabled. Every
+ * search is timed separately, so the percentiles as well as the average time per search
+ * are compared. The symbols are fresh strings, as if parsed from a feed.
+ * <p>
+ * Usage: {@code java CacheBenchmark [symbolCount] [operationCount] [cacheCapacity]}
+ * (defaults: 1,000,000 symbols, 5,000,000 operations, 10,000 cached stocks).
+ */
+public class CacheBenchmark {
+    private static final double HOT_KEY_FRACTION = 0.01;
+    private static final double HOT_ACCESS_FRACTION = 0.9;
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int operationCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        Random random = new Random(42);
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextDouble() * 990,
+                    1000 + random.nextInt(9000), 1000000 + random.nextInt(100000)));
+        }
+        StockDataManager[] managers = {
+                StockDataManager.bulkLoad(stocks),
+                new ConcurrentStockDataManager(),
+                ColumnarStockDataManager.bulkLoad(stocks)
+        };
+        for (Stock stock : stocks) {
+            managers[1].addStock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+        }
+        String[] labels = {"tree", "concurrent", "columnar"};
+        stocks = null;
+
+        KeyDistribution.Sampler sampler = KeyDistribution.hotspot(symbolCount, HOT_KEY_FRACTION, HOT_ACCESS_FRACTION, 42);
+        String[] symbols = new String[operationCount];
+        for (int i = 0; i < operationCount; i++) {
+            symbols[i] = new String(UpdateBenchmark.symbolFor('S', sampler.next()).toCharArray());
+        }
+
+        System.out.printf("%d symbols, %d operations, %.0f%% of the symbols take %.0f%% of the searches, cache of %d stocks%n%n",
+                symbolCount, operationCount, HOT_KEY_FRACTION * 100, HOT_ACCESS_FRACTION * 100, capacity);
+        System.out.printf("%-22s %10s %8s %8s %8s %8s %9s%n", "", "ns/search", "p50", "p90", "p99", "p99.9", "hit rate");
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            for (int m = 0; m < managers.length; m++) {
+                StockDataManager manager = managers[m];
+                run(timed, labels[m] + ", no cache", manager, symbols);
+                manager.enableCache(capacity);
+                run(timed, labels[m] + ", cache", manager, symbols);
+                manager.disableCache();
+            }
+        }
+    }
+
+    private static void run(boolean timed, String label, StockDataManager manager, String[] symbols) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        long searchNanos = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            String symbol = symbols[i];
+            if (i % 20 == 19) {
+                manager.updateStock(symbol, symbol, 10 + i % 990, 1000 + i % 9000, 1000000 + i % 100000);
+                continue;
+            }
+            long start = System.nanoTime();
+            manager.searchStock(symbol);
+            long nanos = System.nanoTime() - start;
+            latencies.record(nanos);
+            searchNanos += nanos;
+        }
+        if (timed) {
+            HotSymbolCache cache = manager.getCache();
+            System.out.printf("%-22s %10.1f %8d %8d %8d %8d %9s%n", label, (double) searchNanos / latencies.getCount(),
+                    latencies.getPercentile(50), latencies.getPercentile(90), latencies.getPercentile(99),
+                    latencies.getPercentile(99.9),
+                    cache == null ? "-" : String.format("%.1f%%", cache.getHitRate() * 100));
+        }
+    }
+}
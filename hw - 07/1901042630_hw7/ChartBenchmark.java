@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Measures {@link PerformanceChart} on a large live series: a random walk of latencies is
+ * appended point by point while a listener counts the full and the partial repaints, then
+ * the chart is rendered to an image with and without downsampling. Runs without a
+ * display and saves the result as {@code chart_benchmark.png} and
+ * {@code chart_benchmark.svg}.
+ * <p>
+ * Usage: {@code java -Djava.awt.headless=true ChartBenchmark [pointCount]}
+ * (default: 2,000,000 points).
+ */
+public class ChartBenchmark {
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 900;
+
+    public static void main(String[] args) throws IOException {
+        int pointCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            PerformanceChart chart = new PerformanceChart("Search latency", "Operation", "Time (ns)");
+            long[] repaints = new long[2];
+            long[] repaintedPixels = new long[1];
+            chart.setRepaintListener(area -> {
+                if (area == null) {
+                    repaints[0]++;
+                } else {
+                    repaints[1]++;
+                    repaintedPixels[0] += (long) area.width * area.height;
+                }
+            });
+            chart.render(WIDTH, HEIGHT);
+
+            Random random = new Random(42);
+            double latency = 500;
+            long start = System.nanoTime();
+            for (int i = 0; i < pointCount; i++) {
+                // A slowly wandering baseline with rare spikes, like a real latency series
+                latency = Math.max(50, latency + random.nextGaussian() * 5 + (500 - latency) * 0.001);
+                chart.append(i, random.nextInt(10_000) == 0 ? latency * 10 : latency);
+            }
+            long appendNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            chart.render(WIDTH, HEIGHT);
+            long downsampledNanos = System.nanoTime() - start;
+
+            chart.setDownsampling(false);
+            start = System.nanoTime();
+            chart.render(WIDTH, HEIGHT);
+            long rawNanos = System.nanoTime() - start;
+            chart.setDownsampling(true);
+
+            if (timed) {
+                System.out.printf("append               %8.1f ns/point%n", (double) appendNanos / pointCount);
+                System.out.printf("repaints             %8d full, %d partial (%.0f pixels on average)%n",
+                        repaints[0], repaints[1], (double) repaintedPixels[0] / Math.max(1, repaints[1]));
+                System.out.printf("render, LTTB         %8d ms%n", downsampledNanos / 1_000_000);
+                System.out.printf("render, every point  %8d ms%n", rawNanos / 1_000_000);
+                chart.writePng(Paths.get("chart_benchmark.png"), WIDTH, HEIGHT);
+                chart.writeSvg(Paths.get("chart_benchmark.svg"), WIDTH, HEIGHT);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A {@link StockDataManager} that stores its stocks in primitive columns instead of one
+ * {@link Stock} object per symbol, for very large symbol sets.
+ * <p>
+ * Every stock is a row identified by an int handle. The symbols are UTF-8 encoded into a
+ * single byte arena, and the prices, volumes and market capitalizations are kept in
+ * parallel primitive arrays. The symbol tree and the three secondary indexes are
+ * array-backed {@link IntAVLTree}s over the handles, so no object is allocated per stock.
+ * A stock costs roughly 90 bytes here against about 250 bytes in the object-based manager.
+ * <p>
+ * The API is unchanged, but the {@link Stock} objects returned by this class are detached
+ * copies; see {@link HandleStockDataManager}.
+ */
+public class ColumnarStockDataManager extends HandleStockDataManager {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Columns, indexed by handle
+    private int[] symbolOffsets;
+    private double[] prices;
+    private long[] volumes;
+    private long[] marketCaps;
+
+    // Symbol arena: each symbol is stored as [varint length][UTF-8 bytes]
+    private byte[] arena;
+    private int arenaUsed;
+    private int arenaGarbage;
+
+    // Handles that have never been used start at handleLimit; released ones are reused first
+    private int handleLimit;
+    private int[] freeHandles = new int[0];
+    private int freeCount;
+
+    private final IntAVLTree[] trees = new IntAVLTree[4];
+
+    /**
+     * Constructs a new ColumnarStockDataManager.
+     */
+    public ColumnarStockDataManager() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new ColumnarStockDataManager with room for the given number of stocks.
+     * The columns grow automatically when more stocks are added.
+     *
+     * @param capacity the number of stocks to allocate room for
+     */
+    public ColumnarStockDataManager(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.symbolOffsets = new int[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+        this.marketCaps = new long[capacity];
+        this.arena = new byte[capacity * 8];
+        initTrees();
+    }
+
+    /**
+     * Creates a ColumnarStockDataManager holding the given stocks, with the same rules as
+     * {@link StockDataManager#bulkLoad(Iterable)}: input sorted by symbol is used as is,
+     * otherwise it is sorted, and the last occurrence of a repeated symbol wins. The values
+     * are copied into the columns, so the input can be discarded afterwards.
+     * <p>
+     * Time complexity: O(n) for the symbol tree on sorted input, O(n log n) otherwise and
+     * for the secondary indexes
+     *
+     * @param stocks the stocks to load
+     * @return a new manager holding the stocks
+     */
+    public static ColumnarStockDataManager bulkLoad(Iterable<Stock> stocks) {
+        int capacity = stocks instanceof Collection ? ((Collection<?>) stocks).size() : DEFAULT_CAPACITY;
+        ColumnarStockDataManager manager = new ColumnarStockDataManager(capacity);
+        manager.load(stocks);
+        return manager;
+    }
+
+    @Override
+    protected IntAVLTree createTree(int tree, IntAVLTree.HandleOrder order) {
+        trees[tree] = new IntAVLTree(order, prices.length);
+        return trees[tree];
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Rows
+    // ---------------------------------------------------------------------------------
+
+    @Override
+    protected int allocate(byte[] key) {
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if (handleLimit == prices.length) {
+                resize(Math.max(handleLimit + 1, prices.length + (prices.length >> 1)));
+            }
+            handle = handleLimit++;
+        }
+        // -1 keeps a compaction triggered by append() away from the row
+        symbolOffsets[handle] = -1;
+        symbolOffsets[handle] = append(key);
+        return handle;
+    }
+
+    @Override
+    protected void release(int handle) {
+        arenaGarbage += recordLength(handle);
+        symbolOffsets[handle] = -1;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, Math.max(16, freeCount * 2));
+        }
+        freeHandles[freeCount++] = handle;
+    }
+
+    @Override
+    protected void setSymbol(int handle, byte[] key) {
+        arenaGarbage += recordLength(handle);
+        symbolOffsets[handle] = -1;
+        symbolOffsets[handle] = append(key);
+    }
+
+    @Override
+    protected String symbol(int handle) {
+        return new String(arena, symbolStart(handle), symbolLength(handle), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected int compareSymbols(int a, int b) {
+        int startA = symbolStart(a);
+        int startB = symbolStart(b);
+        return Arrays.compareUnsigned(arena, startA, startA + symbolLength(a), arena, startB, startB + symbolLength(b));
+    }
+
+    @Override
+    protected int compareKey(byte[] key, int handle) {
+        int start = symbolStart(handle);
+        return Arrays.compareUnsigned(key, 0, key.length, arena, start, start + symbolLength(handle));
+    }
+
+    @Override
+    protected double price(int handle) {
+        return prices[handle];
+    }
+
+    @Override
+    protected long volume(int handle) {
+        return volumes[handle];
+    }
+
+    @Override
+    protected long marketCap(int handle) {
+        return marketCaps[handle];
+    }
+
+    @Override
+    protected void setPrice(int handle, double price) {
+        prices[handle] = price;
+    }
+
+    @Override
+    protected void setVolume(int handle, long volume) {
+        volumes[handle] = volume;
+    }
+
+    @Override
+    protected void setMarketCap(int handle, long marketCap) {
+        marketCaps[handle] = marketCap;
+    }
+
+    @Override
+    protected void trimToSize() {
+        if (handleLimit < prices.length) {
+            resize(Math.max(1, handleLimit));
+            for (IntAVLTree tree : trees) {
+                tree.trimToSize(prices.length);
+            }
+        }
+        if (arenaUsed < arena.length) {
+            arena = Arrays.copyOf(arena, arenaUsed);
+        }
+    }
+
+    private void resize(int capacity) {
+        symbolOffsets = Arrays.copyOf(symbolOffsets, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        volumes = Arrays.copyOf(volumes, capacity);
+        marketCaps = Arrays.copyOf(marketCaps, capacity);
+        for (IntAVLTree tree : trees) {
+            tree.ensureCapacity(capacity);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Symbol arena
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Appends a symbol record to the arena, compacting the arena first when more than half
+     * of it is garbage.
+     *
+     * @return the offset of the record
+     */
+    private int append(byte[] key) {
+        int needed = key.length + 5;
+        if (arenaUsed + needed > arena.length) {
+            if (arenaGarbage > arenaUsed / 2) {
+                compact();
+            }
+            if (arenaUsed + needed > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arenaUsed + needed, arena.length + (arena.length >> 1)));
+            }
+        }
+        int offset = arenaUsed;
+        int length = key.length;
+        while ((length & ~0x7F) != 0) {
+            arena[arenaUsed++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        arena[arenaUsed++] = (byte) length;
+        System.arraycopy(key, 0, arena, arenaUsed, key.length);
+        arenaUsed += key.length;
+        return offset;
+    }
+
+    /**
+     * Moves the live symbol records to the front of the arena. Rows whose offset is -1 are
+     * released or about to receive a new symbol.
+     */
+    private void compact() {
+        byte[] compacted = new byte[arena.length];
+        int used = 0;
+        for (int handle = 0; handle < handleLimit; handle++) {
+            if (symbolOffsets[handle] >= 0) {
+                int length = recordLength(handle);
+                System.arraycopy(arena, symbolOffsets[handle], compacted, used, length);
+                symbolOffsets[handle] = used;
+                used += length;
+            }
+        }
+        arena = compacted;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    /**
+     * Returns the number of arena bytes used by the symbol record of a row.
+     */
+    private int recordLength(int handle) {
+        return symbolStart(handle) - symbolOffsets[handle] + symbolLength(handle);
+    }
+
+    /**
+     * Returns the arena offset of the first UTF-8 byte of a row's symbol.
+     */
+    private int symbolStart(int handle) {
+        int offset = symbolOffsets[handle];
+        while (arena[offset] < 0) {
+            offset++;
+        }
+        return offset + 1;
+    }
+
+    /**
+     * Returns the number of UTF-8 bytes of a row's symbol.
+     */
+    private int symbolLength(int handle) {
+        int offset = symbolOffsets[handle];
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = arena[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+}
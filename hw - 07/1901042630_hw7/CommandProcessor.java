@@ -0,0 +1,537 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads ADD, REMOVE, SEARCH and UPDATE commands from a file and applies them to a
+ * {@link StockDataManager}.
+ * <p>
+ * The file is read through a {@link FileChannel} into one large reusable buffer and the
+ * commands are tokenized directly on the bytes, so no line strings or token arrays are
+ * created. Symbols are resolved through a small cache, which means a symbol seen before
+ * does not allocate a new string, and prices are parsed without going through
+ * {@link Double#parseDouble} for plain decimal numbers.
+ * <p>
+ * Parsed commands are collected in primitive batches and applied to the manager one batch
+ * at a time. Printing a result line per command is optional; when enabled the output goes
+ * through a large buffered writer.
+ * <p>
+ * Usage: {@code java CommandProcessor <inputFile> [--print]}
+ */
+public class CommandProcessor {
+    /** Default size of the read buffer in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /** Default number of commands applied per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_SEARCH = 3;
+    private static final byte OP_UPDATE = 4;
+    private static final byte OP_INVALID = 5;
+
+    private static final byte[] ADD = "ADD".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REMOVE = "REMOVE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEARCH = "SEARCH".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UPDATE = "UPDATE".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_TOKENS = 6;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * Counters for one run of the processor.
+     */
+    public static final class Result {
+        private final long commands;
+        private final long invalid;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        private Result(long commands, long invalid, long bytes, long elapsedNanos) {
+            this.commands = commands;
+            this.invalid = invalid;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of valid commands that were applied
+         */
+        public long getCommands() {
+            return commands;
+        }
+
+        /**
+         * @return the number of lines that could not be parsed
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return the number of bytes read from the input
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the wall-clock time of the run in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of valid commands applied per second
+         */
+        public double getCommandsPerSecond() {
+            return elapsedNanos == 0 ? 0 : commands * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d commands (%d invalid) in %.3f s, %.0f commands/s",
+                    commands, invalid, elapsedNanos / 1e9, getCommandsPerSecond());
+        }
+    }
+
+    private final StockDataManager manager;
+    private final Writer output;
+    private final int bufferSize;
+    private final SymbolCache symbols = new SymbolCache();
+
+    // Token boundaries of the line being parsed
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+
+    // The current batch, stored column by column
+    private final byte[] ops;
+    private final String[] batchSymbols;
+    private final String[] batchNewSymbols;
+    private final double[] batchPrices;
+    private final long[] batchVolumes;
+    private final long[] batchMarketCaps;
+    private int batchCount;
+
+    private long commands;
+    private long invalid;
+
+    /**
+     * Constructs a processor that applies commands without printing anything.
+     *
+     * @param manager the manager to apply the commands to
+     */
+    public CommandProcessor(StockDataManager manager) {
+        this(manager, null);
+    }
+
+    /**
+     * Constructs a processor with the default buffer and batch sizes.
+     *
+     * @param manager the manager to apply the commands to
+     * @param output where to print one result line per command, or null to print nothing
+     */
+    public CommandProcessor(StockDataManager manager, Writer output) {
+        this(manager, output, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a processor.
+     *
+     * @param manager the manager to apply the commands to
+     * @param output where to print one result line per command, or null to print nothing
+     * @param bufferSize the initial size of the read buffer in bytes
+     * @param batchSize the number of commands applied per batch
+     */
+    public CommandProcessor(StockDataManager manager, Writer output, int bufferSize, int batchSize) {
+        if (bufferSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Buffer and batch sizes must be positive");
+        }
+        this.manager = manager;
+        this.output = output == null ? null : new BufferedWriter(output, 1 << 16);
+        this.bufferSize = bufferSize;
+        this.ops = new byte[batchSize];
+        this.batchSymbols = new String[batchSize];
+        this.batchNewSymbols = new String[batchSize];
+        this.batchPrices = new double[batchSize];
+        this.batchVolumes = new long[batchSize];
+        this.batchMarketCaps = new long[batchSize];
+    }
+
+    /**
+     * Reads every command in the given file and applies it to the manager.
+     *
+     * @param path the command file
+     * @return the counters of this run
+     * @throws IOException if the file cannot be read or the output cannot be written
+     */
+    public Result process(Path path) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        commands = 0;
+        invalid = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            int scanFrom = 0;
+            while (true) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                bytes += read;
+                byte[] data = buffer.array();
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = scanFrom; i < limit; i++) {
+                    if (data[i] == '\n') {
+                        parseLine(data, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+
+                // Move the unfinished line to the front, growing the buffer for very long lines
+                int remaining = limit - lineStart;
+                if (remaining == data.length) {
+                    ByteBuffer larger = ByteBuffer.allocate(data.length * 2);
+                    larger.put(data, 0, remaining);
+                    buffer = larger;
+                } else {
+                    System.arraycopy(data, lineStart, data, 0, remaining);
+                    buffer.position(remaining);
+                }
+                scanFrom = remaining;
+            }
+            if (buffer.position() > 0) {
+                parseLine(buffer.array(), 0, buffer.position());
+            }
+        }
+
+        applyBatch();
+        if (output != null) {
+            output.flush();
+        }
+        return new Result(commands, invalid, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Tokenizes one line and appends it to the current batch.
+     */
+    private void parseLine(byte[] data, int from, int to) throws IOException {
+        if (to > from && data[to - 1] == '\r') {
+            to--;
+        }
+        int tokens = 0;
+        int i = from;
+        while (i < to) {
+            while (i < to && (data[i] == ' ' || data[i] == '\t')) {
+                i++;
+            }
+            if (i == to) {
+                break;
+            }
+            if (tokens == MAX_TOKENS) {
+                tokens++;
+                break;
+            }
+            tokenStart[tokens] = i;
+            while (i < to && data[i] != ' ' && data[i] != '\t') {
+                i++;
+            }
+            tokenEnd[tokens++] = i;
+        }
+        if (tokens == 0) {
+            return;
+        }
+
+        int slot = batchCount;
+        try {
+            if (matches(data, 0, ADD) && tokens == 5) {
+                ops[slot] = OP_ADD;
+                batchSymbols[slot] = symbol(data, 1);
+                batchPrices[slot] = parseDouble(data, 2);
+                batchVolumes[slot] = parseLong(data, 3);
+                batchMarketCaps[slot] = parseLong(data, 4);
+            } else if (matches(data, 0, REMOVE) && tokens == 2) {
+                ops[slot] = OP_REMOVE;
+                batchSymbols[slot] = symbol(data, 1);
+            } else if (matches(data, 0, SEARCH) && tokens == 2) {
+                ops[slot] = OP_SEARCH;
+                batchSymbols[slot] = symbol(data, 1);
+            } else if (matches(data, 0, UPDATE) && tokens == 6) {
+                ops[slot] = OP_UPDATE;
+                batchSymbols[slot] = symbol(data, 1);
+                batchNewSymbols[slot] = symbol(data, 2);
+                batchPrices[slot] = parseDouble(data, 3);
+                batchVolumes[slot] = parseLong(data, 4);
+                batchMarketCaps[slot] = parseLong(data, 5);
+            } else {
+                markInvalid(data, from, to, slot);
+            }
+        } catch (NumberFormatException e) {
+            markInvalid(data, from, to, slot);
+        }
+
+        if (++batchCount == ops.length) {
+            applyBatch();
+        }
+    }
+
+    private void markInvalid(byte[] data, int from, int to, int slot) {
+        ops[slot] = OP_INVALID;
+        // Only invalid lines are turned into strings, and only when they are printed
+        batchSymbols[slot] = output == null ? null : new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies every command of the current batch to the manager and empties the batch.
+     */
+    private void applyBatch() throws IOException {
+        for (int i = 0; i < batchCount; i++) {
+            String symbol = batchSymbols[i];
+            switch (ops[i]) {
+                case OP_ADD:
+                    manager.addStock(symbol, batchPrices[i], batchVolumes[i], batchMarketCaps[i]);
+                    print("Added stock: ", symbol);
+                    break;
+                case OP_REMOVE:
+                    manager.removeStock(symbol);
+                    print("Removed stock: ", symbol);
+                    break;
+                case OP_SEARCH:
+                    Stock stock = manager.searchStock(symbol);
+                    if (output != null) {
+                        if (stock != null) {
+                            print("Found stock: ", stock.toString());
+                        } else {
+                            print("Stock not found: ", symbol);
+                        }
+                    }
+                    break;
+                case OP_UPDATE:
+                    String newSymbol = batchNewSymbols[i];
+                    boolean updated = manager.updateStock(symbol, newSymbol, batchPrices[i], batchVolumes[i], batchMarketCaps[i]);
+                    if (output != null) {
+                        if (updated) {
+                            print("Updated stock: ", symbol + " to " + newSymbol);
+                        } else {
+                            print("Stock not updated: ", symbol);
+                        }
+                    }
+                    break;
+                default:
+                    invalid++;
+                    print("Invalid command: ", symbol);
+                    batchSymbols[i] = null;
+                    continue;
+            }
+            commands++;
+            batchSymbols[i] = null;
+            batchNewSymbols[i] = null;
+        }
+        batchCount = 0;
+    }
+
+    private void print(String prefix, String text) throws IOException {
+        if (output != null) {
+            output.write(prefix);
+            output.write(text);
+            output.write(System.lineSeparator());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Token helpers
+    // ---------------------------------------------------------------------------------
+
+    private boolean matches(byte[] data, int token, byte[] word) {
+        int start = tokenStart[token];
+        if (tokenEnd[token] - start != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (data[start + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String symbol(byte[] data, int token) {
+        return symbols.get(data, tokenStart[token], tokenEnd[token]);
+    }
+
+    private long parseLong(byte[] data, int token) {
+        int i = tokenStart[token];
+        int end = tokenEnd[token];
+        boolean negative = data[i] == '-';
+        if (negative || data[i] == '+') {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            // Empty, or long enough to overflow: let the JDK decide
+            return Long.parseLong(tokenString(data, token));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + tokenString(data, token) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number. Plain numbers such as {@code 123.45} with at most 15
+     * significant digits are computed as mantissa / 10^scale, which is exact and therefore
+     * gives the same result as {@link Double#parseDouble}. Anything else falls back to it.
+     */
+    private double parseDouble(byte[] data, int token) {
+        int i = tokenStart[token];
+        int end = tokenEnd[token];
+        boolean negative = data[i] == '-';
+        if (negative || data[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            byte b = data[i];
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return Double.parseDouble(tokenString(data, token));
+            }
+        }
+        if (!sawDigit || digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(tokenString(data, token));
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private String tokenString(byte[] data, int token) {
+        return new String(data, tokenStart[token], tokenEnd[token] - tokenStart[token], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An open-addressing cache from symbol bytes to String instances, so that a symbol
+     * that has been seen before is returned without allocating. The cache stops growing
+     * once it holds {@link #MAX_ENTRIES} symbols; new symbols are then allocated as usual.
+     */
+    private static final class SymbolCache {
+        private static final int MAX_ENTRIES = 1 << 20;
+
+        private String[] table = new String[1024];
+        private int[] hashes = new int[1024];
+        private int size;
+
+        String get(byte[] data, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                byte b = data[i];
+                if (b < 0) {
+                    // Non-ASCII symbols are rare; decode them without caching
+                    return new String(data, from, to - from, StandardCharsets.UTF_8);
+                }
+                hash = 31 * hash + b;
+            }
+
+            int mask = table.length - 1;
+            int index = (hash ^ (hash >>> 16)) & mask;
+            String candidate;
+            while ((candidate = table[index]) != null) {
+                if (hashes[index] == hash && equals(candidate, data, from, to)) {
+                    return candidate;
+                }
+                index = (index + 1) & mask;
+            }
+
+            String symbol = new String(data, from, to - from, StandardCharsets.US_ASCII);
+            if (size < MAX_ENTRIES) {
+                table[index] = symbol;
+                hashes[index] = hash;
+                if (++size * 2 > table.length) {
+                    resize();
+                }
+            }
+            return symbol;
+        }
+
+        private static boolean equals(String symbol, byte[] data, int from, int to) {
+            if (symbol.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < symbol.length(); i++) {
+                if (symbol.charAt(i) != data[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void resize() {
+            String[] oldTable = table;
+            int[] oldHashes = hashes;
+            table = new String[oldTable.length * 2];
+            hashes = new int[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < oldTable.length; i++) {
+                if (oldTable[i] != null) {
+                    int index = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                    while (table[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = oldTable[i];
+                    hashes[index] = oldHashes[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays a command file against a fresh StockDataManager and reports the throughput.
+     *
+     * @param args the command file, optionally followed by {@code --print}
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java CommandProcessor <inputFile> [--print]");
+            return;
+        }
+        boolean print = args.length > 1 && args[1].equals("--print");
+        CommandProcessor processor = new CommandProcessor(new StockDataManager(),
+                print ? new OutputStreamWriter(System.out) : null);
+        System.out.println(processor.process(Paths.get(args[0])));
+    }
+}
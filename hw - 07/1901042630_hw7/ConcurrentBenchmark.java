@@ -0,0 +1,135 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures read and write throughput of {@link ConcurrentStockDataManager} against a plain
+ * {@link StockDataManager} guarded by a single lock, for an increasing number of threads.
+ * Half of the threads search for random symbols, the other half update random symbols; a
+ * single thread alternates between the two, which gives the baseline for both columns.
+ * The thread count doubles from 1 and ends at exactly {@code maxThreads}.
+ * <p>
+ * Usage: {@code java ConcurrentBenchmark [symbolCount] [secondsPerRun] [maxThreads]}
+ * (defaults: 100,000 symbols, 2 seconds, twice the number of available processors).
+ */
+public class ConcurrentBenchmark {
+
+    /**
+     * One way of reaching a manager from the benchmark threads.
+     */
+    private interface Target {
+        Stock search(String symbol);
+
+        void update(String symbol, double price);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int maxThreads = Math.max(1, args.length > 2 ? Integer.parseInt(args[2]) : 2 * Runtime.getRuntime().availableProcessors());
+
+        String[] symbols = new String[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = UpdateBenchmark.symbolFor('S', i);
+        }
+
+        StockDataManager locked = new StockDataManager();
+        ConcurrentStockDataManager concurrent = new ConcurrentStockDataManager();
+        for (String symbol : symbols) {
+            locked.addStock(symbol, 100.0, 1000, 1000000);
+            concurrent.addStock(symbol, 100.0, 1000, 1000000);
+        }
+
+        Target lockedTarget = new Target() {
+            @Override
+            public Stock search(String symbol) {
+                synchronized (locked) {
+                    return locked.searchStock(symbol);
+                }
+            }
+
+            @Override
+            public void update(String symbol, double price) {
+                synchronized (locked) {
+                    locked.updateStock(symbol, symbol, price, 1000, 1000000);
+                }
+            }
+        };
+        Target concurrentTarget = new Target() {
+            @Override
+            public Stock search(String symbol) {
+                return concurrent.searchStock(symbol);
+            }
+
+            @Override
+            public void update(String symbol, double price) {
+                concurrent.updateStock(symbol, symbol, price, 1000, 1000000);
+            }
+        };
+
+        // Warm up both paths before measuring
+        run(lockedTarget, symbols, 2, 1);
+        run(concurrentTarget, symbols, 2, 1);
+
+        System.out.printf("%-8s %-12s %16s %16s%n", "threads", "mode", "reads/s", "writes/s");
+        for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+            long[] lockedResult = run(lockedTarget, symbols, threads, seconds);
+            long[] concurrentResult = run(concurrentTarget, symbols, threads, seconds);
+            System.out.printf("%-8d %-12s %16d %16d%n", threads, "single-lock", lockedResult[0] / seconds, lockedResult[1] / seconds);
+            System.out.printf("%-8d %-12s %16d %16d%n", threads, "concurrent", concurrentResult[0] / seconds, concurrentResult[1] / seconds);
+            if (threads == maxThreads) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs readers and writers against the target for the given time.
+     *
+     * @return the number of reads and writes that completed
+     */
+    private static long[] run(Target target, String[] symbols, int threads, int seconds) throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            boolean writer = t % 2 == 1;
+            boolean mixed = threads == 1;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long readCount = 0;
+                long writeCount = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    String symbol = symbols[random.nextInt(symbols.length)];
+                    if (writer || (mixed && readCount > writeCount)) {
+                        target.update(symbol, 10 + random.nextDouble() * 990);
+                        writeCount++;
+                    } else {
+                        target.search(symbol);
+                        readCount++;
+                    }
+                }
+                reads.add(readCount);
+                writes.add(writeCount);
+            });
+            workers[t].start();
+        }
+
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new long[] {reads.sum(), writes.sum()};
+    }
+}
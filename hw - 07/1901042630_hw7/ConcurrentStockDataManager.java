@@ -0,0 +1,379 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe {@link StockDataManager} for multi-threaded market-data feeds.
+ * <p>
+ * The symbol index and the price, volume and market capitalization indexes are concurrent
+ * skip lists, so readers never take a lock. Writers lock a stripe chosen by the symbol
+ * hash, which lets writers on different symbols run in parallel while two writers on the
+ * same symbol are serialized.
+ * <p>
+ * Stocks are never changed after they have been published: every update replaces the
+ * stored {@link Stock} with a fresh copy. A reader therefore always sees a consistent set
+ * of values for one stock. Callers must not modify the stocks returned by this class.
+ * <p>
+ * Range and top-k queries on the secondary indexes are weakly consistent: while a stock is
+ * being updated it may briefly be missing from an index. {@link #rank(String)} and
+ * {@link #select(int)} are O(n) here because skip lists do not track subtree sizes.
+ * <p>
+ * A skip list has no tree shape, so the pre-order and post-order traversals print the
+ * stocks in symbol order, like {@link #inOrderTraversal()}, and the pre-order and
+ * post-order iterators are the in-order {@link #iterator()}. The skip lists replace the
+ * storage of the superclass, which is therefore never created.
+ * <p>
+ * Listeners are called while the stripe lock of the changed symbol is held, so the
+ * notifications for one symbol arrive in the order the changes were made.
+ */
+public class ConcurrentStockDataManager extends StockDataManager {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ConcurrentSkipListMap<String, Stock> stocks;
+    private final ConcurrentSkipListSet<Stock> priceIndex;
+    private final ConcurrentSkipListSet<Stock> volumeIndex;
+    private final ConcurrentSkipListSet<Stock> marketCapIndex;
+    private final Object[] locks;
+
+    /**
+     * Constructs a new ConcurrentStockDataManager with the default number of lock stripes.
+     */
+    public ConcurrentStockDataManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs a new ConcurrentStockDataManager.
+     *
+     * @param stripes the number of writer lock stripes, rounded up to a power of two
+     */
+    public ConcurrentStockDataManager(int stripes) {
+        super(false);
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new Object[Math.max(1, size)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.stocks = new ConcurrentSkipListMap<>();
+        this.priceIndex = new ConcurrentSkipListSet<>(StockIndex.entryOrder(Comparator.comparingDouble(Stock::getPrice)));
+        this.volumeIndex = new ConcurrentSkipListSet<>(StockIndex.entryOrder(Comparator.comparingLong(Stock::getVolume)));
+        this.marketCapIndex = new ConcurrentSkipListSet<>(StockIndex.entryOrder(Comparator.comparingLong(Stock::getMarketCap)));
+    }
+
+    @Override
+    public void addStock(String symbol, double price, long volume, long marketCap) {
+        long start = startTiming();
+        try {
+            Stock stock = new Stock(symbol, price, volume, marketCap);
+            synchronized (lockFor(symbol)) {
+                Stock previous = stocks.put(symbol, stock);
+                if (previous != null) {
+                    unindex(previous);
+                    invalidateCached(symbol);
+                }
+                index(stock);
+                fireAdded(stock);
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.ADD, start);
+        }
+    }
+
+    @Override
+    public void removeStock(String symbol) {
+        long start = startTiming();
+        try {
+            synchronized (lockFor(symbol)) {
+                Stock removed = stocks.remove(symbol);
+                if (removed != null) {
+                    unindex(removed);
+                    invalidateCached(symbol);
+                    fireRemoved(removed);
+                }
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * Searches for a stock without taking any lock.
+     *
+     * @param symbol the stock symbol to search for
+     * @return the stock if found, otherwise null
+     */
+    @Override
+    protected Stock lookup(String symbol) {
+        return stocks.get(symbol);
+    }
+
+    @Override
+    public boolean updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+        long start = startTiming();
+        try {
+            if (newSymbol == null) {
+                return false;
+            }
+            Stock replacement = new Stock(newSymbol, newPrice, newVolume, newMarketCap);
+
+            if (symbol.equals(newSymbol)) {
+                synchronized (lockFor(symbol)) {
+                    Stock current = stocks.get(symbol);
+                    if (current == null) {
+                        return false;
+                    }
+                    stocks.put(symbol, replacement);
+                    invalidateCached(symbol);
+                    unindex(current);
+                    index(replacement);
+                    fireUpdated(current, replacement);
+                    return true;
+                }
+            }
+
+            // Lock both stripes in a fixed order so two opposite re-keys cannot deadlock
+            int first = stripe(symbol);
+            int second = stripe(newSymbol);
+            synchronized (locks[Math.min(first, second)]) {
+                synchronized (locks[Math.max(first, second)]) {
+                    Stock current = stocks.get(symbol);
+                    if (current == null || stocks.putIfAbsent(newSymbol, replacement) != null) {
+                        return false;
+                    }
+                    stocks.remove(symbol);
+                    invalidateCached(symbol);
+                    unindex(current);
+                    index(replacement);
+                    fireUpdated(current, replacement);
+                    return true;
+                }
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.UPDATE, start);
+        }
+    }
+
+    @Override
+    public int size() {
+        return stocks.size();
+    }
+
+    /**
+     * Returns 0: a skip list has no tree height.
+     *
+     * @return 0
+     */
+    @Override
+    public int height() {
+        return 0;
+    }
+
+    /**
+     * Returns 0: a skip list never rotates.
+     *
+     * @return 0
+     */
+    @Override
+    public long rotations() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of stocks whose symbol sorts before the given symbol.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param symbol the stock symbol
+     * @return the rank of the symbol
+     */
+    @Override
+    public int rank(String symbol) {
+        return stocks.headMap(symbol).size();
+    }
+
+    /**
+     * Returns the stock at the given zero-based position in symbol order.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param index the position of the stock
+     * @return the stock at that position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public Stock select(int index) {
+        if (index >= 0) {
+            int position = 0;
+            for (Stock stock : stocks.values()) {
+                if (position++ == index) {
+                    return stock;
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    @Override
+    public List<Stock> range(String fromSymbol, String toSymbol) {
+        if (fromSymbol.compareTo(toSymbol) > 0) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(stocks.subMap(fromSymbol, true, toSymbol, true).values());
+    }
+
+    @Override
+    public void forEachStock(Consumer<? super Stock> action) {
+        stocks.values().forEach(action);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the stocks in symbol order: it never
+     * throws {@link java.util.ConcurrentModificationException} and may or may not reflect
+     * changes made while it is in use.
+     */
+    @Override
+    public Iterator<Stock> iterator() {
+        return Collections.unmodifiableCollection(stocks.values()).iterator();
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the stocks from the given symbol on.
+     */
+    @Override
+    public Iterator<Stock> iterator(String fromSymbol) {
+        return Collections.unmodifiableCollection(stocks.tailMap(fromSymbol).values()).iterator();
+    }
+
+    /**
+     * Returns the weakly consistent iterator in symbol order, the order printed by
+     * {@link #preOrderTraversal()}: a skip list has no tree shape to walk in pre-order.
+     */
+    @Override
+    public Iterator<Stock> preOrderIterator() {
+        return iterator();
+    }
+
+    /**
+     * Returns the weakly consistent iterator in symbol order, the order printed by
+     * {@link #postOrderTraversal()}: a skip list has no tree shape to walk in post-order.
+     */
+    @Override
+    public Iterator<Stock> postOrderIterator() {
+        return iterator();
+    }
+
+    /**
+     * Returns the weakly consistent spliterator of the skip list, which may be used while
+     * other threads change the stocks. Its size is only an estimate.
+     */
+    @Override
+    public Spliterator<Stock> spliterator() {
+        return stocks.values().spliterator();
+    }
+
+    /**
+     * Prints the stocks in symbol order.
+     */
+    @Override
+    public void inOrderTraversal() {
+        for (Map.Entry<String, Stock> entry : stocks.entrySet()) {
+            System.out.println(entry.getValue());
+        }
+    }
+
+    /**
+     * Prints the stocks in symbol order: a skip list has no tree shape to walk in
+     * pre-order.
+     */
+    @Override
+    public void preOrderTraversal() {
+        inOrderTraversal();
+    }
+
+    /**
+     * Prints the stocks in symbol order: a skip list has no tree shape to walk in
+     * post-order.
+     */
+    @Override
+    public void postOrderTraversal() {
+        inOrderTraversal();
+    }
+
+    @Override
+    public List<Stock> findByPriceRange(double minPrice, double maxPrice) {
+        return range(priceIndex, StockIndex.lowerProbe(minPrice, 0, 0), StockIndex.upperProbe(maxPrice, 0, 0));
+    }
+
+    @Override
+    public List<Stock> findByVolumeRange(long minVolume, long maxVolume) {
+        return range(volumeIndex, StockIndex.lowerProbe(0, minVolume, 0), StockIndex.upperProbe(0, maxVolume, 0));
+    }
+
+    @Override
+    public List<Stock> findByMarketCapRange(long minMarketCap, long maxMarketCap) {
+        return range(marketCapIndex, StockIndex.lowerProbe(0, 0, minMarketCap), StockIndex.upperProbe(0, 0, maxMarketCap));
+    }
+
+    @Override
+    public List<Stock> topByPrice(int count) {
+        return top(priceIndex, count);
+    }
+
+    @Override
+    public List<Stock> topByVolume(int count) {
+        return top(volumeIndex, count);
+    }
+
+    @Override
+    public List<Stock> topByMarketCap(int count) {
+        return top(marketCapIndex, count);
+    }
+
+    private List<Stock> range(NavigableSet<Stock> index, Stock lower, Stock upper) {
+        if (index.comparator().compare(lower, upper) > 0) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(index.subSet(lower, true, upper, true));
+    }
+
+    private List<Stock> top(NavigableSet<Stock> index, int count) {
+        List<Stock> result = new ArrayList<>(Math.max(0, count));
+        Iterator<Stock> iterator = index.descendingIterator();
+        while (result.size() < count && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    private void index(Stock stock) {
+        priceIndex.add(stock);
+        volumeIndex.add(stock);
+        marketCapIndex.add(stock);
+    }
+
+    private void unindex(Stock stock) {
+        priceIndex.remove(stock);
+        volumeIndex.remove(stock);
+        marketCapIndex.remove(stock);
+    }
+
+    private Object lockFor(String symbol) {
+        return locks[stripe(symbol)];
+    }
+
+    private int stripe(String symbol) {
+        int hash = symbol.hashCode();
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Compares the heap retained by {@link StockDataManager} and
+ * {@link ColumnarStockDataManager} for the same stocks, together with the time to load them.
+ * <p>
+ * The stocks are generated lazily in symbol order, so the input itself takes no memory.
+ * Each manager is measured as the difference in used heap after full collections, which is
+ * only approximate; run with a heap large enough for the object-based manager (about 3 GB
+ * for 10 million symbols).
+ * <p>
+ * Usage: {@code java FootprintBenchmark [symbolCount] [object|columnar|both]}
+ * (defaults: 10,000,000 symbols, both managers).
+ */
+public class FootprintBenchmark {
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        String mode = args.length > 1 ? args[1] : "both";
+
+        System.out.printf("%-12s %12s %12s %10s%n", "manager", "heap (MiB)", "bytes/stock", "load (ms)");
+        if (!mode.equals("columnar")) {
+            measure("object", symbolCount, false);
+        }
+        if (!mode.equals("object")) {
+            measure("columnar", symbolCount, true);
+        }
+    }
+
+    private static void measure(String label, int symbolCount, boolean columnar) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        StockDataManager manager = columnar
+                ? ColumnarStockDataManager.bulkLoad(stocks(symbolCount))
+                : StockDataManager.bulkLoad(stocks(symbolCount));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long retained = usedHeap() - before;
+
+        // Touch the manager after measuring so it cannot be collected early
+        if (manager.size() != symbolCount) {
+            throw new IllegalStateException("Loaded " + manager.size() + " stocks instead of " + symbolCount);
+        }
+        System.out.printf("%-12s %12d %12d %10d%n", label, retained >> 20, retained / symbolCount, millis);
+    }
+
+    /**
+     * Generates the stocks in symbol order without holding them.
+     */
+    private static Iterable<Stock> stocks(int symbolCount) {
+        return () -> new Iterator<Stock>() {
+            private final Random random = new Random(42);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < symbolCount;
+            }
+
+            @Override
+            public Stock next() {
+                return new Stock(UpdateBenchmark.symbolFor('S', next++), 10 + random.nextDouble() * 990,
+                        1000 + random.nextInt(9000), 1000000 + random.nextInt(100000));
+            }
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -4,11 +4,17 @@ import java.util.List;
 
 /**
  * A simple graphical user interface (GUI) to visualize the performance graphs.
+ * <p>
+ * The window shows a {@link PerformanceChart}. A chart that receives points through
+ * {@link PerformanceChart#append} while the window is open is repainted live, one small
+ * area per new point. On hosts without a display, save the chart with
+ * {@link PerformanceChart#writePng} or {@link PerformanceChart#writeSvg} instead; creating
+ * a window there throws {@link HeadlessException}.
  */
 public class GUIVisualization extends JFrame {
-    private List<Integer> dataPointsX;
-    private List<Long> dataPointsY;
-    private String title;
+    private static final long serialVersionUID = 1L;
+
+    private final transient PerformanceChart chart;
 
     /**
      * Constructs a new GUIVisualization.
@@ -18,16 +24,42 @@ public class GUIVisualization extends JFrame {
      * @param dataPointsY the y-axis data points
      */
     public GUIVisualization(String title, List<Integer> dataPointsX, List<Long> dataPointsY) {
-        this.title = title;
-        this.dataPointsX = dataPointsX;
-        this.dataPointsY = dataPointsY;
-        initializeUI();
+        this(new PerformanceChart(title, dataPointsX, dataPointsY), title);
+    }
+
+    /**
+     * Constructs a new GUIVisualization showing a chart, which may still receive points.
+     *
+     * @param chart the chart to show
+     * @param title the title of the window
+     */
+    public GUIVisualization(PerformanceChart chart, String title) {
+        this.chart = chart;
+        ChartPanel panel = new ChartPanel(chart);
+        setContentPane(panel);
+        chart.setRepaintListener(area -> {
+            if (area == null) {
+                panel.repaint();
+            } else {
+                panel.repaint(area);
+            }
+        });
+        initializeUI(title);
+    }
+
+    /**
+     * Returns the chart shown in this window.
+     *
+     * @return the chart
+     */
+    public PerformanceChart getChart() {
+        return chart;
     }
 
     /**
      * Initializes the user interface.
      */
-    private void initializeUI() {
+    private void initializeUI(String title) {
         setTitle("Performance Graph Visualization: " + title);
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -35,102 +67,25 @@ public class GUIVisualization extends JFrame {
         setVisible(true);
     }
 
-    @Override
-    public void paint(Graphics g) {
-        super.paint(g);
-        drawGraph((Graphics2D) g);
-    }
-
     /**
-     * Draws the graph on the given Graphics2D object.
-     *
-     * @param g2 the Graphics2D object
+     * Paints the chart over the whole panel. Swing clips the painting to the area being
+     * repainted.
      */
-    private void drawGraph(Graphics2D g2) {
-        int padding = 50;
-        int labelPadding = 50;
-        int pointWidth = 4;
-        int numberYDivisions = 10;
-        int numberXDivisions = Math.max(20, dataPointsX.size() - 1); // Ensure at least 20 divisions
-        int width = getWidth() - (2 * padding) - labelPadding;
-        int height = getHeight() - (2 * padding) - labelPadding;
-        double xScale = ((double) width) / (numberXDivisions);
-        double yScale = ((double) height) / (getMaxYValue() - getMinYValue());
-
-        // Draw background
-        g2.setColor(Color.WHITE);
-        g2.fillRect(padding + labelPadding, padding, width, height);
-        g2.setColor(Color.BLACK);
+    private static final class ChartPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
 
-        // Draw axes
-        g2.drawLine(padding + labelPadding, padding, padding + labelPadding, height + padding);
-        g2.drawLine(padding + labelPadding, height + padding, width + padding + labelPadding, height + padding);
+        private final transient PerformanceChart chart;
 
-        // Draw labels
-        g2.drawString("Size", width / 2 + padding, height + padding + 40);
-        g2.drawString("Time (ns)", padding - 40, height / 2 + padding);
-
-        // Draw y-axis grid lines and labels
-        for (int i = 0; i < numberYDivisions + 1; i++) {
-            int x0 = padding + labelPadding;
-            int x1 = pointWidth + padding + labelPadding;
-            int y0 = height + padding - (i * height / numberYDivisions);
-            int y1 = y0;
-            if (dataPointsY.size() > 0) {
-                g2.setColor(Color.BLACK);
-                String yLabel = ((int) (getMinYValue() + (getMaxYValue() - getMinYValue()) * ((i * 1.0) / numberYDivisions))) + "";
-                FontMetrics metrics = g2.getFontMetrics();
-                int labelWidth = metrics.stringWidth(yLabel);
-                g2.drawString(yLabel, x0 - labelWidth - 5, y0 + (metrics.getHeight() / 2) - 3);
-            }
-            g2.drawLine(x0, y0, x1, y1);
-            g2.setColor(Color.LIGHT_GRAY);
-            g2.drawLine(x0 + pointWidth, y0, width + padding + labelPadding, y1);
-        }
-
-        // Draw x-axis grid lines and labels
-        for (int i = 0; i < numberXDivisions + 1; i++) {
-            int x0 = i * (width) / (numberXDivisions) + padding + labelPadding;
-            int x1 = x0;
-            int y0 = height + padding;
-            int y1 = y0 - pointWidth;
-            if (dataPointsX.size() > 1) {
-                g2.setColor(Color.BLACK);
-                String xLabel = String.format("%d", dataPointsX.get(0) + i * (dataPointsX.get(dataPointsX.size() - 1) - dataPointsX.get(0)) / numberXDivisions);
-                FontMetrics metrics = g2.getFontMetrics();
-                int labelWidth = metrics.stringWidth(xLabel);
-                g2.drawString(xLabel, x0 - labelWidth / 2, y0 + metrics.getHeight() + 3);
-                g2.drawLine(x0, y0, x1, y1);
-                g2.setColor(Color.LIGHT_GRAY);
-                g2.drawLine(x0, y0 - pointWidth, x1, padding);
-            }
+        private ChartPanel(PerformanceChart chart) {
+            this.chart = chart;
         }
 
-        // Draw data points
-        g2.setColor(Color.RED);
-        for (int i = 0; i < dataPointsX.size(); i++) {
-            int x = (int) ((dataPointsX.get(i) - dataPointsX.get(0)) * 1.0 / (dataPointsX.get(dataPointsX.size() - 1) - dataPointsX.get(0)) * width + padding + labelPadding);
-            int y = (int) ((getMaxYValue() - dataPointsY.get(i)) * 1.0 / (getMaxYValue() - getMinYValue()) * height + padding);
-            g2.fillOval(x - pointWidth / 2, y - pointWidth / 2, pointWidth, pointWidth);
-            g2.drawString("(" + dataPointsX.get(i) + ", " + dataPointsY.get(i) + ")", x, y - 5);
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            chart.draw(g2, getWidth(), getHeight());
         }
     }
-
-    /**
-     * Gets the maximum y-axis value.
-     *
-     * @return the maximum y-axis value
-     */
-    private long getMaxYValue() {
-        return dataPointsY.stream().max(Long::compare).orElse(1L);
-    }
-
-    /**
-     * Gets the minimum y-axis value.
-     *
-     * @return the minimum y-axis value
-     */
-    private long getMinYValue() {
-        return dataPointsY.stream().min(Long::compare).orElse(0L);
-    }
 }
@@ -0,0 +1,598 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Base class of the {@link StockDataManager}s that store every stock as a row identified by
+ * an int handle instead of as a {@link Stock} object.
+ * <p>
+ * This class implements the manager operations on four {@link IntAVLTree}s over the
+ * handles: one ordered by symbol and one per secondary index. Subclasses decide where the
+ * rows and the tree links live by implementing the row accessors and
+ * {@link #createTree(int, IntAVLTree.HandleOrder)}, then call {@link #initTrees()} at the
+ * end of their constructor. The trees replace the storage of the superclass, which is
+ * therefore never created.
+ * <p>
+ * Symbols are compared as UTF-8 bytes, which matches {@link String#compareTo} for all
+ * symbols that do not contain surrogate pairs. The {@link Stock} objects returned by these
+ * managers are detached copies built on each call: changing them does not change the
+ * manager. These managers are not thread-safe.
+ */
+public abstract class HandleStockDataManager extends StockDataManager {
+    /** Index of the symbol tree for {@link #createTree}. */
+    protected static final int SYMBOL_TREE = 0;
+    /** Index of the price tree for {@link #createTree}. */
+    protected static final int PRICE_TREE = 1;
+    /** Index of the volume tree for {@link #createTree}. */
+    protected static final int VOLUME_TREE = 2;
+    /** Index of the market capitalization tree for {@link #createTree}. */
+    protected static final int MARKET_CAP_TREE = 3;
+
+    private IntAVLTree symbols;
+    private IntAVLTree byPrice;
+    private IntAVLTree byVolume;
+    private IntAVLTree byMarketCap;
+
+    /**
+     * Constructs the manager without the storage of the superclass.
+     */
+    protected HandleStockDataManager() {
+        super(false);
+    }
+
+    /**
+     * Creates the four trees. Must be called once by the subclass constructor, after its
+     * storage is ready.
+     */
+    protected final void initTrees() {
+        symbols = createTree(SYMBOL_TREE, this::compareSymbols);
+        byPrice = createTree(PRICE_TREE, (a, b) -> {
+            int cmp = Double.compare(price(a), price(b));
+            return cmp != 0 ? cmp : compareSymbols(a, b);
+        });
+        byVolume = createTree(VOLUME_TREE, (a, b) -> {
+            int cmp = Long.compare(volume(a), volume(b));
+            return cmp != 0 ? cmp : compareSymbols(a, b);
+        });
+        byMarketCap = createTree(MARKET_CAP_TREE, (a, b) -> {
+            int cmp = Long.compare(marketCap(a), marketCap(b));
+            return cmp != 0 ? cmp : compareSymbols(a, b);
+        });
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Storage, implemented by subclasses
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Creates one of the four trees.
+     *
+     * @param tree {@link #SYMBOL_TREE}, {@link #PRICE_TREE}, {@link #VOLUME_TREE} or
+     *        {@link #MARKET_CAP_TREE}
+     * @param order the order of the tree
+     * @return the tree
+     */
+    protected abstract IntAVLTree createTree(int tree, IntAVLTree.HandleOrder order);
+
+    /**
+     * Takes an unused row and stores the symbol in it. The values are set by the caller.
+     * On an empty manager, successive calls must return 0, 1, 2 and so on.
+     *
+     * @param key the UTF-8 encoded symbol
+     * @return the handle of the row
+     */
+    protected abstract int allocate(byte[] key);
+
+    /**
+     * Frees a row that is no longer in any tree.
+     *
+     * @param handle the handle of the row
+     */
+    protected abstract void release(int handle);
+
+    /**
+     * Replaces the symbol of a row that is currently not in any tree.
+     *
+     * @param handle the handle of the row
+     * @param key the new UTF-8 encoded symbol
+     */
+    protected abstract void setSymbol(int handle, byte[] key);
+
+    /**
+     * Decodes the symbol of a row.
+     *
+     * @param handle the handle of the row
+     * @return the symbol
+     */
+    protected abstract String symbol(int handle);
+
+    /**
+     * Compares the symbols of two rows as unsigned bytes.
+     *
+     * @param a the first handle
+     * @param b the second handle
+     * @return the comparison result
+     */
+    protected abstract int compareSymbols(int a, int b);
+
+    /**
+     * Compares an encoded symbol with the symbol of a row as unsigned bytes.
+     *
+     * @param key the UTF-8 encoded symbol
+     * @param handle the handle of the row
+     * @return the comparison result
+     */
+    protected abstract int compareKey(byte[] key, int handle);
+
+    /**
+     * Returns the price of a row.
+     *
+     * @param handle the handle of the row
+     * @return the price
+     */
+    protected abstract double price(int handle);
+
+    /**
+     * Returns the volume of a row.
+     *
+     * @param handle the handle of the row
+     * @return the volume
+     */
+    protected abstract long volume(int handle);
+
+    /**
+     * Returns the market capitalization of a row.
+     *
+     * @param handle the handle of the row
+     * @return the market capitalization
+     */
+    protected abstract long marketCap(int handle);
+
+    /**
+     * Sets the price of a row.
+     *
+     * @param handle the handle of the row
+     * @param price the new price
+     */
+    protected abstract void setPrice(int handle, double price);
+
+    /**
+     * Sets the volume of a row.
+     *
+     * @param handle the handle of the row
+     * @param volume the new volume
+     */
+    protected abstract void setVolume(int handle, long volume);
+
+    /**
+     * Sets the market capitalization of a row.
+     *
+     * @param handle the handle of the row
+     * @param marketCap the new market capitalization
+     */
+    protected abstract void setMarketCap(int handle, long marketCap);
+
+    /**
+     * Called after every change, once the trees are consistent again. Does nothing by
+     * default.
+     */
+    protected void changed() {
+    }
+
+    /**
+     * Called by {@link #load} once all rows are stored and before the trees are built.
+     * Does nothing by default.
+     */
+    protected void trimToSize() {
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Bulk loading
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Fills this empty manager with the given stocks, with the same rules as
+     * {@link StockDataManager#bulkLoad(Iterable)}: input sorted by symbol is used as is,
+     * otherwise it is sorted, and the last occurrence of a repeated symbol wins. All four
+     * trees are built directly in balanced shape.
+     *
+     * @param input the stocks to load
+     */
+    protected void load(Iterable<Stock> input) {
+        boolean sorted = true;
+        int count = 0;
+        for (Stock stock : input) {
+            int handle = allocate(encode(stock.getSymbol()));
+            setPrice(handle, stock.getPrice());
+            setVolume(handle, stock.getVolume());
+            setMarketCap(handle, stock.getMarketCap());
+            if (count > 0 && compareSymbols(handle - 1, handle) >= 0) {
+                sorted = false;
+            }
+            count++;
+        }
+
+        // An empty manager hands out handles 0, 1, 2, ... in input order
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        if (!sorted) {
+            // The sort is stable, so the last handle of each run of equal symbols is the newest
+            IntAVLTree.sort(order, count, this::compareSymbols);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i + 1 == count || compareSymbols(order[i], order[i + 1]) != 0) {
+                    order[unique++] = order[i];
+                } else {
+                    release(order[i]);
+                }
+            }
+            count = unique;
+        }
+        trimToSize();
+
+        symbols.loadSorted(order, count);
+        // Sorting the symbol-ordered handles stably by one field yields (field, symbol) order
+        int[] byField = Arrays.copyOf(order, count);
+        IntAVLTree.sort(byField, count, (a, b) -> Double.compare(price(a), price(b)));
+        byPrice.loadSorted(byField, count);
+        System.arraycopy(order, 0, byField, 0, count);
+        IntAVLTree.sort(byField, count, (a, b) -> Long.compare(volume(a), volume(b)));
+        byVolume.loadSorted(byField, count);
+        System.arraycopy(order, 0, byField, 0, count);
+        IntAVLTree.sort(byField, count, (a, b) -> Long.compare(marketCap(a), marketCap(b)));
+        byMarketCap.loadSorted(byField, count);
+        changed();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Manager operations
+    // ---------------------------------------------------------------------------------
+
+    @Override
+    public void addStock(String symbol, double price, long volume, long marketCap) {
+        long start = startTiming();
+        try {
+            byte[] key = encode(symbol);
+            int handle = symbols.find(symbolProbe(key));
+            if (handle != IntAVLTree.NIL) {
+                updateValues(handle, price, volume, marketCap);
+                invalidateCached(symbol);
+            } else {
+                handle = allocate(key);
+                setPrice(handle, price);
+                setVolume(handle, volume);
+                setMarketCap(handle, marketCap);
+                symbols.insert(handle);
+                index(handle);
+            }
+            changed();
+            if (hasListeners()) {
+                fireAdded(view(handle));
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.ADD, start);
+        }
+    }
+
+    @Override
+    public void removeStock(String symbol) {
+        long start = startTiming();
+        try {
+            int handle = symbols.find(symbolProbe(encode(symbol)));
+            if (handle == IntAVLTree.NIL) {
+                return;
+            }
+            Stock removed = hasListeners() ? view(handle) : null;
+            symbols.delete(handle);
+            unindex(handle);
+            release(handle);
+            invalidateCached(symbol);
+            changed();
+            if (removed != null) {
+                fireRemoved(removed);
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    /**
+     * Searches for a stock in the symbol tree.
+     *
+     * @param symbol the stock symbol to search for
+     * @return a copy of the stock if found, otherwise null
+     */
+    @Override
+    protected Stock lookup(String symbol) {
+        int handle = symbols.find(symbolProbe(encode(symbol)));
+        return handle == IntAVLTree.NIL ? null : view(handle);
+    }
+
+    @Override
+    public boolean updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+        long start = startTiming();
+        try {
+            if (newSymbol == null) {
+                return false;
+            }
+            int handle = symbols.find(symbolProbe(encode(symbol)));
+            if (handle == IntAVLTree.NIL) {
+                return false;
+            }
+            Stock previous = hasListeners() ? view(handle) : null;
+
+            if (symbol.equals(newSymbol)) {
+                updateValues(handle, newPrice, newVolume, newMarketCap);
+            } else {
+                byte[] newKey = encode(newSymbol);
+                if (symbols.find(symbolProbe(newKey)) != IntAVLTree.NIL) {
+                    return false;
+                }
+                // The symbol is the tie-breaker of every index, so the row leaves all trees
+                symbols.delete(handle);
+                unindex(handle);
+                setSymbol(handle, newKey);
+                setPrice(handle, newPrice);
+                setVolume(handle, newVolume);
+                setMarketCap(handle, newMarketCap);
+                symbols.insert(handle);
+                index(handle);
+            }
+            // The cached copy holds the old values
+            invalidateCached(symbol);
+            changed();
+            if (previous != null) {
+                fireUpdated(previous, view(handle));
+            }
+            return true;
+        } finally {
+            stopTiming(StockMetrics.Operation.UPDATE, start);
+        }
+    }
+
+    /**
+     * Changes the values of a row, repositioning it only in the indexes whose field changed.
+     */
+    private void updateValues(int handle, double newPrice, long newVolume, long newMarketCap) {
+        if (Double.compare(price(handle), newPrice) != 0) {
+            byPrice.delete(handle);
+            setPrice(handle, newPrice);
+            byPrice.insert(handle);
+        }
+        if (volume(handle) != newVolume) {
+            byVolume.delete(handle);
+            setVolume(handle, newVolume);
+            byVolume.insert(handle);
+        }
+        if (marketCap(handle) != newMarketCap) {
+            byMarketCap.delete(handle);
+            setMarketCap(handle, newMarketCap);
+            byMarketCap.insert(handle);
+        }
+    }
+
+    @Override
+    public int size() {
+        return symbols.size();
+    }
+
+    @Override
+    public int height() {
+        return symbols.height();
+    }
+
+    @Override
+    public long rotations() {
+        return symbols.rotations();
+    }
+
+    @Override
+    public int rank(String symbol) {
+        return symbols.rank(symbolProbe(encode(symbol)));
+    }
+
+    @Override
+    public Stock select(int index) {
+        return view(symbols.select(index));
+    }
+
+    @Override
+    public List<Stock> range(String fromSymbol, String toSymbol) {
+        List<Stock> result = new ArrayList<>();
+        symbols.range(symbolProbe(encode(fromSymbol)), symbolProbe(encode(toSymbol)), handle -> result.add(view(handle)));
+        return result;
+    }
+
+    @Override
+    public void forEachStock(Consumer<? super Stock> action) {
+        symbols.inOrder(handle -> action.accept(view(handle)));
+    }
+
+    @Override
+    public void inOrderTraversal() {
+        symbols.inOrder(handle -> System.out.println(view(handle)));
+    }
+
+    @Override
+    public void preOrderTraversal() {
+        symbols.preOrder(handle -> System.out.println(view(handle)));
+    }
+
+    @Override
+    public void postOrderTraversal() {
+        symbols.postOrder(handle -> System.out.println(view(handle)));
+    }
+
+    @Override
+    public Iterator<Stock> iterator() {
+        return new ViewIterator(symbols.inOrderIterator());
+    }
+
+    @Override
+    public Iterator<Stock> iterator(String fromSymbol) {
+        return new ViewIterator(symbols.inOrderIterator(symbolProbe(encode(fromSymbol))));
+    }
+
+    @Override
+    public Iterator<Stock> preOrderIterator() {
+        return new ViewIterator(symbols.preOrderIterator());
+    }
+
+    @Override
+    public Iterator<Stock> postOrderIterator() {
+        return new ViewIterator(symbols.postOrderIterator());
+    }
+
+    @Override
+    public Spliterator<Stock> spliterator() {
+        return new ViewSpliterator(symbols.spliterator());
+    }
+
+    @Override
+    public List<Stock> findByPriceRange(double minPrice, double maxPrice) {
+        List<Stock> result = new ArrayList<>();
+        byPrice.range(handle -> {
+            int cmp = Double.compare(minPrice, price(handle));
+            return cmp != 0 ? cmp : -1;
+        }, handle -> {
+            int cmp = Double.compare(maxPrice, price(handle));
+            return cmp != 0 ? cmp : 1;
+        }, handle -> result.add(view(handle)));
+        return result;
+    }
+
+    @Override
+    public List<Stock> findByVolumeRange(long minVolume, long maxVolume) {
+        List<Stock> result = new ArrayList<>();
+        byVolume.range(handle -> {
+            int cmp = Long.compare(minVolume, volume(handle));
+            return cmp != 0 ? cmp : -1;
+        }, handle -> {
+            int cmp = Long.compare(maxVolume, volume(handle));
+            return cmp != 0 ? cmp : 1;
+        }, handle -> result.add(view(handle)));
+        return result;
+    }
+
+    @Override
+    public List<Stock> findByMarketCapRange(long minMarketCap, long maxMarketCap) {
+        List<Stock> result = new ArrayList<>();
+        byMarketCap.range(handle -> {
+            int cmp = Long.compare(minMarketCap, marketCap(handle));
+            return cmp != 0 ? cmp : -1;
+        }, handle -> {
+            int cmp = Long.compare(maxMarketCap, marketCap(handle));
+            return cmp != 0 ? cmp : 1;
+        }, handle -> result.add(view(handle)));
+        return result;
+    }
+
+    @Override
+    public List<Stock> topByPrice(int count) {
+        return largest(byPrice, count);
+    }
+
+    @Override
+    public List<Stock> topByVolume(int count) {
+        return largest(byVolume, count);
+    }
+
+    @Override
+    public List<Stock> topByMarketCap(int count) {
+        return largest(byMarketCap, count);
+    }
+
+    private List<Stock> largest(IntAVLTree index, int count) {
+        List<Stock> result = new ArrayList<>(Math.max(0, count));
+        index.largest(count, handle -> result.add(view(handle)));
+        return result;
+    }
+
+    private void index(int handle) {
+        byPrice.insert(handle);
+        byVolume.insert(handle);
+        byMarketCap.insert(handle);
+    }
+
+    private void unindex(int handle) {
+        byPrice.delete(handle);
+        byVolume.delete(handle);
+        byMarketCap.delete(handle);
+    }
+
+    /**
+     * Builds a detached Stock holding the values of a row.
+     */
+    private Stock view(int handle) {
+        return new Stock(symbol(handle), price(handle), volume(handle), marketCap(handle));
+    }
+
+    /**
+     * Turns the handles of a tree iterator into detached stocks.
+     */
+    private final class ViewIterator implements Iterator<Stock> {
+        private final PrimitiveIterator.OfInt handles;
+
+        private ViewIterator(PrimitiveIterator.OfInt handles) {
+            this.handles = handles;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return handles.hasNext();
+        }
+
+        @Override
+        public Stock next() {
+            return view(handles.nextInt());
+        }
+    }
+
+    /**
+     * Turns the handles of a tree spliterator into detached stocks, splitting where the
+     * tree spliterator splits. Rows are only read, so the parts can run in parallel.
+     */
+    private final class ViewSpliterator implements Spliterator<Stock> {
+        private final Spliterator.OfInt handles;
+
+        private ViewSpliterator(Spliterator.OfInt handles) {
+            this.handles = handles;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Stock> action) {
+            return handles.tryAdvance((int handle) -> action.accept(view(handle)));
+        }
+
+        @Override
+        public Spliterator<Stock> trySplit() {
+            Spliterator.OfInt prefix = handles.trySplit();
+            return prefix == null ? null : new ViewSpliterator(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return handles.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    private IntAVLTree.Probe symbolProbe(byte[] key) {
+        return handle -> compareKey(key, handle);
+    }
+
+    private static byte[] encode(String symbol) {
+        return symbol.getBytes(StandardCharsets.UTF_8);
+    }
+}
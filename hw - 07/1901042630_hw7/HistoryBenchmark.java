@@ -0,0 +1,81 @@
+import java.util.Random;
+
+/**
+ * Compares reading the window aggregates of a {@link TickHistory} after every tick with
+ * recomputing them by rescanning the ticks of the window, which is what analytics jobs did
+ * before the aggregates were maintained incrementally.
+ * <p>
+ * Usage: {@code java HistoryBenchmark [windowSize] [tickCount]}
+ * (defaults: a window of 1,000 ticks, 1,000,000 ticks).
+ */
+public class HistoryBenchmark {
+
+    public static void main(String[] args) {
+        int windowSize = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int tickCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        double[] prices = new double[tickCount];
+        long[] volumes = new long[tickCount];
+        Random random = new Random(42);
+        double price = 100;
+        for (int i = 0; i < tickCount; i++) {
+            price = Math.max(1, price * (1 + random.nextGaussian() * 0.001));
+            prices[i] = price;
+            volumes[i] = 1 + random.nextInt(1000);
+        }
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+
+            TickHistory history = new TickHistory(windowSize);
+            double checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < tickCount; i++) {
+                history.record(i, prices[i], volumes[i]);
+                checksum += history.vwap() + history.min() + history.max() + history.movingAverage();
+            }
+            report(timed, "incremental", start, tickCount, checksum);
+
+            history = new TickHistory(windowSize);
+            checksum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < tickCount; i++) {
+                history.record(i, prices[i], volumes[i]);
+                Rescan scan = new Rescan();
+                history.forEachTick(scan);
+                checksum += scan.notional / scan.volume + scan.min + scan.max + scan.priceSum / scan.count;
+            }
+            report(timed, "rescan", start, tickCount, checksum);
+        }
+    }
+
+    /**
+     * Recomputes the aggregates from the raw ticks.
+     */
+    private static final class Rescan implements TickHistory.TickVisitor {
+        private double notional;
+        private double volume;
+        private double priceSum;
+        private double min = Double.MAX_VALUE;
+        private double max = -Double.MAX_VALUE;
+        private int count;
+
+        @Override
+        public void visit(long timestamp, double price, long volume) {
+            notional += price * volume;
+            this.volume += volume;
+            priceSum += price;
+            min = Math.min(min, price);
+            max = Math.max(max, price);
+            count++;
+        }
+    }
+
+    private static void report(boolean timed, String label, long start, int tickCount, double checksum) {
+        long nanos = System.nanoTime() - start;
+        if (timed) {
+            System.out.printf("%-12s %8d ns/tick  (checksum %.3f)%n", label, nanos / tickCount, checksum);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A bounded read-through cache of the most recently searched stocks, placed in front of the
+ * symbol index of a {@link StockDataManager} by {@link StockDataManager#enableCache(int)}.
+ * <p>
+ * Lookup traffic is usually very skewed: a small set of symbols takes most of the
+ * {@code searchStock} calls, and without the cache each of them walks the whole height of
+ * the tree, comparing strings at every level. A hit here costs one hash probe.
+ * <p>
+ * The entries are split into segments by symbol hash. Each segment is a chained hash table
+ * over parallel arrays, so it does not allocate per entry. The hash of every key is stored
+ * next to it, so a probe only compares strings when the hashes match. A segment keeps its
+ * entries in least-recently-used order and evicts the oldest one when it is full.
+ * <p>
+ * A symbol is only cached on its second miss within a short window. Every segment keeps a
+ * doorkeeper: one int per bucket holding the hash of the last symbol that missed there.
+ * A symbol whose hash is not in its slot is recorded there and served from the index
+ * without being cached, so the long tail of symbols searched once neither evicts the hot
+ * ones nor pays for an insert, an eviction and a second lock on its miss.
+ * <p>
+ * The manager invalidates a symbol whenever the stock stored under it is replaced, removed
+ * or renamed. Every segment counts its invalidations, and a stock loaded from the index is
+ * only cached if its segment saw no invalidation during the load. A writer running
+ * concurrently with a miss therefore cannot leave a stale stock behind. Symbols that are
+ * not found are not cached.
+ * <p>
+ * The cache is thread-safe: every segment is guarded by its own lock.
+ */
+public class HotSymbolCache {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int NONE = -1;
+
+    private final Function<String, Stock> loader;
+    private final Segment[] segments;
+    private final int segmentBits;
+    private final int capacity;
+
+    /**
+     * Constructs an empty cache. Use {@link StockDataManager#enableCache(int)}.
+     *
+     * @param capacity the maximum number of cached stocks
+     * @param loader finds a stock in the index behind the cache, returning null if it is
+     *               missing
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    HotSymbolCache(int capacity, Function<String, Stock> loader) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+        this.loader = loader;
+        this.capacity = capacity;
+        this.segmentBits = Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread the remainder so the segment capacities add up to the total
+            segments[i] = new Segment(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns the stock stored under a symbol, loading it from the index on a miss.
+     *
+     * @param symbol the stock symbol
+     * @return the stock, or null if the index has no stock under the symbol
+     */
+    public Stock get(String symbol) {
+        int hash = spread(symbol.hashCode());
+        Segment segment = segmentFor(hash);
+        int version;
+        boolean admit;
+        synchronized (segment) {
+            int entry = segment.find(symbol, hash);
+            if (entry != NONE) {
+                segment.hits++;
+                segment.touch(entry);
+                return segment.values[entry];
+            }
+            segment.misses++;
+            int slot = segment.bucket(hash);
+            admit = segment.seen[slot] == hash;
+            segment.seen[slot] = hash;
+            version = segment.version;
+        }
+
+        Stock stock = loader.apply(symbol);
+        if (stock != null && admit) {
+            synchronized (segment) {
+                if (segment.version == version && segment.find(symbol, hash) == NONE) {
+                    segment.insert(symbol, hash, stock);
+                }
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * Drops the stock cached under a symbol, if any. Must be called after the index has
+     * been changed, so that a miss running at the same time does not cache the old stock.
+     *
+     * @param symbol the stock symbol
+     */
+    public void invalidate(String symbol) {
+        int hash = spread(symbol.hashCode());
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.version++;
+            int entry = segment.find(symbol, hash);
+            if (entry != NONE) {
+                segment.remove(entry);
+                segment.invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops every cached stock. The statistics are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.version++;
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached stocks.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of cached stocks.
+     *
+     * @return the number of cached stocks
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the number of hits since the cache was created or the statistics were reset
+     */
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that went to the index.
+     *
+     * @return the number of misses since the cache was created or the statistics were reset
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long hits = 0;
+        long lookups = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+                lookups += segment.hits + segment.misses;
+            }
+        }
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns the number of stocks dropped to make room for others.
+     *
+     * @return the number of evictions since the cache was created or the statistics were
+     *         reset
+     */
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Returns the number of cached stocks dropped because they changed.
+     *
+     * @return the number of invalidated entries since the cache was created or the
+     *         statistics were reset
+     */
+    public long getInvalidations() {
+        long invalidations = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                invalidations += segment.invalidations;
+            }
+        }
+        return invalidations;
+    }
+
+    /**
+     * Sets the hit, miss, eviction and invalidation counts back to zero. The cached stocks
+     * are kept.
+     */
+    public void resetStatistics() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.hits = 0;
+                segment.misses = 0;
+                segment.evictions = 0;
+                segment.invalidations = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cached %d/%d  hit rate %.1f%%  evictions %d  invalidations %d",
+                size(), capacity, getHitRate() * 100, getEvictions(), getInvalidations());
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Mixes the bits of a string hash, whose low bits are poor for short symbols that only
+     * differ in their last letters.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One LRU hash table. Entries are slots of the parallel arrays, linked into their hash
+     * bucket through {@code chain} and into the recency list through {@code older} and
+     * {@code newer}. Free slots are linked through {@code chain}.
+     */
+    private final class Segment {
+        private final String[] keys;
+        private final int[] hashes;
+        private final Stock[] values;
+        private final int[] chain;
+        private final int[] older;
+        private final int[] newer;
+        private final int[] buckets;
+        private final int[] seen;
+        private int size;
+        private int newest = NONE;
+        private int oldest = NONE;
+        private int free;
+        private int version;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long invalidations;
+
+        private Segment(int capacity) {
+            keys = new String[capacity];
+            hashes = new int[capacity];
+            values = new Stock[capacity];
+            chain = new int[capacity];
+            older = new int[capacity];
+            newer = new int[capacity];
+            // At least one bucket per entry, so the chains stay about one entry long
+            buckets = new int[Integer.highestOneBit(capacity) << 1];
+            seen = new int[buckets.length];
+            clear();
+        }
+
+        private void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            Arrays.fill(buckets, NONE);
+            for (int i = 0; i < chain.length; i++) {
+                chain[i] = i + 1 < chain.length ? i + 1 : NONE;
+            }
+            free = 0;
+            size = 0;
+            newest = NONE;
+            oldest = NONE;
+        }
+
+        private int bucket(int hash) {
+            // The low bits chose the segment, so the bucket comes from the bits above them
+            return (hash >>> segmentBits) & (buckets.length - 1);
+        }
+
+        private int find(String symbol, int hash) {
+            for (int entry = buckets[bucket(hash)]; entry != NONE; entry = chain[entry]) {
+                if (hashes[entry] == hash && symbol.equals(keys[entry])) {
+                    return entry;
+                }
+            }
+            return NONE;
+        }
+
+        private void insert(String symbol, int hash, Stock stock) {
+            if (free == NONE) {
+                remove(oldest);
+                evictions++;
+            }
+            int entry = free;
+            free = chain[entry];
+            keys[entry] = symbol;
+            hashes[entry] = hash;
+            values[entry] = stock;
+            int bucket = bucket(hash);
+            chain[entry] = buckets[bucket];
+            buckets[bucket] = entry;
+            linkNewest(entry);
+            size++;
+        }
+
+        private void remove(int entry) {
+            int bucket = bucket(hashes[entry]);
+            if (buckets[bucket] == entry) {
+                buckets[bucket] = chain[entry];
+            } else {
+                int previous = buckets[bucket];
+                while (chain[previous] != entry) {
+                    previous = chain[previous];
+                }
+                chain[previous] = chain[entry];
+            }
+            unlink(entry);
+            keys[entry] = null;
+            values[entry] = null;
+            chain[entry] = free;
+            free = entry;
+            size--;
+        }
+
+        private void touch(int entry) {
+            if (entry != newest) {
+                unlink(entry);
+                linkNewest(entry);
+            }
+        }
+
+        private void linkNewest(int entry) {
+            older[entry] = newest;
+            newer[entry] = NONE;
+            if (newest != NONE) {
+                newer[newest] = entry;
+            } else {
+                oldest = entry;
+            }
+            newest = entry;
+        }
+
+        private void unlink(int entry) {
+            if (older[entry] != NONE) {
+                newer[older[entry]] = newer[entry];
+            } else {
+                oldest = newer[entry];
+            }
+            if (newer[entry] != NONE) {
+                older[newer[entry]] = older[entry];
+            } else {
+                newest = older[entry];
+            }
+        }
+    }
+}
@@ -0,0 +1,960 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * An order-statistic AVL tree of int handles that stores its nodes as primitive fields
+ * instead of node objects.
+ * <p>
+ * A handle is a small non-negative int that identifies a record held elsewhere, for
+ * example a row of the columns of {@link ColumnarStockDataManager}. The handle itself is
+ * the node: its children, height and subtree size are stored under that handle.
+ * The records are ordered with a {@link HandleOrder}, which must be a total order (no two
+ * distinct handles compare equal), and looked up with a {@link Probe}.
+ * <p>
+ * Several trees can index the same handles, each with its own order. The tree does not
+ * allocate per entry: by default the links live in arrays costing 13 bytes per handle of
+ * capacity, but any {@link NodeStore}, for example one backed by a memory-mapped file, can
+ * hold them instead.
+ */
+public class IntAVLTree {
+
+    /**
+     * Compares the records behind two handles.
+     */
+    public interface HandleOrder {
+
+        /**
+         * Compares two handles.
+         *
+         * @param a the first handle
+         * @param b the second handle
+         * @return a negative number, zero or a positive number if the record of {@code a}
+         *         sorts before, together with or after the record of {@code b}
+         */
+        int compare(int a, int b);
+    }
+
+    /**
+     * A search key that can be compared with the record behind a handle.
+     */
+    public interface Probe {
+
+        /**
+         * Compares this probe with a handle.
+         *
+         * @param handle the handle to compare with
+         * @return a negative number, zero or a positive number if the probe sorts before,
+         *         together with or after the record of {@code handle}
+         */
+        int compareTo(int handle);
+    }
+
+    /**
+     * Holds the children, height and subtree size of every handle. The tree only reads and
+     * writes the fields of handles it contains or is inserting.
+     */
+    public interface NodeStore {
+
+        /**
+         * Returns the left child of a node.
+         *
+         * @param node the node
+         * @return the left child, or {@link #NIL}
+         */
+        int left(int node);
+
+        /**
+         * Returns the right child of a node.
+         *
+         * @param node the node
+         * @return the right child, or {@link #NIL}
+         */
+        int right(int node);
+
+        /**
+         * Returns the height of the subtree rooted at a node.
+         *
+         * @param node the node
+         * @return the height, at least 1
+         */
+        int height(int node);
+
+        /**
+         * Returns the number of nodes in the subtree rooted at a node.
+         *
+         * @param node the node
+         * @return the subtree size, at least 1
+         */
+        int size(int node);
+
+        /**
+         * Sets the left child of a node.
+         *
+         * @param node the node
+         * @param child the new left child, or {@link #NIL}
+         */
+        void setLeft(int node, int child);
+
+        /**
+         * Sets the right child of a node.
+         *
+         * @param node the node
+         * @param child the new right child, or {@link #NIL}
+         */
+        void setRight(int node, int child);
+
+        /**
+         * Sets the height and subtree size of a node.
+         *
+         * @param node the node
+         * @param height the new height
+         * @param size the new subtree size
+         */
+        void setHeightAndSize(int node, int height, int size);
+    }
+
+    /** Marks a missing child or an empty tree. */
+    public static final int NIL = -1;
+
+    private final HandleOrder order;
+    private final NodeStore store;
+    private final ArrayStore arrays;
+    private int root;
+
+    // Number of structural changes, so that iterators can detect concurrent modification
+    private int modCount;
+
+    // Number of single rotations performed since the tree was created
+    private long rotations;
+
+    /**
+     * Constructs an empty tree that keeps its links in arrays.
+     *
+     * @param order the order of the handles
+     * @param capacity the initial number of handles the tree can hold
+     */
+    public IntAVLTree(HandleOrder order, int capacity) {
+        this.order = order;
+        this.arrays = new ArrayStore(capacity);
+        this.store = arrays;
+        this.root = NIL;
+    }
+
+    /**
+     * Constructs a tree over links held in the given store, for example a tree reopened
+     * from a file. The owner of the store is responsible for its capacity.
+     *
+     * @param order the order of the handles
+     * @param store the store holding the links
+     * @param root the root handle of the existing tree, or {@link #NIL} if it is empty
+     */
+    public IntAVLTree(HandleOrder order, NodeStore store, int root) {
+        this.order = order;
+        this.arrays = null;
+        this.store = store;
+        this.root = root;
+    }
+
+    /**
+     * Makes room for handles below the given capacity. Has no effect on a tree built over
+     * an external {@link NodeStore}.
+     *
+     * @param capacity the new number of handles the tree can hold
+     */
+    public void ensureCapacity(int capacity) {
+        if (arrays != null && capacity > arrays.left.length) {
+            arrays.resize(capacity);
+        }
+    }
+
+    /**
+     * Shrinks the storage to the given capacity, which must exceed every handle in the
+     * tree. Has no effect on a tree built over an external {@link NodeStore}.
+     *
+     * @param capacity the new number of handles the tree can hold
+     */
+    public void trimToSize(int capacity) {
+        if (arrays != null && capacity < arrays.left.length) {
+            arrays.resize(capacity);
+        }
+    }
+
+    /**
+     * Returns the root handle, so that a tree in an external store can be reopened later.
+     *
+     * @return the root handle, or {@link #NIL} if the tree is empty
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * Returns the number of handles in the tree.
+     *
+     * @return the number of handles
+     */
+    public int size() {
+        return sizeOf(root);
+    }
+
+    /**
+     * Returns the height of the tree. An empty tree has height 0.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        return heightOf(root);
+    }
+
+    /**
+     * Returns the number of single rotations performed to keep the tree balanced since it
+     * was created; a double rotation counts as two. Bulk loading performs none.
+     *
+     * @return the number of rotations
+     */
+    public long rotations() {
+        return rotations;
+    }
+
+    /**
+     * Inserts a handle that is not yet in the tree.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param handle the handle to insert
+     */
+    public void insert(int handle) {
+        root = insert(root, handle);
+        modCount++;
+    }
+
+    /**
+     * Removes a handle from the tree. The record behind the handle must still hold the
+     * values it was inserted with.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param handle the handle to remove
+     */
+    public void delete(int handle) {
+        root = delete(root, handle);
+        modCount++;
+    }
+
+    /**
+     * Finds the handle that matches a probe.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param probe the search key
+     * @return the matching handle, or {@link #NIL} if there is none
+     */
+    public int find(Probe probe) {
+        int node = root;
+        while (node != NIL) {
+            int cmp = probe.compareTo(node);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? store.left(node) : store.right(node);
+        }
+        return NIL;
+    }
+
+    /**
+     * Returns the number of handles that sort before a probe.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param probe the search key
+     * @return the rank of the probe
+     */
+    public int rank(Probe probe) {
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            int cmp = probe.compareTo(node);
+            if (cmp <= 0) {
+                if (cmp == 0) {
+                    return rank + sizeOf(store.left(node));
+                }
+                node = store.left(node);
+            } else {
+                rank += sizeOf(store.left(node)) + 1;
+                node = store.right(node);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the handle at the given zero-based position in the order of the tree.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param index the position of the handle
+     * @return the handle at that position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(store.left(node));
+            if (index < leftSize) {
+                node = store.left(node);
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = store.right(node);
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Passes every handle between two probes (both inclusive) to the given action, in
+     * ascending order.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of handles visited
+     *
+     * @param from the lower bound
+     * @param to the upper bound
+     * @param action the action to perform on each handle
+     */
+    public void range(Probe from, Probe to, IntConsumer action) {
+        range(root, from, to, action);
+    }
+
+    /**
+     * Passes up to {@code count} of the largest handles to the given action, largest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of handles
+     * @param action the action to perform on each handle
+     */
+    public void largest(int count, IntConsumer action) {
+        largest(root, count, action);
+    }
+
+    /**
+     * Passes every handle to the given action, in ascending order.
+     *
+     * @param action the action to perform on each handle
+     */
+    public void inOrder(IntConsumer action) {
+        inOrder(root, action);
+    }
+
+    /**
+     * Passes every handle to the given action, each node before its subtrees.
+     *
+     * @param action the action to perform on each handle
+     */
+    public void preOrder(IntConsumer action) {
+        preOrder(root, action);
+    }
+
+    /**
+     * Passes every handle to the given action, each node after its subtrees.
+     *
+     * @param action the action to perform on each handle
+     */
+    public void postOrder(IntConsumer action) {
+        postOrder(root, action);
+    }
+
+    /**
+     * Returns a lazy iterator over the handles in ascending order. The path to the next
+     * handle is kept on an explicit stack, so large trees need no recursion. The iterator
+     * fails with a {@link ConcurrentModificationException} if the tree changes.
+     *
+     * @return an in-order iterator
+     */
+    public PrimitiveIterator.OfInt inOrderIterator() {
+        return new InOrderIterator(null);
+    }
+
+    /**
+     * Returns a lazy iterator over the handles that do not sort before a probe, in
+     * ascending order. It behaves like {@link #inOrderIterator()}.
+     * <p>
+     * Time complexity: O(log n) to start, then O(1) amortized per handle
+     *
+     * @param from the probe to start at
+     * @return an in-order iterator starting at the first handle not below {@code from}
+     */
+    public PrimitiveIterator.OfInt inOrderIterator(Probe from) {
+        return new InOrderIterator(from);
+    }
+
+    /**
+     * Returns a lazy iterator over the handles, each node before its subtrees.
+     *
+     * @return a pre-order iterator
+     */
+    public PrimitiveIterator.OfInt preOrderIterator() {
+        return new PreOrderIterator();
+    }
+
+    /**
+     * Returns a lazy iterator over the handles, each node after its subtrees.
+     *
+     * @return a post-order iterator
+     */
+    public PrimitiveIterator.OfInt postOrderIterator() {
+        return new PostOrderIterator();
+    }
+
+    /**
+     * Returns a spliterator over the handles in ascending order that splits by subtree,
+     * with exact sizes. The tree must not change while it is in use.
+     *
+     * @return an ordered, sized spliterator
+     */
+    public Spliterator.OfInt spliterator() {
+        return new TreeSpliterator(root, NIL, size());
+    }
+
+    /**
+     * Replaces the contents of the tree with the given handles, which must already be in
+     * strictly increasing order. The tree is built directly in balanced shape.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param handles the handles in strictly increasing order
+     * @param count the number of handles to use from the start of the array
+     * @throws IllegalArgumentException if the handles are not strictly increasing
+     */
+    public void loadSorted(int[] handles, int count) {
+        for (int i = 1; i < count; i++) {
+            if (order.compare(handles[i - 1], handles[i]) >= 0) {
+                throw new IllegalArgumentException("Handles are not strictly increasing at index " + i);
+            }
+        }
+        root = buildBalanced(handles, 0, count - 1);
+        modCount++;
+    }
+
+    /**
+     * Removes all handles from the tree.
+     */
+    public void clear() {
+        root = NIL;
+        modCount++;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Recursive helpers
+    // ---------------------------------------------------------------------------------
+
+    private int insert(int node, int handle) {
+        if (node == NIL) {
+            store.setLeft(handle, NIL);
+            store.setRight(handle, NIL);
+            store.setHeightAndSize(handle, 1, 1);
+            return handle;
+        }
+        if (order.compare(handle, node) < 0) {
+            store.setLeft(node, insert(store.left(node), handle));
+        } else {
+            store.setRight(node, insert(store.right(node), handle));
+        }
+        return rebalance(node);
+    }
+
+    private int delete(int node, int handle) {
+        if (node == NIL) {
+            return NIL;
+        }
+        int cmp = order.compare(handle, node);
+        if (cmp < 0) {
+            store.setLeft(node, delete(store.left(node), handle));
+        } else if (cmp > 0) {
+            store.setRight(node, delete(store.right(node), handle));
+        } else {
+            if (store.left(node) == NIL) {
+                return store.right(node);
+            }
+            if (store.right(node) == NIL) {
+                return store.left(node);
+            }
+            // Two children: the handle is the node, so the successor is spliced in instead
+            int successor = store.right(node);
+            while (store.left(successor) != NIL) {
+                successor = store.left(successor);
+            }
+            store.setRight(successor, deleteMin(store.right(node)));
+            store.setLeft(successor, store.left(node));
+            node = successor;
+        }
+        return rebalance(node);
+    }
+
+    private int deleteMin(int node) {
+        if (store.left(node) == NIL) {
+            return store.right(node);
+        }
+        store.setLeft(node, deleteMin(store.left(node)));
+        return rebalance(node);
+    }
+
+    private int buildBalanced(int[] handles, int low, int high) {
+        if (low > high) {
+            return NIL;
+        }
+        int mid = (low + high) >>> 1;
+        int node = handles[mid];
+        store.setLeft(node, buildBalanced(handles, low, mid - 1));
+        store.setRight(node, buildBalanced(handles, mid + 1, high));
+        update(node);
+        return node;
+    }
+
+    private void range(int node, Probe from, Probe to, IntConsumer action) {
+        if (node == NIL) {
+            return;
+        }
+        int cmpFrom = from.compareTo(node);
+        int cmpTo = to.compareTo(node);
+        if (cmpFrom < 0) {
+            range(store.left(node), from, to, action);
+        }
+        if (cmpFrom <= 0 && cmpTo >= 0) {
+            action.accept(node);
+        }
+        if (cmpTo > 0) {
+            range(store.right(node), from, to, action);
+        }
+    }
+
+    /**
+     * Visits the largest handles of a subtree.
+     *
+     * @return how many handles are still wanted after this subtree
+     */
+    private int largest(int node, int count, IntConsumer action) {
+        if (node == NIL || count <= 0) {
+            return count;
+        }
+        count = largest(store.right(node), count, action);
+        if (count > 0) {
+            action.accept(node);
+            count = largest(store.left(node), count - 1, action);
+        }
+        return count;
+    }
+
+    private void inOrder(int node, IntConsumer action) {
+        if (node != NIL) {
+            inOrder(store.left(node), action);
+            action.accept(node);
+            inOrder(store.right(node), action);
+        }
+    }
+
+    private void preOrder(int node, IntConsumer action) {
+        if (node != NIL) {
+            action.accept(node);
+            preOrder(store.left(node), action);
+            preOrder(store.right(node), action);
+        }
+    }
+
+    private void postOrder(int node, IntConsumer action) {
+        if (node != NIL) {
+            postOrder(store.left(node), action);
+            postOrder(store.right(node), action);
+            action.accept(node);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Balancing
+    // ---------------------------------------------------------------------------------
+
+    private int rebalance(int node) {
+        update(node);
+        int balance = heightOf(store.left(node)) - heightOf(store.right(node));
+
+        if (balance > 1) {
+            int child = store.left(node);
+            if (heightOf(store.left(child)) < heightOf(store.right(child))) {
+                store.setLeft(node, rotateLeft(child));
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            int child = store.right(node);
+            if (heightOf(store.left(child)) > heightOf(store.right(child))) {
+                store.setRight(node, rotateRight(child));
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private int rotateRight(int y) {
+        rotations++;
+        int x = store.left(y);
+        store.setLeft(y, store.right(x));
+        store.setRight(x, y);
+        update(y);
+        update(x);
+        return x;
+    }
+
+    private int rotateLeft(int x) {
+        rotations++;
+        int y = store.right(x);
+        store.setRight(x, store.left(y));
+        store.setLeft(y, x);
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private void update(int node) {
+        int left = store.left(node);
+        int right = store.right(node);
+        store.setHeightAndSize(node, 1 + Math.max(heightOf(left), heightOf(right)), 1 + sizeOf(left) + sizeOf(right));
+    }
+
+    private int heightOf(int node) {
+        return node == NIL ? 0 : store.height(node);
+    }
+
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : store.size(node);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Iterators
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * A growable stack of handles, so that the iterators do not box.
+     */
+    private static final class HandleStack {
+        private int[] handles = new int[16];
+        private int depth;
+
+        private void push(int handle) {
+            if (depth == handles.length) {
+                handles = Arrays.copyOf(handles, depth * 2);
+            }
+            handles[depth++] = handle;
+        }
+
+        private int pop() {
+            return handles[--depth];
+        }
+
+        private int peek() {
+            return depth == 0 ? NIL : handles[depth - 1];
+        }
+
+        private boolean isEmpty() {
+            return depth == 0;
+        }
+    }
+
+    /**
+     * Walks the tree in order. The stack holds the nodes whose left subtree is being
+     * visited, with the next node on top.
+     */
+    private final class InOrderIterator implements PrimitiveIterator.OfInt {
+        private final HandleStack stack = new HandleStack();
+        private final int expectedModCount = modCount;
+
+        private InOrderIterator(Probe from) {
+            int node = root;
+            while (node != NIL) {
+                // Every handle is at or above a missing probe
+                if (from == null || from.compareTo(node) <= 0) {
+                    stack.push(node);
+                    node = store.left(node);
+                } else {
+                    node = store.right(node);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public int nextInt() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int handle = stack.pop();
+            for (int node = store.right(handle); node != NIL; node = store.left(node)) {
+                stack.push(node);
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * Walks the tree in pre-order. The stack holds the roots of the subtrees still to visit.
+     */
+    private final class PreOrderIterator implements PrimitiveIterator.OfInt {
+        private final HandleStack stack = new HandleStack();
+        private final int expectedModCount = modCount;
+
+        private PreOrderIterator() {
+            if (root != NIL) {
+                stack.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public int nextInt() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int handle = stack.pop();
+            if (store.right(handle) != NIL) {
+                stack.push(store.right(handle));
+            }
+            if (store.left(handle) != NIL) {
+                stack.push(store.left(handle));
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * Walks the tree in post-order. The stack holds the path from the root to the next
+     * node; a node is returned once the walk comes back up from its right subtree.
+     */
+    private final class PostOrderIterator implements PrimitiveIterator.OfInt {
+        private final HandleStack stack = new HandleStack();
+        private final int expectedModCount = modCount;
+
+        private PostOrderIterator() {
+            descend(root);
+        }
+
+        /**
+         * Pushes the path from the given node down to the first node of its subtree in
+         * post-order, preferring left children over right ones.
+         */
+        private void descend(int node) {
+            while (node != NIL) {
+                stack.push(node);
+                node = store.left(node) != NIL ? store.left(node) : store.right(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public int nextInt() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int handle = stack.pop();
+            int parent = stack.peek();
+            if (parent != NIL && store.left(parent) == handle) {
+                descend(store.right(parent));
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * Covers the in-order sequence of {@code subtree}, followed by every node on the stack
+     * from the top down, each followed by its right subtree. The bottom node of the stack
+     * can be a fence whose right subtree belongs to another spliterator.
+     */
+    private final class TreeSpliterator implements Spliterator.OfInt {
+        private final HandleStack stack = new HandleStack();
+        private final int fence;
+        private int subtree;
+        private long remaining;
+        private final int expectedModCount = modCount;
+
+        private TreeSpliterator(int subtree, int fence, long remaining) {
+            this.subtree = subtree;
+            this.fence = fence;
+            this.remaining = remaining;
+            if (fence != NIL) {
+                stack.push(fence);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            for (int node = subtree; node != NIL; node = store.left(node)) {
+                stack.push(node);
+            }
+            subtree = NIL;
+            if (stack.isEmpty()) {
+                return false;
+            }
+            int handle = stack.pop();
+            if (handle != fence) {
+                subtree = store.right(handle);
+            }
+            remaining--;
+            action.accept(handle);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            // Only a subtree that has not been entered yet can be split
+            int node = subtree;
+            if (node == NIL || store.left(node) == NIL && store.right(node) == NIL) {
+                return null;
+            }
+            TreeSpliterator prefix = new TreeSpliterator(store.left(node), node, sizeOf(store.left(node)) + 1);
+            subtree = store.right(node);
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | DISTINCT;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Handle sorting
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Sorts the first {@code count} handles with a stable bottom-up merge sort, for example
+     * to prepare the input of {@link #loadSorted}.
+     *
+     * @param handles the handles to sort
+     * @param count the number of handles to sort from the start of the array
+     * @param order the order to sort by
+     */
+    public static void sort(int[] handles, int count, HandleOrder order) {
+        int[] source = handles;
+        int[] target = new int[count];
+        for (int width = 1; width < count; width <<= 1) {
+            for (int low = 0; low < count; low += width << 1) {
+                int mid = Math.min(low + width, count);
+                int high = Math.min(low + (width << 1), count);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    // Taking from the left run on ties keeps the sort stable
+                    target[k++] = order.compare(source[j], source[i]) < 0 ? source[j++] : source[i++];
+                }
+                while (i < mid) {
+                    target[k++] = source[i++];
+                }
+                while (j < high) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != handles) {
+            System.arraycopy(source, 0, handles, 0, count);
+        }
+    }
+
+    /**
+     * The default store: one array per field, indexed by handle.
+     */
+    private static final class ArrayStore implements NodeStore {
+        private int[] left;
+        private int[] right;
+        private int[] size;
+        private byte[] height;
+
+        private ArrayStore(int capacity) {
+            left = new int[capacity];
+            right = new int[capacity];
+            size = new int[capacity];
+            height = new byte[capacity];
+        }
+
+        private void resize(int capacity) {
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            size = Arrays.copyOf(size, capacity);
+            height = Arrays.copyOf(height, capacity);
+        }
+
+        @Override
+        public int left(int node) {
+            return left[node];
+        }
+
+        @Override
+        public int right(int node) {
+            return right[node];
+        }
+
+        @Override
+        public int height(int node) {
+            return height[node];
+        }
+
+        @Override
+        public int size(int node) {
+            return size[node];
+        }
+
+        @Override
+        public void setLeft(int node, int child) {
+            left[node] = child;
+        }
+
+        @Override
+        public void setRight(int node, int child) {
+            right[node] = child;
+        }
+
+        @Override
+        public void setHeightAndSize(int node, int height, int size) {
+            this.height[node] = (byte) height;
+            this.size[node] = size;
+        }
+    }
+}
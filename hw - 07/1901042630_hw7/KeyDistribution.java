@@ -0,0 +1,189 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distributions used to pick which of {@code n} keys an operation touches.
+ * Every distribution hands out indexes in the range {@code [0, n)}.
+ */
+public enum KeyDistribution {
+    /** Every key is equally likely. */
+    UNIFORM,
+
+    /**
+     * A few keys get most of the traffic. Popularity follows Zipf's law with exponent
+     * {@link #ZIPF_THETA}; the popular keys are scattered over the key space rather than
+     * being the first few indexes.
+     */
+    ZIPFIAN,
+
+    /**
+     * A hot set of {@link #HOTSPOT_KEY_FRACTION} of the keys gets
+     * {@link #HOTSPOT_ACCESS_FRACTION} of the traffic, uniformly within the set; the other
+     * keys share the rest. The hot set is the first keys of the key space.
+     */
+    HOTSPOT,
+
+    /** Keys are visited in order, wrapping around after the last one. */
+    SEQUENTIAL;
+
+    /** The skew of the Zipfian distribution, as used by YCSB. */
+    public static final double ZIPF_THETA = 0.99;
+
+    /** The share of the keys in the hot set of {@link #HOTSPOT}. */
+    public static final double HOTSPOT_KEY_FRACTION = 0.2;
+
+    /** The share of the operations that go to the hot set of {@link #HOTSPOT}. */
+    public static final double HOTSPOT_ACCESS_FRACTION = 0.8;
+
+    // zeta(n, ZIPF_THETA) by n, so that samplers created for every chunk of a large
+    // workload do not repeat the O(n) sum
+    private static final Map<Integer, Double> ZETAS = new ConcurrentHashMap<>();
+
+    /**
+     * Produces key indexes following one distribution.
+     */
+    public interface Sampler {
+        /**
+         * @return the next key index
+         */
+        int next();
+    }
+
+    /**
+     * Creates a sampler over {@code n} keys.
+     *
+     * @param n the number of keys
+     * @param seed the random seed, so that runs can be repeated
+     * @return the sampler
+     */
+    public Sampler sampler(int n, long seed) {
+        return sampler(n, seed, 0);
+    }
+
+    /**
+     * Creates a sampler over {@code n} keys whose {@link #SEQUENTIAL} walk starts at the
+     * given position, so that a workload cut into chunks visits the same keys as one made
+     * in a single piece. The other distributions ignore the position.
+     *
+     * @param n the number of keys
+     * @param seed the random seed, so that runs can be repeated
+     * @param position the number of keys a {@link #SEQUENTIAL} sampler skips
+     * @return the sampler
+     */
+    public Sampler sampler(int n, long seed, long position) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Key count must be positive: " + n);
+        }
+        Random random = new Random(seed);
+        switch (this) {
+            case UNIFORM:
+                return () -> random.nextInt(n);
+            case ZIPFIAN:
+                return new ZipfianSampler(n, ZIPF_THETA, random);
+            case HOTSPOT:
+                return hotspot(n, HOTSPOT_KEY_FRACTION, HOTSPOT_ACCESS_FRACTION, random);
+            case SEQUENTIAL:
+                int[] next = {(int) Math.floorMod(position, (long) n)};
+                return () -> {
+                    int index = next[0];
+                    next[0] = index + 1 == n ? 0 : index + 1;
+                    return index;
+                };
+            default:
+                throw new AssertionError(this);
+        }
+    }
+
+    /**
+     * Creates a {@link #HOTSPOT} sampler with a hot set of another size or share of the
+     * traffic, for example one percent of the keys taking ninety percent of the operations.
+     *
+     * @param n the number of keys
+     * @param keyFraction the share of the keys in the hot set
+     * @param accessFraction the share of the operations that go to the hot set
+     * @param seed the random seed, so that runs can be repeated
+     * @return the sampler
+     */
+    public static Sampler hotspot(int n, double keyFraction, double accessFraction, long seed) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Key count must be positive: " + n);
+        }
+        return hotspot(n, keyFraction, accessFraction, new Random(seed));
+    }
+
+    private static Sampler hotspot(int n, double keyFraction, double accessFraction, Random random) {
+        int hot = Math.max(1, (int) (n * keyFraction));
+        if (hot == n) {
+            return () -> random.nextInt(n);
+        }
+        return () -> random.nextDouble() < accessFraction
+                ? random.nextInt(hot)
+                : hot + random.nextInt(n - hot);
+    }
+
+    /**
+     * Parses a distribution name, ignoring case.
+     *
+     * @param name the name, for example "zipfian"
+     * @return the distribution
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static KeyDistribution parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * The rejection-free Zipfian generator of Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases". Setup is O(n) the first time a key count is
+     * used, every sample is O(1).
+     */
+    private static final class ZipfianSampler implements Sampler {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+        private final Random random;
+
+        ZipfianSampler(int n, double theta, Random random) {
+            this.n = n;
+            this.theta = theta;
+            this.random = random;
+            double zeta2 = 1.0 + Math.pow(0.5, theta);
+            this.zetaN = ZETAS.computeIfAbsent(n, count -> {
+                double zeta = 0;
+                for (int i = 1; i <= count; i++) {
+                    zeta += 1.0 / Math.pow(i, theta);
+                }
+                return zeta;
+            });
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1.0 - Math.pow(2.0 / n, 1.0 - theta)) / (1.0 - zeta2 / zetaN);
+        }
+
+        @Override
+        public int next() {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            int rank;
+            if (uz < 1.0) {
+                rank = 0;
+            } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+                rank = 1;
+            } else {
+                rank = (int) (n * Math.pow(eta * u - eta + 1.0, alpha));
+            }
+            if (rank >= n) {
+                rank = n - 1;
+            }
+            // Scatter the popular ranks so they are not all neighbours in the tree
+            return (int) (Integer.toUnsignedLong(scramble(rank)) % n);
+        }
+
+        private static int scramble(int value) {
+            int hash = value * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
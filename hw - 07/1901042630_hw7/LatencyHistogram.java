@@ -0,0 +1,196 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision, for reporting
+ * percentiles such as p50, p99 and p99.9 without keeping every sample.
+ * <p>
+ * Values below 128 get a bucket each. Above that, every power of two is split into 64
+ * buckets, so a reported value is at most about 1.6% above the true one. The buckets
+ * cover every non-negative long in 3,712 counters (about 29 KB), and finding the bucket of
+ * a value takes a few shifts.
+ * <p>
+ * Recording is lock-free, so one histogram can be shared by every thread of a
+ * {@link ConcurrentStockDataManager}: a value costs an atomic increment of its bucket and
+ * of the sum, plus a compare-and-set in the rare case of a new minimum or maximum. Readers
+ * never block writers; a report taken while values are being recorded may miss the most
+ * recent ones.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     *
+     * @param nanos the value; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        sum.add(value);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        sum.add(other.sum.sum());
+        updateMin(other.min.get());
+        updateMax(other.max.get());
+    }
+
+    /**
+     * Forgets every recorded value. Values recorded by other threads during the reset may
+     * be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * <p>
+     * Time complexity: O(b) where b is the number of buckets
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return snapshot()[BUCKETS];
+    }
+
+    /**
+     * Returns the smallest recorded value.
+     *
+     * @return the minimum, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the average of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the recorded values
+     * fall, rounded up to the end of its bucket but never above the maximum.
+     *
+     * @param percentile the percentage, for example 99.9
+     * @return the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = snapshot();
+        return percentile(snapshot, snapshot[BUCKETS], percentile);
+    }
+
+    /**
+     * Formats the count and the main percentiles in microseconds.
+     */
+    @Override
+    public String toString() {
+        long[] snapshot = snapshot();
+        long count = snapshot[BUCKETS];
+        return String.format("count %d  p50 %.1f us  p99 %.1f us  p99.9 %.1f us  max %.1f us",
+                count, percentile(snapshot, count, 50) / 1e3, percentile(snapshot, count, 99) / 1e3,
+                percentile(snapshot, count, 99.9) / 1e3, getMax() / 1e3);
+    }
+
+    /**
+     * Copies the bucket counts, so that several percentiles are computed from the same
+     * values. The element after the last bucket holds the total.
+     */
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS + 1];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            snapshot[BUCKETS] += snapshot[i];
+        }
+        return snapshot;
+    }
+
+    private long percentile(long[] snapshot, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private void updateMin(long value) {
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // Another thread changed the minimum; compare again
+        }
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Another thread changed the maximum; compare again
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the SUB_BUCKET_BITS bits below the highest one
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -1,7 +1,11 @@
-import java.io.BufferedReader;
-import java.io.FileWriter;
-import java.io.FileReader;
+import java.awt.GraphicsEnvironment;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class Main {
@@ -27,7 +31,7 @@ public class Main {
         manager.postOrderTraversal();
 
         // Perform performance analysis
-        performanceAnalysis(manager);
+        performanceAnalysis();
     }
 
     /**
@@ -37,44 +41,20 @@ public class Main {
      * @param inputFilename the name of the input file
      */
     private static void processInputFile(StockDataManager manager, String inputFilename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFilename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(" ");
-                String command = parts[0];
-
-                switch (command) {
-                    case "ADD":
-                        manager.addStock(parts[1], Double.parseDouble(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
-                        System.out.println("Added stock: " + parts[1]);
-                        break;
-                    case "REMOVE":
-                        manager.removeStock(parts[1]);
-                        System.out.println("Removed stock: " + parts[1]);
-                        break;
-                    case "SEARCH":
-                        Stock stock = manager.searchStock(parts[1]);
-                        if (stock != null) {
-                            System.out.println("Found stock: " + stock);
-                        } else {
-                            System.out.println("Stock not found: " + parts[1]);
-                        }
-                        break;
-                    case "UPDATE":
-                        manager.updateStock(parts[1], parts[2], Double.parseDouble(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]));
-                        System.out.println("Updated stock: " + parts[1] + " to " + parts[2]);
-                        break;
-                    default:
-                        System.out.println("Invalid command: " + command);
-                }
-            }
+        try {
+            CommandProcessor processor = new CommandProcessor(manager, new OutputStreamWriter(System.out));
+            processor.process(Paths.get(inputFilename));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Generates a random input file with the specified number of commands.
+     * Generates a random input file with exactly the specified number of commands of each
+     * kind. A {@link WorkloadGenerator} over {@code addCount} symbols preloads one ADD per
+     * symbol. The REMOVE, SEARCH and UPDATE commands are each generated with a mix of that
+     * kind alone, so that their counts are exact, and then written in a shuffled order.
+     * Every UPDATE renames a stock.
      *
      * @param filename the name of the file to generate
      * @param addCount the number of ADD commands
@@ -83,49 +63,22 @@ public class Main {
      * @param updateCount the number of UPDATE commands
      */
     private static void generateRandomInputFile(String filename, int addCount, int removeCount, int searchCount, int updateCount) {
-        Random random = new Random();
-        List<String> commands = new ArrayList<>();
-        String[] symbols = new String[addCount];
-
-        // Generate ADD commands
-        for (int i = 0; i < addCount; i++) {
-            String symbol = generateRandomSymbol(random);
-            symbols[i] = symbol;
-            double price = 10 + (1000 - 10) * random.nextDouble();
-            long volume = 1000 + (long) ((10000 - 100) * random.nextDouble());
-            long marketCap = 1000000 + (long) ((100000 - 1000) * random.nextDouble());
-            commands.add(String.format(Locale.US, "ADD %s %.2f %d %d", symbol, price, volume, marketCap));
-        }
-
-        // Generate REMOVE commands
-        for (int i = 0; i < removeCount; i++) {
-            String symbol = symbols[random.nextInt(addCount)];
-            commands.add(String.format("REMOVE %s", symbol));
-        }
-
-        // Generate SEARCH commands
-        for (int i = 0; i < searchCount; i++) {
-            String symbol = symbols[random.nextInt(addCount)];
-            commands.add(String.format("SEARCH %s", symbol));
-        }
-
-        // Generate UPDATE commands
-        for (int i = 0; i < updateCount; i++) {
-            String symbol = symbols[random.nextInt(addCount)];
-            String newSymbol = generateRandomSymbol(random);
-            double newPrice = 10 + (1000 - 10) * random.nextDouble();
-            long newVolume = 1000 + (long) ((10000 - 100) * random.nextDouble());
-            long newMarketCap = 1000000 + (long) ((100000 - 1000) * random.nextDouble());
-            commands.add(String.format(Locale.US, "UPDATE %s %s %.2f %d %d", symbol, newSymbol, newPrice, newVolume, newMarketCap));
-        }
-
-        // Shuffle the commands to randomize the order
-        Collections.shuffle(commands);
-
-        // Write commands to the file
-        try (FileWriter writer = new FileWriter(filename)) {
-            for (String command : commands) {
-                writer.write(command + System.lineSeparator());
+        int symbolCount = Math.max(1, addCount);
+        long seed = System.nanoTime();
+        try (OutputStream out = Files.newOutputStream(Paths.get(filename))) {
+            new WorkloadGenerator(symbolCount, new WorkloadGenerator.Mix(0, 1, 0, 0, 0), KeyDistribution.UNIFORM, seed, addCount > 0)
+                    .generate(out, 0, WorkloadGenerator.Format.TEXT, 1);
+            List<Iterator<String>> commands = List.of(
+                    generateCommands(symbolCount, new WorkloadGenerator.Mix(0, 1, 0, 0, 0), seed + 1, removeCount),
+                    generateCommands(symbolCount, new WorkloadGenerator.Mix(0, 0, 1, 0, 0), seed + 2, searchCount),
+                    generateCommands(symbolCount, new WorkloadGenerator.Mix(0, 0, 0, 0, 1), seed + 3, updateCount));
+            List<Integer> kinds = new ArrayList<>();
+            kinds.addAll(Collections.nCopies(removeCount, 0));
+            kinds.addAll(Collections.nCopies(searchCount, 1));
+            kinds.addAll(Collections.nCopies(updateCount, 2));
+            Collections.shuffle(kinds, new Random(seed));
+            for (int kind : kinds) {
+                out.write((commands.get(kind).next() + "\n").getBytes(StandardCharsets.US_ASCII));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -133,69 +86,57 @@ public class Main {
     }
 
     /**
-     * Generates a random stock symbol.
-     *
-     * @param random the Random instance
-     * @return the generated stock symbol
+     * Generates the given number of text commands of a mix, one per element.
      */
-    private static String generateRandomSymbol(Random random) {
-        int length = 3 + random.nextInt(3);
-        StringBuilder symbol = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            symbol.append((char) ('A' + random.nextInt(26)));
-        }
-        return symbol.toString();
+    private static Iterator<String> generateCommands(int symbolCount, WorkloadGenerator.Mix mix, long seed, int count) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new WorkloadGenerator(symbolCount, mix, KeyDistribution.UNIFORM, seed, false)
+                .generate(buffer, count, WorkloadGenerator.Format.TEXT, 1);
+        return Arrays.asList(buffer.toString(StandardCharsets.US_ASCII).split("\n")).iterator();
     }
 
     /**
-     * Performs performance analysis for different operations on the AVL tree.
-     *
-     * @param manager the StockDataManager instance
+     * Measures every operation separately on trees of increasing size and shows the
+     * average time per operation in one graph per operation. Without a display the graphs
+     * are saved as PNG and SVG files instead.
      */
-    private static void performanceAnalysis(StockDataManager manager) {
+    private static void performanceAnalysis() {
         int[] sizes = {100, 1000, 10000};
         List<Integer> dataPointsX = new ArrayList<>();
-        List<Long> addTimes = new ArrayList<>();
-        List<Long> removeTimes = new ArrayList<>();
-        List<Long> searchTimes = new ArrayList<>();
-        List<Long> updateTimes = new ArrayList<>();
-
         for (int size : sizes) {
             dataPointsX.add(size);
-            String filename = "input_" + size + ".txt";
-            generateRandomInputFile(filename, size, size / 10, size, size / 10);
-
-            long startTime, endTime;
-
-            // Measure ADD time
-            startTime = System.nanoTime();
-            processInputFile(manager, filename);
-            endTime = System.nanoTime();
-            addTimes.add((endTime - startTime) / size);
-
-            // Measure REMOVE time
-            startTime = System.nanoTime();
-            processInputFile(manager, filename);
-            endTime = System.nanoTime();
-            removeTimes.add((endTime - startTime) / (size / 10));
-
-            // Measure SEARCH time
-            startTime = System.nanoTime();
-            processInputFile(manager, filename);
-            endTime = System.nanoTime();
-            searchTimes.add((endTime - startTime) / size);
+        }
 
-            // Measure UPDATE time
-            startTime = System.nanoTime();
-            processInputFile(manager, filename);
-            endTime = System.nanoTime();
-            updateTimes.add((endTime - startTime) / (size / 10));
+        for (OperationBenchmark.Operation operation : OperationBenchmark.Operation.values()) {
+            List<Long> times = new ArrayList<>();
+            for (int size : sizes) {
+                OperationBenchmark.Measurement measurement =
+                        OperationBenchmark.measure(operation, size, KeyDistribution.UNIFORM, 1000, 5, 10);
+                times.add(Math.round(measurement.getMean()));
+            }
+            String title = operation + " Operation";
+            PerformanceChart chart = new PerformanceChart(title, dataPointsX, times);
+            if (GraphicsEnvironment.isHeadless()) {
+                saveChart(chart, operation.toString().toLowerCase());
+            } else {
+                new GUIVisualization(chart, title);
+            }
         }
+    }
 
-        // Visualize performance data
-        new GUIVisualization("ADD Operation", dataPointsX, addTimes);
-        new GUIVisualization("REMOVE Operation", dataPointsX, removeTimes);
-        new GUIVisualization("SEARCH Operation", dataPointsX, searchTimes);
-        new GUIVisualization("UPDATE Operation", dataPointsX, updateTimes);
+    /**
+     * Saves a chart as {@code <name>_performance.png} and {@code <name>_performance.svg}.
+     *
+     * @param chart the chart to save
+     * @param name the start of the file names
+     */
+    private static void saveChart(PerformanceChart chart, String name) {
+        try {
+            chart.writePng(Paths.get(name + "_performance.png"), 800, 600);
+            chart.writeSvg(Paths.get(name + "_performance.svg"), 800, 600);
+            System.out.println("Saved " + name + "_performance.png and " + name + "_performance.svg");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Compares the on-heap {@link StockDataManager} with the memory-mapped
+ * {@link MappedStockDataManager}: heap retained by the index, the pause of a full garbage
+ * collection while the index is live, the cost of random updates and searches, and the
+ * time to reopen a mapped index.
+ * <p>
+ * Usage: {@code java MappedBenchmark [symbolCount] [operationCount] [heap|mapped|both] [directory]}
+ * (defaults: 5,000,000 symbols, 2,000,000 operations, both, a temporary directory that is
+ * deleted afterwards).
+ */
+public class MappedBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int operationCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String mode = args.length > 2 ? args[2] : "both";
+        Path directory = args.length > 3 ? Path.of(args[3]) : Files.createTempDirectory("stock-index");
+
+        System.out.printf("%-8s %10s %10s %12s %10s%n", "manager", "load (ms)", "heap (MiB)", "full GC (ms)", "ns/op");
+        if (!mode.equals("mapped")) {
+            run("heap", symbolCount, operationCount, null);
+        }
+        if (!mode.equals("heap")) {
+            run("mapped", symbolCount, operationCount, directory);
+
+            long start = System.nanoTime();
+            try (MappedStockDataManager reopened = new MappedStockDataManager(directory)) {
+                Stock stock = reopened.searchStock(UpdateBenchmark.symbolFor('S', symbolCount / 2));
+                long micros = (System.nanoTime() - start) / 1_000;
+                System.out.printf("%nReopened %d stocks and found %s in %d us%n", reopened.size(), stock.getSymbol(), micros);
+            }
+        }
+        if (args.length <= 3) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void run(String label, int symbolCount, int operationCount, Path directory) throws IOException {
+        long heapBefore = usedHeap();
+
+        long start = System.nanoTime();
+        StockDataManager manager = directory == null
+                ? StockDataManager.bulkLoad(stocks(symbolCount))
+                : MappedStockDataManager.bulkLoad(directory, stocks(symbolCount));
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+        long heap = Math.max(0, usedHeap() - heapBefore);
+
+        // Half updates of price and volume, half searches, on random symbols
+        Random random = new Random(7);
+        start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < operationCount; i++) {
+            String symbol = UpdateBenchmark.symbolFor('S', random.nextInt(symbolCount));
+            if ((i & 1) == 0) {
+                manager.updateStock(symbol, symbol, 10 + random.nextInt(990), 1000 + i, 1000000);
+            } else if (manager.searchStock(symbol) != null) {
+                found++;
+            }
+        }
+        long nanosPerOperation = (System.nanoTime() - start) / operationCount;
+
+        // A full collection has to trace everything that is live, so its pause grows with
+        // an on-heap index and stays flat with a mapped one
+        start = System.nanoTime();
+        System.gc();
+        long fullGcMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-8s %10d %10d %12d %10d%n", label, loadMillis, heap >> 20, fullGcMillis, nanosPerOperation);
+        if (found == 0 || manager.size() != symbolCount) {
+            throw new IllegalStateException("Unexpected index contents");
+        }
+        if (manager instanceof MappedStockDataManager) {
+            ((MappedStockDataManager) manager).close();
+        }
+    }
+
+    /**
+     * Generates the stocks in symbol order without holding them.
+     */
+    private static Iterable<Stock> stocks(int symbolCount) {
+        return () -> new Iterator<Stock>() {
+            private final Random random = new Random(42);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < symbolCount;
+            }
+
+            @Override
+            public Stock next() {
+                return new Stock(UpdateBenchmark.symbolFor('S', next++), 10 + random.nextDouble() * 990,
+                        1000 + random.nextInt(9000), 1000000 + random.nextInt(100000));
+            }
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,492 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A {@link StockDataManager} whose whole index lives off-heap in memory-mapped files, for
+ * tens of millions of instruments without garbage collection pressure.
+ * <p>
+ * The index is kept in a directory holding two files:
+ * <ul>
+ * <li>{@code stocks.rows}: a header followed by one fixed-size 96-byte record per stock,
+ * holding the symbol offset, price, volume, market capitalization and the links of the
+ * stock in the four {@link IntAVLTree}s (symbol, price, volume and market cap);</li>
+ * <li>{@code stocks.symbols}: an arena of {@code [varint length][UTF-8 bytes]} symbol
+ * records.</li>
+ * </ul>
+ * Both files are mapped in segments with {@link FileChannel#map}, so they can grow past
+ * 2 GB, and the Java heap only holds a few objects per segment whatever the number of
+ * stocks. Reopening a directory simply maps the files again: nothing is rebuilt.
+ * <p>
+ * Every change writes straight into the mapping, and the header is updated once the trees
+ * are consistent again. The index therefore survives the process being killed between two
+ * operations; to survive an operating system crash, call {@link #force()} (or
+ * {@link #close()}). For a crash-safe log of every change, use {@link StockPersistence}
+ * instead.
+ * <p>
+ * Symbols of removed or renamed stocks stay in the arena as garbage; the freed records
+ * are reused. Returned {@link Stock} objects are detached copies; see
+ * {@link HandleStockDataManager}.
+ */
+public class MappedStockDataManager extends HandleStockDataManager implements Closeable {
+    private static final String ROWS_FILE = "stocks.rows";
+    private static final String SYMBOLS_FILE = "stocks.symbols";
+    private static final int MAGIC = 0x4D535444; // "MSTD"
+    private static final int VERSION = 1;
+
+    // Record layout; record 0 is the header, the row of handle h is record h + 1
+    private static final int ROW_SIZE = 96;
+    private static final int SYMBOL = 0;
+    private static final int PRICE = 8;
+    private static final int VOLUME = 16;
+    private static final int MARKET_CAP = 24;
+    private static final int LINKS = 32;
+    private static final int LINK_SIZE = 12;
+    private static final int HEIGHTS = 80;
+
+    // Header layout
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_HANDLE_LIMIT = 8;
+    private static final int HEADER_FREE_HEAD = 12;
+    private static final int HEADER_ROOTS = 16;
+    private static final int HEADER_ARENA_USED = 32;
+    private static final int HEADER_ARENA_GARBAGE = 40;
+
+    private static final int ROW_SEGMENT_SHIFT = 18;
+    private static final int ROW_SEGMENT_MASK = (1 << ROW_SEGMENT_SHIFT) - 1;
+    private static final long ROW_SEGMENT_BYTES = (long) ROW_SIZE << ROW_SEGMENT_SHIFT;
+    private static final int ARENA_SEGMENT_SHIFT = 24;
+    private static final int ARENA_SEGMENT_MASK = (1 << ARENA_SEGMENT_SHIFT) - 1;
+    private static final long ARENA_SEGMENT_BYTES = 1L << ARENA_SEGMENT_SHIFT;
+
+    private final FileChannel rowChannel;
+    private final FileChannel arenaChannel;
+    private MappedByteBuffer[] rows = new MappedByteBuffer[0];
+    private MappedByteBuffer[] arena = new MappedByteBuffer[0];
+
+    // Copies of the header fields
+    private int handleLimit;
+    private int freeHead = IntAVLTree.NIL;
+    private long arenaUsed;
+    private long arenaGarbage;
+    private final int[] roots = {IntAVLTree.NIL, IntAVLTree.NIL, IntAVLTree.NIL, IntAVLTree.NIL};
+    private final IntAVLTree[] trees = new IntAVLTree[4];
+
+    /**
+     * Opens the index in the given directory, creating an empty one if there is none.
+     *
+     * @param directory the directory holding the index files, created if missing
+     * @throws IOException if the files cannot be opened or do not hold an index
+     */
+    public MappedStockDataManager(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        rowChannel = FileChannel.open(directory.resolve(ROWS_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        arenaChannel = FileChannel.open(directory.resolve(SYMBOLS_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean exists = rowChannel.size() > 0;
+            mapRows((int) ((rowChannel.size() + ROW_SEGMENT_BYTES - 1) / ROW_SEGMENT_BYTES));
+            mapArena((int) ((arenaChannel.size() + ARENA_SEGMENT_BYTES - 1) / ARENA_SEGMENT_BYTES));
+            if (exists) {
+                readHeader(directory);
+            } else {
+                writeHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            rowChannel.close();
+            arenaChannel.close();
+            throw e;
+        }
+        initTrees();
+    }
+
+    /**
+     * Creates an index in the given directory holding the given stocks, with the same rules
+     * as {@link StockDataManager#bulkLoad(Iterable)}. All trees are built directly in
+     * balanced shape.
+     *
+     * @param directory the directory for the index files, which must not hold an index yet
+     * @param stocks the stocks to load
+     * @return the manager of the new index
+     * @throws IOException if the files cannot be created
+     * @throws IllegalStateException if the directory already holds a non-empty index
+     */
+    public static MappedStockDataManager bulkLoad(Path directory, Iterable<Stock> stocks) throws IOException {
+        MappedStockDataManager manager = new MappedStockDataManager(directory);
+        if (manager.handleLimit > 0) {
+            manager.close();
+            throw new IllegalStateException("Directory already holds an index: " + directory);
+        }
+        manager.load(stocks);
+        return manager;
+    }
+
+    /**
+     * Writes all changes to the storage device.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : rows) {
+            segment.force();
+        }
+        for (MappedByteBuffer segment : arena) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Forces all changes to the storage device and closes the files. The manager must not
+     * be used afterwards.
+     *
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        rowChannel.close();
+        arenaChannel.close();
+    }
+
+    @Override
+    protected IntAVLTree createTree(int tree, IntAVLTree.HandleOrder order) {
+        trees[tree] = new IntAVLTree(order, new Links(tree), roots[tree]);
+        return trees[tree];
+    }
+
+    @Override
+    protected void changed() {
+        MappedByteBuffer header = rows[0];
+        for (int tree = 0; tree < trees.length; tree++) {
+            header.putInt(HEADER_ROOTS + 4 * tree, trees[tree].root());
+        }
+        header.putInt(HEADER_HANDLE_LIMIT, handleLimit);
+        header.putInt(HEADER_FREE_HEAD, freeHead);
+        header.putLong(HEADER_ARENA_USED, arenaUsed);
+        header.putLong(HEADER_ARENA_GARBAGE, arenaGarbage);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Rows
+    // ---------------------------------------------------------------------------------
+
+    @Override
+    protected int allocate(byte[] key) {
+        int handle;
+        if (freeHead != IntAVLTree.NIL) {
+            handle = freeHead;
+            freeHead = (int) getLong(handle, VOLUME);
+        } else {
+            handle = handleLimit++;
+            int record = handle + 1;
+            if ((record >>> ROW_SEGMENT_SHIFT) >= rows.length) {
+                mapRows(rows.length + 1);
+            }
+        }
+        putLong(handle, SYMBOL, append(key));
+        return handle;
+    }
+
+    @Override
+    protected void release(int handle) {
+        arenaGarbage += recordLength(handle);
+        putLong(handle, SYMBOL, -1);
+        putLong(handle, VOLUME, freeHead);
+        freeHead = handle;
+    }
+
+    @Override
+    protected void setSymbol(int handle, byte[] key) {
+        arenaGarbage += recordLength(handle);
+        putLong(handle, SYMBOL, append(key));
+    }
+
+    @Override
+    protected String symbol(int handle) {
+        long offset = getLong(handle, SYMBOL);
+        MappedByteBuffer segment = arena[(int) (offset >>> ARENA_SEGMENT_SHIFT)];
+        int position = (int) (offset & ARENA_SEGMENT_MASK);
+        int start = symbolStart(segment, position);
+        byte[] bytes = new byte[symbolLength(segment, position)];
+        segment.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected int compareSymbols(int a, int b) {
+        long offsetA = getLong(a, SYMBOL);
+        long offsetB = getLong(b, SYMBOL);
+        MappedByteBuffer segmentA = arena[(int) (offsetA >>> ARENA_SEGMENT_SHIFT)];
+        MappedByteBuffer segmentB = arena[(int) (offsetB >>> ARENA_SEGMENT_SHIFT)];
+        int positionA = (int) (offsetA & ARENA_SEGMENT_MASK);
+        int positionB = (int) (offsetB & ARENA_SEGMENT_MASK);
+        int lengthA = symbolLength(segmentA, positionA);
+        int lengthB = symbolLength(segmentB, positionB);
+        int startA = symbolStart(segmentA, positionA);
+        int startB = symbolStart(segmentB, positionB);
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(segmentA.get(startA + i) & 0xFF, segmentB.get(startB + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(lengthA, lengthB);
+    }
+
+    @Override
+    protected int compareKey(byte[] key, int handle) {
+        long offset = getLong(handle, SYMBOL);
+        MappedByteBuffer segment = arena[(int) (offset >>> ARENA_SEGMENT_SHIFT)];
+        int position = (int) (offset & ARENA_SEGMENT_MASK);
+        int length = symbolLength(segment, position);
+        int start = symbolStart(segment, position);
+        int common = Math.min(key.length, length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(key[i] & 0xFF, segment.get(start + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(key.length, length);
+    }
+
+    @Override
+    protected double price(int handle) {
+        int record = handle + 1;
+        return rows[record >>> ROW_SEGMENT_SHIFT].getDouble((record & ROW_SEGMENT_MASK) * ROW_SIZE + PRICE);
+    }
+
+    @Override
+    protected long volume(int handle) {
+        return getLong(handle, VOLUME);
+    }
+
+    @Override
+    protected long marketCap(int handle) {
+        return getLong(handle, MARKET_CAP);
+    }
+
+    @Override
+    protected void setPrice(int handle, double price) {
+        int record = handle + 1;
+        rows[record >>> ROW_SEGMENT_SHIFT].putDouble((record & ROW_SEGMENT_MASK) * ROW_SIZE + PRICE, price);
+    }
+
+    @Override
+    protected void setVolume(int handle, long volume) {
+        putLong(handle, VOLUME, volume);
+    }
+
+    @Override
+    protected void setMarketCap(int handle, long marketCap) {
+        putLong(handle, MARKET_CAP, marketCap);
+    }
+
+    private long getLong(int handle, int field) {
+        int record = handle + 1;
+        return rows[record >>> ROW_SEGMENT_SHIFT].getLong((record & ROW_SEGMENT_MASK) * ROW_SIZE + field);
+    }
+
+    private void putLong(int handle, int field, long value) {
+        int record = handle + 1;
+        rows[record >>> ROW_SEGMENT_SHIFT].putLong((record & ROW_SEGMENT_MASK) * ROW_SIZE + field, value);
+    }
+
+    /**
+     * The links of one of the four trees, stored in the records.
+     */
+    private final class Links implements IntAVLTree.NodeStore {
+        private final int left;
+        private final int right;
+        private final int size;
+        private final int height;
+
+        private Links(int tree) {
+            this.left = LINKS + LINK_SIZE * tree;
+            this.right = left + 4;
+            this.size = left + 8;
+            this.height = HEIGHTS + tree;
+        }
+
+        @Override
+        public int left(int node) {
+            int record = node + 1;
+            return rows[record >>> ROW_SEGMENT_SHIFT].getInt((record & ROW_SEGMENT_MASK) * ROW_SIZE + left);
+        }
+
+        @Override
+        public int right(int node) {
+            int record = node + 1;
+            return rows[record >>> ROW_SEGMENT_SHIFT].getInt((record & ROW_SEGMENT_MASK) * ROW_SIZE + right);
+        }
+
+        @Override
+        public int height(int node) {
+            int record = node + 1;
+            return rows[record >>> ROW_SEGMENT_SHIFT].get((record & ROW_SEGMENT_MASK) * ROW_SIZE + height);
+        }
+
+        @Override
+        public int size(int node) {
+            int record = node + 1;
+            return rows[record >>> ROW_SEGMENT_SHIFT].getInt((record & ROW_SEGMENT_MASK) * ROW_SIZE + size);
+        }
+
+        @Override
+        public void setLeft(int node, int child) {
+            int record = node + 1;
+            rows[record >>> ROW_SEGMENT_SHIFT].putInt((record & ROW_SEGMENT_MASK) * ROW_SIZE + left, child);
+        }
+
+        @Override
+        public void setRight(int node, int child) {
+            int record = node + 1;
+            rows[record >>> ROW_SEGMENT_SHIFT].putInt((record & ROW_SEGMENT_MASK) * ROW_SIZE + right, child);
+        }
+
+        @Override
+        public void setHeightAndSize(int node, int height, int size) {
+            int record = node + 1;
+            MappedByteBuffer segment = rows[record >>> ROW_SEGMENT_SHIFT];
+            int base = (record & ROW_SEGMENT_MASK) * ROW_SIZE;
+            segment.put(base + this.height, (byte) height);
+            segment.putInt(base + this.size, size);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Symbol arena
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Appends a symbol record to the arena. A record never spans two segments: if it does
+     * not fit in the rest of the current segment, it starts at the next one.
+     *
+     * @return the offset of the record
+     */
+    private long append(byte[] key) {
+        int needed = varintSize(key.length) + key.length;
+        if (needed > ARENA_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Symbol too long: " + key.length + " bytes");
+        }
+        long offset = arenaUsed;
+        if ((offset & ARENA_SEGMENT_MASK) + needed > ARENA_SEGMENT_BYTES) {
+            offset = (offset | ARENA_SEGMENT_MASK) + 1;
+        }
+        int index = (int) (offset >>> ARENA_SEGMENT_SHIFT);
+        if (index >= arena.length) {
+            mapArena(index + 1);
+        }
+        MappedByteBuffer segment = arena[index];
+        int position = (int) (offset & ARENA_SEGMENT_MASK);
+        int length = key.length;
+        while ((length & ~0x7F) != 0) {
+            segment.put(position++, (byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        segment.put(position++, (byte) length);
+        segment.put(position, key);
+        arenaUsed = offset + needed;
+        return offset;
+    }
+
+    private int recordLength(int handle) {
+        long offset = getLong(handle, SYMBOL);
+        MappedByteBuffer segment = arena[(int) (offset >>> ARENA_SEGMENT_SHIFT)];
+        int position = (int) (offset & ARENA_SEGMENT_MASK);
+        return symbolStart(segment, position) - position + symbolLength(segment, position);
+    }
+
+    private static int symbolStart(MappedByteBuffer segment, int position) {
+        while (segment.get(position) < 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static int symbolLength(MappedByteBuffer segment, int position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = segment.get(position++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Files
+    // ---------------------------------------------------------------------------------
+
+    private void mapRows(int segments) {
+        rows = map(rowChannel, rows, Math.max(1, segments), ROW_SEGMENT_BYTES);
+    }
+
+    private void mapArena(int segments) {
+        arena = map(arenaChannel, arena, Math.max(1, segments), ARENA_SEGMENT_BYTES);
+    }
+
+    /**
+     * Maps further segments of a file, growing the file as needed.
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, MappedByteBuffer[] mapped, int segments, long segmentBytes) {
+        if (segments <= mapped.length) {
+            return mapped;
+        }
+        MappedByteBuffer[] result = Arrays.copyOf(mapped, segments);
+        try {
+            for (int i = mapped.length; i < segments; i++) {
+                result[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow the index file", e);
+        }
+        return result;
+    }
+
+    private void readHeader(Path directory) throws IOException {
+        MappedByteBuffer header = rows[0];
+        if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("Not a stock index: " + directory);
+        }
+        handleLimit = header.getInt(HEADER_HANDLE_LIMIT);
+        freeHead = header.getInt(HEADER_FREE_HEAD);
+        for (int tree = 0; tree < roots.length; tree++) {
+            roots[tree] = header.getInt(HEADER_ROOTS + 4 * tree);
+        }
+        arenaUsed = header.getLong(HEADER_ARENA_USED);
+        arenaGarbage = header.getLong(HEADER_ARENA_GARBAGE);
+    }
+
+    private void writeHeader() {
+        MappedByteBuffer header = rows[0];
+        header.putInt(HEADER_MAGIC, MAGIC);
+        header.putInt(HEADER_VERSION, VERSION);
+        header.putInt(HEADER_HANDLE_LIMIT, handleLimit);
+        header.putInt(HEADER_FREE_HEAD, freeHead);
+        for (int tree = 0; tree < roots.length; tree++) {
+            header.putInt(HEADER_ROOTS + 4 * tree, roots[tree]);
+        }
+        header.putLong(HEADER_ARENA_USED, arenaUsed);
+        header.putLong(HEADER_ARENA_GARBAGE, arenaGarbage);
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what {@link StockMetrics} costs: the same mix of 80% searches and 20% value
+ * updates runs against the object and the columnar managers with metrics disabled and
+ * enabled, and the time per operation is compared. The metrics recorded by the last run
+ * are printed at the end.
+ * <p>
+ * Usage: {@code java MetricsBenchmark [symbolCount] [operationCount]}
+ * (defaults: 1,000,000 symbols, 5,000,000 operations).
+ */
+public class MetricsBenchmark {
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int operationCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+
+        Random random = new Random(42);
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextDouble() * 990,
+                    1000 + random.nextInt(9000), 1000000 + random.nextInt(100000)));
+        }
+        StockDataManager tree = StockDataManager.bulkLoad(stocks);
+        StockDataManager columnar = ColumnarStockDataManager.bulkLoad(stocks);
+        stocks = null;
+
+        String[] symbols = new String[operationCount];
+        for (int i = 0; i < operationCount; i++) {
+            symbols[i] = UpdateBenchmark.symbolFor('S', random.nextInt(symbolCount));
+        }
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            run(timed, "tree, metrics off", tree, symbols);
+            tree.enableMetrics().reset();
+            run(timed, "tree, metrics on", tree, symbols);
+            tree.disableMetrics();
+            run(timed, "columnar, metrics off", columnar, symbols);
+            columnar.enableMetrics().reset();
+            run(timed, "columnar, metrics on", columnar, symbols);
+            if (timed) {
+                System.out.println();
+                System.out.println(columnar.getMetrics().report());
+            }
+            columnar.disableMetrics();
+        }
+    }
+
+    private static void run(boolean timed, String label, StockDataManager manager, String[] symbols) {
+        long start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            String symbol = symbols[i];
+            if (i % 5 == 0) {
+                manager.updateStock(symbol, symbol, 10 + i % 990, 1000 + i % 9000, 1000000 + i % 100000);
+            } else if (manager.searchStock(symbol) != null) {
+                found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (timed) {
+            System.out.printf("%-24s %8.1f ns/op  (%d found)%n", label, (double) nanos / symbols.length, found);
+        }
+    }
+}
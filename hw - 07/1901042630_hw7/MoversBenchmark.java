@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares reading the top 20 gainers from a {@link TopMovers} tracker with traversing
+ * every stock and sorting by percent change, which is what the dashboards did before, and
+ * measures what the tracker adds to the cost of an update.
+ * <p>
+ * Usage: {@code java MoversBenchmark [symbolCount] [updateCount] [updatesPerQuery]}
+ * (defaults: 1,000,000 symbols, 1,000,000 updates, a query every 100,000 updates).
+ */
+public class MoversBenchmark {
+    private static final int TOP = 20;
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int updateCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int updatesPerQuery = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+
+            StockDataManager manager = load(symbolCount);
+            Map<String, Double> basePrices = new HashMap<>();
+            manager.forEachStock(stock -> basePrices.put(stock.getSymbol(), stock.getPrice()));
+            Timing scan = run(manager, symbolCount, updateCount, updatesPerQuery, () -> scanTopGainers(manager, basePrices));
+            basePrices.clear();
+
+            StockDataManager tracked = load(symbolCount);
+            TopMovers movers = new TopMovers();
+            movers.track(tracked);
+            Timing incremental = run(tracked, symbolCount, updateCount, updatesPerQuery, () -> movers.topGainers(TOP).get(0).getSymbol());
+
+            if (timed) {
+                System.out.printf("%-12s %10s %12s%n", "top gainers", "ns/update", "us/query");
+                scan.print("scan + sort");
+                incremental.print("TopMovers");
+                if (!scan.leader.equals(incremental.leader)) {
+                    throw new IllegalStateException("Leaders differ: " + scan.leader + " and " + incremental.leader);
+                }
+            }
+        }
+    }
+
+    private static StockDataManager load(int symbolCount) {
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        Random random = new Random(42);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextInt(990), 1000 + random.nextInt(9000), 1000000));
+        }
+        return StockDataManager.bulkLoad(stocks);
+    }
+
+    /**
+     * Applies random price and volume updates, asking for the top gainers every
+     * {@code updatesPerQuery} updates, and times the updates and the queries separately.
+     */
+    private static Timing run(StockDataManager manager, int symbolCount, int updateCount, int updatesPerQuery, Query query) {
+        Random random = new Random(7);
+        Timing timing = new Timing();
+        long start = System.nanoTime();
+        for (int i = 1; i <= updateCount; i++) {
+            String symbol = UpdateBenchmark.symbolFor('S', random.nextInt(symbolCount));
+            Stock stock = manager.searchStock(symbol);
+            double price = Math.max(1, stock.getPrice() * (1 + random.nextGaussian() * 0.01));
+            manager.updateStock(symbol, symbol, price, 1000 + random.nextInt(9000), 1000000);
+            if (i % updatesPerQuery == 0) {
+                long queryStart = System.nanoTime();
+                timing.leader = query.leader();
+                timing.queryNanos += System.nanoTime() - queryStart;
+                timing.queries++;
+            }
+        }
+        timing.updateNanos = System.nanoTime() - start - timing.queryNanos;
+        timing.updates = updateCount;
+        return timing;
+    }
+
+    /**
+     * Computes the percent change of every stock and sorts them all, highest first.
+     */
+    private static String scanTopGainers(StockDataManager manager, Map<String, Double> basePrices) {
+        List<Stock> stocks = new ArrayList<>(manager.size());
+        manager.forEachStock(stocks::add);
+        Comparator<Stock> byChange = Comparator.comparingDouble(stock -> {
+            double base = basePrices.get(stock.getSymbol());
+            return (stock.getPrice() - base) / base * 100;
+        });
+        stocks.sort(byChange.reversed().thenComparing(Stock::getSymbol, Comparator.reverseOrder()));
+        return stocks.subList(0, TOP).get(0).getSymbol();
+    }
+
+    /**
+     * Produces the symbol of the top gainer, so that both variants can be checked against
+     * each other.
+     */
+    private interface Query {
+        String leader();
+    }
+
+    private static final class Timing {
+        private long updateNanos;
+        private long updates;
+        private long queryNanos;
+        private long queries;
+        private String leader;
+
+        private void print(String label) {
+            System.out.printf("%-12s %10d %12d%n", label, updateNanos / updates, queryNanos / Math.max(1, queries) / 1_000);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks each {@link StockDataManager} operation on its own.
+ * <p>
+ * For every combination of operation, tree size and key distribution a fresh manager is
+ * bulk-loaded with {@code size} stocks. The harness then runs a number of warmup
+ * iterations, so that the JIT has compiled the code under test, followed by the measured
+ * iterations. Each iteration times a batch of operations whose keys have been prepared
+ * beforehand, so only the operation itself is measured. State changed by an iteration (for
+ * example the stocks added by an ADD batch) is undone outside the timed section, which keeps
+ * the tree at its nominal size.
+ * <p>
+ * The keys of an ADD or REMOVE batch are distinct, so that every operation inserts a new
+ * stock or removes an existing one rather than replacing a value or missing. Such a batch
+ * therefore holds at most {@code size} operations.
+ * <p>
+ * Results are printed as a table and can be written as JSON in the same layout as JMH
+ * ({@code benchmark}, {@code params}, {@code primaryMetric}), so they can be tracked across
+ * releases with the usual JMH tooling.
+ * <p>
+ * Usage: {@code java OperationBenchmark [--sizes 100,1000,...] [--ops add,remove,search,update]
+ * [--dist uniform,zipfian,sequential] [--warmup N] [--iterations N] [--batch N] [--json file]}
+ * <p>
+ * Sizes up to 10,000,000 are supported; the largest ones need a large heap (-Xmx).
+ */
+public class OperationBenchmark {
+
+    /**
+     * The operations that can be benchmarked.
+     */
+    public enum Operation {
+        ADD, REMOVE, SEARCH, UPDATE
+    }
+
+    /**
+     * The outcome of one benchmark: nanoseconds per operation for every measured iteration.
+     */
+    public static final class Measurement {
+        private final Operation operation;
+        private final int size;
+        private final KeyDistribution distribution;
+        private final int batch;
+        private final double[] nanosPerOp;
+
+        private Measurement(Operation operation, int size, KeyDistribution distribution, int batch, double[] nanosPerOp) {
+            this.operation = operation;
+            this.size = size;
+            this.distribution = distribution;
+            this.batch = batch;
+            this.nanosPerOp = nanosPerOp;
+        }
+
+        /**
+         * @return the operation that was measured
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the number of stocks in the manager
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return how keys were picked
+         */
+        public KeyDistribution getDistribution() {
+            return distribution;
+        }
+
+        /**
+         * @return the mean time per operation over all measured iterations, in nanoseconds
+         */
+        public double getMean() {
+            double sum = 0;
+            for (double value : nanosPerOp) {
+                sum += value;
+            }
+            return sum / nanosPerOp.length;
+        }
+
+        /**
+         * @return the half-width of the 99.9% confidence interval of the mean
+         */
+        public double getError() {
+            if (nanosPerOp.length < 2) {
+                return Double.NaN;
+            }
+            double mean = getMean();
+            double squares = 0;
+            for (double value : nanosPerOp) {
+                squares += (value - mean) * (value - mean);
+            }
+            double stddev = Math.sqrt(squares / (nanosPerOp.length - 1));
+            // 3.29 is the normal quantile for 99.9%; good enough for trend tracking
+            return 3.29 * stddev / Math.sqrt(nanosPerOp.length);
+        }
+
+        private String toJson() {
+            StringBuilder raw = new StringBuilder();
+            for (int i = 0; i < nanosPerOp.length; i++) {
+                raw.append(i == 0 ? "" : ", ").append(number(nanosPerOp[i]));
+            }
+            return "    {\n"
+                    + "        \"benchmark\" : \"StockDataManager." + operation.name().toLowerCase() + "\",\n"
+                    + "        \"mode\" : \"avgt\",\n"
+                    + "        \"measurementIterations\" : " + nanosPerOp.length + ",\n"
+                    + "        \"operationsPerIteration\" : " + batch + ",\n"
+                    + "        \"params\" : {\n"
+                    + "            \"size\" : \"" + size + "\",\n"
+                    + "            \"distribution\" : \"" + distribution.name().toLowerCase() + "\"\n"
+                    + "        },\n"
+                    + "        \"primaryMetric\" : {\n"
+                    + "            \"score\" : " + number(getMean()) + ",\n"
+                    + "            \"scoreError\" : " + number(getError()) + ",\n"
+                    + "            \"scoreUnit\" : \"ns/op\",\n"
+                    + "            \"rawData\" : [ [ " + raw + " ] ]\n"
+                    + "        }\n"
+                    + "    }";
+        }
+
+        private static String number(double value) {
+            return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.US, "%.3f", value);
+        }
+    }
+
+    /** Keeps search results reachable so the JIT cannot drop the lookups. */
+    private static volatile Object sink;
+
+    /**
+     * Measures one operation on a freshly loaded manager.
+     *
+     * @param operation the operation to measure
+     * @param size the number of stocks in the manager
+     * @param distribution how keys are picked
+     * @param batch the number of operations per iteration, at most {@code size} for ADD and
+     *        REMOVE
+     * @param warmup the number of unmeasured iterations
+     * @param iterations the number of measured iterations
+     * @return the measurement
+     */
+    public static Measurement measure(Operation operation, int size, KeyDistribution distribution,
+                                      int batch, int warmup, int iterations) {
+        boolean distinct = operation == Operation.ADD || operation == Operation.REMOVE;
+        if (distinct) {
+            batch = Math.min(batch, size);
+        }
+        List<Stock> stocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 100.0, 1000, 1000000));
+        }
+        StockDataManager manager = StockDataManager.bulkLoad(stocks);
+        stocks = null;
+
+        KeyDistribution.Sampler sampler = distribution.sampler(size, 42);
+        DistinctKeys distinctKeys = distinct ? new DistinctKeys(size, 42) : null;
+        int[] indexes = new int[batch];
+        String[] keys = new String[batch];
+        double[] results = new double[iterations];
+
+        for (int round = 0; round < warmup + iterations; round++) {
+            if (distinct) {
+                distinctKeys.fill(sampler, indexes);
+            } else {
+                for (int i = 0; i < batch; i++) {
+                    indexes[i] = sampler.next();
+                }
+            }
+            // ADD needs symbols that are not in the tree yet, everything else existing ones
+            char prefix = operation == Operation.ADD ? 'T' : 'S';
+            for (int i = 0; i < batch; i++) {
+                keys[i] = UpdateBenchmark.symbolFor(prefix, indexes[i]);
+            }
+
+            long elapsed = runBatch(manager, operation, keys, round);
+            if (round >= warmup) {
+                results[round - warmup] = (double) elapsed / batch;
+            }
+            restore(manager, operation, keys);
+        }
+        return new Measurement(operation, size, distribution, batch, results);
+    }
+
+    /**
+     * Draws batches of distinct key indexes. Each key is drawn from the sampler, which keeps
+     * the shape of the distribution; a key already in the batch is drawn again a few times
+     * and then replaced by the next key of a random permutation that is not in the batch
+     * yet, so that a batch can take every key even under a skewed distribution.
+     */
+    private static final class DistinctKeys {
+        private static final int REDRAWS = 8;
+
+        private final boolean[] taken;
+        private final int[] permutation;
+        private int cursor;
+
+        DistinctKeys(int size, long seed) {
+            taken = new boolean[size];
+            permutation = new int[size];
+            Random random = new Random(seed);
+            for (int i = 0; i < size; i++) {
+                int j = random.nextInt(i + 1);
+                permutation[i] = permutation[j];
+                permutation[j] = i;
+            }
+        }
+
+        void fill(KeyDistribution.Sampler sampler, int[] indexes) {
+            for (int i = 0; i < indexes.length; i++) {
+                int key = sampler.next();
+                for (int attempt = 0; taken[key] && attempt < REDRAWS; attempt++) {
+                    key = sampler.next();
+                }
+                while (taken[key]) {
+                    key = permutation[cursor];
+                    cursor = (cursor + 1) % permutation.length;
+                }
+                taken[key] = true;
+                indexes[i] = key;
+            }
+            for (int key : indexes) {
+                taken[key] = false;
+            }
+        }
+    }
+
+    private static long runBatch(StockDataManager manager, Operation operation, String[] keys, int round) {
+        long start = System.nanoTime();
+        switch (operation) {
+            case ADD:
+                for (String key : keys) {
+                    manager.addStock(key, 100.0, 1000, 1000000);
+                }
+                break;
+            case REMOVE:
+                for (String key : keys) {
+                    manager.removeStock(key);
+                }
+                break;
+            case SEARCH:
+                Stock last = null;
+                for (String key : keys) {
+                    last = manager.searchStock(key);
+                }
+                sink = last;
+                break;
+            case UPDATE:
+                for (int i = 0; i < keys.length; i++) {
+                    manager.updateStock(keys[i], keys[i], 100.0 + round + i, 1000, 1000000);
+                }
+                break;
+            default:
+                throw new AssertionError(operation);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Undoes the changes of an ADD or REMOVE batch so that every iteration starts from a
+     * tree of the same size.
+     */
+    private static void restore(StockDataManager manager, Operation operation, String[] keys) {
+        if (operation == Operation.ADD) {
+            for (String key : keys) {
+                manager.removeStock(key);
+            }
+        } else if (operation == Operation.REMOVE) {
+            for (String key : keys) {
+                manager.addStock(key, 100.0, 1000, 1000000);
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmarks selected on the command line.
+     *
+     * @param args the command-line options, see the class description
+     * @throws IOException if the JSON file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {100, 1_000, 10_000, 100_000, 1_000_000};
+        List<Operation> operations = new ArrayList<>(List.of(Operation.values()));
+        List<KeyDistribution> distributions = new ArrayList<>(List.of(KeyDistribution.values()));
+        int warmup = 5;
+        int iterations = 10;
+        int batch = 10_000;
+        String json = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--sizes":
+                    String[] parts = value.split(",");
+                    sizes = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        sizes[j] = (int) Double.parseDouble(parts[j].trim());
+                    }
+                    break;
+                case "--ops":
+                    operations.clear();
+                    for (String name : value.split(",")) {
+                        operations.add(Operation.valueOf(name.trim().toUpperCase()));
+                    }
+                    break;
+                case "--dist":
+                    distributions.clear();
+                    for (String name : value.split(",")) {
+                        distributions.add(KeyDistribution.parse(name));
+                    }
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(value);
+                    break;
+                case "--json":
+                    json = value;
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+            i++;
+        }
+
+        List<Measurement> measurements = new ArrayList<>();
+        System.out.printf("%-8s %-11s %10s %14s %12s%n", "op", "dist", "size", "ns/op", "error");
+        for (Operation operation : operations) {
+            for (KeyDistribution distribution : distributions) {
+                for (int size : sizes) {
+                    Measurement m = measure(operation, size, distribution, batch, warmup, iterations);
+                    measurements.add(m);
+                    System.out.printf(Locale.US, "%-8s %-11s %10d %14.1f %12.1f%n", operation, distribution.name().toLowerCase(),
+                            size, m.getMean(), m.getError());
+                }
+            }
+        }
+
+        if (json != null) {
+            writeJson(json, measurements);
+            System.out.println("Results written to " + json);
+        }
+    }
+
+    private static void writeJson(String filename, List<Measurement> measurements) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(filename))) {
+            writer.write("[\n");
+            for (int i = 0; i < measurements.size(); i++) {
+                writer.write(measurements.get(i).toJson());
+                writer.write(i + 1 < measurements.size() ? ",\n" : "\n");
+            }
+            writer.write("]\n");
+        }
+    }
+}
@@ -0,0 +1,628 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+/**
+ * A line chart of performance measurements that can be drawn without a display.
+ * <p>
+ * The chart is drawn onto any {@link Graphics2D}: a window ({@link GUIVisualization}), or
+ * a {@link BufferedImage} created by {@link #render}, which works on headless hosts and is
+ * saved with {@link #writePng}. {@link #writeSvg} produces the same drawing as SVG.
+ * <p>
+ * A chart of up to {@value #LABEL_LIMIT} points shows every point with its coordinates.
+ * Larger charts are drawn as a line through at most one point per pixel column, chosen
+ * with the Largest-Triangle-Three-Buckets algorithm ({@link #downsample}), which keeps
+ * the peaks and the overall shape. Millions of points therefore draw as fast as a few
+ * thousand.
+ * <p>
+ * Points can be added while the chart is shown ({@link #append}). The axes leave room to
+ * grow, so most new points fall inside them: such a point is added to the downsampled
+ * line directly, and only the small area around the new segment is reported to the
+ * {@link RepaintListener} for repainting. When a point falls outside the axes, the axes
+ * grow by half their span and the whole chart is repainted, which happens only a
+ * logarithmic number of times.
+ * <p>
+ * All methods are synchronized, so points can be appended by a benchmark thread while the
+ * Swing thread paints.
+ */
+public class PerformanceChart {
+    /** The largest number of points drawn individually with their coordinates. */
+    public static final int LABEL_LIMIT = 20;
+
+    private static final int PADDING = 50;
+    private static final int LABEL_PADDING = 50;
+    private static final int POINT_WIDTH = 4;
+    private static final int Y_DIVISIONS = 10;
+    private static final int MAX_X_DIVISIONS = 20;
+    // Room for one x-axis label, so that neighbouring labels do not overlap
+    private static final int X_LABEL_WIDTH = 70;
+
+    /**
+     * Told which part of the chart needs repainting after points were appended.
+     */
+    public interface RepaintListener {
+        /**
+         * Called after the chart changed, outside the chart's lock.
+         *
+         * @param area the area to repaint in the coordinates of the last drawing, or null
+         *        to repaint everything
+         */
+        void repaint(Rectangle area);
+    }
+
+    private final String title;
+    private final String xLabel;
+    private final String yLabel;
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private int count;
+    private double minX;
+    private double maxX;
+    private double minY;
+    private double maxY;
+    private boolean downsampling = true;
+    private RepaintListener listener;
+
+    // Size of the last drawing, which the repaint areas refer to; 0 before the first one
+    private int lastWidth;
+    private int lastHeight;
+
+    // The downsampled line: points in data coordinates, or null when it must be rebuilt
+    private double[] sampledX;
+    private double[] sampledY;
+    private int sampledCount;
+
+    /**
+     * Constructs an empty chart for live data.
+     *
+     * @param title the title of the chart
+     * @param xLabel the label of the x-axis
+     * @param yLabel the label of the y-axis
+     */
+    public PerformanceChart(String title, String xLabel, String yLabel) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+    }
+
+    /**
+     * Constructs a chart of time against size whose axes fit the given points exactly.
+     *
+     * @param title the title of the chart
+     * @param dataPointsX the sizes
+     * @param dataPointsY the times in nanoseconds
+     */
+    public PerformanceChart(String title, List<? extends Number> dataPointsX, List<? extends Number> dataPointsY) {
+        this(title, "Size", "Time (ns)");
+        int n = Math.min(dataPointsX.size(), dataPointsY.size());
+        for (int i = 0; i < n; i++) {
+            add(dataPointsX.get(i).doubleValue(), dataPointsY.get(i).doubleValue());
+        }
+        if (n > 0) {
+            minX = maxX = xs[0];
+            minY = maxY = ys[0];
+            for (int i = 1; i < n; i++) {
+                minX = Math.min(minX, xs[i]);
+                maxX = Math.max(maxX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the listener told about areas to repaint after {@link #append}.
+     *
+     * @param listener the listener, or null for none
+     */
+    public synchronized void setRepaintListener(RepaintListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Turns the downsampling of large charts on or off. Without it every point is drawn,
+     * which is only useful to compare against.
+     *
+     * @param downsampling true to draw at most one point per pixel column
+     */
+    public synchronized void setDownsampling(boolean downsampling) {
+        this.downsampling = downsampling;
+        sampledX = null;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Adds a point and tells the repaint listener which area changed.
+     * <p>
+     * Time complexity: O(1) amortized
+     *
+     * @param x the x value
+     * @param y the y value
+     */
+    public void append(double x, double y) {
+        Rectangle area;
+        RepaintListener current;
+        synchronized (this) {
+            add(x, y);
+            area = extend(x, y);
+            current = listener;
+        }
+        if (current != null) {
+            current.repaint(area);
+        }
+    }
+
+    /**
+     * Draws the chart onto an image.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the image
+     */
+    public BufferedImage render(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, width, height);
+            draw(g2, width, height);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Saves the chart as a PNG image.
+     *
+     * @param path the file to write
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @throws IOException if the file cannot be written
+     */
+    public void writePng(Path path, int width, int height) throws IOException {
+        if (!ImageIO.write(render(width, height), "png", path.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /**
+     * Returns the chart as an SVG document.
+     *
+     * @param width the width of the drawing
+     * @param height the height of the drawing
+     * @return the SVG text
+     */
+    public synchronized String toSvg(int width, int height) {
+        SvgCanvas canvas = new SvgCanvas(width, height);
+        draw(canvas, width, height);
+        return canvas.finish();
+    }
+
+    /**
+     * Saves the chart as an SVG document.
+     *
+     * @param path the file to write
+     * @param width the width of the drawing
+     * @param height the height of the drawing
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSvg(Path path, int width, int height) throws IOException {
+        Files.write(path, toSvg(width, height).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Draws the chart. The graphics clip is honoured, so a repaint of a small area only
+     * touches the pixels inside it.
+     *
+     * @param g2 the graphics to draw on
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     */
+    public synchronized void draw(Graphics2D g2, int width, int height) {
+        draw(new GraphicsCanvas(g2), width, height);
+    }
+
+    /**
+     * Picks {@code threshold} of the first {@code count} points with the
+     * Largest-Triangle-Three-Buckets algorithm (Steinarsson, "Downsampling Time Series for
+     * Visual Representation", 2013). The first and the last point are always kept; from
+     * each bucket in between, the point forming the largest triangle with the point kept
+     * before and the average of the next bucket is kept.
+     * <p>
+     * Time complexity: O(count)
+     *
+     * @param xs the x values, in increasing order
+     * @param ys the y values
+     * @param count the number of points
+     * @param threshold the number of points to keep
+     * @return the indexes of the kept points, in increasing order
+     */
+    public static int[] downsample(double[] xs, double[] ys, int count, int threshold) {
+        if (threshold >= count || threshold < 3) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] kept = new int[threshold];
+        double every = (double) (count - 2) / (threshold - 2);
+        int previous = 0;
+        kept[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third corner of the triangles
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += xs[i];
+                averageY += ys[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((xs[previous] - averageX) * (ys[i] - ys[previous])
+                        - (xs[previous] - xs[i]) * (averageY - ys[previous]));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[threshold - 1] = count - 1;
+        return kept;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Data and axes
+    // ---------------------------------------------------------------------------------
+
+    private void add(double x, double y) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * Fits the axes and the drawn line to a newly added point.
+     *
+     * @return the area to repaint, or null for everything
+     */
+    private Rectangle extend(double x, double y) {
+        if (count == 1) {
+            minX = maxX = x;
+            minY = maxY = y;
+            return null;
+        }
+        if (x < minX || x > maxX || y < minY || y > maxY) {
+            // Leave room for half the span again, so that rescaling stays rare
+            double spanX = Math.max(maxX, x) - Math.min(minX, x);
+            double spanY = Math.max(maxY, y) - Math.min(minY, y);
+            if (x < minX) {
+                minX = x - spanX / 2;
+            } else if (x > maxX) {
+                maxX = x + spanX / 2;
+            }
+            if (y < minY) {
+                minY = y - spanY / 2;
+            } else if (y > maxY) {
+                maxY = y + spanY / 2;
+            }
+            sampledX = null;
+        }
+        if (count <= LABEL_LIMIT || lastWidth == 0) {
+            return null;
+        }
+        if (sampledX == null) {
+            // Rebuilt here rather than on the next drawing, so that the points that follow
+            // can be added to it whether or not that drawing has happened yet
+            resample(plotWidth(lastWidth));
+            return null;
+        }
+
+        // Extend the downsampled line: one point per pixel column, keeping in each column
+        // the point farthest from the one before it. Without downsampling every point is kept
+        int plotWidth = plotWidth(lastWidth);
+        int plotHeight = plotHeight(lastHeight);
+        int last = sampledCount - 1;
+        double lastX = sampledX[last];
+        double lastY = sampledY[last];
+        Rectangle area = new Rectangle((int) px(lastX, plotWidth), (int) py(lastY, plotHeight), 0, 0);
+        if (downsampling && (int) px(lastX, plotWidth) == (int) px(x, plotWidth) && sampledCount >= 2) {
+            double beforeY = sampledY[last - 1];
+            area.add(px(sampledX[last - 1], plotWidth), py(beforeY, plotHeight));
+            if (Math.abs(y - beforeY) >= Math.abs(lastY - beforeY)) {
+                sampledX[last] = x;
+                sampledY[last] = y;
+            }
+        } else {
+            if (sampledCount == sampledX.length) {
+                sampledX = Arrays.copyOf(sampledX, sampledCount * 2);
+                sampledY = Arrays.copyOf(sampledY, sampledCount * 2);
+            }
+            sampledX[sampledCount] = x;
+            sampledY[sampledCount] = y;
+            sampledCount++;
+        }
+        area.add(px(x, plotWidth), py(y, plotHeight));
+        area.grow(POINT_WIDTH, POINT_WIDTH);
+        return area;
+    }
+
+    /**
+     * Rebuilds the downsampled line for the given plot width.
+     */
+    private void resample(int plotWidth) {
+        int[] kept = downsampling ? downsample(xs, ys, count, Math.max(3, plotWidth)) : downsample(xs, ys, count, count);
+        sampledX = new double[Math.max(16, kept.length * 2)];
+        sampledY = new double[sampledX.length];
+        for (int i = 0; i < kept.length; i++) {
+            sampledX[i] = xs[kept[i]];
+            sampledY[i] = ys[kept[i]];
+        }
+        sampledCount = kept.length;
+    }
+
+    private static int plotWidth(int width) {
+        return Math.max(1, width - 2 * PADDING - LABEL_PADDING);
+    }
+
+    private static int plotHeight(int height) {
+        return Math.max(1, height - 2 * PADDING - LABEL_PADDING);
+    }
+
+    private double px(double x, int plotWidth) {
+        double span = maxX - minX;
+        return PADDING + LABEL_PADDING + (span == 0 ? 0 : (x - minX) / span * plotWidth);
+    }
+
+    private double py(double y, int plotHeight) {
+        double span = maxY - minY;
+        return PADDING + (span == 0 ? plotHeight : (maxY - y) / span * plotHeight);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Drawing
+    // ---------------------------------------------------------------------------------
+
+    private void draw(Canvas canvas, int width, int height) {
+        int plotWidth = plotWidth(width);
+        int plotHeight = plotHeight(height);
+        int left = PADDING + LABEL_PADDING;
+        int bottom = PADDING + plotHeight;
+        if (width != lastWidth || height != lastHeight) {
+            sampledX = null;
+        }
+        lastWidth = width;
+        lastHeight = height;
+
+        canvas.color(Color.WHITE);
+        canvas.fillRect(left, PADDING, plotWidth, plotHeight);
+        canvas.color(Color.BLACK);
+        canvas.text(title, width / 2.0, PADDING / 2.0, 0);
+
+        // Axes and their labels
+        canvas.line(left, PADDING, left, bottom);
+        canvas.line(left, bottom, left + plotWidth, bottom);
+        canvas.text(xLabel, left + plotWidth / 2.0, bottom + 40, 0);
+        canvas.text(yLabel, PADDING - 40, PADDING + plotHeight / 2.0, -1);
+
+        // Y-axis grid lines and labels
+        for (int i = 0; i <= Y_DIVISIONS; i++) {
+            double y = bottom - (double) i * plotHeight / Y_DIVISIONS;
+            if (count > 0) {
+                canvas.color(Color.BLACK);
+                canvas.text(format(minY + (maxY - minY) * i / Y_DIVISIONS, maxY - minY), left - 5, y + 4, 1);
+            }
+            canvas.color(Color.BLACK);
+            canvas.line(left, y, left + POINT_WIDTH, y);
+            canvas.color(Color.LIGHT_GRAY);
+            canvas.line(left + POINT_WIDTH, y, left + plotWidth, y);
+        }
+
+        // X-axis grid lines and labels
+        if (count > 1) {
+            int divisions = Math.max(1, Math.min(MAX_X_DIVISIONS, plotWidth / X_LABEL_WIDTH));
+            for (int i = 0; i <= divisions; i++) {
+                double x = left + (double) i * plotWidth / divisions;
+                canvas.color(Color.BLACK);
+                canvas.text(format(minX + (maxX - minX) * i / divisions, maxX - minX), x, bottom + 18, 0);
+                canvas.line(x, bottom, x, bottom - POINT_WIDTH);
+                canvas.color(Color.LIGHT_GRAY);
+                canvas.line(x, bottom - POINT_WIDTH, x, PADDING);
+            }
+        }
+
+        canvas.color(Color.RED);
+        if (count <= LABEL_LIMIT) {
+            for (int i = 0; i < count; i++) {
+                double x = px(xs[i], plotWidth);
+                double y = py(ys[i], plotHeight);
+                canvas.fillOval(x, y, POINT_WIDTH);
+                canvas.text("(" + format(xs[i], 1e9) + ", " + format(ys[i], 1e9) + ")", x, y - 5, -1);
+            }
+            return;
+        }
+        if (sampledX == null) {
+            resample(plotWidth);
+        }
+        double[] lineX = new double[sampledCount];
+        double[] lineY = new double[sampledCount];
+        for (int i = 0; i < sampledCount; i++) {
+            lineX[i] = px(sampledX[i], plotWidth);
+            lineY[i] = py(sampledY[i], plotHeight);
+        }
+        canvas.polyline(lineX, lineY, sampledCount);
+    }
+
+    /**
+     * Formats an axis value: whole numbers when the axis spans enough for them, two
+     * decimals otherwise.
+     */
+    private static String format(double value, double span) {
+        if (span >= 100 || value == Math.rint(value)) {
+            return Long.toString(Math.round(value));
+        }
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    /**
+     * The drawing operations the chart needs, so that the same code draws onto a
+     * {@link Graphics2D} and into an SVG document.
+     */
+    private interface Canvas {
+        void color(Color color);
+
+        void line(double x0, double y0, double x1, double y1);
+
+        void fillRect(double x, double y, double width, double height);
+
+        void fillOval(double centerX, double centerY, double diameter);
+
+        /**
+         * Draws text with its baseline at {@code y}; {@code align} is -1 to start, 0 to
+         * center and 1 to end the text at {@code x}.
+         */
+        void text(String text, double x, double y, int align);
+
+        void polyline(double[] xs, double[] ys, int count);
+    }
+
+    private static final class GraphicsCanvas implements Canvas {
+        private final Graphics2D g2;
+
+        private GraphicsCanvas(Graphics2D g2) {
+            this.g2 = g2;
+        }
+
+        @Override
+        public void color(Color color) {
+            g2.setColor(color);
+        }
+
+        @Override
+        public void line(double x0, double y0, double x1, double y1) {
+            g2.drawLine((int) x0, (int) y0, (int) x1, (int) y1);
+        }
+
+        @Override
+        public void fillRect(double x, double y, double width, double height) {
+            g2.fillRect((int) x, (int) y, (int) width, (int) height);
+        }
+
+        @Override
+        public void fillOval(double centerX, double centerY, double diameter) {
+            int d = (int) diameter;
+            g2.fillOval((int) centerX - d / 2, (int) centerY - d / 2, d, d);
+        }
+
+        @Override
+        public void text(String text, double x, double y, int align) {
+            FontMetrics metrics = g2.getFontMetrics();
+            int textWidth = metrics.stringWidth(text);
+            g2.drawString(text, (int) x - (align + 1) * textWidth / 2, (int) y);
+        }
+
+        @Override
+        public void polyline(double[] xs, double[] ys, int count) {
+            Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
+            path.moveTo(xs[0], ys[0]);
+            for (int i = 1; i < count; i++) {
+                path.lineTo(xs[i], ys[i]);
+            }
+            g2.setStroke(new BasicStroke(1f));
+            g2.draw(path);
+        }
+    }
+
+    private static final class SvgCanvas implements Canvas {
+        private final StringBuilder svg = new StringBuilder();
+        private String color = "#000000";
+
+        private SvgCanvas(int width, int height) {
+            svg.append(String.format(Locale.US, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" "
+                    + "viewBox=\"0 0 %d %d\" font-family=\"sans-serif\" font-size=\"12\">%n", width, height, width, height));
+            svg.append(String.format("<rect width=\"%d\" height=\"%d\" fill=\"#ffffff\"/>%n", width, height));
+        }
+
+        private String finish() {
+            return svg.append("</svg>\n").toString();
+        }
+
+        @Override
+        public void color(Color color) {
+            this.color = String.format("#%06x", color.getRGB() & 0xFFFFFF);
+        }
+
+        @Override
+        public void line(double x0, double y0, double x1, double y1) {
+            svg.append(String.format(Locale.US, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"%s\"/>%n",
+                    x0, y0, x1, y1, color));
+        }
+
+        @Override
+        public void fillRect(double x, double y, double width, double height) {
+            svg.append(String.format(Locale.US, "<rect x=\"%.1f\" y=\"%.1f\" width=\"%.1f\" height=\"%.1f\" fill=\"%s\"/>%n",
+                    x, y, width, height, color));
+        }
+
+        @Override
+        public void fillOval(double centerX, double centerY, double diameter) {
+            svg.append(String.format(Locale.US, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"%.1f\" fill=\"%s\"/>%n",
+                    centerX, centerY, diameter / 2, color));
+        }
+
+        @Override
+        public void text(String text, double x, double y, int align) {
+            String anchor = align < 0 ? "start" : align == 0 ? "middle" : "end";
+            String escaped = text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            svg.append(String.format(Locale.US, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"%s\" fill=\"%s\">%s</text>%n",
+                    x, y, anchor, color, escaped));
+        }
+
+        @Override
+        public void polyline(double[] xs, double[] ys, int count) {
+            svg.append("<polyline fill=\"none\" stroke=\"").append(color).append("\" points=\"");
+            for (int i = 0; i < count; i++) {
+                svg.append(String.format(Locale.US, i == 0 ? "%.1f,%.1f" : " %.1f,%.1f", xs[i], ys[i]));
+            }
+            svg.append("\"/>\n");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures what {@link StockPersistence} costs: the extra time per update for each sync
+ * policy, and how long recovery takes from a snapshot plus a log tail.
+ * <p>
+ * Usage: {@code java PersistenceBenchmark [symbolCount] [updateCount] [directory]}
+ * (defaults: 1,000,000 symbols, 1,000,000 updates, a temporary directory).
+ */
+public class PersistenceBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int updateCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Path base = args.length > 2 ? Files.createDirectories(Path.of(args[2])) : Files.createTempDirectory("stock-persistence");
+
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 100.0, 1000, 1000000));
+        }
+
+        System.out.println("Steady-state update cost (" + updateCount + " updates on " + symbolCount + " symbols):");
+        long plain = runUpdates(StockDataManager.bulkLoad(copy(stocks)), symbolCount, updateCount);
+        System.out.printf("  %-28s %8d ns/op%n", "no persistence", plain / updateCount);
+
+        for (WriteAheadLog.SyncPolicy policy : WriteAheadLog.SyncPolicy.values()) {
+            // Forcing every record is orders of magnitude slower, so measure fewer of them
+            int count = policy == WriteAheadLog.SyncPolicy.EVERY_RECORD ? Math.min(updateCount, 2_000) : updateCount;
+            Path directory = Files.createDirectories(base.resolve(policy.name().toLowerCase()));
+            StockPersistence persistence = new StockPersistence(directory, policy);
+            StockDataManager manager = persistence.recover(null);
+            bulkAdd(manager, stocks);
+            persistence.snapshot();
+            long elapsed = runUpdates(manager, symbolCount, count);
+            persistence.close();
+            System.out.printf("  %-28s %8d ns/op%n", "WAL, " + policy.name().toLowerCase() + " sync", elapsed / count);
+        }
+
+        // The directory of the NONE run now holds a full snapshot and an update-only log tail
+        Path directory = base.resolve(WriteAheadLog.SyncPolicy.NONE.name().toLowerCase());
+        long logBytes = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".log")) {
+                    logBytes += Files.size(file);
+                }
+            }
+        }
+        long snapshotBytes = Files.size(directory.resolve("snapshot.bin"));
+
+        long start = System.nanoTime();
+        StockPersistence persistence = new StockPersistence(directory, WriteAheadLog.SyncPolicy.NONE);
+        StockDataManager recovered = persistence.recover();
+        long recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        persistence.close();
+
+        System.out.println();
+        System.out.printf("Recovery of %d stocks (snapshot %d KiB, log tail %d KiB, %d records): %d ms%n",
+                recovered.size(), snapshotBytes / 1024, logBytes / 1024, updateCount, recoveryMillis);
+
+        checkRecordLimit(base.resolve("oversized.log"));
+        if (args.length <= 2) {
+            deleteRecursively(base);
+        }
+    }
+
+    /**
+     * Loads the stocks through {@code addStock} while the log is attached, then the caller
+     * snapshots so that the log tail holds only the measured updates.
+     */
+    private static void bulkAdd(StockDataManager manager, List<Stock> stocks) {
+        for (Stock stock : stocks) {
+            manager.addStock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+        }
+    }
+
+    /**
+     * Checks that a record too large for replay is rejected when it is appended, and that
+     * the records after it are still recovered.
+     */
+    private static void checkRecordLimit(Path file) throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.NONE, 1, 0)) {
+            log.logAdd("A", 1.0, 1, 1);
+            try {
+                log.logAdd("X".repeat(1 << 20), 1.0, 1, 1);
+                throw new IllegalStateException("An oversized record was appended");
+            } catch (IOException expected) {
+                // Rejected before anything was written
+            }
+            log.logAdd("B", 2.0, 2, 2);
+        }
+        StockDataManager manager = new StockDataManager();
+        if (WriteAheadLog.replay(file, manager) != 2 || manager.searchStock("B") == null) {
+            throw new IllegalStateException("Records after a rejected one were lost");
+        }
+        System.out.println("An oversized record is rejected at append and later records recover");
+    }
+
+    private static long runUpdates(StockDataManager manager, int symbolCount, int updateCount) {
+        Random random = new Random(42);
+        String[] symbols = new String[updateCount];
+        for (int i = 0; i < updateCount; i++) {
+            symbols[i] = UpdateBenchmark.symbolFor('S', random.nextInt(symbolCount));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < updateCount; i++) {
+            manager.updateStock(symbols[i], symbols[i], 10 + (i % 1000), 1000 + i, 1000000);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<Stock> copy(List<Stock> stocks) {
+        List<Stock> copy = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            copy.add(new Stock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap()));
+        }
+        return copy;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
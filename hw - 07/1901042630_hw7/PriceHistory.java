@@ -0,0 +1,120 @@
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a {@link TickHistory} for every symbol of a {@link StockDataManager}.
+ * <p>
+ * Registered as a {@link StockListener}, it records a tick with the stock's price and
+ * volume whenever a stock is added or updated; adding a symbol that already exists simply
+ * continues its history. A history follows its stock when the symbol changes and is
+ * dropped when the stock is removed. Ticks can also be recorded directly with
+ * {@link #record}, for example with the exchange timestamps of a feed.
+ * <p>
+ * Each history has a fixed capacity, so memory is bounded by the number of symbols times
+ * the capacity. It is safe to use with {@link ConcurrentStockDataManager}.
+ * <p>
+ * Typical use:
+ * <pre>
+ * PriceHistory history = new PriceHistory(1024, 60_000);
+ * manager.addListener(history);
+ * ...
+ * double vwap = history.get("AAPL").vwap();
+ * </pre>
+ */
+public class PriceHistory implements StockListener {
+    private final int capacity;
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final Map<String, TickHistory> histories = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a price history that timestamps ticks with the system clock.
+     *
+     * @param capacity the number of ticks to keep per symbol
+     * @param windowMillis the length of the sliding window in milliseconds
+     */
+    public PriceHistory(int capacity, long windowMillis) {
+        this(capacity, windowMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs a price history.
+     *
+     * @param capacity the number of ticks to keep per symbol
+     * @param windowMillis the length of the sliding window in milliseconds
+     * @param clock the source of the timestamps of ticks recorded by the listener methods
+     * @throws IllegalArgumentException if the capacity or the window is not positive
+     */
+    public PriceHistory(int capacity, long windowMillis, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Records a tick for a symbol, creating its history if needed.
+     *
+     * @param symbol the stock symbol
+     * @param timestamp the time of the tick in milliseconds
+     * @param price the traded price
+     * @param volume the traded volume
+     */
+    public void record(String symbol, long timestamp, double price, long volume) {
+        histories.computeIfAbsent(symbol, s -> new TickHistory(capacity, windowMillis)).record(timestamp, price, volume);
+    }
+
+    /**
+     * Returns the history of a symbol.
+     *
+     * @param symbol the stock symbol
+     * @return the history, or null if no tick was recorded for the symbol
+     */
+    public TickHistory get(String symbol) {
+        return histories.get(symbol);
+    }
+
+    /**
+     * Returns the symbols that have a history.
+     *
+     * @return a live view of the symbols
+     */
+    public Set<String> symbols() {
+        return histories.keySet();
+    }
+
+    /**
+     * Drops every history.
+     */
+    public void clear() {
+        histories.clear();
+    }
+
+    @Override
+    public void stockAdded(Stock stock) {
+        record(stock.getSymbol(), clock.getAsLong(), stock.getPrice(), stock.getVolume());
+    }
+
+    @Override
+    public void stockRemoved(Stock stock) {
+        histories.remove(stock.getSymbol());
+    }
+
+    @Override
+    public void stockUpdated(Stock previous, Stock current) {
+        if (!previous.getSymbol().equals(current.getSymbol())) {
+            TickHistory history = histories.remove(previous.getSymbol());
+            if (history != null) {
+                histories.put(current.getSymbol(), history);
+            }
+        }
+        record(current.getSymbol(), clock.getAsLong(), current.getPrice(), current.getVolume());
+    }
+}
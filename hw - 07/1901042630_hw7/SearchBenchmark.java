@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the autocomplete queries: {@link StockDataManager#searchByPrefix} and
+ * {@link SymbolTrie#searchByPrefix} with a limit of 10 for two- to four-character
+ * prefixes, and {@link SymbolTrie#searchSimilar} for symbols with one mistyped character.
+ * For comparison, both kinds of query are also answered by scanning every stock, which was
+ * the only option before.
+ * <p>
+ * Usage: {@code java SearchBenchmark [symbolCount] [queryCount]}
+ * (defaults: 1,000,000 symbols, 10,000 queries).
+ */
+public class SearchBenchmark {
+    private static final int LIMIT = 10;
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        Random random = new Random(42);
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextDouble() * 990,
+                    1000 + random.nextInt(9000), 1000000 + random.nextInt(100000)));
+        }
+        StockDataManager manager = StockDataManager.bulkLoad(stocks);
+        stocks = null;
+        SymbolTrie trie = new SymbolTrie();
+        trie.track(manager);
+
+        String[] prefixes = new String[queryCount];
+        String[] typos = new String[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            String symbol = UpdateBenchmark.symbolFor('S', random.nextInt(symbolCount));
+            prefixes[i] = symbol.substring(0, 2 + random.nextInt(3));
+            char[] chars = symbol.toCharArray();
+            chars[1 + random.nextInt(chars.length - 1)] = (char) ('A' + random.nextInt(26));
+            typos[i] = new String(chars);
+        }
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+
+            long start = System.nanoTime();
+            long hits = 0;
+            for (String prefix : prefixes) {
+                hits += manager.searchByPrefix(prefix, LIMIT).size();
+            }
+            report(timed, "manager prefix", start, queryCount, hits);
+
+            start = System.nanoTime();
+            hits = 0;
+            for (String prefix : prefixes) {
+                hits += trie.searchByPrefix(prefix, LIMIT).size();
+            }
+            report(timed, "trie prefix", start, queryCount, hits);
+
+            start = System.nanoTime();
+            hits = 0;
+            for (String typo : typos) {
+                hits += trie.searchSimilar(typo, LIMIT).size();
+            }
+            report(timed, "trie similar", start, queryCount, hits);
+
+            // Scanning is slow, so only a hundredth of the queries are scanned
+            int scanned = Math.max(1, queryCount / 100);
+            start = System.nanoTime();
+            hits = 0;
+            for (int i = 0; i < scanned; i++) {
+                hits += scanPrefix(manager, prefixes[i]);
+            }
+            report(timed, "prefix by scanning", start, scanned, hits);
+
+            start = System.nanoTime();
+            hits = 0;
+            for (int i = 0; i < scanned; i++) {
+                hits += scanSimilar(manager, typos[i]);
+            }
+            report(timed, "similar by scanning", start, scanned, hits);
+        }
+    }
+
+    private static long scanPrefix(StockDataManager manager, String prefix) {
+        long hits = 0;
+        for (Stock stock : manager) {
+            if (hits < LIMIT && stock.getSymbol().startsWith(prefix)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static long scanSimilar(StockDataManager manager, String symbol) {
+        long hits = 0;
+        for (Stock stock : manager) {
+            if (hits < LIMIT && withinOneEdit(symbol, stock.getSymbol())) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Tells whether two strings differ by at most one inserted, deleted or replaced
+     * character.
+     */
+    private static boolean withinOneEdit(String a, String b) {
+        if (a.length() > b.length()) {
+            return withinOneEdit(b, a);
+        }
+        if (b.length() - a.length() > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (a.length() == b.length()) {
+            return a.regionMatches(i + 1, b, i + 1, a.length() - i - 1);
+        }
+        return a.regionMatches(i, b, i + 1, a.length() - i);
+    }
+
+    private static void report(boolean timed, String label, long start, int queryCount, long hits) {
+        long nanos = System.nanoTime() - start;
+        if (timed) {
+            System.out.printf("%-20s %10.1f us/query  (%d results)%n", label, nanos / 1000.0 / queryCount, hits);
+        }
+    }
+}
@@ -1,15 +1,162 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Manages the AVL tree and provides methods for data management such as adding stocks,
  * removing stocks, searching for stocks, and updating stock information.
+ * <p>
+ * Besides the primary tree keyed by symbol, the manager keeps secondary indexes ordered by
+ * price, volume and market capitalization. They are updated automatically by
+ * {@link #addStock}, {@link #removeStock} and {@link #updateStock}, so stocks returned by
+ * this class should only be changed through {@link #updateStock}.
+ * <p>
+ * Every change can be observed by registering a {@link StockListener}. The stocks can be
+ * read lazily in symbol order with {@link #iterator()} or {@link #stream()}; a parallel
+ * stream splits the work by subtree.
+ * <p>
+ * The latency of every operation can be recorded by calling {@link #enableMetrics()}; see
+ * {@link StockMetrics}. Searches for a small set of popular symbols can be answered from
+ * a bounded cache by calling {@link #enableCache(int)}; see {@link HotSymbolCache}.
  */
-public class StockDataManager {
-    private AVLTree avlTree;
+public class StockDataManager implements Iterable<Stock> {
+    private AVLTree<String, Stock> avlTree;
+    private StockIndex priceIndex;
+    private StockIndex volumeIndex;
+    private StockIndex marketCapIndex;
+    private final List<StockListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile StockMetrics metrics;
+    private volatile HotSymbolCache cache;
 
     /**
      * Constructs a new StockDataManager.
      */
     public StockDataManager() {
-        this.avlTree = new AVLTree();
+        this(true);
+    }
+
+    /**
+     * Constructs a new StockDataManager, optionally without its AVL tree and secondary
+     * indexes. A subclass that keeps the stocks in storage of its own and overrides every
+     * operation that reads or changes them passes false, so that no unused tree is built.
+     *
+     * @param createStorage whether to create the AVL tree and the secondary indexes
+     */
+    protected StockDataManager(boolean createStorage) {
+        if (createStorage) {
+            this.avlTree = new AVLTree<>();
+            this.priceIndex = new StockIndex(Comparator.comparingDouble(Stock::getPrice));
+            this.volumeIndex = new StockIndex(Comparator.comparingLong(Stock::getVolume));
+            this.marketCapIndex = new StockIndex(Comparator.comparingLong(Stock::getMarketCap));
+        }
+    }
+
+    /**
+     * Creates a StockDataManager holding the given stocks.
+     * <p>
+     * Instead of inserting the stocks one at a time, the trees are built directly in
+     * balanced shape. Input that is already sorted by symbol is detected and used as is;
+     * otherwise it is sorted first. If a symbol appears more than once, the last occurrence
+     * wins, just as with repeated {@link #addStock} calls. The stocks are stored as given,
+     * not copied.
+     * <p>
+     * Time complexity: O(n) for the symbol tree on sorted input, O(n log n) otherwise and
+     * for the secondary indexes
+     *
+     * @param stocks the stocks to load
+     * @return a new manager holding the stocks
+     */
+    public static StockDataManager bulkLoad(Iterable<Stock> stocks) {
+        StockDataManager manager = new StockDataManager();
+        manager.load(stocks);
+        return manager;
+    }
+
+    /**
+     * Creates a StockDataManager holding the stocks listed in a file. Each non-empty line
+     * holds {@code SYMBOL PRICE VOLUME MARKETCAP}, optionally preceded by {@code ADD} so
+     * that the ADD lines of a command file can be loaded directly.
+     *
+     * @param path the file to load
+     * @return a new manager holding the stocks
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed
+     * @see #bulkLoad(Iterable)
+     */
+    public static StockDataManager bulkLoad(Path path) throws IOException {
+        List<Stock> stocks = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int first = parts[0].equals("ADD") ? 1 : 0;
+                if (parts.length - first != 4) {
+                    throw new IllegalArgumentException("Malformed stock on line " + lineNumber + ": " + line);
+                }
+                try {
+                    stocks.add(new Stock(parts[first], Double.parseDouble(parts[first + 1]),
+                            Long.parseLong(parts[first + 2]), Long.parseLong(parts[first + 3])));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed stock on line " + lineNumber + ": " + line, e);
+                }
+            }
+        }
+        return bulkLoad(stocks);
+    }
+
+    /**
+     * Replaces the contents of this manager with the given stocks.
+     *
+     * @param input the stocks to load
+     */
+    private void load(Iterable<Stock> input) {
+        List<Stock> stocks = new ArrayList<>();
+        boolean sorted = true;
+        String previous = null;
+        for (Stock stock : input) {
+            if (previous != null && previous.compareTo(stock.getSymbol()) >= 0) {
+                sorted = false;
+            }
+            previous = stock.getSymbol();
+            stocks.add(stock);
+        }
+
+        if (!sorted) {
+            // The sort is stable, so the last stock of each run of equal symbols is the newest
+            stocks.sort(Comparator.comparing(Stock::getSymbol));
+            List<Stock> unique = new ArrayList<>(stocks.size());
+            for (int i = 0; i < stocks.size(); i++) {
+                if (i + 1 == stocks.size() || !stocks.get(i).getSymbol().equals(stocks.get(i + 1).getSymbol())) {
+                    unique.add(stocks.get(i));
+                }
+            }
+            stocks = unique;
+        }
+
+        List<String> symbols = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            symbols.add(stock.getSymbol());
+        }
+        avlTree.loadSorted(symbols, stocks);
+        priceIndex.loadAll(stocks);
+        volumeIndex.loadAll(stocks);
+        marketCapIndex.loadAll(stocks);
     }
 
     /**
@@ -21,8 +168,19 @@ public class StockDataManager {
      * @param marketCap the market capitalization
      */
     public void addStock(String symbol, double price, long volume, long marketCap) {
-        Stock stock = new Stock(symbol, price, volume, marketCap);
-        avlTree.insert(stock);
+        long start = startTiming();
+        try {
+            Stock stock = new Stock(symbol, price, volume, marketCap);
+            Stock previous = avlTree.insert(symbol, stock);
+            if (previous != null) {
+                unindex(previous);
+                invalidateCached(symbol);
+            }
+            index(stock);
+            fireAdded(stock);
+        } finally {
+            stopTiming(StockMetrics.Operation.ADD, start);
+        }
     }
 
     /**
@@ -31,40 +189,283 @@ public class StockDataManager {
      * @param symbol the stock symbol to remove
      */
     public void removeStock(String symbol) {
-        avlTree.delete(symbol);
+        long start = startTiming();
+        try {
+            Stock removed = avlTree.delete(symbol);
+            if (removed != null) {
+                unindex(removed);
+                invalidateCached(symbol);
+                fireRemoved(removed);
+            }
+        } finally {
+            stopTiming(StockMetrics.Operation.REMOVE, start);
+        }
     }
 
     /**
-     * Searches for a stock in the AVL tree.
+     * Searches for a stock, first in the hot-symbol cache if it is enabled, then in the
+     * AVL tree.
      *
      * @param symbol the stock symbol to search for
      * @return the stock if found, otherwise null
      */
     public Stock searchStock(String symbol) {
+        long start = startTiming();
+        try {
+            HotSymbolCache current = cache;
+            return current == null ? lookup(symbol) : current.get(symbol);
+        } finally {
+            stopTiming(StockMetrics.Operation.SEARCH, start);
+        }
+    }
+
+    /**
+     * Searches for a stock in the AVL tree, bypassing the hot-symbol cache. Subclasses that
+     * store their stocks elsewhere override this method rather than {@link #searchStock}.
+     *
+     * @param symbol the stock symbol to search for
+     * @return the stock if found, otherwise null
+     */
+    protected Stock lookup(String symbol) {
         return avlTree.search(symbol);
     }
 
     /**
      * Updates a stock in the AVL tree.
+     * <p>
+     * When the symbol stays the same only the stock values change: the symbol tree is not
+     * touched and only the secondary indexes whose field actually changed are updated.
+     * When the symbol changes, the entry is re-keyed with a single move in the symbol tree.
+     * <p>
+     * Time complexity: O(log n)
      *
      * @param symbol the current stock symbol
      * @param newSymbol the new stock symbol
      * @param newPrice the new stock price
      * @param newVolume the new trading volume
      * @param newMarketCap the new market capitalization
+     * @return true if the stock was updated, false if it was not found or the new symbol
+     *         already belongs to another stock
      */
-    public void updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
-        Stock stock = avlTree.search(symbol);
-        if (stock != null) {
+    public boolean updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+        long start = startTiming();
+        try {
+            Stock stock = avlTree.search(symbol);
+            if (stock == null) {
+                return false;
+            }
+
+            // Listeners get the old values, which are about to be overwritten in place
+            Stock previous = hasListeners() ? copyOf(stock) : null;
+
+            if (symbol.equals(newSymbol)) {
+                // The stock changes in place, so a cached reference to it stays valid
+                updateValues(stock, newPrice, newVolume, newMarketCap);
+                fireUpdated(previous, stock);
+                return true;
+            }
+
+            if (!avlTree.rekey(symbol, newSymbol)) {
+                return false;
+            }
+            invalidateCached(symbol);
+            // The symbol is the tie-breaker of every index, so all of them need the stock re-added
+            unindex(stock);
             stock.setSymbol(newSymbol);
             stock.setPrice(newPrice);
             stock.setVolume(newVolume);
             stock.setMarketCap(newMarketCap);
-            avlTree.insert(stock);
-            avlTree.delete(symbol);
+            index(stock);
+            fireUpdated(previous, stock);
+            return true;
+        } finally {
+            stopTiming(StockMetrics.Operation.UPDATE, start);
         }
     }
 
+    /**
+     * Changes the values of a stock in place, repositioning it only in the indexes whose
+     * field changed.
+     *
+     * @param stock the stock to change
+     * @param newPrice the new stock price
+     * @param newVolume the new trading volume
+     * @param newMarketCap the new market capitalization
+     */
+    private void updateValues(Stock stock, double newPrice, long newVolume, long newMarketCap) {
+        if (Double.compare(stock.getPrice(), newPrice) != 0) {
+            priceIndex.remove(stock);
+            stock.setPrice(newPrice);
+            priceIndex.add(stock);
+        }
+        if (stock.getVolume() != newVolume) {
+            volumeIndex.remove(stock);
+            stock.setVolume(newVolume);
+            volumeIndex.add(stock);
+        }
+        if (stock.getMarketCap() != newMarketCap) {
+            marketCapIndex.remove(stock);
+            stock.setMarketCap(newMarketCap);
+            marketCapIndex.add(stock);
+        }
+    }
+
+    /**
+     * Returns the number of stocks currently managed.
+     *
+     * @return the number of stocks
+     */
+    public int size() {
+        return avlTree.size();
+    }
+
+    /**
+     * Returns the number of stocks whose symbol sorts before the given symbol.
+     * If the symbol is present, this is its zero-based position in symbol order.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param symbol the stock symbol
+     * @return the rank of the symbol
+     */
+    public int rank(String symbol) {
+        return avlTree.rank(symbol);
+    }
+
+    /**
+     * Returns the stock at the given zero-based position in symbol order.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param index the position of the stock
+     * @return the stock at that position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Stock select(int index) {
+        return avlTree.select(index);
+    }
+
+    /**
+     * Returns the stocks whose symbols lie between the given symbols (both inclusive),
+     * sorted by symbol.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param fromSymbol the first symbol of the range
+     * @param toSymbol the last symbol of the range
+     * @return the stocks in the range
+     */
+    public List<Stock> range(String fromSymbol, String toSymbol) {
+        return avlTree.range(fromSymbol, toSymbol);
+    }
+
+    /**
+     * Returns the stocks whose symbols start with the given prefix, sorted by symbol. The
+     * symbols sharing a prefix are adjacent in the symbol tree, so this is a range query
+     * that stops after {@code limit} stocks.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param prefix the start of the symbols, for example {@code "AA"}
+     * @param limit the maximum number of stocks to return
+     * @return up to {@code limit} stocks whose symbols start with {@code prefix}
+     */
+    public List<Stock> searchByPrefix(String prefix, int limit) {
+        List<Stock> result = new ArrayList<>();
+        Iterator<Stock> iterator = iterator(prefix);
+        while (result.size() < limit && iterator.hasNext()) {
+            Stock stock = iterator.next();
+            if (!stock.getSymbol().startsWith(prefix)) {
+                break;
+            }
+            result.add(stock);
+        }
+        return result;
+    }
+
+    /**
+     * Passes every stock to the given action, in symbol order.
+     * <p>
+     * Time complexity: O(n)
+     *
+     * @param action the action to perform on each stock
+     */
+    public void forEachStock(Consumer<? super Stock> action) {
+        avlTree.forEach(action);
+    }
+
+    /**
+     * Returns a lazy iterator over the stocks in symbol order. Nothing is printed or
+     * copied, and the iterator walks the tree with an explicit stack of O(log n) nodes.
+     * It does not support removal and fails with a
+     * {@link java.util.ConcurrentModificationException} if stocks are added or removed
+     * while it is in use.
+     * <p>
+     * Time complexity: O(1) amortized per stock
+     *
+     * @return an in-order iterator
+     */
+    @Override
+    public Iterator<Stock> iterator() {
+        return avlTree.iterator();
+    }
+
+    /**
+     * Returns a lazy iterator over the stocks whose symbols are greater than or equal to
+     * the given symbol, in symbol order. It behaves like {@link #iterator()}.
+     * <p>
+     * Time complexity: O(log n) to start, then O(1) amortized per stock
+     *
+     * @param fromSymbol the first symbol to include, if present
+     * @return an in-order iterator starting at {@code fromSymbol}
+     */
+    public Iterator<Stock> iterator(String fromSymbol) {
+        return avlTree.iterator(fromSymbol);
+    }
+
+    /**
+     * Returns a lazy iterator over the stocks in the pre-order of the symbol tree, the
+     * order printed by {@link #preOrderTraversal()}.
+     *
+     * @return a pre-order iterator
+     */
+    public Iterator<Stock> preOrderIterator() {
+        return avlTree.preOrderIterator();
+    }
+
+    /**
+     * Returns a lazy iterator over the stocks in the post-order of the symbol tree, the
+     * order printed by {@link #postOrderTraversal()}.
+     *
+     * @return a post-order iterator
+     */
+    public Iterator<Stock> postOrderIterator() {
+        return avlTree.postOrderIterator();
+    }
+
+    /**
+     * Returns a spliterator over the stocks in symbol order. It splits by subtree with
+     * exact sizes, so parallel streams divide the stocks evenly across threads. The
+     * manager must not be changed while the spliterator is in use.
+     *
+     * @return an ordered, sized spliterator
+     */
+    @Override
+    public Spliterator<Stock> spliterator() {
+        return avlTree.spliterator();
+    }
+
+    /**
+     * Returns a stream of the stocks in symbol order. For example, the total market
+     * capitalization can be summed across cores with
+     * {@code manager.stream().parallel().mapToLong(Stock::getMarketCap).sum()}.
+     *
+     * @return a sequential stream that can be made parallel
+     */
+    public Stream<Stock> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
     /**
      * Performs an in-order traversal of the AVL tree and prints the stocks.
      */
@@ -85,4 +486,290 @@ public class StockDataManager {
     public void postOrderTraversal() {
         avlTree.postOrderTraversal();
     }
+
+    /**
+     * Returns the stocks whose price lies between the given bounds (both inclusive),
+     * sorted by ascending price.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param minPrice the lowest price
+     * @param maxPrice the highest price
+     * @return the stocks in the price range
+     */
+    public List<Stock> findByPriceRange(double minPrice, double maxPrice) {
+        return priceIndex.range(StockIndex.lowerProbe(minPrice, 0, 0), StockIndex.upperProbe(maxPrice, 0, 0));
+    }
+
+    /**
+     * Returns the stocks whose trading volume lies between the given bounds (both inclusive),
+     * sorted by ascending volume.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param minVolume the lowest volume
+     * @param maxVolume the highest volume
+     * @return the stocks in the volume range
+     */
+    public List<Stock> findByVolumeRange(long minVolume, long maxVolume) {
+        return volumeIndex.range(StockIndex.lowerProbe(0, minVolume, 0), StockIndex.upperProbe(0, maxVolume, 0));
+    }
+
+    /**
+     * Returns the stocks whose market capitalization lies between the given bounds
+     * (both inclusive), sorted by ascending market capitalization.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param minMarketCap the lowest market capitalization
+     * @param maxMarketCap the highest market capitalization
+     * @return the stocks in the market capitalization range
+     */
+    public List<Stock> findByMarketCapRange(long minMarketCap, long maxMarketCap) {
+        return marketCapIndex.range(StockIndex.lowerProbe(0, 0, minMarketCap), StockIndex.upperProbe(0, 0, maxMarketCap));
+    }
+
+    /**
+     * Returns the most expensive stocks, highest price first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} stocks
+     */
+    public List<Stock> topByPrice(int count) {
+        return priceIndex.top(count);
+    }
+
+    /**
+     * Returns the most traded stocks, highest volume first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} stocks
+     */
+    public List<Stock> topByVolume(int count) {
+        return volumeIndex.top(count);
+    }
+
+    /**
+     * Returns the largest stocks, highest market capitalization first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} stocks
+     */
+    public List<Stock> topByMarketCap(int count) {
+        return marketCapIndex.top(count);
+    }
+
+    /**
+     * Adds a stock to every secondary index.
+     *
+     * @param stock the stock to index
+     */
+    private void index(Stock stock) {
+        priceIndex.add(stock);
+        volumeIndex.add(stock);
+        marketCapIndex.add(stock);
+    }
+
+    /**
+     * Removes a stock from every secondary index. Must be called while the stock still
+     * holds the values it was indexed with.
+     *
+     * @param stock the stock to remove from the indexes
+     */
+    private void unindex(Stock stock) {
+        priceIndex.remove(stock);
+        volumeIndex.remove(stock);
+        marketCapIndex.remove(stock);
+    }
+
+    /**
+     * Starts recording the latency of every operation, if it is not recorded yet.
+     *
+     * @return the metrics of this manager
+     */
+    public synchronized StockMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new StockMetrics(this);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops recording latencies and stops the periodic reports. The metrics recorded so far
+     * stay readable through the object returned by {@link #enableMetrics()}.
+     */
+    public synchronized void disableMetrics() {
+        if (metrics != null) {
+            metrics.stopReporting();
+            metrics = null;
+        }
+    }
+
+    /**
+     * Returns the metrics of this manager.
+     *
+     * @return the metrics, or null if they are disabled
+     */
+    public StockMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts answering searches from a cache of the most recently found stocks, replacing
+     * any earlier cache. The cached stocks are shared by every caller that finds them, so
+     * they must not be modified.
+     *
+     * @param capacity the maximum number of cached stocks
+     * @return the cache, which also reports its hit rate
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public synchronized HotSymbolCache enableCache(int capacity) {
+        cache = new HotSymbolCache(capacity, this::lookup);
+        return cache;
+    }
+
+    /**
+     * Stops caching searches and drops the cached stocks.
+     */
+    public synchronized void disableCache() {
+        if (cache != null) {
+            cache.clear();
+            cache = null;
+        }
+    }
+
+    /**
+     * Returns the hot-symbol cache of this manager.
+     *
+     * @return the cache, or null if it is disabled
+     */
+    public HotSymbolCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Drops the stock cached under a symbol. Subclasses call this after the stock stored
+     * under the symbol has been replaced, removed or renamed in the index.
+     *
+     * @param symbol the symbol that changed
+     */
+    protected final void invalidateCached(String symbol) {
+        HotSymbolCache current = cache;
+        if (current != null) {
+            current.invalidate(symbol);
+        }
+    }
+
+    /**
+     * Returns the height of the symbol tree, for {@link StockMetrics}.
+     *
+     * @return the height of the symbol tree
+     */
+    public int height() {
+        return avlTree.height();
+    }
+
+    /**
+     * Returns the number of rotations of the symbol tree, for {@link StockMetrics}.
+     *
+     * @return the number of rotations since the manager was created
+     */
+    public long rotations() {
+        return avlTree.rotations();
+    }
+
+    /**
+     * Returns the start time of an operation if metrics are enabled, so that the cost of
+     * disabled metrics is one volatile read.
+     *
+     * @return {@link System#nanoTime()}, or 0 if metrics are disabled
+     */
+    protected final long startTiming() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the latency of an operation started with {@link #startTiming()}.
+     *
+     * @param operation the operation that finished
+     * @param start the value returned by {@link #startTiming()}
+     */
+    protected final void stopTiming(StockMetrics.Operation operation, long start) {
+        StockMetrics current = metrics;
+        if (current != null && start != 0) {
+            current.record(operation, start);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified of every later change.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(StockListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(StockListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells whether any listener is registered, so that subclasses can skip building the
+     * stocks passed to the listeners.
+     *
+     * @return true if at least one listener is registered
+     */
+    protected boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Notifies the listeners that a stock was added.
+     *
+     * @param stock the stock that was added
+     */
+    protected void fireAdded(Stock stock) {
+        for (StockListener listener : listeners) {
+            listener.stockAdded(stock);
+        }
+    }
+
+    /**
+     * Notifies the listeners that a stock was removed.
+     *
+     * @param stock the stock that was removed
+     */
+    protected void fireRemoved(Stock stock) {
+        for (StockListener listener : listeners) {
+            listener.stockRemoved(stock);
+        }
+    }
+
+    /**
+     * Notifies the listeners that a stock was updated.
+     *
+     * @param previous a copy of the stock before the update
+     * @param current the stock after the update
+     */
+    protected void fireUpdated(Stock previous, Stock current) {
+        for (StockListener listener : listeners) {
+            listener.stockUpdated(previous, current);
+        }
+    }
+
+    private static Stock copyOf(Stock stock) {
+        return new Stock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+    }
 }
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A secondary index that keeps stocks ordered by one of their numeric fields.
+ * <p>
+ * Several stocks can share the same field value, so entries are ordered by the field
+ * first and by symbol second. This keeps every entry unique inside the underlying
+ * {@link AVLTree} and gives range and top-k queries a stable order.
+ * <p>
+ * The index does not observe the stocks it holds. A stock must be removed from the index
+ * before its indexed field changes and added back afterwards, otherwise it can no longer
+ * be found.
+ */
+public class StockIndex {
+    /**
+     * Orders symbols naturally, with null sorting after every real symbol. Query probes use
+     * the empty string as the lowest possible symbol and null as the highest one.
+     */
+    private static final Comparator<String> SYMBOL_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+
+    private final Comparator<Stock> fieldOrder;
+    private final AVLTree<Stock, Stock> tree;
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param fieldOrder the comparator on the indexed field
+     */
+    public StockIndex(Comparator<Stock> fieldOrder) {
+        this.fieldOrder = fieldOrder;
+        this.tree = new AVLTree<>(entryOrder(fieldOrder));
+    }
+
+    /**
+     * Builds the order used for index entries: by the indexed field, then by symbol.
+     *
+     * @param fieldOrder the comparator on the indexed field
+     * @return the comparator for index entries
+     */
+    static Comparator<Stock> entryOrder(Comparator<Stock> fieldOrder) {
+        return fieldOrder.thenComparing(Stock::getSymbol, SYMBOL_ORDER);
+    }
+
+    /**
+     * Replaces the contents of the index with the given stocks, which must be sorted by
+     * symbol. A stable sort on the indexed field alone then leaves stocks with equal field
+     * values in symbol order, which is exactly the order of the index entries.
+     * <p>
+     * Time complexity: O(n log n) for the sort, O(n) for building the tree
+     *
+     * @param stocksBySymbol the stocks to index, sorted by strictly increasing symbol
+     */
+    public void loadAll(List<Stock> stocksBySymbol) {
+        List<Stock> sorted = new ArrayList<>(stocksBySymbol);
+        sorted.sort(fieldOrder);
+        tree.loadSorted(sorted, sorted);
+    }
+
+    /**
+     * Adds a stock to the index.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param stock the stock to add
+     */
+    public void add(Stock stock) {
+        tree.insert(stock, stock);
+    }
+
+    /**
+     * Removes a stock from the index. The stock must still hold the field value it had
+     * when it was added.
+     * <p>
+     * Time complexity: O(log n)
+     *
+     * @param stock the stock to remove
+     */
+    public void remove(Stock stock) {
+        tree.delete(stock);
+    }
+
+    /**
+     * Returns the stocks whose indexed field lies between the fields of the two probes
+     * (both inclusive), in ascending order.
+     * <p>
+     * Time complexity: O(log n + k) where k is the number of stocks returned
+     *
+     * @param lower a probe holding the lower bound in the indexed field
+     * @param upper a probe holding the upper bound in the indexed field
+     * @return the stocks in the range
+     */
+    public List<Stock> range(Stock lower, Stock upper) {
+        return tree.range(lower, upper);
+    }
+
+    /**
+     * Returns the stocks with the highest values of the indexed field, highest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} stocks
+     */
+    public List<Stock> top(int count) {
+        return tree.largest(count);
+    }
+
+    /**
+     * Returns the stocks with the lowest values of the indexed field, lowest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} stocks
+     */
+    public List<Stock> bottom(int count) {
+        return tree.smallest(count);
+    }
+
+    /**
+     * Returns the number of stocks in the index.
+     *
+     * @return the number of stocks
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Removes every stock from the index.
+     */
+    public void clear() {
+        tree.clear();
+    }
+
+    /**
+     * Creates a probe that sorts before every stock with the given field values.
+     *
+     * @param price the price
+     * @param volume the volume
+     * @param marketCap the market capitalization
+     * @return the probe
+     */
+    static Stock lowerProbe(double price, long volume, long marketCap) {
+        return new Stock("", price, volume, marketCap);
+    }
+
+    /**
+     * Creates a probe that sorts after every stock with the given field values.
+     *
+     * @param price the price
+     * @param volume the volume
+     * @param marketCap the market capitalization
+     * @return the probe
+     */
+    static Stock upperProbe(double price, long volume, long marketCap) {
+        return new Stock(null, price, volume, marketCap);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Receives a notification after every change a {@link StockDataManager} makes to its stocks.
+ * <p>
+ * Listeners are called on the thread that made the change, after the change is complete.
+ * Operations that change nothing (removing or updating a symbol that does not exist, or an
+ * update rejected because the new symbol is taken) are not reported. Loading stocks with
+ * {@link StockDataManager#bulkLoad} is not reported either.
+ * <p>
+ * Listeners should return quickly because they run inside the manager operation.
+ */
+public interface StockListener {
+
+    /**
+     * Called after a stock has been added. If a stock with the same symbol existed, it
+     * has been replaced.
+     *
+     * @param stock the stock that was added
+     */
+    void stockAdded(Stock stock);
+
+    /**
+     * Called after a stock has been removed.
+     *
+     * @param stock the stock that was removed
+     */
+    void stockRemoved(Stock stock);
+
+    /**
+     * Called after a stock has been updated.
+     *
+     * @param previous a copy of the stock as it was before the update
+     * @param current the stock after the update
+     */
+    void stockUpdated(Stock previous, Stock current);
+}
@@ -0,0 +1,302 @@
+import java.beans.ConstructorProperties;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms of the operations of a {@link StockDataManager}, together with the
+ * height and the rotation count of its symbol tree and the hit rate of its
+ * {@link HotSymbolCache}.
+ * <p>
+ * Metrics are off by default. {@link StockDataManager#enableMetrics()} creates the
+ * metrics of a manager, after which every {@code addStock}, {@code removeStock},
+ * {@code searchStock} and {@code updateStock} call is timed with {@link System#nanoTime()}
+ * and recorded in a lock-free {@link LatencyHistogram}. While metrics are off an operation
+ * pays for one read of a volatile field and a null check.
+ * <p>
+ * The metrics can be read directly, published as a JMX MXBean with {@link #register}, or
+ * printed periodically with {@link #startReporting}.
+ * <p>
+ * Typical use:
+ * <pre>
+ * StockMetrics metrics = manager.enableMetrics();
+ * metrics.register("market");
+ * metrics.startReporting(System.out, 60_000);
+ * </pre>
+ */
+public class StockMetrics implements StockMetricsMXBean {
+    /** The JMX domain the metrics are registered under. */
+    public static final String DOMAIN = "stocks";
+
+    /**
+     * The timed operations.
+     */
+    public enum Operation {
+        /** {@link StockDataManager#addStock}. */
+        ADD,
+        /** {@link StockDataManager#removeStock}. */
+        REMOVE,
+        /** {@link StockDataManager#searchStock}. */
+        SEARCH,
+        /** {@link StockDataManager#updateStock}. */
+        UPDATE
+    }
+
+    /**
+     * A summary of one latency histogram, in nanoseconds. JMX clients show it as a
+     * composite value.
+     */
+    public static final class Latency {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        /**
+         * Constructs a summary.
+         *
+         * @param count the number of operations
+         * @param mean the average latency
+         * @param p50 the median latency
+         * @param p99 the 99th percentile
+         * @param p999 the 99.9th percentile
+         * @param max the largest latency
+         */
+        @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+        public Latency(long count, double mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        private Latency(LatencyHistogram histogram) {
+            this(histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+                    histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax());
+        }
+
+        /**
+         * @return the number of operations
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the average latency
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return the median latency
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        /**
+         * @return the 99th percentile
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        /**
+         * @return the 99.9th percentile
+         */
+        public long getP999() {
+            return p999;
+        }
+
+        /**
+         * @return the largest latency
+         */
+        public long getMax() {
+            return max;
+        }
+    }
+
+    private final StockDataManager manager;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Constructs the metrics of a manager. Use {@link StockDataManager#enableMetrics()}.
+     *
+     * @param manager the manager whose tree is reported
+     */
+    StockMetrics(StockDataManager manager) {
+        this.manager = manager;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the latency of an operation that started at the given time.
+     *
+     * @param operation the operation
+     * @param startNanos the {@link System#nanoTime()} when the operation started
+     */
+    public void record(Operation operation, long startNanos) {
+        histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the histogram of one operation.
+     *
+     * @param operation the operation
+     * @return the histogram, in nanoseconds
+     */
+    public LatencyHistogram getHistogram(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+
+    @Override
+    public int getSize() {
+        return manager.size();
+    }
+
+    @Override
+    public int getTreeHeight() {
+        return manager.height();
+    }
+
+    @Override
+    public long getRotations() {
+        return manager.rotations();
+    }
+
+    @Override
+    public Latency getAddLatency() {
+        return new Latency(getHistogram(Operation.ADD));
+    }
+
+    @Override
+    public Latency getRemoveLatency() {
+        return new Latency(getHistogram(Operation.REMOVE));
+    }
+
+    @Override
+    public Latency getSearchLatency() {
+        return new Latency(getHistogram(Operation.SEARCH));
+    }
+
+    @Override
+    public Latency getUpdateLatency() {
+        return new Latency(getHistogram(Operation.UPDATE));
+    }
+
+    @Override
+    public long getCacheHits() {
+        HotSymbolCache cache = manager.getCache();
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        HotSymbolCache cache = manager.getCache();
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        HotSymbolCache cache = manager.getCache();
+        return cache == null ? 0 : cache.getHitRate();
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("stocks %d  height %d  rotations %d",
+                getSize(), getTreeHeight(), getRotations()));
+        for (Operation operation : Operation.values()) {
+            report.append(String.format("%n%-7s %s", operation, getHistogram(operation)));
+        }
+        HotSymbolCache cache = manager.getCache();
+        if (cache != null) {
+            report.append(String.format("%n%-7s %s", "CACHE", cache));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as
+     * {@code stocks:type=StockDataManager,name=<name>}.
+     *
+     * @param name the name that tells the managers of one JVM apart
+     * @return the object name the metrics were registered under
+     * @throws JMException if the name is invalid or already registered
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=StockDataManager,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were registered.
+     *
+     * @throws JMException if the MBean server refuses
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Prints {@link #report()} periodically from a daemon thread, replacing any earlier
+     * schedule.
+     *
+     * @param out where to print
+     * @param periodMillis the time between two reports
+     */
+    public synchronized void startReporting(PrintStream out, long periodMillis) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stock-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.println(report()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic reports, if any.
+     */
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+}
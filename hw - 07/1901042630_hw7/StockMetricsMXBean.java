@@ -0,0 +1,68 @@
+/**
+ * The management interface of {@link StockMetrics}, as shown by JConsole, VisualVM or any
+ * other JMX client. Latencies are in nanoseconds.
+ */
+public interface StockMetricsMXBean {
+    /**
+     * @return the number of stocks in the manager
+     */
+    int getSize();
+
+    /**
+     * @return the height of the symbol tree
+     */
+    int getTreeHeight();
+
+    /**
+     * @return the number of rotations of the symbol tree since it was created
+     */
+    long getRotations();
+
+    /**
+     * @return the latency summary of {@link StockDataManager#addStock}
+     */
+    StockMetrics.Latency getAddLatency();
+
+    /**
+     * @return the latency summary of {@link StockDataManager#removeStock}
+     */
+    StockMetrics.Latency getRemoveLatency();
+
+    /**
+     * @return the latency summary of {@link StockDataManager#searchStock}
+     */
+    StockMetrics.Latency getSearchLatency();
+
+    /**
+     * @return the latency summary of {@link StockDataManager#updateStock}
+     */
+    StockMetrics.Latency getUpdateLatency();
+
+    /**
+     * @return the number of searches answered by the hot-symbol cache, or 0 if it is
+     *         disabled
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of searches the hot-symbol cache passed to the tree, or 0 if it
+     *         is disabled
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the fraction of searches answered by the hot-symbol cache, or 0 if it is
+     *         disabled
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return the text report of every metric
+     */
+    String report();
+
+    /**
+     * Forgets every recorded latency.
+     */
+    void reset();
+}
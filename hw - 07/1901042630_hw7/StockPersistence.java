@@ -0,0 +1,375 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Makes a {@link StockDataManager} durable with snapshots and a write-ahead log.
+ * <p>
+ * All files live in one directory. Every change is appended to the current log
+ * generation, {@code wal-<generation>.log}. A snapshot ({@code snapshot.bin}) stores all
+ * stocks in symbol order together with the last log generation it contains. Taking a
+ * snapshot works in three steps, each of which leaves a recoverable directory behind if
+ * the process dies:
+ * <ol>
+ * <li>the log is rotated, so later changes go to a new generation;</li>
+ * <li>the snapshot is written to a temporary file, forced and atomically renamed;</li>
+ * <li>the log generations the snapshot contains are deleted.</li>
+ * </ol>
+ * Recovery loads the snapshot and replays, in order, every log generation newer than the
+ * one recorded in it.
+ * <p>
+ * Snapshots must not run while another thread is changing the manager. With
+ * {@link #setSnapshotInterval(long)} they are taken automatically on the writing thread,
+ * which is only safe with a single writer: automatic snapshots cannot be enabled for a
+ * {@link ConcurrentStockDataManager}, whose other writers would keep changing the stocks
+ * and appending to the log while it is rotated. Pause the writers of such a manager and
+ * call {@link #snapshot()} instead.
+ * <p>
+ * Typical use:
+ * <pre>
+ * StockPersistence persistence = new StockPersistence(directory, WriteAheadLog.SyncPolicy.GROUP);
+ * StockDataManager manager = persistence.recover();
+ * ...
+ * persistence.close();
+ * </pre>
+ */
+public class StockPersistence implements StockListener, Closeable {
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; // "SNAP"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path directory;
+    private final WriteAheadLog.SyncPolicy policy;
+    private final int groupSize;
+    private final long groupDelayMillis;
+
+    private StockDataManager manager;
+    private WriteAheadLog log;
+    private long generation;
+    private long snapshotInterval;
+    private long recordsSinceSnapshot;
+
+    /**
+     * Creates persistence for the given directory with group commit of up to 1024 records
+     * or 10 milliseconds.
+     *
+     * @param directory the directory holding the snapshot and the log, created if missing
+     * @param policy when log records are forced to disk
+     */
+    public StockPersistence(Path directory, WriteAheadLog.SyncPolicy policy) {
+        this(directory, policy, 1024, 10);
+    }
+
+    /**
+     * Creates persistence for the given directory.
+     *
+     * @param directory the directory holding the snapshot and the log, created if missing
+     * @param policy when log records are forced to disk
+     * @param groupSize with {@link WriteAheadLog.SyncPolicy#GROUP}, records forced together
+     * @param groupDelayMillis with {@link WriteAheadLog.SyncPolicy#GROUP}, the longest time a
+     *        record may wait before it is forced
+     */
+    public StockPersistence(Path directory, WriteAheadLog.SyncPolicy policy, int groupSize, long groupDelayMillis) {
+        this.directory = directory;
+        this.policy = policy;
+        this.groupSize = groupSize;
+        this.groupDelayMillis = groupDelayMillis;
+    }
+
+    /**
+     * Rebuilds a StockDataManager from the latest snapshot and the log, then starts logging
+     * its changes.
+     *
+     * @return the recovered manager
+     * @throws IOException if the files cannot be read or the log cannot be opened
+     */
+    public StockDataManager recover() throws IOException {
+        return recover(null);
+    }
+
+    /**
+     * Loads the latest snapshot and the log into the given empty manager, then starts
+     * logging its changes. Use this to recover into a {@link ConcurrentStockDataManager}.
+     *
+     * @param target an empty manager, or null to bulk-load a new {@link StockDataManager}
+     * @return the recovered manager
+     * @throws IOException if the files cannot be read or the log cannot be opened
+     * @throws IllegalStateException if automatic snapshots are enabled and the target is a
+     *         {@link ConcurrentStockDataManager}
+     */
+    public StockDataManager recover(StockDataManager target) throws IOException {
+        if (manager != null) {
+            throw new IllegalStateException("Already recovered");
+        }
+        checkSnapshotInterval(target, snapshotInterval);
+        Files.createDirectories(directory);
+
+        List<Stock> stocks = new ArrayList<>();
+        long covered = readSnapshot(stocks);
+        if (target == null) {
+            target = StockDataManager.bulkLoad(stocks);
+        } else {
+            for (Stock stock : stocks) {
+                target.addStock(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+            }
+        }
+
+        long newest = covered;
+        for (long logGeneration : logGenerations()) {
+            if (logGeneration > covered) {
+                WriteAheadLog.replay(logFile(logGeneration), target);
+            }
+            newest = Math.max(newest, logGeneration);
+        }
+
+        // Never append behind a possibly torn tail: continue in a fresh generation
+        generation = newest + 1;
+        log = openLog(generation);
+        manager = target;
+        manager.addListener(this);
+        return manager;
+    }
+
+    /**
+     * Takes a snapshot automatically after the given number of logged changes. The
+     * snapshot runs on the thread whose change reached the interval, so this needs a
+     * manager with a single writer.
+     *
+     * @param records the number of changes between snapshots, or 0 to disable
+     * @throws IllegalStateException if snapshots are enabled for a
+     *         {@link ConcurrentStockDataManager}
+     */
+    public void setSnapshotInterval(long records) {
+        if (records < 0) {
+            throw new IllegalArgumentException("Snapshot interval cannot be negative: " + records);
+        }
+        checkSnapshotInterval(manager, records);
+        this.snapshotInterval = records;
+    }
+
+    private static void checkSnapshotInterval(StockDataManager target, long records) {
+        if (records > 0 && target instanceof ConcurrentStockDataManager) {
+            throw new IllegalStateException("Automatic snapshots need a single writer; "
+                    + "call snapshot() while the writers of a ConcurrentStockDataManager are paused");
+        }
+    }
+
+    /**
+     * Writes a snapshot of the manager and deletes the log generations it makes redundant.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void snapshot() throws IOException {
+        if (manager == null) {
+            throw new IllegalStateException("Call recover() first");
+        }
+        long covered = generation;
+        log.close();
+        generation++;
+        log = openLog(generation);
+
+        writeSnapshot(covered);
+        for (long logGeneration : logGenerations()) {
+            if (logGeneration <= covered) {
+                Files.deleteIfExists(logFile(logGeneration));
+            }
+        }
+        recordsSinceSnapshot = 0;
+    }
+
+    /**
+     * Forces every logged change to disk, whatever the sync policy.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    /**
+     * Stops logging and closes the log. The manager stays usable but its later changes are
+     * no longer persisted.
+     *
+     * @throws IOException if the remaining log records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (manager != null) {
+            manager.removeListener(this);
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @Override
+    public void stockAdded(Stock stock) {
+        log.stockAdded(stock);
+        afterRecord();
+    }
+
+    @Override
+    public void stockRemoved(Stock stock) {
+        log.stockRemoved(stock);
+        afterRecord();
+    }
+
+    @Override
+    public void stockUpdated(Stock previous, Stock current) {
+        log.stockUpdated(previous, current);
+        afterRecord();
+    }
+
+    private void afterRecord() {
+        if (snapshotInterval > 0 && ++recordsSinceSnapshot >= snapshotInterval) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write snapshot in " + directory, e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Snapshot file
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Writes {@code [magic][version][covered generation]}, then one
+     * {@code [1][symbol][price][volume][marketCap]} entry per stock, a terminating 0 and the
+     * CRC32 of everything before it.
+     */
+    private void writeSnapshot(long covered) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(covered);
+            try {
+                manager.forEachStock(stock -> {
+                    try {
+                        out.writeByte(1);
+                        out.writeUTF(stock.getSymbol());
+                        out.writeDouble(stock.getPrice());
+                        writeVarLong(out, stock.getVolume());
+                        writeVarLong(out, stock.getMarketCap());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeByte(0);
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the snapshot, if there is one.
+     *
+     * @param stocks receives the stocks of the snapshot, in symbol order
+     * @return the last log generation contained in the snapshot, or 0 without a snapshot
+     */
+    private long readSnapshot(List<Stock> stocks) throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a stock snapshot: " + file);
+            }
+            long covered = in.readLong();
+            while (in.readByte() != 0) {
+                stocks.add(new Stock(in.readUTF(), in.readDouble(), readVarLong(in), readVarLong(in)));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            return covered;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Log files
+    // ---------------------------------------------------------------------------------
+
+    private WriteAheadLog openLog(long logGeneration) throws IOException {
+        return new WriteAheadLog(logFile(logGeneration), policy, groupSize, groupDelayMillis);
+    }
+
+    private Path logFile(long logGeneration) {
+        return directory.resolve(String.format("%s%012d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX));
+    }
+
+    /**
+     * Lists the generations of the log files in the directory, oldest first.
+     */
+    private List<Long> logGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of our files
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+}
@@ -0,0 +1,397 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A trie of the symbols of a {@link StockDataManager} for autocomplete: prefix search and
+ * suggestions for mistyped symbols.
+ * <p>
+ * Registered as a {@link StockListener}, it follows every added, removed and renamed
+ * stock. The nodes are stored in primitive arrays, one entry per node: the character,
+ * the first child, the next sibling and the number of symbols in the subtree, about 15
+ * bytes per node. Siblings are kept sorted by character, so walking the trie in child
+ * order yields the symbols in {@link String#compareTo} order. Nodes of removed symbols are
+ * reused.
+ * <p>
+ * {@link #searchSimilar} finds the symbols at most one edit away from a typed symbol by
+ * trying every position of the symbol as the place of the edit. Only the characters that
+ * actually follow the unchanged prefix in the trie are tried, and each try is a short
+ * walk down the trie, so a query takes microseconds even with millions of symbols.
+ * <p>
+ * All methods are synchronized, so a trie can be shared with
+ * {@link ConcurrentStockDataManager}.
+ * <p>
+ * Typical use:
+ * <pre>
+ * SymbolTrie symbols = new SymbolTrie();
+ * symbols.track(manager);
+ * ...
+ * List&lt;String&gt; suggestions = symbols.searchSimilar("APPL", 10);
+ * </pre>
+ */
+public class SymbolTrie implements StockListener {
+    private static final int NIL = -1;
+    private static final int ROOT = 0;
+
+    // Nodes, indexed by node number; the root has no character
+    private char[] labels;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] counts;
+    private boolean[] terminal;
+    private int nodeLimit;
+    private int freeHead = NIL;
+    private Set<String> changedWhileSeeding; // Symbols reported while track() seeds, else null
+
+    /**
+     * Constructs an empty trie.
+     */
+    public SymbolTrie() {
+        labels = new char[16];
+        firstChild = new int[16];
+        nextSibling = new int[16];
+        counts = new int[16];
+        terminal = new boolean[16];
+        clear();
+    }
+
+    /**
+     * Adds every stock of a manager and registers the trie as a listener of the manager,
+     * so that its later changes are followed.
+     * <p>
+     * The trie is registered before the stocks are read, so no change is missed while
+     * other threads write to the manager. A symbol that was reported to the listener while
+     * the stocks were read is not added again, because it may have been removed or renamed
+     * since it was read.
+     * <p>
+     * Time complexity: O(n m) where m is the length of the symbols
+     *
+     * @param manager the manager to track
+     */
+    public void track(StockDataManager manager) {
+        synchronized (this) {
+            changedWhileSeeding = new HashSet<>();
+        }
+        manager.addListener(this);
+        try {
+            manager.forEachStock(this::seed);
+        } finally {
+            synchronized (this) {
+                changedWhileSeeding = null;
+            }
+        }
+    }
+
+    private synchronized void seed(Stock stock) {
+        if (!changedWhileSeeding.contains(stock.getSymbol())) {
+            add(stock.getSymbol());
+        }
+    }
+
+    private void noteChange(String symbol) {
+        if (changedWhileSeeding != null) {
+            changedWhileSeeding.add(symbol);
+        }
+    }
+
+    /**
+     * Adds a symbol.
+     * <p>
+     * Time complexity: O(m c) where m is the length of the symbol and c the number of
+     * distinct characters at each position
+     *
+     * @param symbol the symbol to add
+     * @return true if the symbol was added, false if it was already present
+     */
+    public synchronized boolean add(String symbol) {
+        if (contains(symbol)) {
+            return false;
+        }
+        int node = ROOT;
+        counts[node]++;
+        for (int i = 0; i < symbol.length(); i++) {
+            node = childOrCreate(node, symbol.charAt(i));
+            counts[node]++;
+        }
+        terminal[node] = true;
+        return true;
+    }
+
+    /**
+     * Removes a symbol. Nodes that no longer lead to any symbol are unlinked and reused.
+     * <p>
+     * Time complexity: O(m c)
+     *
+     * @param symbol the symbol to remove
+     * @return true if the symbol was removed, false if it was not present
+     */
+    public synchronized boolean remove(String symbol) {
+        if (!contains(symbol)) {
+            return false;
+        }
+        int node = ROOT;
+        counts[node]--;
+        for (int i = 0; i < symbol.length(); i++) {
+            int child = child(node, symbol.charAt(i));
+            if (--counts[child] == 0) {
+                // The rest of the path leads only to this symbol
+                unlink(node, child);
+                release(child);
+                return true;
+            }
+            node = child;
+        }
+        terminal[node] = false;
+        return true;
+    }
+
+    /**
+     * Tells whether a symbol is present.
+     * <p>
+     * Time complexity: O(m c)
+     *
+     * @param symbol the symbol to look for
+     * @return true if the symbol is present
+     */
+    public synchronized boolean contains(String symbol) {
+        int node = walk(ROOT, symbol, 0);
+        return node != NIL && terminal[node];
+    }
+
+    /**
+     * Returns the number of symbols.
+     *
+     * @return the number of symbols
+     */
+    public synchronized int size() {
+        return counts[ROOT];
+    }
+
+    /**
+     * Removes every symbol.
+     */
+    public synchronized void clear() {
+        nodeLimit = 1;
+        freeHead = NIL;
+        firstChild[ROOT] = NIL;
+        nextSibling[ROOT] = NIL;
+        counts[ROOT] = 0;
+        terminal[ROOT] = false;
+    }
+
+    /**
+     * Returns the symbols that start with the given prefix, in symbol order.
+     * <p>
+     * Time complexity: O(m c + k) where k is the number of nodes below the prefix that are
+     * visited to produce the result
+     *
+     * @param prefix the start of the symbols
+     * @param limit the maximum number of symbols to return
+     * @return up to {@code limit} symbols starting with {@code prefix}
+     */
+    public synchronized List<String> searchByPrefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        int node = walk(ROOT, prefix, 0);
+        if (node != NIL && limit > 0) {
+            StringBuilder symbol = new StringBuilder(prefix);
+            collect(node, symbol, limit, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the symbols that are at most one edit away from the given symbol: equal to
+     * it, or differing by one inserted, deleted or replaced character. The result is in
+     * symbol order.
+     * <p>
+     * Time complexity: O(m<sup>2</sup> c<sup>2</sup>) in the worst case, but a walk
+     * usually stops after a character or two
+     *
+     * @param symbol the symbol as typed
+     * @param limit the maximum number of symbols to return
+     * @return up to {@code limit} symbols within one edit of {@code symbol}
+     */
+    public synchronized List<String> searchSimilar(String symbol, int limit) {
+        TreeSet<String> found = new TreeSet<>();
+        int length = symbol.length();
+        // node is the end of the unchanged prefix symbol[0, i)
+        int node = ROOT;
+        for (int i = 0; i <= length && node != NIL; i++) {
+            if (i == length) {
+                if (terminal[node]) {
+                    found.add(symbol);
+                }
+            } else {
+                // Deletion of symbol[i]
+                int end = walk(node, symbol, i + 1);
+                if (end != NIL && terminal[end]) {
+                    found.add(symbol.substring(0, i) + symbol.substring(i + 1));
+                }
+            }
+            for (int child = firstChild[node]; child != NIL; child = nextSibling[child]) {
+                char c = labels[child];
+                // Insertion of c before symbol[i]
+                int end = walk(child, symbol, i);
+                if (end != NIL && terminal[end]) {
+                    found.add(symbol.substring(0, i) + c + symbol.substring(i));
+                }
+                // Replacement of symbol[i] by c
+                if (i < length && c != symbol.charAt(i)) {
+                    end = walk(child, symbol, i + 1);
+                    if (end != NIL && terminal[end]) {
+                        found.add(symbol.substring(0, i) + c + symbol.substring(i + 1));
+                    }
+                }
+            }
+            node = i < length ? child(node, symbol.charAt(i)) : NIL;
+        }
+
+        List<String> result = new ArrayList<>(Math.max(0, Math.min(limit, found.size())));
+        for (String match : found) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(match);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void stockAdded(Stock stock) {
+        noteChange(stock.getSymbol());
+        add(stock.getSymbol());
+    }
+
+    @Override
+    public synchronized void stockRemoved(Stock stock) {
+        noteChange(stock.getSymbol());
+        remove(stock.getSymbol());
+    }
+
+    @Override
+    public synchronized void stockUpdated(Stock previous, Stock current) {
+        noteChange(previous.getSymbol());
+        noteChange(current.getSymbol());
+        if (!previous.getSymbol().equals(current.getSymbol())) {
+            remove(previous.getSymbol());
+            add(current.getSymbol());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Nodes
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Follows the characters of {@code symbol} from position {@code from} on, starting at
+     * the given node.
+     *
+     * @return the node reached, or {@link #NIL} if the path leaves the trie
+     */
+    private int walk(int node, String symbol, int from) {
+        for (int i = from; i < symbol.length() && node != NIL; i++) {
+            node = child(node, symbol.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Finds the child of a node with the given character. Siblings are sorted, so the scan
+     * stops at the first larger character.
+     */
+    private int child(int node, char c) {
+        int child = firstChild[node];
+        while (child != NIL && labels[child] < c) {
+            child = nextSibling[child];
+        }
+        return child != NIL && labels[child] == c ? child : NIL;
+    }
+
+    private int childOrCreate(int node, char c) {
+        int previous = NIL;
+        int child = firstChild[node];
+        while (child != NIL && labels[child] < c) {
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child != NIL && labels[child] == c) {
+            return child;
+        }
+        int created = allocate(c);
+        nextSibling[created] = child;
+        if (previous == NIL) {
+            firstChild[node] = created;
+        } else {
+            nextSibling[previous] = created;
+        }
+        return created;
+    }
+
+    private void unlink(int parent, int child) {
+        if (firstChild[parent] == child) {
+            firstChild[parent] = nextSibling[child];
+            return;
+        }
+        int previous = firstChild[parent];
+        while (nextSibling[previous] != child) {
+            previous = nextSibling[previous];
+        }
+        nextSibling[previous] = nextSibling[child];
+    }
+
+    private int allocate(char c) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = nextSibling[node];
+        } else {
+            if (nodeLimit == labels.length) {
+                int capacity = labels.length + (labels.length >> 1);
+                labels = Arrays.copyOf(labels, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                terminal = Arrays.copyOf(terminal, capacity);
+            }
+            node = nodeLimit++;
+        }
+        labels[node] = c;
+        firstChild[node] = NIL;
+        nextSibling[node] = NIL;
+        counts[node] = 0;
+        terminal[node] = false;
+        return node;
+    }
+
+    /**
+     * Puts an unlinked node and every node below it on the free list. The free list is
+     * chained through the sibling links.
+     */
+    private void release(int node) {
+        int child = firstChild[node];
+        while (child != NIL) {
+            int next = nextSibling[child];
+            release(child);
+            child = next;
+        }
+        nextSibling[node] = freeHead;
+        freeHead = node;
+    }
+
+    /**
+     * Appends the symbols below a node in order, the node's own symbol first.
+     */
+    private void collect(int node, StringBuilder symbol, int limit, List<String> result) {
+        if (terminal[node]) {
+            result.add(symbol.toString());
+        }
+        for (int child = firstChild[node]; child != NIL && result.size() < limit; child = nextSibling[child]) {
+            symbol.append(labels[child]);
+            collect(child, symbol, limit, result);
+            symbol.setLength(symbol.length() - 1);
+        }
+    }
+}
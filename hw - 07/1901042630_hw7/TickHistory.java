@@ -0,0 +1,311 @@
+/**
+ * The recent price ticks of one symbol, kept in a fixed-size ring buffer, together with
+ * aggregates over a sliding window of those ticks.
+ * <p>
+ * The window holds the ticks that are at most {@code windowMillis} older than the newest
+ * tick, limited to the last {@code capacity} ticks. Every aggregate is maintained
+ * incrementally as ticks enter and leave the window, so recording a tick and reading any
+ * aggregate take O(1) amortized time, independent of the window size:
+ * <ul>
+ * <li>{@link #vwap()}: the volume-weighted average price;</li>
+ * <li>{@link #min()} and {@link #max()}: kept with monotonic queues;</li>
+ * <li>{@link #movingAverage()}: the simple average of the prices;</li>
+ * <li>{@link #volatility()}: the sample standard deviation of the log returns between
+ * consecutive ticks.</li>
+ * </ul>
+ * The running sums are recomputed from the ticks once per {@code capacity} evictions, which
+ * keeps floating-point drift from building up. Memory is fixed at about 40 bytes per tick of
+ * capacity. All methods are synchronized, so a tick history may be read while another thread
+ * records into it.
+ */
+public class TickHistory {
+    private final int capacity;
+    private final long windowMillis;
+
+    // Ring buffer of ticks, indexed by sequence number modulo capacity
+    private final long[] timestamps;
+    private final double[] prices;
+    private final long[] volumes;
+    private long nextSequence;
+
+    // The window is the sequence numbers [windowStart, nextSequence)
+    private long windowStart;
+    private double priceSum;
+    private double notionalSum;
+    private double volumeSum;
+    private double returnSum;
+    private double returnSquareSum;
+    private int returnCount;
+    private int evictionsSinceRefresh;
+
+    // Monotonic queues of sequence numbers: prices increase from head to tail in minQueue
+    // and decrease in maxQueue, so the head is always the minimum or maximum of the window
+    private final long[] minQueue;
+    private int minHead;
+    private int minSize;
+    private final long[] maxQueue;
+    private int maxHead;
+    private int maxSize;
+
+    /**
+     * Constructs a tick history whose window is limited only by the capacity.
+     *
+     * @param capacity the number of ticks to keep
+     */
+    public TickHistory(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a tick history.
+     *
+     * @param capacity the number of ticks to keep
+     * @param windowMillis the length of the sliding window in milliseconds
+     * @throws IllegalArgumentException if the capacity or the window is not positive
+     */
+    public TickHistory(int capacity, long windowMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        this.timestamps = new long[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+    }
+
+    /**
+     * Records a tick. Timestamps should not decrease; an older timestamp is treated as
+     * equal to the newest one recorded so far.
+     * <p>
+     * Time complexity: O(1) amortized
+     *
+     * @param timestamp the time of the tick in milliseconds
+     * @param price the traded price
+     * @param volume the traded volume
+     */
+    public synchronized void record(long timestamp, double price, long volume) {
+        if (nextSequence > 0) {
+            timestamp = Math.max(timestamp, timestamps[slot(nextSequence - 1)]);
+        }
+        if (nextSequence - windowStart == capacity) {
+            // The oldest tick is about to be overwritten
+            evict();
+        }
+        // Drop the ticks that have fallen out of the time window
+        while (windowStart < nextSequence && timestamp - timestamps[slot(windowStart)] > windowMillis) {
+            evict();
+        }
+
+        long sequence = nextSequence++;
+        int slot = slot(sequence);
+        timestamps[slot] = timestamp;
+        prices[slot] = price;
+        volumes[slot] = volume;
+
+        priceSum += price;
+        notionalSum += price * volume;
+        volumeSum += volume;
+        if (sequence > windowStart) {
+            addReturn(sequence);
+        }
+
+        while (minSize > 0 && prices[slot(minQueue[(minHead + minSize - 1) % capacity])] >= price) {
+            minSize--;
+        }
+        minQueue[(minHead + minSize++) % capacity] = sequence;
+        while (maxSize > 0 && prices[slot(maxQueue[(maxHead + maxSize - 1) % capacity])] <= price) {
+            maxSize--;
+        }
+        maxQueue[(maxHead + maxSize++) % capacity] = sequence;
+    }
+
+    /**
+     * Returns the number of ticks in the window.
+     *
+     * @return the window size
+     */
+    public synchronized int windowSize() {
+        return (int) (nextSequence - windowStart);
+    }
+
+    /**
+     * Returns the total number of ticks ever recorded.
+     *
+     * @return the number of recorded ticks
+     */
+    public synchronized long tickCount() {
+        return nextSequence;
+    }
+
+    /**
+     * Returns the price of the newest tick.
+     *
+     * @return the last price, or NaN if no tick was recorded
+     */
+    public synchronized double lastPrice() {
+        return nextSequence == 0 ? Double.NaN : prices[slot(nextSequence - 1)];
+    }
+
+    /**
+     * Returns the volume-weighted average price of the window.
+     *
+     * @return the VWAP, or NaN if the window holds no volume
+     */
+    public synchronized double vwap() {
+        return volumeSum == 0 ? Double.NaN : notionalSum / volumeSum;
+    }
+
+    /**
+     * Returns the lowest price in the window.
+     *
+     * @return the minimum, or NaN if the window is empty
+     */
+    public synchronized double min() {
+        return minSize == 0 ? Double.NaN : prices[slot(minQueue[minHead])];
+    }
+
+    /**
+     * Returns the highest price in the window.
+     *
+     * @return the maximum, or NaN if the window is empty
+     */
+    public synchronized double max() {
+        return maxSize == 0 ? Double.NaN : prices[slot(maxQueue[maxHead])];
+    }
+
+    /**
+     * Returns the simple moving average of the prices in the window.
+     *
+     * @return the moving average, or NaN if the window is empty
+     */
+    public synchronized double movingAverage() {
+        int size = windowSize();
+        return size == 0 ? Double.NaN : priceSum / size;
+    }
+
+    /**
+     * Returns the sample standard deviation of the log returns between consecutive ticks in
+     * the window. Returns involving a price that is not positive are ignored.
+     *
+     * @return the volatility per tick, or NaN if the window holds fewer than two returns
+     */
+    public synchronized double volatility() {
+        if (returnCount < 2) {
+            return Double.NaN;
+        }
+        double mean = returnSum / returnCount;
+        double variance = (returnSquareSum - returnCount * mean * mean) / (returnCount - 1);
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    /**
+     * Passes the ticks in the window to the given visitor, oldest first.
+     *
+     * @param visitor the visitor to call for each tick
+     */
+    public synchronized void forEachTick(TickVisitor visitor) {
+        for (long sequence = windowStart; sequence < nextSequence; sequence++) {
+            int slot = slot(sequence);
+            visitor.visit(timestamps[slot], prices[slot], volumes[slot]);
+        }
+    }
+
+    /**
+     * Receives the ticks of a {@link TickHistory}.
+     */
+    public interface TickVisitor {
+
+        /**
+         * Called for one tick.
+         *
+         * @param timestamp the time of the tick in milliseconds
+         * @param price the traded price
+         * @param volume the traded volume
+         */
+        void visit(long timestamp, double price, long volume);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Window maintenance
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Removes the oldest tick from the window. Its values are still in the ring buffer.
+     */
+    private void evict() {
+        long sequence = windowStart++;
+        int slot = slot(sequence);
+        priceSum -= prices[slot];
+        notionalSum -= prices[slot] * volumes[slot];
+        volumeSum -= volumes[slot];
+        if (sequence + 1 < nextSequence) {
+            // The return of the next tick no longer has both ends in the window
+            removeReturn(sequence + 1);
+        }
+        if (minSize > 0 && minQueue[minHead] == sequence) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxQueue[maxHead] == sequence) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        if (++evictionsSinceRefresh >= capacity) {
+            refreshSums();
+        }
+    }
+
+    private void addReturn(long sequence) {
+        double previous = prices[slot(sequence - 1)];
+        double current = prices[slot(sequence)];
+        if (previous > 0 && current > 0) {
+            double logReturn = Math.log(current / previous);
+            returnSum += logReturn;
+            returnSquareSum += logReturn * logReturn;
+            returnCount++;
+        }
+    }
+
+    private void removeReturn(long sequence) {
+        double previous = prices[slot(sequence - 1)];
+        double current = prices[slot(sequence)];
+        if (previous > 0 && current > 0) {
+            double logReturn = Math.log(current / previous);
+            returnSum -= logReturn;
+            returnSquareSum -= logReturn * logReturn;
+            returnCount--;
+        }
+    }
+
+    /**
+     * Recomputes the running sums from the ticks in the window.
+     */
+    private void refreshSums() {
+        priceSum = 0;
+        notionalSum = 0;
+        volumeSum = 0;
+        returnSum = 0;
+        returnSquareSum = 0;
+        returnCount = 0;
+        for (long sequence = windowStart; sequence < nextSequence; sequence++) {
+            int slot = slot(sequence);
+            priceSum += prices[slot];
+            notionalSum += prices[slot] * volumes[slot];
+            volumeSum += volumes[slot];
+            if (sequence > windowStart) {
+                addReturn(sequence);
+            }
+        }
+        evictionsSinceRefresh = 0;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
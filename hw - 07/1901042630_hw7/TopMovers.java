@@ -0,0 +1,406 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the top gainers, losers and volume spikes of a {@link StockDataManager} up to date
+ * as stocks change, so that dashboards can read them without traversing and sorting every
+ * stock.
+ * <p>
+ * Registered as a {@link StockListener}, it tracks for every symbol:
+ * <ul>
+ * <li>the percent change of the price since the baseline, which is the first price seen
+ * for the symbol or the price at the last {@link #resetBaselines()};</li>
+ * <li>the volume spike ratio: the current volume divided by an exponential moving average
+ * of the volumes seen before it.</li>
+ * </ul>
+ * The symbols are kept in two {@link AVLTree}s ordered by percent change and by spike
+ * ratio (then by symbol, as in {@link StockIndex}). A change costs O(log n), and the top
+ * {@code k} of either ranking is read in O(log n + k) without looking at the other stocks.
+ * <p>
+ * Stocks loaded with {@link StockDataManager#bulkLoad} are not reported to listeners; use
+ * {@link #track(StockDataManager)} to take their current values as the baselines. All
+ * methods are synchronized, so a tracker can be shared with
+ * {@link ConcurrentStockDataManager}.
+ * <p>
+ * Typical use:
+ * <pre>
+ * TopMovers movers = new TopMovers();
+ * movers.track(manager);
+ * ...
+ * List&lt;TopMovers.Mover&gt; gainers = movers.topGainers(20);
+ * </pre>
+ */
+public class TopMovers implements StockListener {
+    private static final double DEFAULT_VOLUME_SMOOTHING = 0.1;
+
+    private static final Comparator<Entry> CHANGE_ORDER =
+            Comparator.<Entry>comparingDouble(e -> e.percentChange).thenComparing(e -> e.symbol);
+    private static final Comparator<Entry> SPIKE_ORDER =
+            Comparator.<Entry>comparingDouble(e -> e.volumeRatio).thenComparing(e -> e.symbol);
+
+    private final double volumeSmoothing;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final AVLTree<Entry, Entry> byChange = new AVLTree<>(CHANGE_ORDER);
+    private final AVLTree<Entry, Entry> bySpike = new AVLTree<>(SPIKE_ORDER);
+    private Set<String> changedWhileSeeding; // Symbols reported while track() seeds, else null
+
+    /**
+     * Constructs a tracker whose volume average gives each new volume a weight of 0.1.
+     */
+    public TopMovers() {
+        this(DEFAULT_VOLUME_SMOOTHING);
+    }
+
+    /**
+     * Constructs a tracker.
+     *
+     * @param volumeSmoothing the weight of each new volume in the moving average, in (0, 1];
+     *        smaller values make the average follow the volume more slowly
+     * @throws IllegalArgumentException if the weight is not in (0, 1]
+     */
+    public TopMovers(double volumeSmoothing) {
+        if (!(volumeSmoothing > 0 && volumeSmoothing <= 1)) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]: " + volumeSmoothing);
+        }
+        this.volumeSmoothing = volumeSmoothing;
+    }
+
+    /**
+     * Starts tracking every stock of a manager, with its current values as the baselines,
+     * and registers the tracker as a listener of the manager so that its later changes are
+     * tracked.
+     * <p>
+     * The tracker is registered before the stocks are read, so no change is missed while
+     * other threads write to the manager. A stock that was reported to the listener while
+     * the stocks were read is not seeded again, because the value read may already be out
+     * of date.
+     * <p>
+     * Time complexity: O(n log n)
+     *
+     * @param manager the manager to track
+     */
+    public void track(StockDataManager manager) {
+        synchronized (this) {
+            changedWhileSeeding = new HashSet<>();
+        }
+        manager.addListener(this);
+        try {
+            manager.forEachStock(this::seed);
+        } finally {
+            synchronized (this) {
+                changedWhileSeeding = null;
+            }
+        }
+    }
+
+    private synchronized void seed(Stock stock) {
+        if (!changedWhileSeeding.contains(stock.getSymbol())) {
+            observe(stock.getSymbol(), stock.getPrice(), stock.getVolume());
+        }
+    }
+
+    private void noteChange(String symbol) {
+        if (changedWhileSeeding != null) {
+            changedWhileSeeding.add(symbol);
+        }
+    }
+
+    /**
+     * Returns the stocks with the highest percent change, highest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} movers
+     */
+    public synchronized List<Mover> topGainers(int count) {
+        return snapshot(byChange.largest(count));
+    }
+
+    /**
+     * Returns the stocks with the lowest percent change, lowest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} movers
+     */
+    public synchronized List<Mover> topLosers(int count) {
+        return snapshot(byChange.smallest(count));
+    }
+
+    /**
+     * Returns the stocks with the highest volume spike ratio, highest first.
+     * <p>
+     * Time complexity: O(log n + k)
+     *
+     * @param count the maximum number of stocks to return
+     * @return up to {@code count} movers
+     */
+    public synchronized List<Mover> topVolumeSpikes(int count) {
+        return snapshot(bySpike.largest(count));
+    }
+
+    /**
+     * Returns the movement of one symbol.
+     * <p>
+     * Time complexity: O(1)
+     *
+     * @param symbol the stock symbol
+     * @return the movement, or null if the symbol is not tracked
+     */
+    public synchronized Mover get(String symbol) {
+        Entry entry = entries.get(symbol);
+        return entry == null ? null : entry.toMover();
+    }
+
+    /**
+     * Returns the number of tracked symbols.
+     *
+     * @return the number of symbols
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Starts a new session: the current price of every symbol becomes its baseline and the
+     * volume averages restart from the current volumes, so every change and spike ratio
+     * returns to its neutral value.
+     * <p>
+     * Time complexity: O(n log n)
+     */
+    public synchronized void resetBaselines() {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        for (Entry entry : sorted) {
+            entry.basePrice = entry.price;
+            entry.volumeAverage = entry.volume;
+            entry.refresh();
+        }
+        sorted.sort(CHANGE_ORDER);
+        byChange.loadSorted(sorted, sorted);
+        sorted.sort(SPIKE_ORDER);
+        bySpike.loadSorted(sorted, sorted);
+    }
+
+    /**
+     * Stops tracking every symbol.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byChange.clear();
+        bySpike.clear();
+    }
+
+    @Override
+    public synchronized void stockAdded(Stock stock) {
+        noteChange(stock.getSymbol());
+        observe(stock.getSymbol(), stock.getPrice(), stock.getVolume());
+    }
+
+    @Override
+    public synchronized void stockRemoved(Stock stock) {
+        noteChange(stock.getSymbol());
+        Entry entry = entries.remove(stock.getSymbol());
+        if (entry != null) {
+            byChange.delete(entry);
+            bySpike.delete(entry);
+        }
+    }
+
+    @Override
+    public synchronized void stockUpdated(Stock previous, Stock current) {
+        noteChange(previous.getSymbol());
+        noteChange(current.getSymbol());
+        if (!previous.getSymbol().equals(current.getSymbol())) {
+            // The movement follows the stock to its new symbol
+            Entry entry = entries.remove(previous.getSymbol());
+            if (entry != null) {
+                // A movement left over under the new symbol would otherwise be orphaned
+                stockRemoved(current);
+                byChange.delete(entry);
+                bySpike.delete(entry);
+                entry.symbol = current.getSymbol();
+                entries.put(entry.symbol, entry);
+                byChange.insert(entry, entry);
+                bySpike.insert(entry, entry);
+            }
+        }
+        observe(current.getSymbol(), current.getPrice(), current.getVolume());
+    }
+
+    /**
+     * Records the new price and volume of a symbol, repositioning its entry only in the
+     * rankings whose key changed.
+     */
+    private void observe(String symbol, double price, long volume) {
+        Entry entry = entries.get(symbol);
+        if (entry == null) {
+            entry = new Entry(symbol, price, volume);
+            entries.put(symbol, entry);
+            byChange.insert(entry, entry);
+            bySpike.insert(entry, entry);
+            return;
+        }
+
+        // The average covers the volumes before the current one, so fold in the old one
+        double volumeAverage = entry.volumeAverage + volumeSmoothing * (entry.volume - entry.volumeAverage);
+        double percentChange = Entry.percentChange(entry.basePrice, price);
+        double volumeRatio = Entry.volumeRatio(volume, volumeAverage);
+
+        // A key must not change while its entry is in a tree
+        boolean changeMoved = Double.compare(entry.percentChange, percentChange) != 0;
+        boolean spikeMoved = Double.compare(entry.volumeRatio, volumeRatio) != 0;
+        if (changeMoved) {
+            byChange.delete(entry);
+        }
+        if (spikeMoved) {
+            bySpike.delete(entry);
+        }
+        entry.price = price;
+        entry.volume = volume;
+        entry.volumeAverage = volumeAverage;
+        entry.percentChange = percentChange;
+        entry.volumeRatio = volumeRatio;
+        if (changeMoved) {
+            byChange.insert(entry, entry);
+        }
+        if (spikeMoved) {
+            bySpike.insert(entry, entry);
+        }
+    }
+
+    private static List<Mover> snapshot(List<Entry> top) {
+        List<Mover> movers = new ArrayList<>(top.size());
+        for (Entry entry : top) {
+            movers.add(entry.toMover());
+        }
+        return movers;
+    }
+
+    /**
+     * The tracked state of one symbol. Its rankings are derived fields, so the entry has to
+     * be removed from the trees before any of them changes.
+     */
+    private static final class Entry {
+        private String symbol;
+        private double basePrice;
+        private double price;
+        private long volume;
+        private double volumeAverage;
+        private double percentChange;
+        private double volumeRatio;
+
+        private Entry(String symbol, double price, long volume) {
+            this.symbol = symbol;
+            this.basePrice = price;
+            this.price = price;
+            this.volume = volume;
+            this.volumeAverage = volume;
+            refresh();
+        }
+
+        private void refresh() {
+            percentChange = percentChange(basePrice, price);
+            volumeRatio = volumeRatio(volume, volumeAverage);
+        }
+
+        private static double percentChange(double basePrice, double price) {
+            return basePrice > 0 ? (price - basePrice) / basePrice * 100 : 0;
+        }
+
+        private static double volumeRatio(long volume, double volumeAverage) {
+            return volume / Math.max(volumeAverage, 1);
+        }
+
+        private Mover toMover() {
+            return new Mover(symbol, price, basePrice, percentChange, volume, volumeRatio);
+        }
+    }
+
+    /**
+     * An immutable view of the movement of one symbol at the time it was read.
+     */
+    public static final class Mover {
+        private final String symbol;
+        private final double price;
+        private final double basePrice;
+        private final double percentChange;
+        private final long volume;
+        private final double volumeRatio;
+
+        private Mover(String symbol, double price, double basePrice, double percentChange, long volume, double volumeRatio) {
+            this.symbol = symbol;
+            this.price = price;
+            this.basePrice = basePrice;
+            this.percentChange = percentChange;
+            this.volume = volume;
+            this.volumeRatio = volumeRatio;
+        }
+
+        /**
+         * Returns the stock symbol.
+         *
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Returns the latest price.
+         *
+         * @return the price
+         */
+        public double getPrice() {
+            return price;
+        }
+
+        /**
+         * Returns the baseline price the change is measured from.
+         *
+         * @return the baseline price
+         */
+        public double getBasePrice() {
+            return basePrice;
+        }
+
+        /**
+         * Returns the percent change of the price since the baseline, or 0 if the baseline
+         * price is not positive.
+         *
+         * @return the percent change
+         */
+        public double getPercentChange() {
+            return percentChange;
+        }
+
+        /**
+         * Returns the latest volume.
+         *
+         * @return the volume
+         */
+        public long getVolume() {
+            return volume;
+        }
+
+        /**
+         * Returns the latest volume divided by the moving average of the earlier volumes.
+         *
+         * @return the volume spike ratio
+         */
+        public double getVolumeRatio() {
+            return volumeRatio;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.2f (%+.2f%%) volume %d (x%.2f)", symbol, price, percentChange, volume, volumeRatio);
+        }
+    }
+}
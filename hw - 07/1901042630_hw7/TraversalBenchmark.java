@@ -0,0 +1,72 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares ways of visiting every stock to sum the market capitalization: the printing
+ * in-order traversal (with the output discarded), the lazy iterator, a sequential stream,
+ * and parallel streams on 1, 2, 4, ... worker threads up to the number of cores.
+ * <p>
+ * Usage: {@code java TraversalBenchmark [symbolCount]} (default: 2,000,000 symbols).
+ */
+public class TraversalBenchmark {
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        Random random = new Random(42);
+        List<Stock> stocks = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            stocks.add(new Stock(UpdateBenchmark.symbolFor('S', i), 10 + random.nextDouble() * 990,
+                    1000 + random.nextInt(9000), 1000000 + random.nextInt(100000)));
+        }
+        StockDataManager manager = StockDataManager.bulkLoad(stocks);
+        stocks = null;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+
+            PrintStream out = System.out;
+            long start = System.nanoTime();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                manager.inOrderTraversal();
+            } finally {
+                System.setOut(out);
+            }
+            report(timed, "inOrderTraversal (printing)", start, 0);
+
+            start = System.nanoTime();
+            long total = 0;
+            for (Stock stock : manager) {
+                total += stock.getMarketCap();
+            }
+            report(timed, "iterator", start, total);
+
+            start = System.nanoTime();
+            total = manager.stream().mapToLong(Stock::getMarketCap).sum();
+            report(timed, "stream", start, total);
+
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                start = System.nanoTime();
+                total = pool.submit(() -> manager.stream().parallel().mapToLong(Stock::getMarketCap).sum()).get();
+                report(timed, "parallel stream, " + threads + " threads", start, total);
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void report(boolean timed, String label, long start, long total) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (timed) {
+            System.out.printf("%-30s %8d ms  (total %d)%n", label, millis, total);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.Random;
+
+/**
+ * Measures the per-update cost of the old insert-then-delete update path against the
+ * dedicated update path of {@link StockDataManager}.
+ * <p>
+ * Usage: {@code java UpdateBenchmark [symbolCount] [updateCount]}
+ * (defaults: 1,000,000 symbols and 200,000 updates).
+ */
+public class UpdateBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int updateCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.println("Building " + symbolCount + " symbols...");
+        AVLTree<String, Stock> tree = new AVLTree<>();
+        StockDataManager manager = new StockDataManager();
+        for (int i = 0; i < symbolCount; i++) {
+            String symbol = symbolFor('S', i);
+            tree.insert(symbol, new Stock(symbol, 100.0, 1000, 1000000));
+            manager.addStock(symbol, 100.0, 1000, 1000000);
+        }
+
+        Random random = new Random(42);
+        int[] targets = new int[updateCount];
+        for (int i = 0; i < updateCount; i++) {
+            targets[i] = random.nextInt(symbolCount);
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            legacyValueUpdate(tree, targets, round);
+            valueUpdate(tree, targets, round);
+            managerValueUpdate(manager, targets, round);
+        }
+
+        System.out.println();
+        System.out.println("Value-only updates (symbol unchanged), " + updateCount + " ops:");
+        report("insert-then-delete (tree)", legacyValueUpdate(tree, targets, WARMUP_ROUNDS), updateCount);
+        report("in-place update (tree)", valueUpdate(tree, targets, WARMUP_ROUNDS), updateCount);
+        report("StockDataManager.updateStock", managerValueUpdate(manager, targets, WARMUP_ROUNDS), updateCount);
+
+        // Every re-key gets a fresh, unused symbol so each operation is a real move
+        int[] distinct = new int[Math.min(updateCount, symbolCount)];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = (int) ((long) i * symbolCount / distinct.length);
+        }
+
+        System.out.println();
+        System.out.println("Symbol changes, " + distinct.length + " ops:");
+        report("insert-then-delete (tree)", legacyRekey(tree, distinct, 'S', 'T'), distinct.length);
+        report("rekey (tree)", rekey(tree, distinct, 'T', 'U'), distinct.length);
+        report("StockDataManager.updateStock", managerRekey(manager, distinct, 'S', 'T'), distinct.length);
+    }
+
+    /**
+     * Replays the old update path: one insert pass and one delete pass per update.
+     * With an unchanged symbol the old code deleted the entry it had just replaced, so the
+     * benchmark models it as delete followed by insert to keep the tree intact.
+     */
+    private static long legacyValueUpdate(AVLTree<String, Stock> tree, int[] targets, int round) {
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            String symbol = symbolFor('S', targets[i]);
+            Stock stock = tree.delete(symbol);
+            stock.setPrice(100.0 + round + i);
+            tree.insert(symbol, stock);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long valueUpdate(AVLTree<String, Stock> tree, int[] targets, int round) {
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            Stock stock = tree.search(symbolFor('S', targets[i]));
+            stock.setPrice(100.0 + round + i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long managerValueUpdate(StockDataManager manager, int[] targets, int round) {
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            String symbol = symbolFor('S', targets[i]);
+            manager.updateStock(symbol, symbol, 100.0 + round + i, 1000, 1000000);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long legacyRekey(AVLTree<String, Stock> tree, int[] targets, char from, char to) {
+        long start = System.nanoTime();
+        for (int target : targets) {
+            String symbol = symbolFor(from, target);
+            String newSymbol = symbolFor(to, target);
+            Stock stock = tree.search(symbol);
+            stock.setSymbol(newSymbol);
+            tree.insert(newSymbol, stock);
+            tree.delete(symbol);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long rekey(AVLTree<String, Stock> tree, int[] targets, char from, char to) {
+        long start = System.nanoTime();
+        for (int target : targets) {
+            String symbol = symbolFor(from, target);
+            String newSymbol = symbolFor(to, target);
+            Stock stock = tree.search(symbol);
+            stock.setSymbol(newSymbol);
+            tree.rekey(symbol, newSymbol);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long managerRekey(StockDataManager manager, int[] targets, char from, char to) {
+        long start = System.nanoTime();
+        for (int target : targets) {
+            manager.updateStock(symbolFor(from, target), symbolFor(to, target), 100.0, 1000, 1000000);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String label, long totalNanos, int operations) {
+        System.out.printf("  %-32s %8d ns/op%n", label, totalNanos / operations);
+    }
+
+    /**
+     * Builds a deterministic symbol: a prefix letter followed by five base-26 letters.
+     *
+     * @param prefix the first letter of the symbol
+     * @param index the index to encode
+     * @return the symbol
+     */
+    static String symbolFor(char prefix, int index) {
+        char[] chars = new char[6];
+        chars[0] = prefix;
+        for (int i = 5; i >= 1; i--) {
+            chars[i] = (char) ('A' + index % 26);
+            index /= 26;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,518 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates command files for {@link CommandProcessor} and {@link WorkloadReplay} of any
+ * length, including billions of commands.
+ * <p>
+ * The commands are produced as a stream: the workload is cut into chunks of 65,536
+ * commands, worker threads encode the chunks, and the chunks are written in order as they
+ * complete. At most two chunks per thread are in memory at a time, whatever the length of
+ * the workload. Every chunk has its own random generator, seeded from the workload seed
+ * and the chunk number, so the same seed gives the same file whatever the number of
+ * threads.
+ * <p>
+ * Which stock a command touches is chosen by a {@link KeyDistribution} over
+ * {@code symbolCount} symbols, and the kind of command by a {@link Mix} of weights. The
+ * symbols are fixed-width base-26 numbers ("AAA", "AAB", ...). A rename (an UPDATE with a
+ * different new symbol) moves the stock to a symbol outside the key space, which later
+ * ADD commands may bring back. With {@code preload} the workload starts with one ADD per
+ * symbol, in symbol order, so the commands that follow find a full tree.
+ * <p>
+ * Commands are written in one of two formats:
+ * <ul>
+ *     <li>{@link Format#TEXT}: the line format read by {@link CommandProcessor}, for
+ *     example {@code ADD AAB 123.45 5000 1000500}, about 20 bytes per command.</li>
+ *     <li>{@link Format#BINARY}: a header (the magic number {@link #MAGIC}, the format
+ *     version, the symbol width and the symbol count) followed by one record per command:
+ *     the command byte, the symbol index as a varint, and for UPDATE the new symbol index;
+ *     ADD and UPDATE then carry the price in cents, the volume and the market
+ *     capitalization as varints. About 6 bytes per command, and nothing to parse.</li>
+ * </ul>
+ * <p>
+ * Usage: {@code java WorkloadGenerator <file> <commandCount> [--symbols N]
+ * [--mix add=20,remove=5,search=60,update=14,rename=1] [--dist uniform|zipfian|hotspot|sequential]
+ * [--seed N] [--threads N] [--binary] [--preload]}
+ */
+public class WorkloadGenerator {
+    /** The first four bytes of a binary workload file: "SWKL". */
+    public static final int MAGIC = 0x53574B4C;
+
+    /** The version of the binary format. */
+    public static final int VERSION = 1;
+
+    /** Command byte of an ADD record. */
+    public static final int ADD = 1;
+    /** Command byte of a REMOVE record. */
+    public static final int REMOVE = 2;
+    /** Command byte of a SEARCH record. */
+    public static final int SEARCH = 3;
+    /** Command byte of an UPDATE record. */
+    public static final int UPDATE = 4;
+
+    /** The mix used when none is given: mostly searches, with some churn. */
+    public static final Mix DEFAULT_MIX = new Mix(20, 5, 60, 14, 1);
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int MIN_SYMBOL_WIDTH = 3;
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+        /** Lines of text, as read by {@link CommandProcessor}. */
+        TEXT,
+        /** Compact varint records, see the class description. */
+        BINARY
+    }
+
+    /**
+     * The relative weights of the kinds of command. An update keeps the symbol of the
+     * stock; a rename is an UPDATE that also changes it.
+     */
+    public static final class Mix {
+        private final int add;
+        private final int remove;
+        private final int search;
+        private final int update;
+        private final int rename;
+        private final int total;
+
+        /**
+         * Constructs a mix from weights.
+         *
+         * @param add the weight of ADD commands
+         * @param remove the weight of REMOVE commands
+         * @param search the weight of SEARCH commands
+         * @param update the weight of UPDATE commands that keep the symbol
+         * @param rename the weight of UPDATE commands that change the symbol
+         * @throws IllegalArgumentException if a weight is negative or all are zero
+         */
+        public Mix(int add, int remove, int search, int update, int rename) {
+            if (add < 0 || remove < 0 || search < 0 || update < 0 || rename < 0) {
+                throw new IllegalArgumentException("Weights must not be negative");
+            }
+            this.add = add;
+            this.remove = remove;
+            this.search = search;
+            this.update = update;
+            this.rename = rename;
+            this.total = add + remove + search + update + rename;
+            if (total <= 0) {
+                throw new IllegalArgumentException("At least one weight must be positive");
+            }
+        }
+
+        /**
+         * Parses a mix such as {@code add=20,search=80}. Kinds that are not named get a
+         * weight of 0.
+         *
+         * @param text the comma-separated {@code kind=weight} pairs
+         * @return the mix
+         * @throws IllegalArgumentException if a kind is unknown or a weight is invalid
+         */
+        public static Mix parse(String text) {
+            int[] weights = new int[5];
+            for (String part : text.split(",")) {
+                String[] pair = part.split("=");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Expected kind=weight: " + part);
+                }
+                int weight = Integer.parseInt(pair[1].trim());
+                switch (pair[0].trim().toLowerCase()) {
+                    case "add":
+                        weights[0] = weight;
+                        break;
+                    case "remove":
+                        weights[1] = weight;
+                        break;
+                    case "search":
+                        weights[2] = weight;
+                        break;
+                    case "update":
+                        weights[3] = weight;
+                        break;
+                    case "rename":
+                        weights[4] = weight;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown command kind: " + pair[0]);
+                }
+            }
+            return new Mix(weights[0], weights[1], weights[2], weights[3], weights[4]);
+        }
+
+        @Override
+        public String toString() {
+            return "add=" + add + ",remove=" + remove + ",search=" + search + ",update=" + update + ",rename=" + rename;
+        }
+    }
+
+    private final int symbolCount;
+    private final int symbolWidth;
+    private final Mix mix;
+    private final KeyDistribution distribution;
+    private final long seed;
+    private final boolean preload;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param symbolCount the number of symbols the commands are spread over
+     * @param mix the weights of the kinds of command
+     * @param distribution how the symbol of each command is chosen
+     * @param seed the random seed; the same seed gives the same workload
+     * @param preload true to start the workload with one ADD per symbol
+     * @throws IllegalArgumentException if {@code symbolCount} is not positive
+     */
+    public WorkloadGenerator(int symbolCount, Mix mix, KeyDistribution distribution, long seed, boolean preload) {
+        if (symbolCount <= 0 || symbolCount > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Invalid symbol count: " + symbolCount);
+        }
+        this.symbolCount = symbolCount;
+        this.symbolWidth = symbolWidth(symbolCount);
+        this.mix = mix;
+        this.distribution = distribution;
+        this.seed = seed;
+        this.preload = preload;
+    }
+
+    /**
+     * Returns the number of letters of every symbol of a workload over the given number of
+     * symbols, leaving room for the symbols renames move stocks to.
+     *
+     * @param symbolCount the number of symbols
+     * @return the symbol width
+     */
+    public static int symbolWidth(int symbolCount) {
+        int width = 1;
+        for (long reach = 26; reach < 2L * symbolCount; reach *= 26) {
+            width++;
+        }
+        return Math.max(MIN_SYMBOL_WIDTH, width);
+    }
+
+    /**
+     * Returns the symbol with the given index.
+     *
+     * @param index the symbol index
+     * @param width the number of letters
+     * @return the symbol
+     */
+    public static String symbol(int index, int width) {
+        char[] letters = new char[width];
+        for (int i = width - 1; i >= 0; i--) {
+            letters[i] = (char) ('A' + index % 26);
+            index /= 26;
+        }
+        return new String(letters);
+    }
+
+    /**
+     * Writes a workload to a file.
+     *
+     * @param path the file to write
+     * @param commandCount the number of commands after the preload
+     * @param format the output format
+     * @param threads the number of threads encoding commands
+     * @return the number of commands written, including the preload
+     * @throws IOException if the file cannot be written
+     */
+    public long generate(Path path, long commandCount, Format format, int threads) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            return generate(out, commandCount, format, threads);
+        }
+    }
+
+    /**
+     * Writes a workload to a stream. The stream is not closed.
+     *
+     * @param out the stream to write to
+     * @param commandCount the number of commands after the preload
+     * @param format the output format
+     * @param threads the number of threads encoding commands
+     * @return the number of commands written, including the preload
+     * @throws IOException if the stream cannot be written
+     */
+    public long generate(OutputStream out, long commandCount, Format format, int threads) throws IOException {
+        long total = (preload ? symbolCount : 0) + commandCount;
+        long chunks = (total + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (format == Format.BINARY) {
+            ChunkBuffer header = new ChunkBuffer(16);
+            header.writeInt(MAGIC);
+            header.writeByte(VERSION);
+            header.writeByte(symbolWidth);
+            header.writeInt(symbolCount);
+            out.write(header.bytes, 0, header.length);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        ArrayDeque<Future<ChunkBuffer>> pending = new ArrayDeque<>();
+        try {
+            long next = 0;
+            while (next < chunks || !pending.isEmpty()) {
+                while (next < chunks && pending.size() < 2 * Math.max(1, threads)) {
+                    long chunk = next++;
+                    pending.add(pool.submit(() -> encode(chunk, total, format)));
+                }
+                ChunkBuffer buffer = pending.remove().get();
+                out.write(buffer.bytes, 0, buffer.length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generating a chunk failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Encodes the commands of one chunk. Everything random about the chunk derives from
+     * the workload seed and the chunk number.
+     */
+    private ChunkBuffer encode(long chunk, long total, Format format) {
+        long first = chunk * CHUNK_SIZE;
+        long last = Math.min(total, first + CHUNK_SIZE);
+        long preloadCount = preload ? symbolCount : 0;
+        long chunkSeed = mixSeed(seed + chunk);
+        Random random = new Random(chunkSeed);
+        // Every mixed command draws one key, so a SEQUENTIAL walk resumes where the
+        // previous chunk stopped
+        KeyDistribution.Sampler keys = distribution.sampler(symbolCount, mixSeed(chunkSeed),
+                Math.max(0, first - preloadCount));
+        ChunkBuffer out = new ChunkBuffer((int) (last - first) * (format == Format.TEXT ? 32 : 12));
+
+        for (long i = first; i < last; i++) {
+            int key;
+            int command;
+            int newKey;
+            if (i < preloadCount) {
+                key = (int) i;
+                command = ADD;
+                newKey = key;
+            } else {
+                key = keys.next();
+                int pick = random.nextInt(mix.total);
+                if ((pick -= mix.add) < 0) {
+                    command = ADD;
+                } else if ((pick -= mix.remove) < 0) {
+                    command = REMOVE;
+                } else if ((pick -= mix.search) < 0) {
+                    command = SEARCH;
+                } else {
+                    command = UPDATE;
+                }
+                // A rename moves the stock out of the key space
+                newKey = command == UPDATE && pick >= mix.update ? symbolCount + random.nextInt(symbolCount) : key;
+            }
+            if (command == ADD || command == UPDATE) {
+                long cents = 1000 + random.nextInt(99000);
+                long volume = 1000 + random.nextInt(9900);
+                long marketCap = 1000000 + random.nextInt(99000);
+                if (format == Format.TEXT) {
+                    out.writeText(command, key, newKey, symbolWidth);
+                    out.writeByte(' ');
+                    out.writeDecimal(cents / 100);
+                    out.writeByte('.');
+                    out.writeByte('0' + (int) (cents / 10 % 10));
+                    out.writeByte('0' + (int) (cents % 10));
+                    out.writeByte(' ');
+                    out.writeDecimal(volume);
+                    out.writeByte(' ');
+                    out.writeDecimal(marketCap);
+                    out.writeByte('\n');
+                } else {
+                    out.writeByte(command);
+                    out.writeVarint(key);
+                    if (command == UPDATE) {
+                        out.writeVarint(newKey);
+                    }
+                    out.writeVarint(cents);
+                    out.writeVarint(volume);
+                    out.writeVarint(marketCap);
+                }
+            } else if (format == Format.TEXT) {
+                out.writeText(command, key, newKey, symbolWidth);
+                out.writeByte('\n');
+            } else {
+                out.writeByte(command);
+                out.writeVarint(key);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The SplitMix64 finalizer, to turn consecutive numbers into unrelated seeds.
+     */
+    private static long mixSeed(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A growable byte array with the encoders the two formats need.
+     */
+    private static final class ChunkBuffer {
+        private static final byte[][] NAMES = {null, "ADD ".getBytes(), "REMOVE ".getBytes(),
+                "SEARCH ".getBytes(), "UPDATE ".getBytes()};
+
+        private byte[] bytes;
+        private int length;
+
+        private ChunkBuffer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeDecimal(long value) {
+            ensure(20);
+            int digits = 1;
+            for (long rest = value / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            int end = length + digits;
+            int position = end;
+            do {
+                bytes[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            length = end;
+        }
+
+        private void writeSymbol(int index, int width) {
+            ensure(width);
+            for (int i = length + width - 1; i >= length; i--) {
+                bytes[i] = (byte) ('A' + index % 26);
+                index /= 26;
+            }
+            length += width;
+        }
+
+        /**
+         * Writes the command name and its symbols, without the values.
+         */
+        private void writeText(int command, int key, int newKey, int width) {
+            byte[] name = NAMES[command];
+            ensure(name.length);
+            System.arraycopy(name, 0, bytes, length, name.length);
+            length += name.length;
+            writeSymbol(key, width);
+            if (command == UPDATE) {
+                writeByte(' ');
+                writeSymbol(newKey, width);
+            }
+        }
+    }
+
+    /**
+     * Generates a workload file from the command line.
+     *
+     * @param args the command-line options, see the class description
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java WorkloadGenerator <file> <commandCount> [--symbols N] [--mix add=..,remove=..,search=..,update=..,rename=..]"
+                    + " [--dist uniform|zipfian|hotspot|sequential] [--seed N] [--threads N] [--binary] [--preload]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        long commandCount = (long) Double.parseDouble(args[1]);
+        int symbols = 1_000_000;
+        Mix mix = DEFAULT_MIX;
+        KeyDistribution distribution = KeyDistribution.UNIFORM;
+        long seed = 42;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Format format = Format.TEXT;
+        boolean preload = false;
+
+        for (int i = 2; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--symbols":
+                    symbols = (int) Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--mix":
+                    mix = Mix.parse(value);
+                    i++;
+                    break;
+                case "--dist":
+                    distribution = KeyDistribution.parse(value);
+                    i++;
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    i++;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--binary":
+                    format = Format.BINARY;
+                    break;
+                case "--preload":
+                    preload = true;
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator(symbols, mix, distribution, seed, preload);
+        long start = System.nanoTime();
+        long written;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20)) {
+            written = generator.generate(out, commandCount, format, threads);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %,d commands (%s, %s, %d symbols, %s) to %s in %.1f s: %,.0f commands/s, %,d bytes%n",
+                written, format, distribution, symbols, mix, path, seconds, written / seconds, Files.size(path));
+    }
+}
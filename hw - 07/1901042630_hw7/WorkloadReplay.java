@@ -0,0 +1,400 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a workload file against a {@link StockDataManager} at a target rate and records
+ * the latency of every command in a {@link LatencyHistogram} per command kind.
+ * <p>
+ * Both formats of {@link WorkloadGenerator} are read; a binary file is recognized by its
+ * magic number. Text files in the {@link CommandProcessor} format from other sources work
+ * too, and lines that cannot be parsed are counted and skipped.
+ * <p>
+ * With a target rate, command {@code i} is due {@code i / rate} seconds after the start.
+ * Its latency is measured from that due time rather than from when it actually started, so
+ * a stall that delays the commands behind it shows up in their latencies as well (the
+ * commands are not silently sent later, which would hide the stall). Without a rate the
+ * commands run back to back and the latency is the service time of each command.
+ * Reading and decoding the file happen outside the measured time.
+ * <p>
+ * Usage: {@code java WorkloadReplay <file> [--rate commandsPerSecond]
+ * [--manager tree|concurrent|columnar] [--warmup N]}
+ */
+public class WorkloadReplay {
+    private static final String[] NAMES = {null, "ADD", "REMOVE", "SEARCH", "UPDATE"};
+    // Waits longer than this are parked, shorter ones are spun
+    private static final long SPIN_NANOS = 100_000;
+
+    private final StockDataManager manager;
+
+    /**
+     * The outcome of a replay.
+     */
+    public static final class Result {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[NAMES.length];
+        private final LatencyHistogram total = new LatencyHistogram();
+        private long commands;
+        private long invalid;
+        private long elapsedNanos;
+
+        private Result() {
+            for (int i = 1; i < NAMES.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        /**
+         * Returns the latencies of one kind of command.
+         *
+         * @param command the command byte, for example {@link WorkloadGenerator#SEARCH}
+         * @return the histogram in nanoseconds
+         */
+        public LatencyHistogram getHistogram(int command) {
+            return histograms[command];
+        }
+
+        /**
+         * Returns the latencies of all measured commands.
+         *
+         * @return the histogram in nanoseconds
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the number of commands executed, including the warmup
+         */
+        public long getCommands() {
+            return commands;
+        }
+
+        /**
+         * @return the number of lines that could not be parsed
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return the wall-clock time of the replay, reading included
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the achieved throughput
+         */
+        public double getCommandsPerSecond() {
+            return commands * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(String.format("%,d commands in %.2f s: %,.0f commands/s (%d invalid)%n",
+                    commands, elapsedNanos / 1e9, getCommandsPerSecond(), invalid));
+            for (int i = 1; i < NAMES.length; i++) {
+                if (histograms[i].getCount() > 0) {
+                    report.append(String.format("%-7s %s%n", NAMES[i], histograms[i]));
+                }
+            }
+            report.append(String.format("%-7s %s", "ALL", total));
+            return report.toString();
+        }
+    }
+
+    /**
+     * Constructs a replay harness.
+     *
+     * @param manager the manager the commands are applied to
+     */
+    public WorkloadReplay(StockDataManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Replays a workload file.
+     *
+     * @param path the workload file, text or binary
+     * @param rate the target rate in commands per second, or 0 to run as fast as possible
+     * @param warmup the number of leading commands that are executed but not measured
+     * @return the latencies and throughput
+     * @throws IOException if the file cannot be read
+     */
+    public Result replay(Path path, double rate, long warmup) throws IOException {
+        Result result = new Result();
+        double interval = rate > 0 ? 1e9 / rate : 0;
+        try (CommandReader reader = new CommandReader(Files.newInputStream(path))) {
+            long start = System.nanoTime();
+            long index = 0;
+            while (reader.next()) {
+                if (reader.command == 0) {
+                    result.invalid++;
+                    continue;
+                }
+                long due;
+                if (interval > 0) {
+                    due = start + (long) (index * interval);
+                    waitUntil(due);
+                } else {
+                    due = System.nanoTime();
+                }
+                apply(reader);
+                long latency = System.nanoTime() - due;
+                if (index++ >= warmup) {
+                    result.histograms[reader.command].record(latency);
+                    result.total.record(latency);
+                }
+            }
+            result.commands = index;
+            result.elapsedNanos = System.nanoTime() - start;
+        }
+        return result;
+    }
+
+    private void apply(CommandReader command) {
+        switch (command.command) {
+            case WorkloadGenerator.ADD:
+                manager.addStock(command.symbol, command.price, command.volume, command.marketCap);
+                break;
+            case WorkloadGenerator.REMOVE:
+                manager.removeStock(command.symbol);
+                break;
+            case WorkloadGenerator.SEARCH:
+                manager.searchStock(command.symbol);
+                break;
+            case WorkloadGenerator.UPDATE:
+                manager.updateStock(command.symbol, command.newSymbol, command.price, command.volume, command.marketCap);
+                break;
+            default:
+                throw new AssertionError(command.command);
+        }
+    }
+
+    private static void waitUntil(long due) {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Decodes one command at a time from either workload format. The fields describe the
+     * last command read; {@code command} is 0 for a line that could not be parsed.
+     */
+    private static final class CommandReader implements Closeable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        private final boolean binary;
+        private int symbolWidth;
+
+        private int command;
+        private String symbol;
+        private String newSymbol;
+        private double price;
+        private long volume;
+        private long marketCap;
+
+        private CommandReader(InputStream in) throws IOException {
+            this.in = in;
+            fill();
+            binary = limit - position >= 4 && readInt() == WorkloadGenerator.MAGIC;
+            if (binary) {
+                int version = readByte();
+                if (version != WorkloadGenerator.VERSION) {
+                    throw new IOException("Unsupported workload version: " + version);
+                }
+                symbolWidth = readByte();
+                readInt();
+            } else {
+                position = 0;
+            }
+        }
+
+        private boolean next() throws IOException {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            return binary ? nextRecord() : nextLine();
+        }
+
+        private boolean nextRecord() throws IOException {
+            command = readByte();
+            if (command < WorkloadGenerator.ADD || command > WorkloadGenerator.UPDATE) {
+                throw new IOException("Corrupt workload record: " + command);
+            }
+            symbol = WorkloadGenerator.symbol((int) readVarint(), symbolWidth);
+            newSymbol = command == WorkloadGenerator.UPDATE
+                    ? WorkloadGenerator.symbol((int) readVarint(), symbolWidth) : symbol;
+            if (command == WorkloadGenerator.ADD || command == WorkloadGenerator.UPDATE) {
+                price = readVarint() / 100.0;
+                volume = readVarint();
+                marketCap = readVarint();
+            }
+            return true;
+        }
+
+        private boolean nextLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = readByteOrEnd()) >= 0 && b != '\n') {
+                line.append((char) b);
+            }
+            String[] parts = line.toString().trim().split("\\s+");
+            command = 0;
+            try {
+                switch (parts[0]) {
+                    case "ADD":
+                        if (parts.length == 5) {
+                            symbol = parts[1];
+                            price = Double.parseDouble(parts[2]);
+                            volume = Long.parseLong(parts[3]);
+                            marketCap = Long.parseLong(parts[4]);
+                            command = WorkloadGenerator.ADD;
+                        }
+                        break;
+                    case "REMOVE":
+                    case "SEARCH":
+                        if (parts.length == 2) {
+                            symbol = parts[1];
+                            command = parts[0].equals("REMOVE") ? WorkloadGenerator.REMOVE : WorkloadGenerator.SEARCH;
+                        }
+                        break;
+                    case "UPDATE":
+                        if (parts.length == 6) {
+                            symbol = parts[1];
+                            newSymbol = parts[2];
+                            price = Double.parseDouble(parts[3]);
+                            volume = Long.parseLong(parts[4]);
+                            marketCap = Long.parseLong(parts[5]);
+                            command = WorkloadGenerator.UPDATE;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                command = 0;
+            }
+            return true;
+        }
+
+        private boolean fill() throws IOException {
+            int kept = limit - position;
+            System.arraycopy(buffer, position, buffer, 0, kept);
+            position = 0;
+            limit = kept;
+            int read;
+            while (limit < buffer.length && (read = in.read(buffer, limit, buffer.length - limit)) > 0) {
+                limit += read;
+            }
+            return limit > 0;
+        }
+
+        private int readByteOrEnd() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private int readByte() throws IOException {
+            int b = readByteOrEnd();
+            if (b < 0) {
+                throw new IOException("Truncated workload file");
+            }
+            return b;
+        }
+
+        private int readInt() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = value << 8 | readByte();
+            }
+            return value;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Replays a workload file from the command line and prints the latency report.
+     *
+     * @param args the command-line options, see the class description
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java WorkloadReplay <file> [--rate commandsPerSecond] [--manager tree|concurrent|columnar] [--warmup N]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        double rate = 0;
+        String kind = "tree";
+        long warmup = 0;
+
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--manager":
+                    kind = value;
+                    break;
+                case "--warmup":
+                    warmup = (long) Double.parseDouble(value);
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        StockDataManager manager;
+        switch (kind) {
+            case "tree":
+                manager = new StockDataManager();
+                break;
+            case "concurrent":
+                manager = new ConcurrentStockDataManager();
+                break;
+            case "columnar":
+                manager = new ColumnarStockDataManager();
+                break;
+            default:
+                System.out.println("Unknown manager: " + kind);
+                return;
+        }
+
+        System.out.println(rate > 0
+                ? String.format("Replaying %s at %,.0f commands/s; latency is measured from when each command was due", path, rate)
+                : String.format("Replaying %s as fast as possible; latency is the service time of each command", path));
+        System.out.println(new WorkloadReplay(manager).replay(path, rate, warmup));
+    }
+}
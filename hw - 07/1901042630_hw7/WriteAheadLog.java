@@ -0,0 +1,454 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary log of the changes made to a {@link StockDataManager}.
+ * <p>
+ * Registered as a {@link StockListener}, the log appends one record per add, remove and
+ * update. Each record is framed as {@code [int length][body][int CRC32 of body]}; the body
+ * holds a type byte, the symbols as length-prefixed UTF-8, the price as 8 raw bytes and the
+ * volume and market capitalization as variable-length integers. A record cut short by a
+ * crash fails its length or checksum test, and replay stops there.
+ * <p>
+ * A record body may take at most a mebibyte, which bounds the symbols to about that
+ * length. A larger record is rejected when it is appended, with an {@link IOException}
+ * (an {@link UncheckedIOException} from the listener methods, after the manager has made
+ * the change), rather than being written and later mistaken by replay for a torn tail.
+ * <p>
+ * Records are collected in a buffer and written with group commit. When the data is forced
+ * to disk depends on the {@link SyncPolicy}.
+ */
+public class WriteAheadLog implements StockListener, Closeable {
+
+    /**
+     * When appended records are forced to stable storage.
+     */
+    public enum SyncPolicy {
+        /** Every record is written and forced before the operation returns. */
+        EVERY_RECORD,
+        /**
+         * Records are forced in groups: once enough records are pending or the oldest
+         * pending record is older than the group delay. A background thread makes sure an
+         * idle log is still synced within the delay.
+         */
+        GROUP,
+        /** Records are written when the buffer fills up; forcing is left to the OS. */
+        NONE
+    }
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte UPDATE = 3;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final int groupSize;
+    private final long groupDelayNanos;
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService flusher;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int pending;
+    private long oldestPendingNanos;
+    private long records;
+    private boolean closed;
+
+    /**
+     * Opens a log that syncs every record.
+     *
+     * @param file the log file, created if missing and appended to otherwise
+     * @throws IOException if the file cannot be opened
+     */
+    public WriteAheadLog(Path file) throws IOException {
+        this(file, SyncPolicy.EVERY_RECORD, 1, 0);
+    }
+
+    /**
+     * Opens a log.
+     *
+     * @param file the log file, created if missing and appended to otherwise
+     * @param policy when records are forced to disk
+     * @param groupSize with {@link SyncPolicy#GROUP}, the number of records forced together
+     * @param groupDelayMillis with {@link SyncPolicy#GROUP}, the longest time a record may
+     *        wait before it is forced
+     * @throws IOException if the file cannot be opened
+     */
+    public WriteAheadLog(Path file, SyncPolicy policy, int groupSize, long groupDelayMillis) throws IOException {
+        if (groupSize <= 0 || groupDelayMillis < 0) {
+            throw new IllegalArgumentException("Group size must be positive and the delay not negative");
+        }
+        this.file = file;
+        this.policy = policy;
+        this.groupSize = groupSize;
+        this.groupDelayNanos = TimeUnit.MILLISECONDS.toNanos(groupDelayMillis);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        if (policy == SyncPolicy.GROUP && groupDelayMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncIfDue, groupDelayMillis, groupDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Appends an add record.
+     *
+     * @param symbol the stock symbol
+     * @param price the stock price
+     * @param volume the trading volume
+     * @param marketCap the market capitalization
+     * @throws IOException if the record cannot be written or is too large
+     */
+    public synchronized void logAdd(String symbol, double price, long volume, long marketCap) throws IOException {
+        byte[] encoded = symbol.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(encoded.length + 40);
+        buffer.put(ADD);
+        putBytes(encoded);
+        putValues(price, volume, marketCap);
+        endRecord(start);
+    }
+
+    /**
+     * Appends a remove record.
+     *
+     * @param symbol the stock symbol
+     * @throws IOException if the record cannot be written or is too large
+     */
+    public synchronized void logRemove(String symbol) throws IOException {
+        byte[] encoded = symbol.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(encoded.length + 8);
+        buffer.put(REMOVE);
+        putBytes(encoded);
+        endRecord(start);
+    }
+
+    /**
+     * Appends an update record.
+     *
+     * @param symbol the current stock symbol
+     * @param newSymbol the new stock symbol
+     * @param price the new stock price
+     * @param volume the new trading volume
+     * @param marketCap the new market capitalization
+     * @throws IOException if the record cannot be written or is too large
+     */
+    public synchronized void logUpdate(String symbol, String newSymbol, double price, long volume, long marketCap) throws IOException {
+        byte[] encoded = symbol.getBytes(StandardCharsets.UTF_8);
+        byte[] encodedNew = newSymbol.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(encoded.length + encodedNew.length + 48);
+        buffer.put(UPDATE);
+        putBytes(encoded);
+        putBytes(encodedNew);
+        putValues(price, volume, marketCap);
+        endRecord(start);
+    }
+
+    @Override
+    public void stockAdded(Stock stock) {
+        try {
+            logAdd(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to " + file, e);
+        }
+    }
+
+    @Override
+    public void stockRemoved(Stock stock) {
+        try {
+            logRemove(stock.getSymbol());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to " + file, e);
+        }
+    }
+
+    @Override
+    public void stockUpdated(Stock previous, Stock current) {
+        try {
+            logUpdate(previous.getSymbol(), current.getSymbol(), current.getPrice(), current.getVolume(), current.getMarketCap());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to " + file, e);
+        }
+    }
+
+    /**
+     * Writes every buffered record and forces the file to disk.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        pending = 0;
+    }
+
+    /**
+     * Returns the number of records appended since the log was opened.
+     *
+     * @return the number of records
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return the log file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Syncs the remaining records and closes the file.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sync();
+            channel.close();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Encoding
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Makes room for a record of at most the given size and reserves its length field.
+     *
+     * @return the buffer position of the length field
+     * @throws IOException if the log is closed or the record may exceed the size that
+     *         replay accepts
+     */
+    private int beginRecord(int maxBodySize) throws IOException {
+        if (closed) {
+            throw new IOException("Log is closed: " + file);
+        }
+        if (maxBodySize > MAX_RECORD_SIZE) {
+            throw new IOException("Record of up to " + maxBodySize + " bytes exceeds the limit of "
+                    + MAX_RECORD_SIZE + ": " + file);
+        }
+        int needed = maxBodySize + 8;
+        if (buffer.remaining() < needed) {
+            flushBuffer();
+            if (buffer.capacity() < needed) {
+                buffer = ByteBuffer.allocate(needed);
+            }
+        }
+        int start = buffer.position();
+        buffer.putInt(0);
+        return start;
+    }
+
+    private void endRecord(int start) throws IOException {
+        int bodyStart = start + 4;
+        int length = buffer.position() - bodyStart;
+        buffer.putInt(start, length);
+        crc.reset();
+        crc.update(buffer.array(), bodyStart, length);
+        buffer.putInt((int) crc.getValue());
+        records++;
+
+        if (pending++ == 0) {
+            oldestPendingNanos = System.nanoTime();
+        }
+        switch (policy) {
+            case EVERY_RECORD:
+                sync();
+                break;
+            case GROUP:
+                if (pending >= groupSize || System.nanoTime() - oldestPendingNanos >= groupDelayNanos) {
+                    sync();
+                }
+                break;
+            default:
+                // Written when the buffer fills up or the log is synced or closed
+                break;
+        }
+    }
+
+    private void syncIfDue() {
+        synchronized (this) {
+            if (closed || pending == 0 || System.nanoTime() - oldestPendingNanos < groupDelayNanos) {
+                return;
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                // The next append or close reports the failure to the caller
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putBytes(byte[] bytes) {
+        putVarLong(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putValues(double price, long volume, long marketCap) {
+        buffer.putDouble(price);
+        putVarLong(volume);
+        putVarLong(marketCap);
+    }
+
+    /**
+     * Writes a zig-zag encoded variable-length integer: small values, including small
+     * negative ones, take a single byte.
+     */
+    private void putVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Replay
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Applies every intact record of a log file to the given manager, in order. Replay
+     * stops at the first record that is truncated or fails its checksum, which is where a
+     * crash interrupted the last write.
+     *
+     * @param file the log file
+     * @param manager the manager to apply the records to
+     * @return the number of records applied
+     * @throws IOException if the file cannot be read
+     */
+    public static long replay(Path file, StockDataManager manager) throws IOException {
+        long applied = 0;
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] body = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                int expected;
+                try {
+                    in.readFully(body, 0, length);
+                    expected = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(body, 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                apply(new Decoder(body, length), manager);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(Decoder decoder, StockDataManager manager) throws IOException {
+        byte type = decoder.readByte();
+        switch (type) {
+            case ADD:
+                manager.addStock(decoder.readString(), decoder.readDouble(), decoder.readVarLong(), decoder.readVarLong());
+                break;
+            case REMOVE:
+                manager.removeStock(decoder.readString());
+                break;
+            case UPDATE:
+                manager.updateStock(decoder.readString(), decoder.readString(), decoder.readDouble(),
+                        decoder.readVarLong(), decoder.readVarLong());
+                break;
+            default:
+                throw new IOException("Unknown log record type: " + type);
+        }
+    }
+
+    /**
+     * Reads the fields of one record body.
+     */
+    private static final class Decoder {
+        private final ByteBuffer body;
+
+        Decoder(byte[] bytes, int length) {
+            this.body = ByteBuffer.wrap(bytes, 0, length);
+        }
+
+        byte readByte() {
+            return body.get();
+        }
+
+        double readDouble() {
+            return body.getDouble();
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+            body.position(body.position() + length);
+            return value;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = body.get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
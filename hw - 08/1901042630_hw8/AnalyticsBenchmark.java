@@ -0,0 +1,90 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The AnalyticsBenchmark class measures how {@link GraphAnalytics} scales with the number
+ * of threads on a generated small-world network (see {@link GraphBenchmark}) with one hub
+ * of thousands of friends, whose long row tests how evenly the work is split. Every
+ * metric runs in a fork-join pool of 1, 2, 4, ... threads up to the given largest count,
+ * and the speedup of each count over one thread is reported.
+ * <p>
+ * PageRank runs a fixed number of iterations so that every thread count does the same
+ * work, and the clustering row counts the triangles and derives the average and global
+ * coefficients from them.
+ * <p>
+ * Usage: {@code java AnalyticsBenchmark [people] [friendsPerPerson] [hubFriends] [maxThreads]}
+ * (defaults: 1,000,000 people, 10 friends each, 5,000 friends of the hub, the number of cores).
+ */
+public class AnalyticsBenchmark {
+    private static final int PAGE_RANK_ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int hubFriends = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount + hubFriends];
+        int[] to = new int[edgeCount + hubFriends];
+        GraphBenchmark.smallWorld(people, friendsPerPerson, random, from, to);
+        for (int i = edgeCount; i < edgeCount + hubFriends; i++) {
+            from[i] = 0;
+            to[i] = 1 + random.nextInt(people - 1);
+        }
+        FriendGraph graph = FriendGraph.fromEdges(people, from, to, edgeCount + hubFriends);
+        System.out.printf("%,d people, %,d friendships, hub with %,d friends, %d cores%n%n",
+                people, graph.edgeCount(), graph.degree(0), cores);
+        System.out.printf("%-8s %11s %11s %11s %11s %9s%n",
+                "threads", "snapshot", "histogram", "PageRank", "clustering", "speedup");
+
+        long single = 0;
+        long triangles = -1;
+        // One untimed round of each so the JIT has compiled the code being measured
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long start = System.nanoTime();
+                GraphAnalytics analytics = pool.submit(() -> new GraphAnalytics(graph)).get();
+                long snapshot = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long[] histogram = pool.submit(analytics::degreeHistogram).get();
+                long histogramTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                double[] rank = pool.submit(() -> analytics.pageRank(0.85, PAGE_RANK_ITERATIONS, 0)).get();
+                long pageRank = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long count = pool.submit(analytics::triangleCount).get();
+                double average = pool.submit(analytics::averageClustering).get();
+                double global = pool.submit(analytics::globalClustering).get();
+                long clustering = System.nanoTime() - start;
+                pool.shutdown();
+
+                if (triangles >= 0 && count != triangles) {
+                    throw new IllegalStateException("The thread counts disagree");
+                }
+                triangles = count;
+                long total = snapshot + histogramTime + pageRank + clustering;
+                if (threads == 1) {
+                    single = total;
+                }
+                if (timed) {
+                    System.out.printf("%-8d %8d ms %8d ms %8d ms %8d ms %8.2fx%n", threads,
+                            snapshot / 1_000_000, histogramTime / 1_000_000, pageRank / 1_000_000,
+                            clustering / 1_000_000, (double) single / total);
+                    if (threads == 1) {
+                        System.out.printf("(%d degrees, rank of the hub %.2e, %,d triangles, "
+                                + "average clustering %.4f, global clustering %.4f)%n",
+                                histogram.length, rank[0], count, average, global);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.*;
+
+/**
+ * The ClusterBenchmark class compares answering cluster questions by rescanning the graph,
+ * as countClusters did, with the clusters that {@link FriendGraph} keeps up to date. It
+ * measures the queries on a generated small-world network (see {@link GraphBenchmark}) and
+ * what keeping the clusters costs when friendships are added and removed.
+ * <p>
+ * Removing a friendship costs a path search between the two former friends. Friends
+ * within a group share other friends, so a local friendship is cheap to remove, while a
+ * random long-range one costs about as much as a shortest-path query. Both are measured.
+ * <p>
+ * Usage: {@code java ClusterBenchmark [people] [friendsPerPerson] [operations]}
+ * (defaults: 1,000,000 people, 10 friends each, 1,000,000 operations).
+ */
+public class ClusterBenchmark {
+    public static void main(String[] args) {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        GraphBenchmark.smallWorld(people, friendsPerPerson, random, from, to);
+        long start = System.nanoTime();
+        FriendGraph graph = FriendGraph.fromEdges(people, from, to, edgeCount);
+        long build = System.nanoTime() - start;
+        System.out.printf("%,d people, %,d friendships, %,d operations%n%n", people, graph.edgeCount(), operations);
+        System.out.printf("%-32s %12.1f ms%n", "build with clusters", build / 1e6);
+
+        int[] a = new int[operations];
+        int[] b = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            a[i] = random.nextInt(people);
+            b[i] = random.nextInt(people);
+        }
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            start = System.nanoTime();
+            int rescanned = graph.components().size();
+            long rescan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int same = 0;
+            for (int i = 0; i < operations; i++) {
+                if (graph.sameCluster(a[i], b[i])) {
+                    same++;
+                }
+            }
+            long sameNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long sizes = 0;
+            for (int i = 0; i < operations; i++) {
+                sizes += graph.clusterSize(a[i]);
+            }
+            long sizeNanos = System.nanoTime() - start;
+
+            // Add random friendships, then remove them again, so every round starts alike
+            int randomEdges = operations / 100;
+            start = System.nanoTime();
+            int added = 0;
+            for (int i = 0; i < randomEdges; i++) {
+                if (graph.addEdge(a[i], b[i])) {
+                    added++;
+                } else {
+                    a[i] = -1;
+                }
+            }
+            long addNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < randomEdges; i++) {
+                if (a[i] >= 0) {
+                    graph.removeEdge(a[i], b[i]);
+                }
+            }
+            long removeNanos = System.nanoTime() - start;
+            for (int i = 0; i < randomEdges; i++) {
+                a[i] = a[i] >= 0 ? a[i] : random.nextInt(people);
+            }
+
+            // Remove friendships between neighbours on the ring, then restore them
+            start = System.nanoTime();
+            int local = 0;
+            for (int i = 0; i < operations; i++) {
+                if (graph.removeEdge(a[i], (a[i] + 1) % people)) {
+                    local++;
+                } else {
+                    b[i] = -1;
+                }
+            }
+            long removeLocalNanos = System.nanoTime() - start;
+            for (int i = 0; i < operations; i++) {
+                if (b[i] >= 0) {
+                    graph.addEdge(a[i], (a[i] + 1) % people);
+                } else {
+                    b[i] = random.nextInt(people);
+                }
+            }
+
+            // Cut people out of the network entirely, then bring them back friendless
+            int removals = Math.max(1, operations / 100);
+            start = System.nanoTime();
+            for (int i = 0; i < removals; i++) {
+                graph.removeVertex(b[round * removals + i]);
+            }
+            long removeVertexNanos = System.nanoTime() - start;
+            for (int i = 0; i < removals; i++) {
+                graph.addVertex();
+            }
+
+            if (timed) {
+                System.out.printf("%-32s %12.1f ms  (%d clusters)%n", "rescan the graph", rescan / 1e6, rescanned);
+                System.out.printf("%-32s %12s     (%d clusters)%n", "clusterCount", "O(1)", graph.clusterCount());
+                System.out.printf("%-32s %12.1f ns  (%d of %d)%n", "sameCluster", (double) sameNanos / operations,
+                        same, operations);
+                System.out.printf("%-32s %12.1f ns  (%.0f on average)%n", "clusterSize", (double) sizeNanos / operations,
+                        (double) sizes / operations);
+                System.out.printf("%-32s %12.1f ns  (%d added)%n", "addEdge, random", (double) addNanos / added, added);
+                System.out.printf("%-32s %12.1f ns%n", "removeEdge, random", (double) removeNanos / added);
+                System.out.printf("%-32s %12.1f ns  (%d removed)%n", "removeEdge, ring neighbours",
+                        (double) removeLocalNanos / local, local);
+                System.out.printf("%-32s %12.1f us  (%d people, %d clusters after)%n", "removeVertex",
+                        removeVertexNanos / 1e3 / removals, removals, graph.clusterCount() - removals);
+            }
+        }
+    }
+}
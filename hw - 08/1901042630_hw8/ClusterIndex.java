@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+/**
+ * The ClusterIndex class keeps the clusters (connected components) of a {@link FriendGraph}
+ * up to date as the graph changes, so that cluster queries never rescan the graph.
+ * <p>
+ * The clusters are the sets of a union-find structure with union by size and path
+ * halving: joining two clusters and finding the cluster of a vertex take O(&alpha;(n))
+ * amortized time. A union-find structure cannot split a set, so the vertices do not own
+ * its elements directly: every vertex points to an element, and when a removed friendship
+ * cuts a cluster in two, the vertices of one part are given fresh elements under a new
+ * root. The elements they leave behind may still lie on the paths of the other part, so
+ * they are kept, like the elements of removed vertices, until they outnumber the vertices,
+ * and then the structure is rebuilt with every vertex pointing directly at its root.
+ * <p>
+ * The index does not look at the graph: {@link FriendGraph} reports every new friendship
+ * and finds the vertices of a part that was cut off. When finding them would take too
+ * long, the graph drops the index and builds a new one from its edges instead.
+ */
+public class ClusterIndex {
+    private static final int MIN_GARBAGE = 1024; // Smallest number of dead elements that triggers a rebuild
+
+    private int[] element = new int[16]; // The element of each vertex, or -1 for a free vertex id
+    private int[] parent = new int[16]; // The parent of each element; a root is its own parent
+    private int[] size = new int[16]; // The number of vertices in the cluster of each root
+    private int elements; // Number of elements in use, live or dead
+    private int vertices; // Number of live vertices
+    private int garbage; // Number of elements no vertex points to
+    private int clusters; // Number of clusters
+
+    /**
+     * Constructs an index without vertices.
+     */
+    public ClusterIndex() {
+        Arrays.fill(element, -1);
+    }
+
+    /**
+     * Adds a vertex as a cluster of its own.
+     *
+     * @param v the vertex
+     */
+    public void addVertex(int v) {
+        if (v >= element.length) {
+            int length = Math.max(v + 1, element.length * 2);
+            int old = element.length;
+            element = Arrays.copyOf(element, length);
+            Arrays.fill(element, old, length, -1);
+        }
+        int e = newElement();
+        parent[e] = e;
+        size[e] = 1;
+        element[v] = e;
+        vertices++;
+        clusters++;
+    }
+
+    /**
+     * Removes a vertex from its cluster, and the cluster with it if the vertex was alone.
+     * If the vertex had friends, the rest of its cluster may have fallen apart; the parts
+     * that were cut off must then be moved out with {@link #split}.
+     *
+     * @param v the vertex
+     */
+    public void removeVertex(int v) {
+        int r = root(element[v]);
+        element[v] = -1;
+        vertices--;
+        garbage++;
+        if (--size[r] == 0) {
+            clusters--;
+        }
+        rebuildIfNeeded();
+    }
+
+    /**
+     * Joins the clusters of two vertices that just became friends.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if they were in different clusters
+     */
+    public boolean union(int u, int v) {
+        int a = root(element[u]);
+        int b = root(element[v]);
+        if (a == b) {
+            return false;
+        }
+        if (size[a] < size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+        clusters--;
+        return true;
+    }
+
+    /**
+     * Moves some vertices of one cluster into a new cluster of their own. The vertices
+     * must be exactly the part of the cluster that a removed friendship cut off.
+     *
+     * @param part  an array holding the vertices
+     * @param from  the index of the first vertex
+     * @param count the number of vertices
+     */
+    public void split(int[] part, int from, int count) {
+        size[root(element[part[from]])] -= count;
+        int newRoot = -1;
+        for (int i = from; i < from + count; i++) {
+            int e = newElement();
+            if (newRoot < 0) {
+                newRoot = e;
+                size[e] = count;
+            }
+            parent[e] = newRoot;
+            element[part[i]] = e;
+        }
+        garbage += count;
+        clusters++;
+        rebuildIfNeeded();
+    }
+
+    /**
+     * Tells whether two vertices are in the same cluster.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if a chain of friendships connects them
+     */
+    public boolean sameCluster(int u, int v) {
+        return root(element[u]) == root(element[v]);
+    }
+
+    /**
+     * Returns the number of vertices in the cluster of a vertex.
+     *
+     * @param v the vertex
+     * @return the size of its cluster, counting the vertex itself
+     */
+    public int clusterSize(int v) {
+        return size[root(element[v])];
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return the number of clusters
+     */
+    public int clusterCount() {
+        return clusters;
+    }
+
+    private int root(int e) {
+        while (parent[e] != e) {
+            parent[e] = parent[parent[e]];
+            e = parent[e];
+        }
+        return e;
+    }
+
+    private int newElement() {
+        if (elements == parent.length) {
+            parent = Arrays.copyOf(parent, elements * 2);
+            size = Arrays.copyOf(size, elements * 2);
+        }
+        return elements++;
+    }
+
+    private void rebuildIfNeeded() {
+        if (garbage > Math.max(MIN_GARBAGE, vertices)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Drops the dead elements, giving each cluster a new root and pointing every vertex
+     * directly at it.
+     */
+    private void rebuild() {
+        int[] newRoot = new int[elements];
+        Arrays.fill(newRoot, -1);
+        int[] newParent = new int[Math.max(16, vertices * 2)];
+        int[] newSize = new int[newParent.length];
+        int count = 0;
+        for (int v = 0; v < element.length; v++) {
+            if (element[v] < 0) {
+                continue;
+            }
+            int r = root(element[v]);
+            int e = count++;
+            if (newRoot[r] < 0) {
+                newRoot[r] = e;
+                newSize[e] = size[r];
+            }
+            newParent[e] = newRoot[r];
+            element[v] = e;
+        }
+        parent = newParent;
+        size = newSize;
+        elements = count;
+        garbage = 0;
+    }
+}
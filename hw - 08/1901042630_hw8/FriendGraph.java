@@ -0,0 +1,877 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The FriendGraph class is the int-indexed graph behind a SocialNetwork. Every person is a
+ * dense vertex id, and friendships are undirected edges between ids.
+ * <p>
+ * The edges are kept in compressed sparse row (CSR) form. The friends of vertex v are
+ * {@code targets[offsets[v]]} up to {@code targets[offsets[v + 1] - 1]}, sorted, so the
+ * graph costs 4 bytes per vertex plus 4 bytes per direction of every friendship, and a
+ * traversal reads each row as one contiguous run of ints instead of following references.
+ * <p>
+ * Changes do not rewrite the arrays. An added edge goes into a per-vertex delta set, an
+ * open-addressing int hash set (see {@link IntSets}), and a removed edge of the CSR arrays
+ * is marked in place by storing the complement of the friend id. Once the delta entries
+ * exceed an eighth of the edges, they are merged into fresh CSR arrays in O(V + E). The
+ * ids of removed vertices are reused.
+ * <p>
+ * Finding, adding or removing an edge is an expected O(1) probe of a delta set plus a
+ * binary search of a CSR row. The rows stay sorted arrays rather than hash sets because
+ * traversals read far more rows than lookups do, and a binary search of a row of d
+ * friends takes log d steps. Removing a vertex touches only its own edges, in O(d).
+ * <p>
+ * The clusters are kept up to date by a {@link ClusterIndex}. A new friendship joins two
+ * clusters in O(&alpha;(n)). After a friendship is removed, a path search between its two ends
+ * decides whether the cluster fell apart, and if so the part that the search explored
+ * completely becomes a cluster of its own. In a small-world network the search usually
+ * meets within a few levels. The search may queue at most {@code SEARCH_BUDGET} vertices,
+ * though: removing a bridge between two large parts would otherwise search most of the
+ * graph. When the budget runs out, the clusters are marked stale, later removals skip
+ * their searches, and the next cluster query rebuilds the index in one O(V + E) pass.
+ * Removing a vertex updates the clusters once, by searches between its former friends
+ * that share a single budget.
+ * <p>
+ * Path searches draw their arrays from a workspace kept per thread, so they do not
+ * allocate, and several threads can search at once as long as no thread changes the graph.
+ * <p>
+ * The CSR arrays are indexed by int, which limits the graph to 2^31 - 1 directed entries,
+ * that is about a billion friendships.
+ */
+public class FriendGraph {
+    private static final int MIN_DELTA = 1024; // Smallest delta that triggers a merge
+    private static final int SEARCH_BUDGET = 1 << 15; // Most vertices a cluster update may queue
+    private static final int OVER_BUDGET = -2; // Result of a search that ran out of budget
+    private static final int[] EMPTY = new int[0];
+
+    private int[] offsets; // Row starts of the CSR arrays, one more than the rows
+    private int[] targets; // Friend ids of every row; a negative entry is a removed ~id
+    private int rows; // Number of vertices that have a CSR row
+
+    private int[][] added; // Edges added since the last merge, as an IntSets set per vertex
+    private int[] addedCount; // Number of values in each delta set
+    private int[] degree; // Number of friends of each vertex, or -1 for a free id
+    private int vertexLimit; // Every id ever handed out is below this
+    private int vertexCount; // Number of live vertices
+    private int edgeCount; // Number of undirected edges
+    private int deltaSize; // Added plus removed entries since the last merge
+    private int[] freeIds; // Ids of removed vertices, ready for reuse
+    private int freeCount;
+    private ClusterIndex clusters = new ClusterIndex();
+    private boolean clustersStale; // Whether the clusters must be rebuilt before the next query
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Constructs an empty graph.
+     */
+    public FriendGraph() {
+        this.offsets = new int[1];
+        this.targets = EMPTY;
+        this.added = new int[16][];
+        this.addedCount = new int[16];
+        this.degree = new int[16];
+        this.freeIds = new int[16];
+    }
+
+    /**
+     * Builds a graph with the vertices {@code 0 .. vertexCount - 1} and the given edges,
+     * writing the CSR arrays directly instead of adding the edges one by one.
+     * Self-loops and repeated edges are dropped.
+     *
+     * @param vertexCount the number of vertices
+     * @param from        the first vertex of every edge
+     * @param to          the second vertex of every edge
+     * @param count       the number of edges in the two arrays
+     * @return the graph
+     * @throws IllegalArgumentException if an edge has a vertex outside the range or the
+     *                                  edges do not fit in the CSR arrays
+     */
+    public static FriendGraph fromEdges(int vertexCount, int[] from, int[] to, int count) {
+        if (2L * count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many edges: " + count);
+        }
+        int[] offsets = new int[vertexCount + 1];
+        for (int i = 0; i < count; i++) {
+            int u = from[i];
+            int v = to[i];
+            if (u < 0 || u >= vertexCount || v < 0 || v >= vertexCount) {
+                throw new IllegalArgumentException("Edge out of range: " + u + " - " + v);
+            }
+            if (u != v) {
+                offsets[u + 1]++;
+                offsets[v + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] targets = new int[offsets[vertexCount]];
+        int[] next = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < count; i++) {
+            int u = from[i];
+            int v = to[i];
+            if (u != v) {
+                targets[next[u]++] = v;
+                targets[next[v]++] = u;
+            }
+        }
+
+        // Sort every row and squeeze out the repeated edges
+        int write = 0;
+        int start = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int end = offsets[v + 1];
+            Arrays.sort(targets, start, end);
+            offsets[v] = write;
+            for (int i = start; i < end; i++) {
+                if (i == start || targets[i] != targets[i - 1]) {
+                    targets[write++] = targets[i];
+                }
+            }
+            start = end;
+        }
+        offsets[vertexCount] = write;
+
+        FriendGraph graph = new FriendGraph();
+        graph.offsets = offsets;
+        graph.targets = write == targets.length ? targets : Arrays.copyOf(targets, write);
+        graph.rows = vertexCount;
+        graph.ensureCapacity(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            graph.degree[v] = offsets[v + 1] - offsets[v];
+        }
+        graph.vertexLimit = vertexCount;
+        graph.vertexCount = vertexCount;
+        graph.edgeCount = write / 2;
+        for (int v = 0; v < vertexCount; v++) {
+            graph.clusters.addVertex(v);
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1] && targets[i] < v; i++) {
+                graph.clusters.union(v, targets[i]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Adds a vertex without friends.
+     *
+     * @return the id of the new vertex, which may be the id of a removed vertex
+     */
+    public int addVertex() {
+        int v;
+        if (freeCount > 0) {
+            v = freeIds[--freeCount];
+        } else {
+            v = vertexLimit++;
+            ensureCapacity(vertexLimit);
+        }
+        degree[v] = 0;
+        vertexCount++;
+        clusters.addVertex(v);
+        return v;
+    }
+
+    /**
+     * Removes a vertex and all of its edges. Its own row is dropped whole, and each friend
+     * loses its entry for the vertex in O(1) from a delta set or by a binary search of a
+     * CSR row, so the edges cost O(d) for a vertex of degree d. The clusters are then
+     * updated once for all of the former friends (see {@code reconnect}), by path searches
+     * that share one budget.
+     *
+     * @param v the vertex to remove
+     * @return true if the vertex existed
+     */
+    public boolean removeVertex(int v) {
+        if (!contains(v)) {
+            return false;
+        }
+        int[] friends = neighbors(v);
+        for (int friend : friends) {
+            removeEntry(friend, v);
+        }
+        if (v < rows) {
+            for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+                if (targets[i] >= 0) {
+                    targets[i] = ~targets[i];
+                    deltaSize++;
+                }
+            }
+        }
+        deltaSize -= addedCount[v];
+        added[v] = null;
+        addedCount[v] = 0;
+        edgeCount -= friends.length;
+        degree[v] = -1;
+        clusters.removeVertex(v);
+        reconnect(friends);
+        vertexCount--;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = v;
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * Adds an undirected edge.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if the edge was added, false if a vertex does not exist, the two are the
+     *         same vertex or the edge already exists
+     */
+    public boolean addEdge(int u, int v) {
+        if (u == v || !contains(u) || !contains(v) || hasEdge(u, v)) {
+            return false;
+        }
+        append(u, v);
+        append(v, u);
+        edgeCount++;
+        clusters.union(u, v);
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * Removes an undirected edge and splits the cluster of the two vertices if no other
+     * chain of friendships connects them.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if the edge existed
+     */
+    public boolean removeEdge(int u, int v) {
+        if (!contains(u) || !contains(v) || !removeEntry(u, v)) {
+            return false;
+        }
+        removeEntry(v, u);
+        edgeCount--;
+        disconnect(u, v);
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * Tells whether two vertices are friends, by a lookup in the delta set and a binary
+     * search of the CSR row of the vertex with fewer friends.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if the edge exists
+     */
+    public boolean hasEdge(int u, int v) {
+        if (!contains(u) || !contains(v)) {
+            return false;
+        }
+        if (degree[v] < degree[u]) {
+            int swap = u;
+            u = v;
+            v = swap;
+        }
+        return IntSets.contains(added[u], v) || findBase(u, v) >= 0;
+    }
+
+    /**
+     * Tells whether a vertex exists.
+     *
+     * @param v the vertex
+     * @return true if the vertex was added and not removed
+     */
+    public boolean contains(int v) {
+        return v >= 0 && v < vertexLimit && degree[v] >= 0;
+    }
+
+    /**
+     * Returns the number of friends of a vertex.
+     *
+     * @param v the vertex
+     * @return the degree of the vertex
+     */
+    public int degree(int v) {
+        return degree[v];
+    }
+
+    /**
+     * Returns the number of live vertices.
+     *
+     * @return the number of vertices
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns a bound on the vertex ids: every live vertex is below it. Arrays indexed by
+     * vertex need this length.
+     *
+     * @return one more than the largest id ever handed out
+     */
+    public int vertexLimit() {
+        return vertexLimit;
+    }
+
+    /**
+     * Returns the number of undirected edges.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the friends of a vertex.
+     *
+     * @param v the vertex
+     * @return a new array holding the friends, sorted
+     */
+    public int[] neighbors(int v) {
+        int[] friends = new int[degree[v]];
+        int n = 0;
+        if (v < rows) {
+            for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+                if (targets[i] >= 0) {
+                    friends[n++] = targets[i];
+                }
+            }
+        }
+        IntSets.copy(added[v], friends, n);
+        Arrays.sort(friends);
+        return friends;
+    }
+
+    /**
+     * Calls an action for every friend of a vertex, in no particular order.
+     *
+     * @param v      the vertex
+     * @param action the action to call with each friend
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        if (v < rows) {
+            for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+                if (targets[i] >= 0) {
+                    action.accept(targets[i]);
+                }
+            }
+        }
+        int[] delta = added[v];
+        if (delta != null) {
+            for (int entry : delta) {
+                if (entry != 0) {
+                    action.accept(entry - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds a shortest path with a bidirectional breadth-first search. The search grows one
+     * level at a time from both ends, always on the side with the smaller frontier, and
+     * stops when the two sides meet. In a small-world network this visits a tiny fraction
+     * of the vertices a one-sided search would.
+     * <p>
+     * The search uses the workspace of the calling thread, so the only allocation is the
+     * returned path.
+     *
+     * @param from the first vertex of the path
+     * @param to   the last vertex of the path
+     * @return the vertices of the path from {@code from} to {@code to}, or null if the two
+     *         are not connected
+     */
+    public int[] shortestPath(int from, int to) {
+        if (!contains(from) || !contains(to)) {
+            return null;
+        }
+        Workspace workspace = workspaces.get();
+        int length = search(workspace, from, to, Integer.MAX_VALUE);
+        if (length < 0) {
+            return null;
+        }
+        int[] path = new int[length + 1];
+        if (length == 0) {
+            path[0] = from;
+            return path;
+        }
+        int[] parent = workspace.parent;
+        int i = 0;
+        for (int at = workspace.meetForward; at != from; at = parent[at]) {
+            i++;
+        }
+        for (int at = workspace.meetForward, j = i; j >= 0; at = parent[at], j--) {
+            path[j] = at;
+        }
+        for (int at = workspace.meetBackward, j = i + 1; j <= length; at = parent[at], j++) {
+            path[j] = at;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of friendships on a shortest path, found like
+     * {@link #shortestPath} but without allocating anything.
+     *
+     * @param from the first vertex
+     * @param to   the last vertex
+     * @return the distance between the two vertices, or -1 if they are not connected
+     */
+    public int distance(int from, int to) {
+        if (!contains(from) || !contains(to)) {
+            return -1;
+        }
+        return search(workspaces.get(), from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tells whether two vertices are in the same cluster, in O(&alpha;(n)) time, or O(V + E)
+     * if the clusters are stale.
+     *
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return true if both exist and a chain of friendships connects them
+     */
+    public boolean sameCluster(int u, int v) {
+        return contains(u) && contains(v) && clusterIndex().sameCluster(u, v);
+    }
+
+    /**
+     * Returns the number of vertices in the cluster of a vertex, in O(&alpha;(n)) time, or
+     * O(V + E) if the clusters are stale.
+     *
+     * @param v the vertex
+     * @return the size of its cluster, counting the vertex itself, or 0 if it does not exist
+     */
+    public int clusterSize(int v) {
+        return contains(v) ? clusterIndex().clusterSize(v) : 0;
+    }
+
+    /**
+     * Returns the number of clusters, in O(1) time, or O(V + E) if the clusters are stale.
+     *
+     * @return the number of connected components
+     */
+    public int clusterCount() {
+        return clusterIndex().clusterCount();
+    }
+
+    /**
+     * Splits the graph into its connected components.
+     *
+     * @return the vertices of every component in breadth-first order, the components
+     *         ordered by their smallest vertex
+     */
+    public List<int[]> components() {
+        List<int[]> components = new ArrayList<>();
+        boolean[] seen = new boolean[vertexLimit];
+        int[] queue = new int[vertexCount];
+        for (int start = 0; start < vertexLimit; start++) {
+            if (degree[start] < 0 || seen[start]) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            seen[start] = true;
+            while (head < tail) {
+                int current = queue[head++];
+                if (current < rows) {
+                    for (int i = offsets[current], end = offsets[current + 1]; i < end; i++) {
+                        int friend = targets[i];
+                        if (friend >= 0 && !seen[friend]) {
+                            seen[friend] = true;
+                            queue[tail++] = friend;
+                        }
+                    }
+                }
+                int[] delta = added[current];
+                for (int i = 0; delta != null && i < delta.length; i++) {
+                    int friend = delta[i] - 1;
+                    if (friend >= 0 && !seen[friend]) {
+                        seen[friend] = true;
+                        queue[tail++] = friend;
+                    }
+                }
+            }
+            components.add(Arrays.copyOf(queue, tail));
+        }
+        return components;
+    }
+
+    /**
+     * Merges the delta arrays into fresh CSR arrays, dropping the removed entries and
+     * sorting every row. Called automatically once the delta grows large enough.
+     */
+    public void compact() {
+        int[] newOffsets = new int[vertexLimit + 1];
+        for (int v = 0; v < vertexLimit; v++) {
+            newOffsets[v + 1] = newOffsets[v] + Math.max(0, degree[v]);
+        }
+        int[] newTargets = new int[newOffsets[vertexLimit]];
+        for (int v = 0; v < vertexLimit; v++) {
+            if (degree[v] <= 0) {
+                continue;
+            }
+            int write = newOffsets[v];
+            if (v < rows) {
+                for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+                    if (targets[i] >= 0) {
+                        newTargets[write++] = targets[i];
+                    }
+                }
+            }
+            write = IntSets.copy(added[v], newTargets, write);
+            Arrays.sort(newTargets, newOffsets[v], write);
+        }
+        offsets = newOffsets;
+        targets = newTargets;
+        rows = vertexLimit;
+        Arrays.fill(added, 0, vertexLimit, null);
+        Arrays.fill(addedCount, 0, vertexLimit, 0);
+        deltaSize = 0;
+    }
+
+    /**
+     * Returns the approximate heap size of the graph arrays, for comparing representations.
+     *
+     * @return the size in bytes
+     */
+    public long memoryUsage() {
+        long bytes = 4L * (offsets.length + targets.length + addedCount.length + degree.length + freeIds.length)
+                + 4L * added.length;
+        for (int v = 0; v < vertexLimit; v++) {
+            bytes += IntSets.memoryUsage(added[v]);
+        }
+        return bytes;
+    }
+
+    private void append(int u, int v) {
+        added[u] = IntSets.add(added[u], addedCount[u]++, v);
+        degree[u]++;
+        deltaSize++;
+    }
+
+    /**
+     * Removes {@code v} from the friends of {@code u}, from the delta set if it is there,
+     * otherwise by marking its CSR entry.
+     */
+    private boolean removeEntry(int u, int v) {
+        if (IntSets.remove(added[u], v)) {
+            addedCount[u]--;
+            degree[u]--;
+            deltaSize--;
+            return true;
+        }
+        int i = findBase(u, v);
+        if (i >= 0) {
+            targets[i] = ~v;
+            degree[u]--;
+            deltaSize++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Binary search of the CSR row of {@code u}, whose removed entries still sort by the id
+     * they hide.
+     *
+     * @return the index of the live entry for {@code v}, or -1
+     */
+    private int findBase(int u, int v) {
+        if (u >= rows) {
+            return -1;
+        }
+        int low = offsets[u];
+        int high = offsets[u + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = targets[mid];
+            int friend = entry < 0 ? ~entry : entry;
+            if (friend < v) {
+                low = mid + 1;
+            } else if (friend > v) {
+                high = mid - 1;
+            } else {
+                return entry >= 0 ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void mergeIfNeeded() {
+        if (deltaSize > Math.max(MIN_DELTA, targets.length / 8)) {
+            compact();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > degree.length) {
+            int size = Math.max(capacity, degree.length * 2);
+            added = Arrays.copyOf(added, size);
+            addedCount = Arrays.copyOf(addedCount, size);
+            degree = Arrays.copyOf(degree, size);
+        }
+    }
+
+    /**
+     * Updates the clusters after the edge between two vertices was removed. If the search
+     * finds no other path, the side that ran out of vertices has explored the whole part
+     * that was cut off, and that part becomes a cluster of its own. If the search runs out
+     * of budget first, the clusters are left to be rebuilt.
+     */
+    private void disconnect(int u, int v) {
+        if (clustersStale) {
+            return;
+        }
+        Workspace workspace = workspaces.get();
+        int distance = search(workspace, u, v, SEARCH_BUDGET);
+        if (distance >= 0) {
+            return;
+        }
+        if (distance == OVER_BUDGET) {
+            clustersStale = true;
+            return;
+        }
+        int[] queue = workspace.queue;
+        if (workspace.forwardExhausted) {
+            clusters.split(queue, 0, workspace.forwardTail);
+        } else {
+            clusters.split(queue, workspace.backwardTail + 1, queue.length - 1 - workspace.backwardTail);
+        }
+    }
+
+    /**
+     * Updates the clusters after a vertex with the given friends was removed. The friends
+     * are checked against an anchor, a friend whose part still holds the root of the old
+     * cluster. When a search finds no path, its exhausted side is a whole part and becomes
+     * a cluster of its own; if that was the anchor's part, the friend becomes the anchor.
+     * A friend already moved into a part of its own is skipped. The searches share one
+     * budget, and if it runs out the clusters are left to be rebuilt.
+     */
+    private void reconnect(int[] friends) {
+        if (clustersStale || friends.length < 2) {
+            return;
+        }
+        Workspace workspace = workspaces.get();
+        int budget = SEARCH_BUDGET;
+        int anchor = friends[0];
+        for (int i = 1; i < friends.length; i++) {
+            int friend = friends[i];
+            if (!clusters.sameCluster(anchor, friend)) {
+                continue;
+            }
+            int distance = search(workspace, anchor, friend, budget);
+            if (distance == OVER_BUDGET) {
+                clustersStale = true;
+                return;
+            }
+            int[] queue = workspace.queue;
+            budget -= workspace.forwardTail + queue.length - 1 - workspace.backwardTail;
+            if (distance >= 0) {
+                continue;
+            }
+            if (workspace.forwardExhausted) {
+                clusters.split(queue, 0, workspace.forwardTail);
+                anchor = friend;
+            } else {
+                clusters.split(queue, workspace.backwardTail + 1, queue.length - 1 - workspace.backwardTail);
+            }
+        }
+    }
+
+    /**
+     * Returns the cluster index, first rebuilding it from the edges if a cluster update ran
+     * out of budget since the last query.
+     */
+    private ClusterIndex clusterIndex() {
+        if (clustersStale) {
+            ClusterIndex index = new ClusterIndex();
+            for (int v = 0; v < vertexLimit; v++) {
+                if (degree[v] >= 0) {
+                    index.addVertex(v);
+                }
+            }
+            for (int v = 0; v < vertexLimit; v++) {
+                if (degree[v] > 0) {
+                    int u = v;
+                    forEachNeighbor(u, friend -> {
+                        if (friend < u) {
+                            index.union(u, friend);
+                        }
+                    });
+                }
+            }
+            clusters = index;
+            clustersStale = false;
+        }
+        return clusters;
+    }
+
+    /**
+     * Runs a bidirectional breadth-first search. The forward side fills the queue from its
+     * start and the backward side from its end; every vertex is queued at most once, so
+     * the two never overlap. When they meet, the workspace holds the edge where they met;
+     * when they do not, it tells which side ran out of vertices.
+     *
+     * @param budget the most vertices the two sides may queue together
+     * @return the distance, -1 if the vertices are not connected, or {@code OVER_BUDGET}
+     *         if the sides queued more than the budget before either answer was known
+     */
+    private int search(Workspace workspace, int from, int to, int budget) {
+        if (from == to) {
+            return 0;
+        }
+        workspace.prepare(vertexLimit);
+        int forward = workspace.forwardStamp();
+        int backward = forward + 1;
+        int[] mark = workspace.mark;
+        int[] parent = workspace.parent;
+        int[] queue = workspace.queue;
+        mark[from] = forward;
+        parent[from] = from;
+        mark[to] = backward;
+        parent[to] = to;
+        int forwardHead = 0;
+        int backwardHead = queue.length - 1;
+        queue[forwardHead] = from;
+        queue[backwardHead] = to;
+        workspace.forwardTail = forwardHead + 1;
+        workspace.backwardTail = backwardHead - 1;
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+
+        while (forwardHead < workspace.forwardTail && backwardHead > workspace.backwardTail) {
+            if (workspace.forwardTail - forwardHead <= backwardHead - workspace.backwardTail) {
+                for (int level = workspace.forwardTail; forwardHead < level; forwardHead++) {
+                    int current = queue[forwardHead];
+                    int met = expand(workspace, current, forward, backward, true);
+                    if (met >= 0) {
+                        workspace.meetForward = current;
+                        workspace.meetBackward = met;
+                        return forwardDepth + 1 + backwardDepth;
+                    }
+                    if (workspace.forwardTail + queue.length - 1 - workspace.backwardTail > budget) {
+                        return OVER_BUDGET;
+                    }
+                }
+                forwardDepth++;
+            } else {
+                for (int level = workspace.backwardTail; backwardHead > level; backwardHead--) {
+                    int current = queue[backwardHead];
+                    int met = expand(workspace, current, backward, forward, false);
+                    if (met >= 0) {
+                        workspace.meetForward = met;
+                        workspace.meetBackward = current;
+                        return forwardDepth + 1 + backwardDepth;
+                    }
+                    if (workspace.forwardTail + queue.length - 1 - workspace.backwardTail > budget) {
+                        return OVER_BUDGET;
+                    }
+                }
+                backwardDepth++;
+            }
+        }
+        workspace.forwardExhausted = forwardHead == workspace.forwardTail;
+        return -1;
+    }
+
+    /**
+     * Queues the friends of a vertex that no side has reached yet.
+     *
+     * @return a friend already reached by the other side, or -1 if there is none
+     */
+    private int expand(Workspace workspace, int current, int own, int other, boolean forward) {
+        int[] mark = workspace.mark;
+        int[] parent = workspace.parent;
+        int[] queue = workspace.queue;
+        int tail = forward ? workspace.forwardTail : workspace.backwardTail;
+        int step = forward ? 1 : -1;
+        int met = -1;
+        if (current < rows) {
+            for (int i = offsets[current], end = offsets[current + 1]; i < end; i++) {
+                int friend = targets[i];
+                if (friend < 0 || mark[friend] == own) {
+                    continue;
+                }
+                if (mark[friend] == other) {
+                    met = friend;
+                    break;
+                }
+                mark[friend] = own;
+                parent[friend] = current;
+                queue[tail] = friend;
+                tail += step;
+            }
+        }
+        int[] delta = added[current];
+        for (int i = 0; met < 0 && delta != null && i < delta.length; i++) {
+            int friend = delta[i] - 1;
+            if (friend < 0 || mark[friend] == own) {
+                continue;
+            }
+            if (mark[friend] == other) {
+                met = friend;
+                break;
+            }
+            mark[friend] = own;
+            parent[friend] = current;
+            queue[tail] = friend;
+            tail += step;
+        }
+        if (forward) {
+            workspace.forwardTail = tail;
+        } else {
+            workspace.backwardTail = tail;
+        }
+        return met;
+    }
+
+    /**
+     * The arrays of a path search, kept by each thread and reused by all of its searches.
+     * A vertex belongs to the current search only if its mark holds one of the two stamps
+     * of that search, so the arrays never need clearing: each search takes new stamps.
+     * This costs 12 bytes per vertex for every thread that searches.
+     */
+    private static final class Workspace {
+        private static final int MAX_EPOCH = Integer.MAX_VALUE / 2 - 1;
+
+        private int[] mark = EMPTY; // The stamp of the side that reached each vertex
+        private int[] parent = EMPTY; // The vertex each vertex was reached from
+        private int[] queue = EMPTY; // Forward side from the start, backward side from the end
+        private int epoch;
+        private int forwardTail;
+        private int backwardTail;
+        private int meetForward;
+        private int meetBackward;
+        private boolean forwardExhausted;
+
+        /**
+         * Makes room for the given number of vertices and starts a new search.
+         */
+        private void prepare(int size) {
+            if (mark.length < size) {
+                int length = Math.max(size, mark.length + (mark.length >> 1));
+                mark = new int[length];
+                parent = new int[length];
+                queue = new int[length];
+                epoch = 0;
+            } else if (epoch == MAX_EPOCH) {
+                Arrays.fill(mark, 0);
+                epoch = 0;
+            }
+            epoch++;
+        }
+
+        /**
+         * Returns the stamp of the forward side; the backward side uses the next value.
+         * Both are above 0, the mark of vertices no search has reached.
+         */
+        private int forwardStamp() {
+            return 2 * epoch;
+        }
+    }
+}
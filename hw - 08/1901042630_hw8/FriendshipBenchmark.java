@@ -0,0 +1,191 @@
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * The FriendshipBenchmark class measures single friendship changes and lookups on a
+ * generated small-world network (see {@link GraphBenchmark}) in which one person made
+ * thousands of friends after the graph was built. It compares {@link FriendGraph} with
+ * the adjacency map of people that SocialNetwork used before, where a friendship check
+ * was a List.contains, a removal a List.remove, and removing a person walked the friend
+ * list of every member.
+ * <p>
+ * Removing a friendship from the graph includes the path search that keeps the clusters
+ * up to date (see {@link ClusterIndex}), so it is measured on friendships within the
+ * ring, whose ends stay close.
+ * <p>
+ * Usage: {@code java FriendshipBenchmark [people] [friendsPerPerson] [operations] [hubFriends]}
+ * (defaults: 1,000,000 people, 10 friends each, 1,000,000 operations, 5,000 friends of the hub).
+ */
+public class FriendshipBenchmark {
+    public static void main(String[] args) {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int hubFriends = args.length > 3 ? Integer.parseInt(args[3]) : 5_000;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount + hubFriends];
+        int[] to = new int[edgeCount + hubFriends];
+        GraphBenchmark.smallWorld(people, friendsPerPerson, random, from, to);
+        for (int i = edgeCount; i < edgeCount + hubFriends; i++) {
+            from[i] = 0;
+            to[i] = 1 + random.nextInt(people - 1);
+        }
+
+        // The hub's friendships are added one by one, so they sit in its delta set
+        FriendGraph graph = FriendGraph.fromEdges(people, from, to, edgeCount);
+        for (int i = edgeCount; i < edgeCount + hubFriends; i++) {
+            graph.addEdge(from[i], to[i]);
+        }
+        Person[] persons = new Person[people];
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 29, 10, 30);
+        for (int i = 0; i < people; i++) {
+            persons[i] = new Person("Person " + i, 20 + i % 50, Collections.emptyList(), timestamp);
+        }
+        Map<Person, List<Person>> map = new HashMap<>();
+        for (Person person : persons) {
+            map.put(person, new ArrayList<>());
+        }
+        for (int i = 0; i < edgeCount + hubFriends; i++) {
+            if (from[i] != to[i]) {
+                map.get(persons[from[i]]).add(persons[to[i]]);
+                map.get(persons[to[i]]).add(persons[from[i]]);
+            }
+        }
+        int[] a = new int[operations];
+        int[] b = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            a[i] = random.nextInt(people);
+            b[i] = random.nextInt(people);
+        }
+        int hubSample = Math.min(graph.degree(0), operations);
+        int[] hubFriendIds = Arrays.copyOf(graph.neighbors(0), hubSample);
+        int removals = Math.max(1, operations / 1000);
+        System.out.printf("%,d people, %,d friendships, hub with %,d friends, %,d operations%n%n",
+                people, graph.edgeCount(), graph.degree(0), operations);
+        System.out.printf("%-36s %14s %14s%n", "", "map of people", "FriendGraph");
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < operations; i++) {
+                found += map.get(persons[a[i]]).contains(persons[b[i]]) ? 1 : 0;
+            }
+            long mapLookup = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                found -= graph.hasEdge(a[i], b[i]) ? 1 : 0;
+            }
+            long graphLookup = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                found += map.get(persons[0]).contains(persons[b[i]]) ? 1 : 0;
+            }
+            long mapHub = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                found -= graph.hasEdge(0, b[i]) ? 1 : 0;
+            }
+            long graphHub = System.nanoTime() - start;
+            if (found != 0) {
+                throw new IllegalStateException("The two representations disagree");
+            }
+
+            // Remove friendships of the hub, then add them back
+            start = System.nanoTime();
+            for (int i = 0; i < hubSample; i++) {
+                map.get(persons[0]).remove(persons[hubFriendIds[i]]);
+                map.get(persons[hubFriendIds[i]]).remove(persons[0]);
+            }
+            long mapHubRemove = System.nanoTime() - start;
+            for (int i = 0; i < hubSample; i++) {
+                map.get(persons[0]).add(persons[hubFriendIds[i]]);
+                map.get(persons[hubFriendIds[i]]).add(persons[0]);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < hubSample; i++) {
+                graph.removeEdge(0, hubFriendIds[i]);
+            }
+            long graphHubRemove = System.nanoTime() - start;
+            for (int i = 0; i < hubSample; i++) {
+                graph.addEdge(0, hubFriendIds[i]);
+            }
+
+            // Remove and restore friendships between neighbours on the ring
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                Person u = persons[a[i]];
+                Person v = persons[(a[i] + 1) % people];
+                if (map.get(u).remove(v)) {
+                    map.get(v).remove(u);
+                    map.get(u).add(v);
+                    map.get(v).add(u);
+                }
+            }
+            long mapRing = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                if (graph.removeEdge(a[i], (a[i] + 1) % people)) {
+                    graph.addEdge(a[i], (a[i] + 1) % people);
+                }
+            }
+            long graphRing = System.nanoTime() - start;
+
+            // Remove people, as removePerson did: the map walks every friend list
+            start = System.nanoTime();
+            int mapRemovals = Math.min(removals, 10);
+            for (int i = 0; i < mapRemovals; i++) {
+                Person person = persons[b[round * removals + i]];
+                List<Person> friends = map.remove(person);
+                for (List<Person> list : map.values()) {
+                    list.remove(person);
+                }
+                map.put(person, friends);
+                for (Person friend : friends) {
+                    map.get(friend).add(person);
+                }
+            }
+            long mapRemovePerson = System.nanoTime() - start;
+            int[][] saved = new int[removals][];
+            for (int i = 0; i < removals; i++) {
+                saved[i] = graph.neighbors(b[round * removals + i]);
+            }
+            start = System.nanoTime();
+            int removed = 0;
+            for (int i = 0; i < removals; i++) {
+                removed += graph.removeVertex(b[round * removals + i]) ? 1 : 0;
+            }
+            long graphRemovePerson = System.nanoTime() - start;
+
+            // The removed ids are reused, so the people come back with the same ids
+            for (int i = 0; i < removed; i++) {
+                graph.addVertex();
+            }
+            for (int i = 0; i < removals; i++) {
+                for (int friend : saved[i]) {
+                    graph.addEdge(b[round * removals + i], friend);
+                }
+            }
+
+            if (timed) {
+                row("areFriends, random pair", mapLookup, graphLookup, operations, operations);
+                row("areFriends, hub and random person", mapHub, graphHub, operations, operations);
+                row("remove friendship of the hub", mapHubRemove, graphHubRemove, hubSample, hubSample);
+                row("remove and add ring friendship", mapRing, graphRing, operations, operations);
+                row("remove person", mapRemovePerson, graphRemovePerson, mapRemovals, removed);
+            }
+        }
+        long start = System.nanoTime();
+        graph.removeVertex(0);
+        System.out.printf("%-36s %14s %11.1f us%n", "remove the hub", "", (System.nanoTime() - start) / 1e3);
+    }
+
+    private static void row(String label, long mapNanos, long graphNanos, int mapCount, int graphCount) {
+        System.out.printf("%-36s %11.1f ns %11.1f ns%n", label, (double) mapNanos / mapCount,
+                (double) graphNanos / graphCount);
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * The GraphAnalytics class computes influence and health metrics of a {@link FriendGraph}:
+ * PageRank, the degree histogram, triangle counts, and the local, average and global
+ * clustering coefficients.
+ * <p>
+ * The constructor copies the graph into sorted CSR arrays of its own, so the metrics read
+ * one contiguous row per vertex and the graph may change once the snapshot is taken. Every
+ * metric is a parallel stream over the vertex ids, which the stream framework splits into
+ * ranges for the threads of the fork-join pool it runs in. Run a metric inside
+ * {@code pool.submit(() -> analytics.pageRank(0.85, 100, 1e-9)).get()} to choose the
+ * number of threads; otherwise the common pool is used.
+ * <p>
+ * Arrays of results are indexed by vertex id, and free ids hold 0.
+ */
+public class GraphAnalytics {
+    private final int[] offsets; // Row starts, one more than the vertex ids
+    private final int[] targets; // The friends of every vertex, each row sorted
+    private final boolean[] live; // Whether each id belongs to a vertex
+    private final int vertexCount; // Number of live vertices
+    private int[] triangles; // Triangles through each vertex, counted on first use
+
+    /**
+     * Takes a snapshot of a graph. The graph must not change while the snapshot is taken.
+     *
+     * @param graph the graph
+     */
+    public GraphAnalytics(FriendGraph graph) {
+        int limit = graph.vertexLimit();
+        offsets = new int[limit + 1];
+        live = new boolean[limit];
+        IntStream.range(0, limit).parallel().forEach(v -> {
+            live[v] = graph.contains(v);
+            offsets[v + 1] = live[v] ? graph.degree(v) : 0;
+        });
+        Arrays.parallelPrefix(offsets, Integer::sum);
+        vertexCount = graph.vertexCount();
+        targets = new int[offsets[limit]];
+        IntStream.range(0, limit).parallel().filter(v -> live[v]).forEach(v -> {
+            int[] next = {offsets[v]};
+            graph.forEachNeighbor(v, friend -> targets[next[0]++] = friend);
+            Arrays.sort(targets, offsets[v], offsets[v + 1]);
+        });
+    }
+
+    /**
+     * Returns the number of live vertices in the snapshot.
+     *
+     * @return the number of vertices
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Counts the vertices of every degree.
+     *
+     * @return an array whose entry d is the number of vertices with d friends, up to the
+     *         largest degree
+     */
+    public long[] degreeHistogram() {
+        int maxDegree = IntStream.range(0, live.length).parallel().filter(v -> live[v]).map(this::degree).max()
+                .orElse(0);
+        return IntStream.range(0, live.length).parallel().filter(v -> live[v]).collect(
+                () -> new long[maxDegree + 1],
+                (histogram, v) -> histogram[degree(v)]++,
+                (left, right) -> Arrays.setAll(left, d -> left[d] + right[d]));
+    }
+
+    /**
+     * Computes the PageRank of every vertex by power iteration. Each friendship passes rank
+     * both ways, a vertex splits its rank evenly among its friends, and the rank of a
+     * friendless vertex is spread over all vertices. Each iteration pulls the shares of
+     * its friends into every vertex, so the threads write disjoint entries.
+     *
+     * @param damping       the probability of following a friendship, usually 0.85
+     * @param maxIterations the largest number of iterations
+     * @param tolerance     the iterations stop once the ranks change by less than this in
+     *                      total (L1 norm)
+     * @return the rank of every vertex; the ranks of the live vertices sum to 1
+     */
+    public double[] pageRank(double damping, int maxIterations, double tolerance) {
+        int limit = live.length;
+        double[] rank = new double[limit];
+        double[] next = new double[limit];
+        double[] share = new double[limit];
+        if (vertexCount == 0) {
+            return rank;
+        }
+        double initial = 1.0 / vertexCount;
+        IntStream.range(0, limit).parallel().filter(v -> live[v]).forEach(v -> rank[v] = initial);
+
+        double[] current = rank;
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double[] from = current;
+            double[] to = current == rank ? next : rank;
+            double dangling = IntStream.range(0, limit).parallel().mapToDouble(v -> {
+                int degree = degree(v);
+                share[v] = degree > 0 ? from[v] / degree : 0;
+                return live[v] && degree == 0 ? from[v] : 0;
+            }).sum();
+            double base = (1 - damping + damping * dangling) / vertexCount;
+            double change = IntStream.range(0, limit).parallel().mapToDouble(v -> {
+                if (!live[v]) {
+                    return 0;
+                }
+                double sum = 0;
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    sum += share[targets[i]];
+                }
+                to[v] = base + damping * sum;
+                return Math.abs(to[v] - from[v]);
+            }).sum();
+            current = to;
+            if (change < tolerance) {
+                break;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Counts the triangles through every vertex: pairs of its friends who are friends
+     * themselves.
+     *
+     * @return the number of triangles of every vertex
+     */
+    public int[] triangles() {
+        return countTriangles().clone();
+    }
+
+    /**
+     * Counts the triangles of the graph.
+     *
+     * @return the number of triangles
+     */
+    public long triangleCount() {
+        return Arrays.stream(countTriangles()).parallel().asLongStream().sum() / 3;
+    }
+
+    /**
+     * Computes the local clustering coefficient of every vertex: the fraction of pairs of
+     * its friends who are friends themselves, or 0 for a vertex with fewer than two
+     * friends.
+     *
+     * @return the local clustering coefficient of every vertex
+     */
+    public double[] localClustering() {
+        int[] counts = countTriangles();
+        double[] result = new double[live.length];
+        IntStream.range(0, live.length).parallel().forEach(v -> {
+            long degree = degree(v);
+            result[v] = degree < 2 ? 0 : 2.0 * counts[v] / (degree * (degree - 1));
+        });
+        return result;
+    }
+
+    /**
+     * Returns the average of the local clustering coefficients of all vertices.
+     *
+     * @return the average clustering coefficient
+     */
+    public double averageClustering() {
+        return vertexCount == 0 ? 0 : Arrays.stream(localClustering()).parallel().sum() / vertexCount;
+    }
+
+    /**
+     * Returns the global clustering coefficient (transitivity): three times the number of
+     * triangles over the number of paths of two friendships.
+     *
+     * @return the global clustering coefficient
+     */
+    public double globalClustering() {
+        int[] counts = countTriangles();
+        long closed = IntStream.range(0, live.length).parallel().mapToLong(v -> counts[v]).sum();
+        long paths = IntStream.range(0, live.length).parallel().mapToLong(v -> {
+            long degree = degree(v);
+            return degree * (degree - 1) / 2;
+        }).sum();
+        return paths == 0 ? 0 : (double) closed / paths;
+    }
+
+    private int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * Counts the triangles of every vertex once and keeps the counts. Every friendship is
+     * oriented from the vertex of lower degree to the one of higher degree, which bounds
+     * the forward friends of any vertex by about the square root of twice the number of
+     * friendships. Each triangle is then found exactly once, from its lowest vertex, by
+     * intersecting two sorted forward lists, and its three corners are counted with
+     * atomic increments.
+     */
+    private synchronized int[] countTriangles() {
+        if (triangles != null) {
+            return triangles;
+        }
+        int limit = live.length;
+        int[] forwardOffsets = new int[limit + 1];
+        IntStream.range(0, limit).parallel().forEach(v -> {
+            int count = 0;
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                count += before(v, targets[i]) ? 1 : 0;
+            }
+            forwardOffsets[v + 1] = count;
+        });
+        Arrays.parallelPrefix(forwardOffsets, Integer::sum);
+        int[] forward = new int[forwardOffsets[limit]];
+        IntStream.range(0, limit).parallel().forEach(v -> {
+            int write = forwardOffsets[v];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (before(v, targets[i])) {
+                    forward[write++] = targets[i];
+                }
+            }
+        });
+
+        AtomicIntegerArray counts = new AtomicIntegerArray(limit);
+        IntStream.range(0, limit).parallel().forEach(u -> {
+            int own = 0;
+            for (int i = forwardOffsets[u]; i < forwardOffsets[u + 1]; i++) {
+                int v = forward[i];
+                int a = forwardOffsets[u];
+                int aEnd = forwardOffsets[u + 1];
+                int b = forwardOffsets[v];
+                int bEnd = forwardOffsets[v + 1];
+                while (a < aEnd && b < bEnd) {
+                    if (forward[a] < forward[b]) {
+                        a++;
+                    } else if (forward[a] > forward[b]) {
+                        b++;
+                    } else {
+                        own++;
+                        counts.incrementAndGet(v);
+                        counts.incrementAndGet(forward[a]);
+                        a++;
+                        b++;
+                    }
+                }
+            }
+            if (own > 0) {
+                counts.addAndGet(u, own);
+            }
+        });
+        int[] result = new int[limit];
+        IntStream.range(0, limit).parallel().forEach(v -> result[v] = counts.get(v));
+        triangles = result;
+        return result;
+    }
+
+    /**
+     * Tells whether vertex u comes before vertex v in the order by degree, then by id.
+     */
+    private boolean before(int u, int v) {
+        int du = degree(u);
+        int dv = degree(v);
+        return du < dv || (du == dv && u < v);
+    }
+}
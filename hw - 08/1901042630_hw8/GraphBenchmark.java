@@ -0,0 +1,173 @@
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * The GraphBenchmark class compares the int-indexed {@link FriendGraph} with the adjacency
+ * map of people that SocialNetwork used before, on a generated small-world network: the
+ * heap used by each representation (not counting the people themselves), the time of
+ * shortest-path queries between random people, and the time to find the clusters.
+ * <p>
+ * The network is a Watts-Strogatz graph: every person is friends with their nearest
+ * neighbours on a ring, and one friendship in ten is rewired to a random person.
+ * <p>
+ * Usage: {@code java GraphBenchmark [people] [friendsPerPerson] [queries]}
+ * (defaults: 1,000,000 people, 10 friends each, 50 queries).
+ */
+public class GraphBenchmark {
+    public static void main(String[] args) {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        smallWorld(people, friendsPerPerson, random, from, to);
+        int[] sources = new int[queries];
+        int[] targets = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            sources[i] = random.nextInt(people);
+            targets[i] = random.nextInt(people);
+        }
+        System.out.printf("%,d people, %,d friendships, %d path queries%n%n", people, edgeCount, queries);
+
+        // The adjacency map of people, as SocialNetwork stored the network before
+        Person[] persons = new Person[people];
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 29, 10, 30);
+        for (int i = 0; i < people; i++) {
+            persons[i] = new Person("Person " + i, 20 + i % 50, Collections.emptyList(), timestamp);
+        }
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Map<Person, List<Person>> map = new HashMap<>();
+        for (int i = 0; i < people; i++) {
+            map.put(persons[i], new ArrayList<>());
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            map.get(persons[from[i]]).add(persons[to[i]]);
+            map.get(persons[to[i]]).add(persons[from[i]]);
+        }
+        long mapBuild = System.nanoTime() - start;
+        long mapBytes = usedHeap() - before;
+
+        start = System.nanoTime();
+        FriendGraph graph = FriendGraph.fromEdges(people, from, to, edgeCount);
+        long graphBuild = System.nanoTime() - start;
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        long mapPath = 0;
+        long graphPath = 0;
+        long mapClusters = 0;
+        long graphClusters = 0;
+        long checksum = 0;
+        for (int round = 0; round < 2; round++) {
+            int count = round == 0 ? Math.min(5, queries) : queries;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                checksum += mapPath(map, persons[sources[i]], persons[targets[i]]);
+            }
+            mapPath = (System.nanoTime() - start) / count;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                int[] path = graph.shortestPath(sources[i], targets[i]);
+                checksum -= path == null ? 0 : path.length;
+            }
+            graphPath = (System.nanoTime() - start) / count;
+
+            start = System.nanoTime();
+            checksum += mapClusters(map);
+            mapClusters = System.nanoTime() - start;
+            start = System.nanoTime();
+            checksum -= graph.components().size();
+            graphClusters = System.nanoTime() - start;
+        }
+        if (checksum != 0) {
+            throw new IllegalStateException("The two representations disagree");
+        }
+
+        System.out.printf("%-16s %14s %14s%n", "", "map of people", "FriendGraph");
+        System.out.printf("%-16s %11.1f MB %11.1f MB%n", "graph heap", mapBytes / 1e6, graph.memoryUsage() / 1e6);
+        System.out.printf("%-16s %11d ms %11d ms%n", "build", mapBuild / 1_000_000, graphBuild / 1_000_000);
+        System.out.printf("%-16s %11.2f ms %11.2f ms%n", "shortest path", mapPath / 1e6, graphPath / 1e6);
+        System.out.printf("%-16s %11d ms %11d ms%n", "clusters", mapClusters / 1_000_000, graphClusters / 1_000_000);
+    }
+
+    /**
+     * Generates the friendships of a Watts-Strogatz graph.
+     */
+    static void smallWorld(int people, int friendsPerPerson, Random random, int[] from, int[] to) {
+        int edge = 0;
+        for (int i = 0; i < people; i++) {
+            for (int j = 1; j <= friendsPerPerson / 2; j++) {
+                from[edge] = i;
+                to[edge] = random.nextInt(10) == 0 ? random.nextInt(people) : (i + j) % people;
+                edge++;
+            }
+        }
+    }
+
+    /**
+     * The breadth-first search SocialNetwork ran on the adjacency map.
+     *
+     * @return the number of people on the path, or 0 if there is none
+     */
+    private static int mapPath(Map<Person, List<Person>> map, Person start, Person end) {
+        Queue<Person> queue = new LinkedList<>();
+        Map<Person, Person> previous = new HashMap<>();
+        Set<Person> visited = new HashSet<>();
+        queue.add(start);
+        visited.add(start);
+        while (!queue.isEmpty()) {
+            Person current = queue.poll();
+            if (current.equals(end)) {
+                int length = 0;
+                for (Person at = end; at != null; at = previous.get(at)) {
+                    length++;
+                }
+                return length;
+            }
+            for (Person neighbor : map.get(current)) {
+                if (!visited.contains(neighbor)) {
+                    visited.add(neighbor);
+                    previous.put(neighbor, current);
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The cluster search SocialNetwork ran on the adjacency map, without the printing.
+     *
+     * @return the number of clusters
+     */
+    private static int mapClusters(Map<Person, List<Person>> map) {
+        Set<Person> visited = new HashSet<>();
+        int clusters = 0;
+        for (Person person : map.keySet()) {
+            if (visited.add(person)) {
+                clusters++;
+                Queue<Person> queue = new LinkedList<>();
+                queue.add(person);
+                while (!queue.isEmpty()) {
+                    for (Person neighbor : map.get(queue.poll())) {
+                        if (visited.add(neighbor)) {
+                            queue.add(neighbor);
+                        }
+                    }
+                }
+            }
+        }
+        return clusters;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
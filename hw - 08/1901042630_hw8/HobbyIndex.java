@@ -0,0 +1,211 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * The HobbyIndex class interns hobby names to dense int ids and keeps an inverted index
+ * from every hobby to the vertex ids of the people who have it.
+ * <p>
+ * The members of each hobby are a sorted int array, so walking them reads one contiguous
+ * run of ints, and the people who share several hobbies are found by intersecting the
+ * arrays, starting from the shortest. A name is interned the first time a person has it
+ * and keeps its id for the lifetime of the index, even after the last member leaves.
+ */
+public class HobbyIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private Map<String, Integer> ids; // The id of each hobby name
+    private List<String> names; // The name of each hobby id
+    private int[][] members; // The sorted vertex ids of the members of each hobby
+    private int[] memberCount; // Number of used entries of each members array
+
+    /**
+     * Constructs an empty index.
+     */
+    public HobbyIndex() {
+        ids = new HashMap<>();
+        names = new ArrayList<>();
+        members = new int[16][];
+        memberCount = new int[16];
+    }
+
+    /**
+     * Interns hobby names, giving every name that is new to the index the next free id.
+     *
+     * @param hobbies the hobby names; a name may appear more than once
+     * @return the distinct ids of the hobbies, sorted
+     */
+    public int[] intern(List<String> hobbies) {
+        int[] result = new int[hobbies.size()];
+        for (int i = 0; i < result.length; i++) {
+            String hobby = hobbies.get(i);
+            Integer id = ids.get(hobby);
+            if (id == null) {
+                id = names.size();
+                ids.put(hobby, id);
+                names.add(hobby);
+                if (id == members.length) {
+                    members = Arrays.copyOf(members, id * 2);
+                    memberCount = Arrays.copyOf(memberCount, id * 2);
+                }
+                members[id] = EMPTY;
+            }
+            result[i] = id;
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (distinct == 0 || result[distinct - 1] != result[i]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return distinct == result.length ? result : Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * Returns the id of a hobby name without interning it.
+     *
+     * @param hobby the hobby name
+     * @return the id, or -1 if no one has ever had the hobby
+     */
+    public int id(String hobby) {
+        Integer id = ids.get(hobby);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of a hobby id.
+     *
+     * @param hobby the hobby id
+     * @return the hobby name
+     */
+    public String name(int hobby) {
+        return names.get(hobby);
+    }
+
+    /**
+     * Adds a vertex to the members of its hobbies.
+     *
+     * @param v       the vertex
+     * @param hobbies the distinct hobby ids of the vertex
+     */
+    public void add(int v, int[] hobbies) {
+        for (int hobby : hobbies) {
+            int count = memberCount[hobby];
+            int[] list = members[hobby];
+            int at = -Arrays.binarySearch(list, 0, count, v) - 1;
+            if (at < 0) {
+                continue;
+            }
+            if (count == list.length) {
+                list = Arrays.copyOf(list, Math.max(4, count * 2));
+                members[hobby] = list;
+            }
+            System.arraycopy(list, at, list, at + 1, count - at);
+            list[at] = v;
+            memberCount[hobby] = count + 1;
+        }
+    }
+
+    /**
+     * Removes a vertex from the members of its hobbies.
+     *
+     * @param v       the vertex
+     * @param hobbies the distinct hobby ids of the vertex
+     */
+    public void remove(int v, int[] hobbies) {
+        for (int hobby : hobbies) {
+            int count = memberCount[hobby];
+            int[] list = members[hobby];
+            int at = Arrays.binarySearch(list, 0, count, v);
+            if (at < 0) {
+                continue;
+            }
+            System.arraycopy(list, at + 1, list, at, count - at - 1);
+            memberCount[hobby] = count - 1;
+        }
+    }
+
+    /**
+     * Returns the number of people who have a hobby.
+     *
+     * @param hobby the hobby id
+     * @return the number of members
+     */
+    public int memberCount(int hobby) {
+        return memberCount[hobby];
+    }
+
+    /**
+     * Calls an action for every member of a hobby, in increasing order of vertex id.
+     *
+     * @param hobby  the hobby id
+     * @param action the action to call with each vertex
+     */
+    public void forEachMember(int hobby, IntConsumer action) {
+        int[] list = members[hobby];
+        for (int i = 0, count = memberCount[hobby]; i < count; i++) {
+            action.accept(list[i]);
+        }
+    }
+
+    /**
+     * Finds the people who have all of some hobbies. The members of the rarest hobby are
+     * the candidates, and each candidate is looked up in the members of the other hobbies
+     * with a galloping search from where the previous one ended: the step doubles until it
+     * passes the candidate, and a binary search finishes inside the last step. Lists of
+     * similar length are thus walked almost like a merge, and a short list is intersected
+     * with a long one in O(s log(n / s)) time.
+     *
+     * @param hobbies the hobby ids
+     * @return the vertex ids of the people who have every hobby, sorted, or an empty array
+     *         if no hobbies are given
+     */
+    public int[] membersOfAll(int[] hobbies) {
+        if (hobbies.length == 0) {
+            return EMPTY;
+        }
+        int[] order = hobbies.clone();
+        for (int i = 1; i < order.length; i++) {
+            for (int j = i; j > 0 && memberCount[order[j]] < memberCount[order[j - 1]]; j--) {
+                int swap = order[j];
+                order[j] = order[j - 1];
+                order[j - 1] = swap;
+            }
+        }
+        int rarest = order[0];
+        int[] result = Arrays.copyOf(members[rarest], memberCount[rarest]);
+        int length = result.length;
+        for (int k = 1; k < order.length && length > 0; k++) {
+            int[] list = members[order[k]];
+            int count = memberCount[order[k]];
+            int from = 0;
+            int kept = 0;
+            for (int i = 0; i < length && from < count; i++) {
+                int at = gallop(list, from, count, result[i]);
+                if (at >= 0) {
+                    result[kept++] = result[i];
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+            length = kept;
+        }
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Searches a sorted range for a value, looking near its start first.
+     *
+     * @return the index of the value, or (-(insertion point) - 1) if it is not in the range
+     */
+    private static int gallop(int[] list, int from, int to, int value) {
+        int step = 1;
+        int low = from;
+        while (low + step < to && list[low + step] < value) {
+            low += step;
+            step *= 2;
+        }
+        return Arrays.binarySearch(list, low, Math.min(low + step + 1, to), value);
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * The IntCounter class counts occurrences of non-negative int keys, such as vertex ids,
+ * without boxing. Each key is stored next to its count in one int array, with open
+ * addressing and linear probing, so adding to a count is a multiply, a shift and
+ * usually a single cache line read. Keys are stored plus one, so that a freshly allocated
+ * table of zeros is empty.
+ * <p>
+ * The highest counts are picked with a bounded min-heap of k entries, so selecting the
+ * best k of n keys costs O(n log k) instead of sorting all n.
+ */
+public class IntCounter {
+    private int[] table; // One more than the key of each slot, followed by its count; 0 for an empty slot
+    private int mask; // Slot count minus one; the slot count is a power of two
+    private int shift; // Shift that turns the hash into a slot index
+    private int size; // Number of used slots
+
+    /**
+     * Constructs an empty counter with room for some keys before it grows.
+     *
+     * @param expected the number of keys expected
+     */
+    public IntCounter(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Adds to the count of a key, which starts at 0.
+     *
+     * @param key   the key, which must not be negative
+     * @param delta the amount to add
+     */
+    public void add(int key, int delta) {
+        int i = index(key);
+        if (table[i] == 0) {
+            table[i] = key + 1;
+            table[i + 1] = delta;
+            if (++size > (mask + 1) / 2) {
+                allocate((mask + 1) * 2);
+            }
+        } else {
+            table[i + 1] += delta;
+        }
+    }
+
+    /**
+     * Returns the count of a key.
+     *
+     * @param key the key
+     * @return the count, or 0 if the key was never added
+     */
+    public int get(int key) {
+        int i = index(key);
+        return table[i + 1];
+    }
+
+    /**
+     * Returns the number of keys counted.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys with the highest positive counts, highest first. Keys with equal
+     * counts are ordered by key, lowest first.
+     *
+     * @param k the largest number of keys to return
+     * @return at most {@code k} keys
+     */
+    public int[] top(int k) {
+        // Each entry packs the count and the complemented key into a long, so that one
+        // comparison of longs ranks by count and then by key
+        long[] heap = new long[Math.max(0, Math.min(k, size))];
+        int length = 0;
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] == 0 || table[i + 1] <= 0) {
+                continue;
+            }
+            long entry = ((long) table[i + 1] << 32) | (~(table[i] - 1) & 0xFFFFFFFFL);
+            if (length < heap.length) {
+                heap[length] = entry;
+                siftUp(heap, length++);
+            } else if (length > 0 && entry > heap[0]) {
+                heap[0] = entry;
+                siftDown(heap, length);
+            }
+        }
+        Arrays.sort(heap, 0, length);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = ~(int) heap[length - 1 - i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index in the table of the slot that holds a key, or of the empty slot
+     * where it belongs.
+     */
+    private int index(int key) {
+        int slot = (key * 0x9E3779B9) >>> shift;
+        while (table[2 * slot] != 0 && table[2 * slot] != key + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return 2 * slot;
+    }
+
+    private void allocate(int capacity) {
+        int[] old = table;
+        table = new int[2 * capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        if (old != null) {
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != 0) {
+                    int j = index(old[i] - 1);
+                    table[j] = old[i];
+                    table[j + 1] = old[i + 1];
+                }
+            }
+        }
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long entry = heap[i];
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+    }
+
+    private static void siftDown(long[] heap, int length) {
+        long entry = heap[0];
+        int i = 0;
+        while (2 * i + 1 < length) {
+            int child = 2 * i + 1;
+            if (child + 1 < length && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= entry) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+}
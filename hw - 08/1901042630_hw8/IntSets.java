@@ -0,0 +1,137 @@
+/**
+ * The IntSets class holds the operations on sets of non-negative ints that are stored in
+ * plain int arrays, so that a graph can keep one set per vertex without an object around
+ * each of them.
+ * <p>
+ * A set is an open-addressing hash table with linear probing. Its length is a power of
+ * two, it is at most half full, and it holds every value plus one, so that 0 marks an
+ * empty slot and a new table of zeros is an empty set. Removal shifts the following
+ * entries of the probe run back instead of leaving tombstones, so lookups stay short
+ * however many values come and go. Adding, removing and finding a value take O(1)
+ * expected time.
+ */
+public class IntSets {
+    private static final int MIN_LENGTH = 4;
+
+    private IntSets() {
+    }
+
+    /**
+     * Adds a value that is not in a set.
+     *
+     * @param set   the set, or null for an empty set
+     * @param size  the number of values in the set
+     * @param value the value to add
+     * @return the set, which is a new array if it had to grow
+     */
+    public static int[] add(int[] set, int size, int value) {
+        if (set == null) {
+            set = new int[MIN_LENGTH];
+        } else if (2 * (size + 1) > set.length) {
+            int[] old = set;
+            set = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    set[free(set, entry - 1)] = entry;
+                }
+            }
+        }
+        set[free(set, value)] = value + 1;
+        return set;
+    }
+
+    /**
+     * Tells whether a set holds a value.
+     *
+     * @param set   the set, or null for an empty set
+     * @param value the value
+     * @return true if the value is in the set
+     */
+    public static boolean contains(int[] set, int value) {
+        if (set == null) {
+            return false;
+        }
+        int mask = set.length - 1;
+        for (int slot = home(set, value); set[slot] != 0; slot = (slot + 1) & mask) {
+            if (set[slot] == value + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a value from a set.
+     *
+     * @param set   the set, or null for an empty set
+     * @param value the value
+     * @return true if the value was in the set
+     */
+    public static boolean remove(int[] set, int value) {
+        if (set == null) {
+            return false;
+        }
+        int mask = set.length - 1;
+        int slot = home(set, value);
+        while (set[slot] != value + 1) {
+            if (set[slot] == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Move back every later entry of the run that may not sit between its home slot
+        // and the hole, so that no lookup stops early at the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; set[next] != 0; next = (next + 1) & mask) {
+            int home = home(set, set[next] - 1);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                set[hole] = set[next];
+                hole = next;
+            }
+        }
+        set[hole] = 0;
+        return true;
+    }
+
+    /**
+     * Copies the values of a set into an array.
+     *
+     * @param set  the set, or null for an empty set
+     * @param into the array to copy into
+     * @param from the index of the first value in the array
+     * @return the index after the last value copied
+     */
+    public static int copy(int[] set, int[] into, int from) {
+        if (set != null) {
+            for (int entry : set) {
+                if (entry != 0) {
+                    into[from++] = entry - 1;
+                }
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Returns the heap size of a set.
+     *
+     * @param set the set, or null for an empty set
+     * @return the size in bytes
+     */
+    public static long memoryUsage(int[] set) {
+        return set == null ? 0 : 16 + 4L * set.length;
+    }
+
+    private static int home(int[] set, int value) {
+        return (value * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(set.length - 1);
+    }
+
+    private static int free(int[] set, int value) {
+        int mask = set.length - 1;
+        int slot = home(set, value);
+        while (set[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
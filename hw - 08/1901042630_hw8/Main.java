@@ -24,7 +24,9 @@ public class Main {
             System.out.println("5. Find shortest path");
             System.out.println("6. Suggest friends");
             System.out.println("7. Count clusters");
-            System.out.println("8. Exit");
+            System.out.println("8. Find people by hobbies");
+            System.out.println("9. Analyze network");
+            System.out.println("10. Exit");
             System.out.print("Please select an option: ");
 
             int choice = scanner.nextInt();
@@ -128,6 +130,21 @@ public class Main {
                         break;
 
                     case 8:
+                        // Find the people who have all of the given hobbies
+                        System.out.print("Enter hobbies (comma-separated): ");
+                        hobbiesInput = scanner.nextLine();
+                        network.findPeopleByHobbies(Arrays.asList(hobbiesInput.split(",")));
+                        break;
+
+                    case 9:
+                        // Display PageRank, degree distribution and clustering coefficients
+                        System.out.print("Enter number of influential people to show: ");
+                        int topCount = scanner.nextInt();
+                        scanner.nextLine();  // Consume newline
+                        network.analyzeNetwork(topCount);
+                        break;
+
+                    case 10:
                         // Exit the program
                         System.out.println("Exiting...");
                         scanner.close();
@@ -0,0 +1,137 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+/**
+ * The PathBenchmark class measures the throughput of shortest-path queries on a generated
+ * small-world network (see {@link GraphBenchmark}). It compares the bidirectional search
+ * of {@link FriendGraph} with a one-sided breadth-first search that allocates its arrays
+ * for every query, as FriendGraph did before, and reports the queries per second, the
+ * bytes allocated per query and the throughput of several threads searching at once.
+ * <p>
+ * Usage: {@code java PathBenchmark [people] [friendsPerPerson] [queries] [threads]}
+ * (defaults: 1,000,000 people, 10 friends each, 10,000 queries, 4 threads).
+ */
+public class PathBenchmark {
+    public static void main(String[] args) throws Exception {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        GraphBenchmark.smallWorld(people, friendsPerPerson, random, from, to);
+        FriendGraph graph = FriendGraph.fromEdges(people, from, to, edgeCount);
+        int[] sources = new int[queries];
+        int[] targets = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            sources[i] = random.nextInt(people);
+            targets[i] = random.nextInt(people);
+        }
+        // The one-sided search is far slower, so it answers a sample of the queries
+        int sample = Math.max(1, queries / 100);
+        System.out.printf("%,d people, %,d friendships, %,d queries (%,d one-sided)%n%n",
+                people, graph.edgeCount(), queries, sample);
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long hops = 0;
+            for (int i = 0; i < sample; i++) {
+                hops += oneSided(graph, sources[i], targets[i]);
+            }
+            report(timed, "one-sided BFS", sample, System.nanoTime() - start, allocatedBytes() - bytes, hops);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            hops = 0;
+            for (int i = 0; i < sample; i++) {
+                hops += graph.distance(sources[i], targets[i]);
+            }
+            report(timed, "bidirectional (sample)", sample, System.nanoTime() - start, allocatedBytes() - bytes, hops);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            hops = 0;
+            for (int i = 0; i < queries; i++) {
+                hops += graph.distance(sources[i], targets[i]);
+            }
+            report(timed, "bidirectional", queries, System.nanoTime() - start, allocatedBytes() - bytes, hops);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int round = 0; round < 2; round++) {
+            List<Future<Long>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                results.add(executor.submit(() -> {
+                    long hops = 0;
+                    for (int i = first; i < queries; i += threads) {
+                        hops += graph.distance(sources[i], targets[i]);
+                    }
+                    return hops;
+                }));
+            }
+            long hops = 0;
+            for (Future<Long> result : results) {
+                hops += result.get();
+            }
+            if (round == 1) {
+                System.out.printf("%-24s %12.0f queries/s  (%d threads, %d cores, %.2f hops)%n", "bidirectional, threads",
+                        queries / ((System.nanoTime() - start) / 1e9), threads,
+                        Runtime.getRuntime().availableProcessors(), (double) hops / queries);
+            }
+        }
+        executor.shutdown();
+    }
+
+    private static void report(boolean timed, String label, int queries, long nanos, long bytes, long hops) {
+        if (timed) {
+            System.out.printf("%-24s %12.0f queries/s %10.1f us/query %12.0f bytes/query  (%.2f hops)%n", label,
+                    queries / (nanos / 1e9), nanos / 1e3 / queries, (double) bytes / queries, (double) hops / queries);
+        }
+    }
+
+    /**
+     * The one-sided search FriendGraph ran before, with its arrays allocated per query.
+     *
+     * @return the distance, or -1 if the two are not connected
+     */
+    private static int oneSided(FriendGraph graph, int from, int to) {
+        int[] parent = new int[graph.vertexLimit()];
+        Arrays.fill(parent, -1);
+        int[] depth = new int[graph.vertexLimit()];
+        int[] queue = new int[graph.vertexCount()];
+        int[] tail = {0};
+        queue[tail[0]++] = from;
+        parent[from] = from;
+        int[] current = new int[1];
+        IntConsumer visit = friend -> {
+            if (parent[friend] < 0) {
+                parent[friend] = current[0];
+                depth[friend] = depth[current[0]] + 1;
+                queue[tail[0]++] = friend;
+            }
+        };
+        for (int head = 0; head < tail[0]; head++) {
+            current[0] = queue[head];
+            if (current[0] == to) {
+                return depth[to];
+            }
+            graph.forEachNeighbor(current[0], visit);
+        }
+        return -1;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
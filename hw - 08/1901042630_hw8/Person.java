@@ -11,6 +11,8 @@ public class Person {
     private int age; // The person's age
     private List<String> hobbies; // The person's hobbies
     private LocalDateTime timestamp; // The timestamp when the person joined the network
+    private int id = -1; // The vertex of the person in the network graph, or -1 if not in a network
+    private int[] hobbyIds; // The interned ids of the person's hobbies in their network, sorted
 
     /**
      * Constructs a new Person with the specified name, age, hobbies, and timestamp.
@@ -63,6 +65,42 @@ public class Person {
         return timestamp;
     }
 
+    /**
+     * Returns the vertex id of the person in the graph of their social network.
+     * 
+     * @return The vertex id, or -1 if the person is not in a network
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the vertex id of the person in the graph of their social network.
+     * 
+     * @param id The vertex id, or -1 when the person leaves the network
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the interned ids of the person's hobbies in their social network.
+     * 
+     * @return The distinct hobby ids, sorted, or null if the person is not in a network
+     */
+    int[] getHobbyIds() {
+        return hobbyIds;
+    }
+
+    /**
+     * Sets the interned ids of the person's hobbies in their social network.
+     * 
+     * @param hobbyIds The distinct hobby ids, sorted
+     */
+    void setHobbyIds(int[] hobbyIds) {
+        this.hobbyIds = hobbyIds;
+    }
+
     /**
      * Returns a string representation of the person, including their name, age, and
      * timestamp.
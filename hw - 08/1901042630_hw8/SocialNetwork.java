@@ -4,18 +4,28 @@ import java.util.*;
 /**
  * The SocialNetwork class represents a social network using a graph data structure.
  * It includes methods to add/remove people, add/remove friendships, find shortest paths,
- * suggest friends, and count clusters within the network.
+ * suggest friends, count clusters, and analyze the structure of the network.
+ * <p>
+ * Every person is given a dense vertex id, and the friendships are stored as edges between
+ * the ids in a {@link FriendGraph}, so the graph algorithms work on int arrays instead of
+ * looking up each person in a hash map.
  */
 public class SocialNetwork {
+    private static final int EXCLUDED = Integer.MIN_VALUE / 2; // Score that keeps a person from being suggested
+
     private Map<String, Person> people; // Map to store people with their unique identifier (name + timestamp)
-    private Map<Person, List<Person>> graph; // Adjacency list representation of the social network graph
+    private FriendGraph graph; // The friendships, as edges between the vertex ids of the people
+    private List<Person> members; // The people by vertex id; null for the ids of removed people
+    private HobbyIndex hobbyIndex; // The interned hobbies and the people who have each of them
 
     /**
      * Constructs an empty SocialNetwork.
      */
     public SocialNetwork() {
         people = new HashMap<>();
-        graph = new HashMap<>();
+        graph = new FriendGraph();
+        members = new ArrayList<>();
+        hobbyIndex = new HobbyIndex();
     }
 
     /**
@@ -40,8 +50,19 @@ public class SocialNetwork {
      */
     public void addPerson(String name, int age, List<String> hobbies, LocalDateTime timestamp) {
         Person person = new Person(name, age, hobbies, timestamp);
-        people.put(name + timestamp.toString(), person);
-        graph.put(person, new ArrayList<>());
+        Person previous = people.put(name + timestamp.toString(), person);
+        if (previous != null) {
+            leave(previous);
+        }
+        int id = graph.addVertex();
+        person.setId(id);
+        if (id == members.size()) {
+            members.add(person);
+        } else {
+            members.set(id, person);
+        }
+        person.setHobbyIds(hobbyIndex.intern(hobbies));
+        hobbyIndex.add(id, person.getHobbyIds());
         System.out.println("Person added: " + person);
     }
 
@@ -54,10 +75,7 @@ public class SocialNetwork {
     public void removePerson(String name, LocalDateTime timestamp) {
         Person person = people.remove(name + timestamp.toString());
         if (person != null) {
-            graph.remove(person);
-            for (List<Person> friends : graph.values()) {
-                friends.remove(person);
-            }
+            leave(person);
             System.out.println("Person removed: " + person);
         } else {
             System.out.println("Person not found: " + name + " with timestamp: " + timestamp);
@@ -77,9 +95,13 @@ public class SocialNetwork {
         Person person2 = people.get(name2 + timestamp2.toString());
 
         if (person1 != null && person2 != null) {
-            graph.get(person1).add(person2);
-            graph.get(person2).add(person1);
-            System.out.println("Friendship added between " + person1 + " and " + person2);
+            if (person1 == person2) {
+                System.out.println("A person cannot be friends with themselves.");
+            } else if (graph.addEdge(person1.getId(), person2.getId())) {
+                System.out.println("Friendship added between " + person1 + " and " + person2);
+            } else {
+                System.out.println("Friendship already exists between " + person1 + " and " + person2);
+            }
         } else {
             System.out.println("One or both persons not found.");
         }
@@ -98,14 +120,33 @@ public class SocialNetwork {
         Person person2 = people.get(name2 + timestamp2.toString());
 
         if (person1 != null && person2 != null) {
-            graph.get(person1).remove(person2);
-            graph.get(person2).remove(person1);
-            System.out.println("Friendship removed between " + person1 + " and " + person2);
+            if (graph.removeEdge(person1.getId(), person2.getId())) {
+                System.out.println("Friendship removed between " + person1 + " and " + person2);
+            } else {
+                System.out.println("No friendship between " + person1 + " and " + person2);
+            }
         } else {
             System.out.println("One or both persons not found.");
         }
     }
 
+    /**
+     * Tells whether two people are friends. The friendship is looked up in the hashed
+     * recent friendships and the sorted friend list of the person with fewer friends, so
+     * this does not depend on the size of the network.
+     *
+     * @param name1      The name of the first person.
+     * @param timestamp1 The timestamp of when the first person joined the network.
+     * @param name2      The name of the second person.
+     * @param timestamp2 The timestamp of when the second person joined the network.
+     * @return True if both people exist and are friends.
+     */
+    public boolean areFriends(String name1, LocalDateTime timestamp1, String name2, LocalDateTime timestamp2) {
+        Person person1 = people.get(name1 + timestamp1.toString());
+        Person person2 = people.get(name2 + timestamp2.toString());
+        return person1 != null && person2 != null && graph.hasEdge(person1.getId(), person2.getId());
+    }
+
     /**
      * Finds the shortest path between two people in the social network using Breadth-First Search (BFS).
      *
@@ -123,40 +164,19 @@ public class SocialNetwork {
             return;
         }
 
-        Queue<Person> queue = new LinkedList<>();
-        Map<Person, Person> previous = new HashMap<>();
-        Set<Person> visited = new HashSet<>();
-
-        queue.add(start);
-        visited.add(start);
-
-        while (!queue.isEmpty()) {
-            Person current = queue.poll();
-
-            if (current.equals(end)) {
-                List<Person> path = new ArrayList<>();
-                for (Person at = end; at != null; at = previous.get(at)) {
-                    path.add(at);
-                }
-                Collections.reverse(path);
-                System.out.println("Shortest path: " + path);
-                return;
-            }
-
-            for (Person neighbor : graph.get(current)) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    previous.put(neighbor, current);
-                    queue.add(neighbor);
-                }
-            }
+        int[] ids = graph.shortestPath(start.getId(), end.getId());
+        if (ids == null) {
+            System.out.println("No path found between " + start + " and " + end);
+            return;
         }
-
-        System.out.println("No path found between " + start + " and " + end);
+        System.out.println("Shortest path: " + toPeople(ids));
     }
 
     /**
-     * Suggests friends for a person based on mutual friends and common hobbies.
+     * Suggests friends for a person based on mutual friends and common hobbies. A mutual
+     * friend counts 1 and a common hobby 0.5 (a hobby listed twice is still one hobby), and
+     * the people with the highest scores are suggested; people with equal scores are
+     * ordered by vertex id.
      *
      * @param name          The name of the person.
      * @param timestamp     The timestamp of when the person joined the network.
@@ -169,40 +189,41 @@ public class SocialNetwork {
             return;
         }
 
-        Map<Person, Double> scores = new HashMap<>();
-
-        for (Person p : graph.keySet()) {
-            if (!p.equals(person) && !graph.get(person).contains(p)) {
-                int mutualFriends = 0;
-                int commonHobbies = 0;
-
-                for (Person friend : graph.get(person)) {
-                    if (graph.get(p).contains(friend)) {
-                        mutualFriends++;
-                    }
-                }
-
-                for (String hobby : person.getHobbies()) {
-                    if (p.getHobbies().contains(hobby)) {
-                        commonHobbies++;
-                    }
-                }
+        IntCounter scores = scoreCandidates(person);
+        System.out.println("Suggested friends for " + person.getName() + ":");
+        for (int id : scores.top(maxSuggestions)) {
+            System.out.println(members.get(id) + " (Score: " + scores.get(id) / 2.0 + ")");
+        }
+    }
 
-                double score = mutualFriends + 0.5 * commonHobbies;
-                if (score > 0) {
-                    scores.put(p, score);
-                }
+    /**
+     * Finds and displays the people who have all of the given hobbies. The hobbies are
+     * looked up in an inverted index, so only the people who have the rarest of them are
+     * checked, instead of every member of the network.
+     *
+     * @param hobbies The hobbies the people must all have.
+     */
+    public void findPeopleByHobbies(List<String> hobbies) {
+        if (hobbies.isEmpty()) {
+            System.out.println("No hobbies given.");
+            return;
+        }
+        int[] ids = new int[hobbies.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hobbyIndex.id(hobbies.get(i));
+            if (ids[i] < 0) {
+                System.out.println("No one likes " + hobbies.get(i) + ".");
+                return;
             }
         }
-
-        List<Map.Entry<Person, Double>> suggestions = new ArrayList<>(scores.entrySet());
-        suggestions.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-
-        System.out.println("Suggested friends for " + person.getName() + ":");
-        for (int i = 0; i < Math.min(maxSuggestions, suggestions.size()); i++) {
-            Person suggestedPerson = suggestions.get(i).getKey();
-            double score = suggestions.get(i).getValue();
-            System.out.println(suggestedPerson + " (Score: " + score + ")");
+        int[] found = hobbyIndex.membersOfAll(ids);
+        if (found.length == 0) {
+            System.out.println("No one likes " + String.join(" and ", hobbies) + ".");
+            return;
+        }
+        System.out.println("People who like " + String.join(" and ", hobbies) + ":");
+        for (Person person : toPeople(found)) {
+            System.out.println(person);
         }
     }
 
@@ -210,42 +231,186 @@ public class SocialNetwork {
      * Counts and displays the number of clusters (connected components) in the social network.
      */
     public void countClusters() {
-        Set<Person> visited = new HashSet<>();
         int clusterCount = 0;
 
-        for (Person person : graph.keySet()) {
-            if (!visited.contains(person)) {
-                clusterCount++;
-                System.out.println("Cluster " + clusterCount + ":");
-                bfsCluster(person, visited);
-                System.out.println();
+        for (int[] cluster : graph.components()) {
+            clusterCount++;
+            System.out.println("Cluster " + clusterCount + ":");
+            for (int id : cluster) {
+                System.out.println(members.get(id));
             }
+            System.out.println();
         }
 
         System.out.println("Number of clusters found: " + clusterCount);
     }
 
     /**
-     * Performs a Breadth-First Search (BFS) to explore a cluster starting from a given person.
+     * Tells whether two people are in the same cluster. The clusters are kept up to date
+     * as friendships change, so this does not search the graph.
      *
-     * @param start   The starting person for the BFS.
-     * @param visited A set to keep track of visited people.
+     * @param name1      The name of the first person.
+     * @param timestamp1 The timestamp of when the first person joined the network.
+     * @param name2      The name of the second person.
+     * @param timestamp2 The timestamp of when the second person joined the network.
+     * @return True if both people exist and a chain of friendships connects them.
      */
-    private void bfsCluster(Person start, Set<Person> visited) {
-        Queue<Person> queue = new LinkedList<>();
-        queue.add(start);
-        visited.add(start);
+    public boolean sameCluster(String name1, LocalDateTime timestamp1, String name2, LocalDateTime timestamp2) {
+        Person person1 = people.get(name1 + timestamp1.toString());
+        Person person2 = people.get(name2 + timestamp2.toString());
+        return person1 != null && person2 != null && graph.sameCluster(person1.getId(), person2.getId());
+    }
 
-        while (!queue.isEmpty()) {
-            Person current = queue.poll();
-            System.out.println(current);
+    /**
+     * Returns the number of people in the cluster of a person, without searching the graph.
+     *
+     * @param name      The name of the person.
+     * @param timestamp The timestamp of when the person joined the network.
+     * @return The size of the cluster, counting the person, or 0 if the person is not found.
+     */
+    public int clusterSize(String name, LocalDateTime timestamp) {
+        Person person = people.get(name + timestamp.toString());
+        return person == null ? 0 : graph.clusterSize(person.getId());
+    }
+
+    /**
+     * Returns the number of clusters, without searching the graph.
+     *
+     * @return The number of clusters.
+     */
+    public int clusterCount() {
+        return graph.clusterCount();
+    }
 
-            for (Person neighbor : graph.get(current)) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.add(neighbor);
+    /**
+     * Analyzes and displays the structure of the social network: the most influential
+     * people by PageRank, how many people have each number of friends, the number of
+     * triangles of friends, and the average and global clustering coefficients. The work is
+     * split across the threads of the common fork-join pool (see {@link GraphAnalytics}).
+     *
+     * @param topCount The number of most influential people to display.
+     */
+    public void analyzeNetwork(int topCount) {
+        GraphAnalytics analytics = new GraphAnalytics(graph);
+        double[] rank = analytics.pageRank(0.85, 100, 1e-9);
+        PriorityQueue<Integer> top = new PriorityQueue<>(
+                Comparator.comparingDouble((Integer id) -> rank[id]).thenComparing(Comparator.reverseOrder()));
+        for (int id = 0; id < members.size(); id++) {
+            if (members.get(id) != null && topCount > 0) {
+                top.add(id);
+                if (top.size() > topCount) {
+                    top.poll();
                 }
             }
         }
+        List<Integer> influential = new ArrayList<>();
+        while (!top.isEmpty()) {
+            influential.add(0, top.poll());
+        }
+
+        System.out.println("Network analysis of " + analytics.vertexCount() + " people:");
+        System.out.println("Most influential people:");
+        for (int id : influential) {
+            System.out.printf("%s (PageRank: %.4f)%n", members.get(id), rank[id]);
+        }
+        System.out.println("Degree distribution:");
+        long[] histogram = analytics.degreeHistogram();
+        for (int degree = 0; degree < histogram.length; degree++) {
+            if (histogram[degree] > 0) {
+                System.out.println(degree + " friends: " + histogram[degree] + " people");
+            }
+        }
+        System.out.println("Triangles of friends: " + analytics.triangleCount());
+        System.out.printf("Average clustering coefficient: %.4f%n", analytics.averageClustering());
+        System.out.printf("Global clustering coefficient: %.4f%n", analytics.globalClustering());
+    }
+
+    /**
+     * Returns the graph of the network, whose vertex ids are given by the people.
+     *
+     * @return The friendship graph
+     */
+    FriendGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the interned hobbies of the network and the people who have each of them.
+     *
+     * @return The hobby index
+     */
+    HobbyIndex getHobbyIndex() {
+        return hobbyIndex;
+    }
+
+    /**
+     * Returns the people of the network by vertex id.
+     *
+     * @return The people, with null for the ids of removed people
+     */
+    List<Person> getMembers() {
+        return members;
+    }
+
+    /**
+     * Scores the people a person could be suggested. Only the friends of their friends and
+     * the people sharing one of their hobbies can score above zero, so only they are
+     * visited, instead of every member of the network. The scores are doubled to keep them
+     * integers: a mutual friend adds 2 and a common hobby 1.
+     *
+     * @param person The person to find friends for.
+     * @return The doubled score of every candidate; the person and their friends score
+     *         below zero.
+     */
+    IntCounter scoreCandidates(Person person) {
+        int id = person.getId();
+        int[] friends = graph.neighbors(id);
+        int expected = friends.length + 1;
+        for (int friend : friends) {
+            expected += graph.degree(friend);
+        }
+        for (int hobby : person.getHobbyIds()) {
+            expected += hobbyIndex.memberCount(hobby);
+        }
+
+        IntCounter scores = new IntCounter(expected);
+        scores.add(id, EXCLUDED);
+        for (int friend : friends) {
+            scores.add(friend, EXCLUDED);
+        }
+        for (int friend : friends) {
+            graph.forEachNeighbor(friend, candidate -> scores.add(candidate, 2));
+        }
+        for (int hobby : person.getHobbyIds()) {
+            hobbyIndex.forEachMember(hobby, other -> scores.add(other, 1));
+        }
+        return scores;
+    }
+
+    /**
+     * Removes a person and their friendships from the graph.
+     *
+     * @param person The person to remove.
+     */
+    private void leave(Person person) {
+        graph.removeVertex(person.getId());
+        hobbyIndex.remove(person.getId(), person.getHobbyIds());
+        members.set(person.getId(), null);
+        person.setId(-1);
+        person.setHobbyIds(null);
+    }
+
+    /**
+     * Turns a list of vertex ids into the people they stand for.
+     *
+     * @param ids The vertex ids.
+     * @return The people, in the same order.
+     */
+    private List<Person> toPeople(int[] ids) {
+        List<Person> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(members.get(id));
+        }
+        return result;
     }
 }
@@ -0,0 +1,183 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * The SuggestBenchmark class measures friend suggestions on a generated small-world network
+ * (see {@link GraphBenchmark}) in which one person has thousands of friends and everyone
+ * has a few hobbies. It compares the candidate scoring of {@link SocialNetwork}, which
+ * visits only friends of friends and people sharing a hobby, with the scan of every member
+ * that suggestFriends ran before. It also compares finding the people who like two given
+ * hobbies in the inverted hobby index with checking the hobby list of every member.
+ * <p>
+ * Usage: {@code java SuggestBenchmark [people] [friendsPerPerson] [hubFriends] [hobbies]}
+ * (defaults: 200,000 people, 10 friends each, 5,000 friends of the hub, 500 hobbies).
+ */
+public class SuggestBenchmark {
+    private static final int HOBBIES_PER_PERSON = 3;
+    private static final int SUGGESTIONS = 10;
+    private static final int HOBBY_QUERIES = 100;
+
+    public static void main(String[] args) {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int friendsPerPerson = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int hubFriends = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int hobbies = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        Random random = new Random(42);
+        int edgeCount = people * (friendsPerPerson / 2);
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        GraphBenchmark.smallWorld(people, friendsPerPerson, random, from, to);
+
+        // The network prints every change, which is not what is being measured
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        SocialNetwork network = new SocialNetwork();
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 29, 10, 30);
+        for (int i = 0; i < people; i++) {
+            List<String> list = new ArrayList<>();
+            for (int j = 0; j < HOBBIES_PER_PERSON; j++) {
+                list.add("hobby " + random.nextInt(hobbies));
+            }
+            network.addPerson("Person " + i, 20 + i % 50, list, timestamp);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            network.addFriendship("Person " + from[i], timestamp, "Person " + to[i], timestamp);
+        }
+        for (int i = 0; i < hubFriends; i++) {
+            network.addFriendship("Person 0", timestamp, "Person " + random.nextInt(people), timestamp);
+        }
+        System.setOut(out);
+
+        FriendGraph graph = network.getGraph();
+        List<Person> members = network.getMembers();
+        Person hub = members.get(0);
+        int queries = 1_000;
+        Person[] ordinary = new Person[queries];
+        for (int i = 0; i < queries; i++) {
+            ordinary[i] = members.get(1 + random.nextInt(people - 1));
+        }
+        String[][] pairs = new String[HOBBY_QUERIES][];
+        for (int i = 0; i < HOBBY_QUERIES; i++) {
+            pairs[i] = new String[] {"hobby " + random.nextInt(hobbies), "hobby " + random.nextInt(hobbies)};
+        }
+        System.out.printf("%,d people, %,d friendships, hub with %,d friends, %d hobbies%n%n",
+                people, graph.edgeCount(), graph.degree(hub.getId()), hobbies);
+
+        // One untimed round of each so the JIT has compiled the code being compared
+        for (int round = 0; round < 2; round++) {
+            boolean timed = round == 1;
+            long start = System.nanoTime();
+            int[] old = scanAll(graph, members, hub, SUGGESTIONS);
+            long scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[] top = null;
+            int candidates = 0;
+            for (int i = 0; i < queries; i++) {
+                IntCounter scores = network.scoreCandidates(hub);
+                candidates = scores.size();
+                top = scores.top(SUGGESTIONS);
+            }
+            long hubNanos = System.nanoTime() - start;
+            if (!Arrays.equals(old, top)) {
+                throw new IllegalStateException("The two suggestions disagree");
+            }
+
+            start = System.nanoTime();
+            long ordinaryCandidates = 0;
+            for (int i = 0; i < queries; i++) {
+                IntCounter scores = network.scoreCandidates(ordinary[i]);
+                ordinaryCandidates += scores.size();
+                scores.top(SUGGESTIONS);
+            }
+            long ordinaryNanos = System.nanoTime() - start;
+
+            HobbyIndex index = network.getHobbyIndex();
+            start = System.nanoTime();
+            long scanned = 0;
+            for (int i = 0; i < HOBBY_QUERIES; i++) {
+                scanned += scanHobbies(members, Arrays.asList(pairs[i])).size();
+            }
+            long scanHobbyNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            long indexed = 0;
+            for (int i = 0; i < HOBBY_QUERIES * queries; i++) {
+                String[] pair = pairs[i % HOBBY_QUERIES];
+                int[] ids = {index.id(pair[0]), index.id(pair[1])};
+                indexed += index.membersOfAll(ids).length;
+            }
+            long indexNanos = System.nanoTime() - start;
+            if (scanned * queries != indexed) {
+                throw new IllegalStateException("The two hobby queries disagree");
+            }
+
+            if (timed) {
+                System.out.printf("%-28s %12.1f us  (every member)%n", "scan all, hub", scanNanos / 1e3);
+                System.out.printf("%-28s %12.1f us  (%,d candidates)%n", "candidates, hub", hubNanos / 1e3 / queries,
+                        candidates);
+                System.out.printf("%-28s %12.1f us  (%,d candidates on average)%n", "candidates, ordinary person",
+                        ordinaryNanos / 1e3 / queries, ordinaryCandidates / queries);
+                System.out.printf("%-28s %12.1f us  (%.1f people on average)%n", "two hobbies, scan members",
+                        scanHobbyNanos / 1e3 / HOBBY_QUERIES, (double) scanned / HOBBY_QUERIES);
+                System.out.printf("%-28s %12.1f us%n", "two hobbies, index", indexNanos / 1e3 / HOBBY_QUERIES / queries);
+            }
+        }
+    }
+
+    /**
+     * Finds the people who like every given hobby by checking the hobby list of each member.
+     */
+    private static List<Person> scanHobbies(List<Person> members, List<String> hobbies) {
+        List<Person> result = new ArrayList<>();
+        for (Person p : members) {
+            if (p != null && p.getHobbies().containsAll(hobbies)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The scoring suggestFriends ran before: every member is scored, and the scores are
+     * sorted. Ties are broken by vertex id, as the candidate scoring does.
+     *
+     * @return the vertex ids of the best {@code k} people
+     */
+    private static int[] scanAll(FriendGraph graph, List<Person> members, Person person, int k) {
+        Map<Person, Double> scores = new HashMap<>();
+        int id = person.getId();
+        int[] friends = graph.neighbors(id);
+        for (Person p : members) {
+            if (p != null && p != person && !graph.hasEdge(id, p.getId())) {
+                int mutualFriends = 0;
+                int commonHobbies = 0;
+                for (int friend : friends) {
+                    if (graph.hasEdge(p.getId(), friend)) {
+                        mutualFriends++;
+                    }
+                }
+                for (String hobby : person.getHobbies()) {
+                    if (p.getHobbies().contains(hobby)) {
+                        commonHobbies++;
+                    }
+                }
+                double score = mutualFriends + 0.5 * commonHobbies;
+                if (score > 0) {
+                    scores.put(p, score);
+                }
+            }
+        }
+        List<Map.Entry<Person, Double>> suggestions = new ArrayList<>(scores.entrySet());
+        suggestions.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? Integer.compare(a.getKey().getId(), b.getKey().getId())
+                : b.getValue().compareTo(a.getValue()));
+        int[] result = new int[Math.min(k, suggestions.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = suggestions.get(i).getKey().getId();
+        }
+        return result;
+    }
+}
@@ -54,13 +54,43 @@ public class Tester {
         System.out.println("\nSuggesting friends for Emily Davis:");
         network.suggestFriends("Emily Davis", emilyTimestamp, 3);
 
+        // Finding people by their hobbies
+        System.out.println("\nFinding people who like reading:");
+        network.findPeopleByHobbies(Arrays.asList("reading"));
+
+        System.out.println("\nFinding people who like reading and running:");
+        network.findPeopleByHobbies(Arrays.asList("reading", "running"));
+
+        System.out.println("\nFinding people who like painting and running:");
+        network.findPeopleByHobbies(Arrays.asList("painting", "running"));
+
         // Counting clusters
         System.out.println("\nCounting clusters in the network:");
         network.countClusters();
 
+        // Querying the clusters without printing them
+        System.out.println("\nJohn Doe and Alice Johnson in the same cluster: "
+                + network.sameCluster("John Doe", johnTimestamp, "Alice Johnson", aliceTimestamp));
+        System.out.println("John Doe and Frank Wilson in the same cluster: "
+                + network.sameCluster("John Doe", johnTimestamp, "Frank Wilson", frankTimestamp));
+        System.out.println("Size of John Doe's cluster: " + network.clusterSize("John Doe", johnTimestamp));
+        System.out.println("Number of clusters: " + network.clusterCount());
+
+        // Analyzing the network
+        System.out.println("\nAnalyzing the network:");
+        network.analyzeNetwork(3);
+
+        // Checking friendships
+        System.out.println("\nJohn Doe and Bob Brown are friends: "
+                + network.areFriends("John Doe", johnTimestamp, "Bob Brown", bobTimestamp));
+        System.out.println("John Doe and Alice Johnson are friends: "
+                + network.areFriends("John Doe", johnTimestamp, "Alice Johnson", aliceTimestamp));
+
         // Removing friendships
         System.out.println("\nRemoving friendship between John Doe and Bob Brown:");
         network.removeFriendship("John Doe", johnTimestamp, "Bob Brown", bobTimestamp);
+        System.out.println("John Doe and Bob Brown are friends: "
+                + network.areFriends("John Doe", johnTimestamp, "Bob Brown", bobTimestamp));
 
         System.out.println("\nRemoving friendship between Emily Davis and Frank Wilson:");
         network.removeFriendship("Emily Davis", emilyTimestamp, "Frank Wilson", frankTimestamp);
@@ -79,5 +109,7 @@ public class Tester {
         // Counting clusters after person removal
         System.out.println("\nCounting clusters after person removal:");
         network.countClusters();
+        System.out.println("Size of John Doe's cluster: " + network.clusterSize("John Doe", johnTimestamp));
+        System.out.println("Number of clusters: " + network.clusterCount());
     }
 }